@@ -0,0 +1,232 @@
+package net.fornwall.jelf;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.fornwall.jelf.Table.Align;
+import net.fornwall.jelf.section.ElfSection;
+
+/**
+ * Lock-free {@link ElfMetrics} implementation which accumulates all events in {@link LongAdder}
+ * counters. A single instance can be shared by any number of files and threads.
+ */
+public class ElfCountingMetrics implements ElfMetrics {
+	private final LongAdder seeks = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder stringsDecoded = new LongAdder();
+	private final LongAdder stringBytesDecoded = new LongAdder();
+	private final LongAdder stringCacheHits = new LongAdder();
+	private final LongAdder stringCacheMisses = new LongAdder();
+	private final LongAdder filesParsed = new LongAdder();
+	private final LongAdder parseNanos = new LongAdder();
+	private final LongAdder decodeNanos = new LongAdder();
+
+	// Section type to number of decoded entries
+	private final ConcurrentHashMap<Integer, LongAdder> entries = new ConcurrentHashMap<Integer, LongAdder>();
+
+	@Override
+	public void seek(long offset) {
+		seeks.increment();
+	}
+
+	@Override
+	public void bytesRead(long count) {
+		bytesRead.add(count);
+	}
+
+	@Override
+	public void entriesDecoded(int sectionType, long count) {
+		LongAdder adder = entries.get(sectionType);
+		if(adder == null)
+			adder = entries.computeIfAbsent(sectionType, k -> new LongAdder());
+		adder.add(count);
+	}
+
+	@Override
+	public void sectionDecoded(int sectionType, long nanos) {
+		decodeNanos.add(nanos);
+	}
+
+	@Override
+	public void stringDecoded(int length) {
+		stringsDecoded.increment();
+		stringBytesDecoded.add(length);
+	}
+
+	@Override
+	public void stringCacheHit() {
+		stringCacheHits.increment();
+	}
+
+	@Override
+	public void stringCacheMiss() {
+		stringCacheMisses.increment();
+	}
+
+	@Override
+	public void fileParsed(long nanos) {
+		filesParsed.increment();
+		parseNanos.add(nanos);
+	}
+
+	/**
+	 * @return Returns the number of times a parser has been repositioned
+	 */
+	public long getSeeks() {
+		return seeks.sum();
+	}
+
+	/**
+	 * @return Returns the total number of bytes read
+	 */
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	/**
+	 * @param sectionType the {@link ElfSection.Type} value of the sections to count
+	 * @return Returns the number of entries decoded from sections of the provided type
+	 */
+	public long getEntriesDecoded(int sectionType) {
+		LongAdder adder = entries.get(sectionType);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 * @return Returns a map from {@link ElfSection.Type} value to the number of entries
+	 * 	decoded from sections of that type
+	 */
+	public Map<Integer, Long> getEntriesDecoded() {
+		Map<Integer, Long> result = new TreeMap<Integer, Long>();
+		for(Map.Entry<Integer, LongAdder> e : entries.entrySet())
+			result.put(e.getKey(), e.getValue().sum());
+		return result;
+	}
+
+	/**
+	 * @return Returns the number of strings decoded from string tables
+	 */
+	public long getStringsDecoded() {
+		return stringsDecoded.sum();
+	}
+
+	/**
+	 * @return Returns the total length in bytes of all strings decoded from string tables
+	 */
+	public long getStringBytesDecoded() {
+		return stringBytesDecoded.sum();
+	}
+
+	/**
+	 * @return Returns the number of string lookups served from the string cache
+	 */
+	public long getStringCacheHits() {
+		return stringCacheHits.sum();
+	}
+
+	/**
+	 * @return Returns the number of string lookups which were not in the string cache
+	 */
+	public long getStringCacheMisses() {
+		return stringCacheMisses.sum();
+	}
+
+	/**
+	 * @return Returns the number of files parsed
+	 */
+	public long getFilesParsed() {
+		return filesParsed.sum();
+	}
+
+	/**
+	 * @return Returns the total time in nanoseconds spent parsing files
+	 */
+	public long getParseNanos() {
+		return parseNanos.sum();
+	}
+
+	/**
+	 * @return Returns the total time in nanoseconds spent decoding section contents
+	 */
+	public long getDecodeNanos() {
+		return decodeNanos.sum();
+	}
+
+	/**
+	 * Returns all counters keyed by a stable metric name, suitable for exporting to a
+	 * monitoring system. Entry counts are reported as "entries.&lt;TYPE&gt;".
+	 *
+	 * @return Returns a snapshot of all counters
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		result.put("seeks", getSeeks());
+		result.put("bytes_read", getBytesRead());
+		result.put("strings_decoded", getStringsDecoded());
+		result.put("string_bytes_decoded", getStringBytesDecoded());
+		result.put("string_cache_hits", getStringCacheHits());
+		result.put("string_cache_misses", getStringCacheMisses());
+		result.put("files_parsed", getFilesParsed());
+		result.put("parse_nanos", getParseNanos());
+		result.put("decode_nanos", getDecodeNanos());
+
+		Map<String, Long> byType = new TreeMap<String, Long>();
+		for(Map.Entry<Integer, Long> e : getEntriesDecoded().entrySet()) {
+			String key = "entries." + new ElfSection.Type(e.getKey()).name();
+			Long previous = byType.get(key);
+			byType.put(key, previous == null ? e.getValue() : previous + e.getValue());
+		}
+		result.putAll(byType);
+		return result;
+	}
+
+	/**
+	 * Resets all counters to zero
+	 */
+	public void reset() {
+		seeks.reset();
+		bytesRead.reset();
+		stringsDecoded.reset();
+		stringBytesDecoded.reset();
+		stringCacheHits.reset();
+		stringCacheMisses.reset();
+		filesParsed.reset();
+		parseNanos.reset();
+		decodeNanos.reset();
+		entries.clear();
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the formatted contents of this object.
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table("ELF Metrics:");
+
+		boolean first = true;
+		for(Map.Entry<String, Long> e : snapshot().entrySet()) {
+			if(!first)
+				t.newRow();
+
+			t.add(e.getKey());
+			if(first)
+				t.setColAlign(Align.LEFT);
+
+			t.add(Long.toString(e.getValue()));
+			if(first)
+				t.setColAlign(Align.RIGHT);
+
+			first = false;
+		}
+
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
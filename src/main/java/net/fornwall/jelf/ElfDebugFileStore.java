@@ -0,0 +1,299 @@
+package net.fornwall.jelf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the separate debug files of stripped files by build ID, like gdb does with its debug
+ * file directories. Each root directory is searched for the two common layouts:
+ *
+ * <pre>
+ * &lt;root&gt;/.build-id/ab/cdef0123.debug    as installed by the -debuginfo and -dbg packages
+ * &lt;root&gt;/abcdef0123/debuginfo           as kept by the cache of debuginfod clients
+ * </pre>
+ *
+ * Opened files are memory mapped and kept in a least recently used cache by build ID, which
+ * also remembers the build IDs without a debug file, so that symbolizing many addresses does
+ * not probe the file system again for every address. Candidates which can not be parsed, or
+ * whose own build ID differs, are skipped.
+ *
+ * <p>
+ * Files without a build ID, or whose build ID has no debug file, may still name their debug file
+ * in a .gnu_debuglink section, see {@link #findFor(ElfFile, File)}. The CRCs of the candidates
+ * are cached by path and modification time, so a candidate is only read again once it changed.
+ *
+ * <pre>
+ * ElfDebugFileStore store = new ElfDebugFileStore();
+ * ElfFile debug = store.findFor(file);
+ * ElfSymbol function = (debug != null ? debug : file).getSymbolIndex().find(0x4f60);
+ * </pre>
+ */
+public class ElfDebugFileStore {
+	/** The root directory searched by default */
+	public static final String DEFAULT_ROOT = "/usr/lib/debug";
+	/** The default number of build IDs whose lookups are cached */
+	public static final int DEFAULT_CACHE_SIZE = 64;
+
+	/** The result of a lookup, the file is null if no debug file was found */
+	private static final class Lookup {
+		final File path;
+		final ElfFile file;
+
+		Lookup(File path, ElfFile file) {
+			this.path = path;
+			this.file = file;
+		}
+	}
+
+	/** The CRC of a debug link candidate, and the file once it matched a debug link */
+	private static final class Checksum {
+		final int crc;
+		volatile ElfFile file;
+
+		Checksum(int crc) {
+			this.crc = crc;
+		}
+	}
+
+	private final ElfLruCache<String, Lookup> cache;
+	private final ElfLruCache<String, Checksum> checksums;
+	private final List<File> roots = new CopyOnWriteArrayList<File>();
+	private final AtomicInteger openedFiles = new AtomicInteger();
+
+	public ElfDebugFileStore() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @param cacheSize the maximum number of build IDs whose lookups are kept, including the
+	 * 	ones without a debug file, and likewise of debug link candidates whose CRCs are kept
+	 */
+	public ElfDebugFileStore(final int cacheSize) {
+		if(cacheSize < 1)
+			throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+		cache = new ElfLruCache<String, Lookup>(cacheSize);
+		checksums = new ElfLruCache<String, Checksum>(cacheSize);
+		roots.add(new File(DEFAULT_ROOT));
+	}
+
+	/**
+	 * @param root a directory to search after the current roots
+	 */
+	public void addRoot(File root) {
+		roots.add(root);
+	}
+
+	/**
+	 * Replaces the roots to search, which are {@link #DEFAULT_ROOT} initially. Cached lookups
+	 * are dropped.
+	 *
+	 * @param roots the directories to search in order
+	 */
+	public void setRoots(Collection<File> roots) {
+		this.roots.clear();
+		this.roots.addAll(roots);
+		clear();
+	}
+
+	/**
+	 * @return Returns the directories searched, in order
+	 */
+	public List<File> getRoots() {
+		return new ArrayList<File>(roots);
+	}
+
+	/**
+	 * @param root a root directory
+	 * @param buildId a build ID as returned by {@link ElfFile#getBuildId()}
+	 * @return Returns the path of the debug file of the build in the .build-id directory of the root
+	 */
+	public static File getBuildIdPath(File root, String buildId) {
+		return new File(root, ".build-id/" + buildId.substring(0, 2) + "/" + buildId.substring(2) + ".debug");
+	}
+
+	/**
+	 * @param file a file, usually stripped
+	 * @return Returns the debug file with the build ID of the file, or null if the file has no
+	 * 	build ID or no debug file was found
+	 */
+	public ElfFile findFor(ElfFile file) {
+		String buildId = file.getBuildId();
+		return buildId == null ? null : find(buildId);
+	}
+
+	/**
+	 * Finds the debug file of a file by build ID, or else by the .gnu_debuglink section of the
+	 * file. The debug link is searched like gdb does, see {@link #getDebugLinkPaths(File, String)},
+	 * and the first candidate whose CRC matches the link is returned.
+	 *
+	 * @param file a file, usually stripped
+	 * @param path the path the file was read from, or null if it is unknown
+	 * @return Returns the debug file of the file, or null if none was found
+	 */
+	public ElfFile findFor(ElfFile file, File path) {
+		ElfFile result = findFor(file);
+		if(result != null || path == null)
+			return result;
+
+		ElfDebugLink link;
+		String self;
+		try {
+			link = file.getDebugLink();
+			self = path.getCanonicalPath();
+		} catch(IOException | ElfException e) {
+			return null;
+		}
+		if(link == null)
+			return null;
+		for(File candidate : getDebugLinkPaths(path, link.getFileName())) {
+			try {
+				// The stripped file may have the same name as its debug file in another directory
+				if(!candidate.isFile() || self.equals(candidate.getCanonicalPath()))
+					continue;
+			} catch(IOException e) {
+				continue;
+			}
+			result = verify(candidate, link.getCrc());
+			if(result != null)
+				return result;
+		}
+		return null;
+	}
+
+	/**
+	 * @param path the path of a file
+	 * @param fileName the file name of its debug link, see {@link ElfDebugLink#getFileName()}
+	 * @return Returns the candidates for the debug file in the order they are searched: the
+	 * 	directory of the file, its .debug subdirectory, and the directory of the file below each root
+	 */
+	public List<File> getDebugLinkPaths(File path, String fileName) {
+		File directory = path.getAbsoluteFile().getParentFile();
+		String name = directory == null ? File.separator : directory.getPath();
+		List<File> result = new ArrayList<File>();
+		result.add(new File(directory, fileName));
+		result.add(new File(directory, ".debug" + File.separator + fileName));
+		for(File root : roots)
+			result.add(new File(root, name + File.separator + fileName));
+		return result;
+	}
+
+	private ElfFile verify(final File candidate, int crc) {
+		Checksum entry = checksums.get(key(candidate), k -> {
+			try {
+				return new Checksum(ElfDebugLink.checksum(candidate));
+			} catch(IOException | ElfException e) {
+				return null;
+			}
+		});
+		if(entry == null || entry.crc != crc)
+			return null;
+
+		ElfFile result = entry.file;
+		if(result == null) {
+			synchronized(entry) {
+				result = entry.file;
+				if(result == null)
+					entry.file = result = open(candidate);
+			}
+		}
+		return result;
+	}
+
+	private static String key(File candidate) {
+		String path;
+		try {
+			path = candidate.getCanonicalPath();
+		} catch(IOException e) {
+			path = candidate.getAbsolutePath();
+		}
+		return path + "@" + candidate.lastModified();
+	}
+
+	/**
+	 * @param buildId a build ID as returned by {@link ElfFile#getBuildId()}
+	 * @return Returns the debug file with the build ID, or null if none was found
+	 */
+	public ElfFile find(String buildId) {
+		return lookup(buildId).file;
+	}
+
+	/**
+	 * @param buildId a build ID as returned by {@link ElfFile#getBuildId()}
+	 * @return Returns the path of the debug file with the build ID, or null if none was found
+	 */
+	public File findPath(String buildId) {
+		return lookup(buildId).path;
+	}
+
+	private Lookup lookup(String buildId) {
+		return cache.get(buildId.toLowerCase(), this::probe);
+	}
+
+	private Lookup probe(String buildId) {
+		if(buildId.length() < 4 || buildId.length() % 2 != 0 || !buildId.chars().allMatch(c -> Character.digit(c, 16) >= 0))
+			return new Lookup(null, null);
+
+		for(File root : roots) {
+			for(File candidate : new File[] { getBuildIdPath(root, buildId), new File(root, buildId + "/debuginfo") }) {
+				if(!candidate.isFile())
+					continue;
+				ElfFile file = open(candidate);
+				if(file != null && buildId.equals(file.getBuildId()))
+					return new Lookup(candidate, file);
+			}
+		}
+		return new Lookup(null, null);
+	}
+
+	private ElfFile open(File candidate) {
+		try {
+			ElfFile file = ElfFile.map(candidate);
+			openedFiles.incrementAndGet();
+			return file;
+		} catch(IOException | ElfException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return Returns the number of debug files opened so far, including files opened again
+	 * 	after being evicted from the cache
+	 */
+	public int getOpenedFileCount() {
+		return openedFiles.get();
+	}
+
+	/**
+	 * @param buildId a build ID as returned by {@link ElfFile#getBuildId()}
+	 * @return Returns true if the result of looking up the build ID is cached
+	 */
+	public boolean isCached(String buildId) {
+		return cache.containsKey(buildId.toLowerCase());
+	}
+
+	/**
+	 * @param candidate a candidate for the debug file of a debug link
+	 * @return Returns true if the CRC of the candidate, in its current version, is cached
+	 */
+	public boolean isChecksumCached(File candidate) {
+		return checksums.containsKey(key(candidate));
+	}
+
+	/**
+	 * Drops all cached lookups, so that debug files installed since are found
+	 */
+	public void clear() {
+		cache.clear();
+		checksums.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "ElfDebugFileStore[roots=" + roots + "]";
+	}
+}
@@ -0,0 +1,206 @@
+package net.fornwall.jelf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import net.fornwall.jelf.section.ElfSection;
+
+/**
+ * The .gnu_debuglink section of a stripped file, which names its separate debug file and holds
+ * the CRC32 of the whole debug file:
+ *
+ * <pre>
+ * char name[];        NUL terminated, padded with NULs to a multiple of 4 bytes
+ * Elf32_Word crc;     in the byte order of the file
+ * </pre>
+ *
+ * See {@link ElfDebugFileStore#findFor(ElfFile, File)} for where the debug file is searched.
+ * Candidates are verified with {@link #checksum(File)}, which maps the candidate and computes
+ * the CRC of large files in parallel chunks, combining the CRCs of the chunks like zlib's
+ * crc32_combine().
+ */
+public final class ElfDebugLink {
+	/** The name of the section */
+	public static final String SECTION_NAME = ".gnu_debuglink";
+	/** The size of the chunks whose CRCs are computed in parallel */
+	public static final int CHUNK_SIZE = 8 << 20;
+
+	/** The reflected CRC-32 polynomial used by gnu_debuglink_crc32(), like zlib */
+	private static final int POLYNOMIAL = 0xedb88320;
+
+	private final String fileName;
+	private final int crc;
+
+	private ElfDebugLink(String fileName, int crc) {
+		this.fileName = fileName;
+		this.crc = crc;
+	}
+
+	/**
+	 * @param file a file, usually stripped
+	 * @return Returns the debug link of the file, or null if it has no .gnu_debuglink section
+	 */
+	static ElfDebugLink read(ElfFile file) {
+		Integer index = file.getSectionHeaders().getSectionIndexByName(SECTION_NAME);
+		ElfSection section = index == null ? null : file.getSectionHeaders().getSectionByIndex(index);
+		if(section == null || section.getType().val == ElfSection.Type.NOBITS || section.getFileSize() == 0)
+			return null;
+		if(section.getFileSize() > Integer.MAX_VALUE)
+			throw new ElfException(SECTION_NAME + " is too large: " + section.getFileSize() + " bytes");
+
+		ByteBuffer b = file.getParser().getByteBuffer(section.getFileOffset(), (int)section.getFileSize());
+		int end = 0;
+		while(end < b.limit() && b.get(end) != 0)
+			end++;
+		int crcOffset = (end + 4) & ~3;
+		if(end == 0 || crcOffset + 4 > b.limit())
+			throw new ElfException("Malformed " + SECTION_NAME + " section of " + b.limit() + " bytes");
+		byte[] name = new byte[end];
+		b.get(name);
+		return new ElfDebugLink(new String(name, StandardCharsets.UTF_8), b.getInt(crcOffset));
+	}
+
+	/**
+	 * @return Returns the file name of the debug file, without a directory
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return Returns the CRC32 of the whole debug file
+	 */
+	public int getCrc() {
+		return crc;
+	}
+
+	/**
+	 * Computes the CRC of a file like {@link #checksum(File, ForkJoinPool)} does, on the common pool
+	 *
+	 * @param file a candidate debug file
+	 * @return Returns the CRC32 of the whole file
+	 * @throws IOException if the file can not be mapped
+	 */
+	public static int checksum(File file) throws IOException {
+		return checksum(file, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the CRC of a file over its memory mapped contents. Files larger than
+	 * {@link #CHUNK_SIZE} are split into chunks whose CRCs are computed by separate tasks and
+	 * combined afterwards, so a debug file of several hundred megabytes is verified at the speed
+	 * of all cores instead of one.
+	 *
+	 * @param file a candidate debug file
+	 * @param pool the pool to compute the CRCs of the chunks on
+	 * @return Returns the CRC32 of the whole file
+	 * @throws IOException if the file can not be mapped
+	 */
+	public static int checksum(File file, ForkJoinPool pool) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return checksum(channel, CHUNK_SIZE, pool);
+		}
+	}
+
+	static int checksum(FileChannel channel, int chunkSize, ForkJoinPool pool) throws IOException {
+		long size = channel.size();
+		int chunks = (int)Math.max(1, (size + chunkSize - 1) / chunkSize);
+		// Chunks are mapped up front, as the channel may not be used by several threads at once
+		final ByteBuffer[] buffers = new ByteBuffer[chunks];
+		for(int i = 0; i < chunks; i++) {
+			long offset = (long)i * chunkSize;
+			buffers[i] = channel.map(MapMode.READ_ONLY, offset, Math.min(chunkSize, size - offset));
+		}
+		if(chunks == 1)
+			return crc32(buffers[0]);
+
+		final int[] crcs = new int[chunks];
+		try {
+			pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(i -> crcs[i] = crc32(buffers[i]))).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ElfException(e);
+		} catch (ExecutionException e) {
+			throw new ElfException(e.getCause());
+		}
+
+		int result = crcs[0];
+		for(int i = 1; i < chunks; i++)
+			result = combine(result, crcs[i], buffers[i].limit());
+		return result;
+	}
+
+	private static int crc32(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer);
+		return (int)crc.getValue();
+	}
+
+	/**
+	 * Combines the CRCs of two adjacent blocks, like crc32_combine() of zlib: appending len2 zero
+	 * bytes to the first block is a linear operation on its CRC, which is applied by squaring a
+	 * matrix over GF(2) for each bit of len2.
+	 *
+	 * @param crc1 the CRC of the first block
+	 * @param crc2 the CRC of the second block
+	 * @param len2 the length of the second block
+	 * @return Returns the CRC of the first block followed by the second block
+	 */
+	static int combine(int crc1, int crc2, long len2) {
+		if(len2 <= 0)
+			return crc1;
+
+		int[] even = new int[32]; // Operator for an even power of two zero bits
+		int[] odd = new int[32]; // Operator for an odd power of two zero bits
+
+		// The operator for one zero bit
+		odd[0] = POLYNOMIAL;
+		for(int n = 1, row = 1; n < 32; n++, row <<= 1)
+			odd[n] = row;
+		gf2MatrixSquare(even, odd); // Two zero bits
+		gf2MatrixSquare(odd, even); // Four zero bits
+
+		// The first squaring gives the operator for one zero byte, eight zero bits
+		do {
+			gf2MatrixSquare(even, odd);
+			if((len2 & 1) != 0)
+				crc1 = gf2MatrixTimes(even, crc1);
+			len2 >>>= 1;
+			if(len2 == 0)
+				break;
+			gf2MatrixSquare(odd, even);
+			if((len2 & 1) != 0)
+				crc1 = gf2MatrixTimes(odd, crc1);
+			len2 >>>= 1;
+		} while(len2 != 0);
+		return crc1 ^ crc2;
+	}
+
+	private static int gf2MatrixTimes(int[] matrix, int vector) {
+		int sum = 0;
+		for(int i = 0; vector != 0; i++, vector >>>= 1) {
+			if((vector & 1) != 0)
+				sum ^= matrix[i];
+		}
+		return sum;
+	}
+
+	private static void gf2MatrixSquare(int[] square, int[] matrix) {
+		for(int n = 0; n < 32; n++)
+			square[n] = gf2MatrixTimes(matrix, matrix[n]);
+	}
+
+	@Override
+	public String toString() {
+		return fileName + " (CRC 0x" + String.format("%08x", crc) + ")";
+	}
+}
@@ -0,0 +1,90 @@
+package net.fornwall.jelf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import net.fornwall.jelf.section.ElfSection;
+
+/**
+ * The decompressed contents of the SHF_COMPRESSED sections of a file, see
+ * {@link ElfSection#getUncompressedDataBuffer()}. The cache holds at most a configurable number
+ * of bytes and evicts the least recently used sections first, see {@link ElfLruCache}. Sections
+ * larger than the limit are decompressed for each request without being cached, so callers which
+ * keep the contents, like {@link net.fornwall.jelf.dwarf.Dwarf}, decompress them once themselves,
+ * and callers which can process the contents sequentially should use
+ * {@link ElfSection#openUncompressedStream()} instead.
+ */
+public class ElfDecompressionCache {
+	/** The default limit of the cache, in bytes */
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+	private final ElfLruCache<ElfSection, ByteBuffer> entries = new ElfLruCache<ElfSection, ByteBuffer>(DEFAULT_MAX_BYTES,
+			ByteBuffer::capacity);
+
+	/**
+	 * Returns the decompressed contents of a section, decompressing them if they are not cached.
+	 *
+	 * @param section a compressed section of the file
+	 * @return Returns a read-only buffer of the contents in the byte order of the file
+	 */
+	public ByteBuffer get(ElfSection section) {
+		ByteBuffer contents = entries.get(section, s -> {
+			ByteOrder order = s.getFile().getHeader().getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB
+					? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+			return ByteBuffer.wrap(s.decompress()).asReadOnlyBuffer().order(order);
+		});
+		return contents.duplicate().order(contents.order());
+	}
+
+	/**
+	 * @param maxBytes the number of decompressed bytes to keep at most
+	 */
+	public void setMaxBytes(long maxBytes) {
+		entries.setMaxWeight(maxBytes);
+	}
+
+	/**
+	 * @return Returns the number of decompressed bytes kept at most
+	 */
+	public long getMaxBytes() {
+		return entries.getMaxWeight();
+	}
+
+	/**
+	 * @return Returns the number of decompressed bytes currently cached
+	 */
+	public long getCachedBytes() {
+		return entries.getWeight();
+	}
+
+	/**
+	 * @param section a section of the file
+	 * @return Returns true if the decompressed contents of the section are cached
+	 */
+	public boolean isCached(ElfSection section) {
+		return entries.containsKey(section);
+	}
+
+	/**
+	 * Drops all cached contents
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Adds the heap memory retained by the cached contents to the provided estimate
+	 *
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		List<ByteBuffer> contents = entries.values();
+		if(contents.isEmpty())
+			return;
+		long size = 0;
+		for(ByteBuffer b : contents)
+			size += ElfMemoryEstimate.arraySize(b.capacity(), 1) + 2 * ElfMemoryEstimate.objectSize(3, 32);
+		estimate.add(ElfMemoryEstimate.DECOMPRESSED, size);
+	}
+}
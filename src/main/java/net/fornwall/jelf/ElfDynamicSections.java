@@ -0,0 +1,271 @@
+package net.fornwall.jelf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.fornwall.jelf.section.ElfSection;
+import net.fornwall.jelf.section.dynamic.ElfDynamicEntry;
+import net.fornwall.jelf.segment.ElfSegment;
+
+/**
+ * Rebuilds the sections needed for dynamic linking from the PT_DYNAMIC segment, for files
+ * without section headers such as sstrip'd binaries, firmware and images dumped from memory.
+ * The dynamic entries give the addresses of the tables, which are translated to file offsets
+ * through the PT_LOAD segments. The number of dynamic symbols is not recorded anywhere, it is
+ * derived from the DT_HASH or DT_GNU_HASH table.
+ */
+final class ElfDynamicSections {
+	/** DT_GNU_HASH: Address of the GNU-style hash table */
+	static final int DT_GNU_HASH = 0x6ffffef5;
+
+	private final ElfFile file;
+	private final ElfProgramHeaders programHeaders;
+	private final int word;
+	/** The value of the first entry of each tag */
+	private final Map<Long, Long> tags = new HashMap<Long, Long>();
+
+	/** A section header to create, links refer to other descriptions until the sections are ordered */
+	private static final class Description {
+		final String name;
+		final int type;
+		final long flags;
+		final long address;
+		final long offset;
+		final long size;
+		final long entrySize;
+		final long alignment;
+		Description link;
+
+		Description(String name, int type, long flags, long address, long offset, long size, long entrySize, long alignment) {
+			this.name = name;
+			this.type = type;
+			this.flags = flags;
+			this.address = address;
+			this.offset = offset;
+			this.size = size;
+			this.entrySize = entrySize;
+			this.alignment = alignment;
+		}
+	}
+
+	private ElfDynamicSections(ElfFile file, ElfSegment dynamic) {
+		this.file = file;
+		this.programHeaders = file.getProgramHeaders();
+		this.word = file.getHeader().getBitClass() == ElfHeader.BitClass.ELFCLASS64 ? 8 : 4;
+
+		ByteBuffer b = file.getParser().getByteBuffer(dynamic.getOffset(), (int)dynamic.getFileSize());
+		for(int p = 0; p + 2 * word <= b.limit(); p += 2 * word) {
+			long tag = readWord(b, p);
+			if(tag == ElfDynamicEntry.Type.NULL)
+				break;
+			if(!tags.containsKey(tag))
+				tags.put(tag, readWord(b, p + word));
+		}
+	}
+
+	/**
+	 * @param file a file without section headers, whose program headers have been read
+	 * @return Returns the rebuilt sections ordered by file offset with the null section first, or
+	 * 	an empty array if the file has no PT_DYNAMIC segment
+	 */
+	static ElfSection[] reconstruct(ElfFile file) {
+		ElfProgramHeaders segments = file.getProgramHeaders();
+		for(int i = 0; i < segments.size(); i++) {
+			ElfSegment s = segments.getSegmentByIndex(i);
+			if(s.getType().val == ElfSegment.Type.DYNAMIC && s.getFileSize() > 0)
+				return new ElfDynamicSections(file, s).build(s);
+		}
+		return new ElfSection[0];
+	}
+
+	private ElfSection[] build(ElfSegment dynamic) {
+		List<Description> descriptions = new ArrayList<Description>();
+		long alloc = ElfSection.Flag.ALLOC;
+
+		Description dynstr = table(".dynstr", ElfSection.Type.STRTAB, ElfDynamicEntry.Type.STRTAB,
+				tag(ElfDynamicEntry.Type.STRSZ, 0), 0, 1);
+		Description dynamicSection = new Description(".dynamic", ElfSection.Type.DYNAMIC, alloc | ElfSection.Flag.WRITE,
+				dynamic.getVirtualAddress(), dynamic.getOffset(), dynamic.getFileSize(), 2 * word, word);
+		dynamicSection.link = dynstr;
+		descriptions.add(dynamicSection);
+		add(descriptions, dynstr);
+
+		long symbolSize = tag(ElfDynamicEntry.Type.SYMENT, word == 8 ? 24 : 16);
+		long symbolCount = countSymbols();
+		Description dynsym = symbolCount < 0 ? null : table(".dynsym", ElfSection.Type.DYNSYM,
+				ElfDynamicEntry.Type.SYMTAB, symbolCount * symbolSize, symbolSize, word);
+		if(add(descriptions, dynsym))
+			dynsym.link = dynstr;
+
+		Description hash = table(".hash", ElfSection.Type.HASH, ElfDynamicEntry.Type.HASH, hashTableSize(), 4, word);
+		Description gnuHash = table(".gnu.hash", ElfSection.Type.GNU_HASH, DT_GNU_HASH, gnuHashTableSize(), 0, word);
+		Description rela = table(".rela.dyn", ElfSection.Type.RELA, ElfDynamicEntry.Type.RELA,
+				tag(ElfDynamicEntry.Type.RELASZ, 0), tag(ElfDynamicEntry.Type.RELAENT, 3 * word), word);
+		Description rel = table(".rel.dyn", ElfSection.Type.REL, ElfDynamicEntry.Type.REL,
+				tag(ElfDynamicEntry.Type.RELSZ, 0), tag(ElfDynamicEntry.Type.RELENT, 2 * word), word);
+		boolean pltRela = tag(ElfDynamicEntry.Type.PLTREL, ElfDynamicEntry.Type.RELA) == ElfDynamicEntry.Type.RELA;
+		Description plt = table(pltRela ? ".rela.plt" : ".rel.plt", pltRela ? ElfSection.Type.RELA : ElfSection.Type.REL,
+				ElfDynamicEntry.Type.JMPREL, tag(ElfDynamicEntry.Type.PLTRELSZ, 0), pltRela ? 3 * word : 2 * word, word);
+		for(Description d : new Description[] { hash, gnuHash, rela, rel, plt }) {
+			if(add(descriptions, d))
+				d.link = dynsym;
+		}
+
+		// Sections are looked up by offset with a binary search, the null section comes first
+		Collections.sort(descriptions, new Comparator<Description>() {
+			@Override
+			public int compare(Description a, Description b) {
+				return Long.compare(a.offset, b.offset);
+			}
+		});
+		ElfSection[] sections = new ElfSection[descriptions.size() + 1];
+		sections[0] = ElfSection.reconstructedSectionFactory(file, "", ElfSection.Type.NULL, 0, 0, 0, 0, 0, 0, 0, 0);
+		for(int i = 0; i < descriptions.size(); i++) {
+			Description d = descriptions.get(i);
+			int link = d.link == null ? 0 : descriptions.indexOf(d.link) + 1;
+			int info = d.type == ElfSection.Type.DYNSYM ? 1 : 0;
+			sections[i + 1] = ElfSection.reconstructedSectionFactory(file, d.name, d.type, d.flags, d.address, d.offset,
+					d.size, link, info, d.alignment, d.entrySize);
+		}
+		return sections;
+	}
+
+	/** Adds a description unless the table is absent or empty, and says if it was added */
+	private static boolean add(List<Description> descriptions, Description d) {
+		if(d == null || d.size <= 0)
+			return false;
+		descriptions.add(d);
+		return true;
+	}
+
+	/**
+	 * @return Returns the description of the table at the address of a tag, or null if the tag
+	 * 	is absent or its address is not loaded from the file
+	 */
+	private Description table(String name, int type, long addressTag, long size, long entrySize, long alignment) {
+		Long address = tags.get(addressTag);
+		if(address == null || size <= 0)
+			return null;
+		long offset;
+		try {
+			offset = programHeaders.getFileOffset(address);
+		} catch(ElfException e) {
+			return null;
+		}
+		if(offset + size > file.getParser().getLength())
+			return null;
+		return new Description(name, type, ElfSection.Flag.ALLOC, address, offset, size, entrySize, alignment);
+	}
+
+	private long tag(long tag, long defaultValue) {
+		Long value = tags.get(tag);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * The symbol count is nchain of DT_HASH, or else one more than the highest symbol reachable
+	 * through DT_GNU_HASH. Without hash tables the symbols are assumed to run up to the string
+	 * table, which is how linkers lay them out.
+	 *
+	 * @return Returns the number of dynamic symbols, or -1 if it is not known
+	 */
+	private long countSymbols() {
+		Long hash = tags.get((long)ElfDynamicEntry.Type.HASH);
+		if(hash != null) {
+			ByteBuffer b = read(hash, 8);
+			if(b != null)
+				return b.getInt(4) & 0xffffffffL;
+		}
+
+		Long gnuHash = tags.get((long)DT_GNU_HASH);
+		if(gnuHash != null) {
+			long count = countGnuHashSymbols(gnuHash);
+			if(count >= 0)
+				return count;
+		}
+
+		Long symtab = tags.get((long)ElfDynamicEntry.Type.SYMTAB);
+		Long strtab = tags.get((long)ElfDynamicEntry.Type.STRTAB);
+		long symbolSize = tag(ElfDynamicEntry.Type.SYMENT, word == 8 ? 24 : 16);
+		if(symtab != null && strtab != null && Long.compareUnsigned(strtab, symtab) > 0)
+			return (strtab - symtab) / symbolSize;
+		return -1;
+	}
+
+	/**
+	 * The buckets of DT_GNU_HASH hold the first symbol of each chain, and the last symbol of a
+	 * chain has the lowest bit of its hash value set. The highest symbol is at the end of the
+	 * chain of the highest bucket.
+	 */
+	private long countGnuHashSymbols(long address) {
+		ByteBuffer header = read(address, 16);
+		if(header == null)
+			return -1;
+		long bucketCount = header.getInt(0) & 0xffffffffL;
+		long symbolOffset = header.getInt(4) & 0xffffffffL;
+		long bloomSize = header.getInt(8) & 0xffffffffL;
+		long buckets = address + 16 + bloomSize * word;
+		ByteBuffer b = read(buckets, bucketCount * 4);
+		if(b == null)
+			return -1;
+
+		long last = 0;
+		for(int i = 0; i < bucketCount; i++)
+			last = Math.max(last, b.getInt(i * 4) & 0xffffffffL);
+		// Files exporting no symbols have empty buckets, which say nothing about the undefined symbols
+		if(last < symbolOffset)
+			return -1;
+
+		long chains = buckets + bucketCount * 4;
+		while(true) {
+			ByteBuffer chain = read(chains + (last - symbolOffset) * 4, 4);
+			if(chain == null)
+				return -1;
+			if((chain.getInt(0) & 1) != 0)
+				return last + 1;
+			last++;
+		}
+	}
+
+	private long hashTableSize() {
+		Long hash = tags.get((long)ElfDynamicEntry.Type.HASH);
+		ByteBuffer b = hash == null ? null : read(hash, 8);
+		if(b == null)
+			return 0;
+		return 8 + 4 * ((b.getInt(0) & 0xffffffffL) + (b.getInt(4) & 0xffffffffL));
+	}
+
+	private long gnuHashTableSize() {
+		Long gnuHash = tags.get((long)DT_GNU_HASH);
+		ByteBuffer header = gnuHash == null ? null : read(gnuHash, 16);
+		if(header == null)
+			return 0;
+		long bucketCount = header.getInt(0) & 0xffffffffL;
+		long symbolOffset = header.getInt(4) & 0xffffffffL;
+		long bloomSize = header.getInt(8) & 0xffffffffL;
+		long symbolCount = Math.max(countGnuHashSymbols(gnuHash), symbolOffset);
+		return 16 + bloomSize * word + bucketCount * 4 + (symbolCount - symbolOffset) * 4;
+	}
+
+	/** Returns the file contents at an address, or null if they are not in the file */
+	private ByteBuffer read(long address, long length) {
+		long offset;
+		try {
+			offset = programHeaders.getFileOffset(address);
+		} catch(ElfException e) {
+			return null;
+		}
+		if(length < 0 || length > Integer.MAX_VALUE || offset + length > file.getParser().getLength())
+			return null;
+		return file.getParser().getByteBuffer(offset, (int)length);
+	}
+
+	private long readWord(ByteBuffer b, int offset) {
+		return word == 8 ? b.getLong(offset) : b.getInt(offset) & 0xffffffffL;
+	}
+}
@@ -4,7 +4,21 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.fornwall.jelf.dwarf.Dwarf;
+import net.fornwall.jelf.section.ElfNoteSection;
+import net.fornwall.jelf.section.ElfSection;
+import net.fornwall.jelf.section.ElfSymbolTableSection;
+import net.fornwall.jelf.section.note.ElfNote;
+import net.fornwall.jelf.section.note.ElfNoteType;
+import net.fornwall.jelf.section.symbol.ElfSymbolIndex;
+import net.fornwall.jelf.segment.ElfNoteSegment;
 
 /**
  * An ELF (Executable and Linkable Format) file can be a relocatable, executable, shared or core file.
@@ -32,27 +46,96 @@ public final class ElfFile {
 	
 	/** Elf program headers */
 	private ElfProgramHeaders programHeaders;
+	
+	/** DWARF debugging information, created on first use */
+	private volatile Dwarf dwarf;
+	
+	/** Functions by address, created on first use */
+	private volatile ElfSymbolIndex symbolIndex;
+	
+	/** Contents of compressed sections */
+	private final ElfDecompressionCache decompressionCache = new ElfDecompressionCache();
+	
+	/** The hexadecimal NT_GNU_BUILD_ID, empty if the file has none, read on first use */
+	private volatile String buildId;
+	
+	/** The file embedded in .gnu_debugdata, read on first use */
+	private volatile ElfFile miniDebugInfo;
+	private volatile boolean miniDebugInfoRead;
+	/** Shares the embedded file with other files of the same build, null to keep it to this file */
+	private volatile ElfMiniDebugInfoCache miniDebugInfoCache;
 
 	public ElfFile(File file) throws IOException {
-		this(Files.readAllBytes(file.toPath()));
+		this(file, ElfMetrics.NOOP);
+	}
+
+	public ElfFile(File file, ElfMetrics metrics) throws IOException {
+		this(Files.readAllBytes(file.toPath()), metrics);
 	}
 
 	public ElfFile(byte[] buffer) {
-		this(new ByteArrayInputStream(buffer));
+		this(buffer, ElfMetrics.NOOP);
+	}
+
+	public ElfFile(byte[] buffer, ElfMetrics metrics) {
+		long start = System.nanoTime();
+		this.parser = new ElfParser(buffer, metrics);
+		this.header = parser.getHeader();
+		// Sections are rebuilt from the program headers when the file has no section headers
+		programHeaders = new ElfProgramHeaders(this);
+		sectionHeaders = new ElfSectionHeaders(this);
+		metrics.fileParsed(System.nanoTime() - start);
 	}
 	
     public ElfFile(MappedByteBuffer buffer, long startPosition) {
-        this.parser = new ElfParser(buffer, startPosition);
+    	this(buffer, startPosition, ElfMetrics.NOOP);
+    }
+
+	public ElfFile(MappedByteBuffer buffer, long startPosition, ElfMetrics metrics) {
+		long start = System.nanoTime();
+		this.parser = new ElfParser(buffer, startPosition, metrics);
 		this.header = parser.getHeader();
-		sectionHeaders = new ElfSectionHeaders(this);
+		// Sections are rebuilt from the program headers when the file has no section headers
 		programHeaders = new ElfProgramHeaders(this);
-    }
+		sectionHeaders = new ElfSectionHeaders(this);
+		metrics.fileParsed(System.nanoTime() - start);
+	}
+
+	/**
+	 * Memory maps a file read-only and parses it. Only the pages which are read are loaded, and
+	 * the mapping stays valid after the channel used to create it is closed.
+	 * 
+	 * @param file the file to map
+	 * @return Returns the parsed file
+	 * @throws IOException if the file can not be read
+	 * @throws ElfException if the file is not an ELF file, or too large to be mapped at once
+	 */
+	public static ElfFile map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			// A truncated mapping would only fail once something past its end is read
+			if (size > Integer.MAX_VALUE)
+				throw new ElfException(file + " is too large to be mapped: " + size + " bytes");
+			return new ElfFile(channel.map(MapMode.READ_ONLY, 0, size), 0);
+		}
+	}
 
 	public ElfFile(ByteArrayInputStream baos) {
-		this.parser = new ElfParser(baos);
+		this(baos, ElfMetrics.NOOP);
+	}
+
+	/**
+	 * @param baos the stream containing the complete file
+	 * @param metrics the {@link ElfMetrics} that the parsing of this file reports to
+	 */
+	public ElfFile(ByteArrayInputStream baos, ElfMetrics metrics) {
+		long start = System.nanoTime();
+		this.parser = new ElfParser(baos, metrics);
 		this.header = parser.getHeader();
-		sectionHeaders = new ElfSectionHeaders(this);
+		// Sections are rebuilt from the program headers when the file has no section headers
 		programHeaders = new ElfProgramHeaders(this);
+		sectionHeaders = new ElfSectionHeaders(this);
+		metrics.fileParsed(System.nanoTime() - start);
 	}
 	
 	/**
@@ -82,4 +165,175 @@ public final class ElfFile {
 	public ElfProgramHeaders getProgramHeaders() {
 		return programHeaders;
 	}
+	
+	/**
+	 * @return Returns the DWARF debugging information of this file. The sections are only read
+	 * 	when information is requested, so this is cheap for files without debugging information.
+	 */
+	public Dwarf getDwarf() {
+		Dwarf result = dwarf;
+		if (result == null) {
+			synchronized (this) {
+				result = dwarf;
+				if (result == null)
+					dwarf = result = new Dwarf(this);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return Returns the index of the function symbols of .symtab and .dynsym by address, built
+	 * 	on first use. Symbols of .symtab take precedence over those of the .symtab of the
+	 * 	{@link #getMiniDebugInfo() MiniDebugInfo}, which take precedence over those of .dynsym.
+	 */
+	public ElfSymbolIndex getSymbolIndex() {
+		ElfSymbolIndex result = symbolIndex;
+		if (result == null) {
+			ElfFile embedded;
+			try {
+				embedded = getMiniDebugInfo();
+			} catch (ElfException e) {
+				// A damaged .gnu_debugdata must not hide the symbols of the file itself
+				embedded = null;
+			}
+			synchronized (this) {
+				result = symbolIndex;
+				if (result == null) {
+					List<ElfSymbolTableSection> tables = new ArrayList<ElfSymbolTableSection>();
+					List<ElfSymbolTableSection> dynamic = new ArrayList<ElfSymbolTableSection>();
+					for (ElfSymbolTableSection s : sectionHeaders.getSectionsOfType(ElfSymbolTableSection.class)) {
+						if (s.getType().val == ElfSection.Type.SYMTAB)
+							tables.add(s);
+						else
+							dynamic.add(s);
+					}
+					if (embedded != null) {
+						for (ElfSymbolTableSection s : embedded.getSectionHeaders().getSectionsOfType(ElfSymbolTableSection.class)) {
+							if (s.getType().val == ElfSection.Type.SYMTAB)
+								tables.add(s);
+						}
+					}
+					tables.addAll(dynamic);
+					symbolIndex = result = new ElfSymbolIndex(tables, header.getMachine());
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return Returns the NT_GNU_BUILD_ID of this file as a lowercase hexadecimal string, or null
+	 * 	if the file has none. The notes are searched in the SHT_NOTE sections, or else in the
+	 * 	PT_NOTE segments.
+	 */
+	public String getBuildId() {
+		String result = buildId;
+		if (result == null) {
+			ElfNote note = null;
+			for (ElfNoteSection s : sectionHeaders.getSectionsOfType(ElfNoteSection.class)) {
+				for (int i = 0; note == null && i < s.getNoteCount(); i++)
+					note = buildIdNote(s.getNote(i));
+			}
+			for (int i = 0; note == null && i < programHeaders.size(); i++) {
+				if (programHeaders.getSegmentByIndex(i) instanceof ElfNoteSegment) {
+					ElfNoteSegment segment = (ElfNoteSegment)programHeaders.getSegmentByIndex(i);
+					for (int j = 0; note == null && j < segment.getNoteCount(); j++)
+						note = buildIdNote(segment.getNote(j));
+				}
+			}
+			StringBuilder hex = new StringBuilder();
+			for (int i = 0; note != null && i < note.getDescSize(); i++)
+				hex.append(String.format("%02x", note.getDescByte(i) & 0xff));
+			buildId = result = hex.toString();
+		}
+		return result.isEmpty() ? null : result;
+	}
+	
+	private static ElfNote buildIdNote(ElfNote note) {
+		return note.getNoteType() == ElfNoteType.GNU_BUILD_ID && "GNU".equals(note.getNoteName()) ? note : null;
+	}
+	
+	/**
+	 * @return Returns the name and CRC of the separate debug file in the .gnu_debuglink section,
+	 * 	or null if there is none. See {@link ElfDebugLink}.
+	 */
+	public ElfDebugLink getDebugLink() {
+		return ElfDebugLink.read(this);
+	}
+
+	/**
+	 * @return Returns the file embedded in the .gnu_debugdata section, or null if there is none.
+	 * 	See {@link ElfMiniDebugInfoCache}.
+	 * @throws ElfException if the section can not be decompressed
+	 */
+	public ElfFile getMiniDebugInfo() {
+		if (!miniDebugInfoRead) {
+			synchronized (this) {
+				if (!miniDebugInfoRead) {
+					ElfMiniDebugInfoCache cache = miniDebugInfoCache;
+					miniDebugInfo = cache == null ? ElfMiniDebugInfoCache.open(this) : cache.get(this);
+					miniDebugInfoRead = true;
+				}
+			}
+		}
+		return miniDebugInfo;
+	}
+	
+	/**
+	 * Shares the file embedded in the .gnu_debugdata section with the other files of the same
+	 * build using the cache. Only takes effect if the embedded file has not been read yet.
+	 * 
+	 * @param cache the cache to share the embedded file through, or null to decompress it for
+	 * 	this file alone, which is the default
+	 */
+	public void setMiniDebugInfoCache(ElfMiniDebugInfoCache cache) {
+		miniDebugInfoCache = cache;
+	}
+	
+	/**
+	 * @return Returns the cache of the decompressed contents of the SHF_COMPRESSED sections,
+	 * 	whose limit may be changed
+	 */
+	public ElfDecompressionCache getDecompressionCache() {
+		return decompressionCache;
+	}
+	
+	/**
+	 * Estimates the heap memory retained by this file, including the file contents held by the
+	 * parser and all decoded sections and segments.
+	 * 
+	 * @return Returns the estimated retained memory broken down by component
+	 */
+	public ElfMemoryEstimate getMemoryEstimate() {
+		ElfMemoryEstimate estimate = new ElfMemoryEstimate();
+		
+		// ElfFile, ElfParser and ElfHeader objects
+		estimate.add(ElfMemoryEstimate.HEADERS, ElfMemoryEstimate.objectSize(4, 0) 
+				+ ElfMemoryEstimate.objectSize(4, 16) + ElfMemoryEstimate.objectSize(6, 40));
+		
+		parser.estimateRetainedBytes(estimate);
+		sectionHeaders.estimateRetainedBytes(estimate);
+		programHeaders.estimateRetainedBytes(estimate);
+		if (dwarf != null)
+			dwarf.estimateRetainedBytes(estimate);
+		if (symbolIndex != null)
+			estimate.add(ElfMemoryEstimate.SYMBOLS, symbolIndex.estimateRetainedBytes());
+		decompressionCache.estimateRetainedBytes(estimate);
+		// A shared embedded file is counted by the estimate of its cache instead
+		ElfFile embedded = miniDebugInfo;
+		ElfMiniDebugInfoCache cache = miniDebugInfoCache;
+		if (embedded != null && (cache == null || !cache.holds(getBuildId(), embedded)))
+			estimate.add(ElfMemoryEstimate.MINI_DEBUG_INFO, embedded.estimateRetainedBytes());
+		return estimate;
+	}
+	
+	/**
+	 * See {@link #getMemoryEstimate()} for a breakdown by component
+	 * 
+	 * @return Returns the estimated number of heap bytes retained by this file
+	 */
+	public long estimateRetainedBytes() {
+		return getMemoryEstimate().getTotal();
+	}
 }
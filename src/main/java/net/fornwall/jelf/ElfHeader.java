@@ -1,5 +1,6 @@
 package net.fornwall.jelf;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -217,6 +218,16 @@ public class ElfHeader {
 	 */
 	private short e_shstrndx; // Elf32_Half
 	
+	/** SHN_XINDEX: e_shstrndx does not fit and is in sh_link of the section header at index 0 */
+	public static final int SHN_XINDEX = 0xffff;
+	/** PN_XNUM: e_phnum does not fit and is in sh_info of the section header at index 0 */
+	public static final int PN_XNUM = 0xffff;
+	
+	// Resolved values of e_shnum, e_shstrndx and e_phnum, see "Extended Section Numbering" of the gABI
+	private int sectionCount;
+	private int sectionStringTableIndex;
+	private int programHeaderCount;
+	
 	private final ElfParser parser;
 	
 	/**
@@ -265,15 +276,35 @@ public class ElfHeader {
         e_phnum = parser.readShort();
         e_shentsize = parser.readShort();
         e_shnum = parser.readShort();
-        if (e_shnum == 0) {
-            throw new ElfException("e_shnum is SHN_UNDEF(0), which is not supported yet"
-                    + " (the actual number of section header table entries is contained in the sh_size field of the section header at index 0)");
-        }
         e_shstrndx = parser.readShort();
-        if (e_shstrndx == /* SHN_XINDEX= */0xffff) {
-            throw new ElfException("e_shstrndx is SHN_XINDEX(0xffff), which is not supported yet"
-                    + " (the actual index of the section name string table section is contained in the sh_link field of the section header at index 0)");
+
+        sectionCount = e_shnum & 0xffff;
+        sectionStringTableIndex = e_shstrndx & 0xffff;
+        programHeaderCount = e_phnum & 0xffff;
+        // Without a section header table, as in core files, e_shnum is simply 0. Otherwise values
+        // which do not fit the header are kept in the fields of the section header at index 0.
+        if (e_shoff != 0 && (sectionCount == 0 || sectionStringTableIndex == SHN_XINDEX || programHeaderCount == PN_XNUM)) {
+            boolean elf32 = ei_class == BitClass.ELFCLASS32;
+            long sectionZero = e_shoff + (elf32 ? 20 : 32);
+            if (sectionZero + (elf32 ? 12 : 16) > parser.getLength())
+                throw new ElfException("Section header at index 0 is outside the file");
+            ByteBuffer b = parser.getByteBuffer(sectionZero, elf32 ? 12 : 16);
+            long size = elf32 ? b.getInt(0) & 0xffffffffL : b.getLong(0);
+            int link = b.getInt(elf32 ? 4 : 8);
+            int info = b.getInt(elf32 ? 8 : 12);
+            if (sectionCount == 0) {
+                if (size < 0 || size > Integer.MAX_VALUE)
+                    throw new ElfException("Invalid number of section headers: " + Long.toUnsignedString(size));
+                sectionCount = (int)size;
+            }
+            if (sectionStringTableIndex == SHN_XINDEX)
+                sectionStringTableIndex = link;
+            if (programHeaderCount == PN_XNUM)
+                programHeaderCount = info;
         }
+        if (sectionCount != 0 && Integer.compareUnsigned(sectionStringTableIndex, sectionCount) >= 0)
+            throw new ElfException("Section name string table index " + Integer.toUnsignedString(sectionStringTableIndex)
+                    + " is outside the " + sectionCount + " section headers");
 	}
 
 	/**
@@ -363,6 +394,16 @@ public class ElfHeader {
 		return e_phnum;
 	}
 
+	/**
+	 * Unlike {@link #getProgramHeaderEntryCount()} this is the actual number of entries, also
+	 * when there are more than 0xfffe and e_phnum is PN_XNUM.
+	 *
+	 * @return Returns the number of entries in the program header
+	 */
+	public int getProgramHeaderCount() {
+		return programHeaderCount;
+	}
+
 	/**
 	 * @return Returns the file size in bytes of each entry in the section header
 	 */
@@ -383,6 +424,26 @@ public class ElfHeader {
 	public short getSectionHeaderStringTableIndex() {
 		return e_shstrndx;
 	}
+
+	/**
+	 * Unlike {@link #getSectionHeaderEntryCount()} this is the actual number of entries, also
+	 * when there are 0xff00 or more and e_shnum is 0.
+	 *
+	 * @return Returns the number of entries in the section header
+	 */
+	public int getSectionCount() {
+		return sectionCount;
+	}
+
+	/**
+	 * Unlike {@link #getSectionHeaderStringTableIndex()} this is the actual index, also when it
+	 * is 0xff00 or more and e_shstrndx is SHN_XINDEX.
+	 *
+	 * @return Returns the index of the section header table that contains the section names
+	 */
+	public int getSectionStringTableIndex() {
+		return sectionStringTableIndex;
+	}
 	
 	/**
 	 * See {@link #toString()} to get the formatted string directly
@@ -439,7 +500,7 @@ public class ElfHeader {
 		t.newRow();
 		
 		t.add("Number of program headers:");
-		t.add(Short.toString(getProgramHeaderEntryCount()));
+		t.add(extended(e_phnum, programHeaderCount));
 		t.newRow();
 		
 		t.add("Size of section headers:");
@@ -447,15 +508,21 @@ public class ElfHeader {
 		t.newRow();
 		
 		t.add("Number of section headers:");
-		t.add(Short.toString(getSectionHeaderEntryCount()));
+		t.add(extended(e_shnum, sectionCount));
 		t.newRow();
 		
 		t.add("Section header string table index:");
-		t.add(Short.toString(getSectionHeaderStringTableIndex()));
+		t.add(extended(e_shstrndx, sectionStringTableIndex));
 		
 		return t;
 	}
 	
+	/** Formats a header field, followed by the actual value like readelf does if it is kept in section 0 */
+	private static String extended(short field, int value) {
+		int raw = field & 0xffff;
+		return raw == value ? Integer.toString(raw) : raw + " (" + Integer.toUnsignedString(value) + ")";
+	}
+	
 	@Override
 	public String toString() {
 		return this.getFormattedTable().toString();
@@ -0,0 +1,151 @@
+package net.fornwall.jelf;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe least recently used cache bounded by the total weight of its values, which is
+ * their number unless a weigher is provided. Values are loaded outside the lock of the cache, so
+ * a slow load, like decompressing a section or probing the file system, does not block lookups
+ * of other keys. If two threads load the same key at once, the value put first is kept and
+ * returned to both. Values heavier than the limit are returned without being cached, and null
+ * values are never cached.
+ *
+ * <pre>
+ * ElfLruCache&lt;String, ElfFile&gt; files = new ElfLruCache&lt;String, ElfFile&gt;(16);
+ * ElfFile file = files.get(path, p -&gt; open(p));
+ * </pre>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class ElfLruCache<K, V> {
+	// Least recently used first
+	private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+	private final ToLongFunction<? super V> weigher;
+	private long maxWeight;
+	private long weight;
+
+	/**
+	 * @param maxSize the maximum number of values to keep
+	 */
+	public ElfLruCache(long maxSize) {
+		this(maxSize, v -> 1);
+	}
+
+	/**
+	 * @param maxWeight the maximum total weight of the values to keep
+	 * @param weigher computes the weight of a value, which must not change while it is cached
+	 */
+	public ElfLruCache(long maxWeight, ToLongFunction<? super V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * @param key the key of the value
+	 * @param loader loads the value of the key if it is not cached, may return null
+	 * @return Returns the cached or loaded value
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		synchronized(this) {
+			V value = entries.get(key);
+			if(value != null)
+				return value;
+		}
+
+		V value = loader.apply(key);
+		if(value == null)
+			return null;
+		synchronized(this) {
+			V previous = entries.get(key);
+			if(previous != null)
+				return previous;
+			long w = weigher.applyAsLong(value);
+			if(w <= maxWeight) {
+				entries.put(key, value);
+				weight += w;
+				evict();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @param key the key of the value
+	 * @return Returns the cached value, or null if the key is not cached
+	 */
+	public synchronized V getIfPresent(K key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * @param key the key of the value
+	 * @return Returns true if the value of the key is cached
+	 */
+	public synchronized boolean containsKey(K key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * @return Returns the cached values, least recently used first
+	 */
+	public synchronized List<V> values() {
+		return new ArrayList<V>(entries.values());
+	}
+
+	/**
+	 * @return Returns the number of cached values
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return Returns the total weight of the cached values
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @param maxWeight the maximum total weight of the values to keep
+	 */
+	public synchronized void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+		evict();
+	}
+
+	/**
+	 * @return Returns the maximum total weight of the values to keep
+	 */
+	public synchronized long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Drops all cached values
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+		while(weight > maxWeight && it.hasNext()) {
+			weight -= weigher.applyAsLong(it.next().getValue());
+			it.remove();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ElfLruCache[size=" + entries.size() + ", weight=" + weight + ", maxWeight=" + maxWeight + "]";
+	}
+}
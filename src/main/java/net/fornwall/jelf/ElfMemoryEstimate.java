@@ -0,0 +1,165 @@
+package net.fornwall.jelf;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.fornwall.jelf.Table.Align;
+
+/**
+ * Estimate of the heap memory retained by a parsed {@link ElfFile}, broken down by component.
+ *
+ * <p>
+ * The estimate assumes a 64-bit JVM with compressed object pointers: 12 byte object headers,
+ * 16 byte array headers, 4 byte references and 8 byte object alignment. Strings are assumed to
+ * use the compact one byte per character representation.
+ */
+public class ElfMemoryEstimate {
+	/** Size in bytes of an object header */
+	public static final int OBJECT_HEADER = 12;
+	/** Size in bytes of an array header, including the length field */
+	public static final int ARRAY_HEADER = 16;
+	/** Size in bytes of an object reference */
+	public static final int REFERENCE = 4;
+	/** Alignment in bytes of every object on the heap */
+	public static final int ALIGNMENT = 8;
+
+	/** Component name used for the contents of the parsed file itself */
+	public static final String FILE_DATA = "file data";
+	/** Component name used for the header, section header and program header objects */
+	public static final String HEADERS = "headers";
+	/** Component name used for string table data and decoded strings */
+	public static final String STRINGS = "strings";
+	/** Component name used for symbol table entries */
+	public static final String SYMBOLS = "symbols";
+	/** Component name used for relocation entries */
+	public static final String RELOCATIONS = "relocations";
+	/** Component name used for dynamic section entries */
+	public static final String DYNAMIC = "dynamic entries";
+	/** Component name used for notes */
+	public static final String NOTES = "notes";
+	/** Component name used for hash tables */
+	public static final String HASH_TABLES = "hash tables";
+	/** Component name used for DWARF debugging information */
+	public static final String DEBUG_INFO = "debug info";
+	/** Component name used for the cached contents of compressed sections */
+	public static final String DECOMPRESSED = "decompressed sections";
+	/** Component name used for the file embedded in .gnu_debugdata, which may be shared */
+	public static final String MINI_DEBUG_INFO = "mini debug info";
+
+	private final Map<String, Long> components = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Adds bytes to the provided component
+	 *
+	 * @param component the name of the component
+	 * @param bytes the number of bytes retained by the component
+	 */
+	public void add(String component, long bytes) {
+		Long previous = components.get(component);
+		components.put(component, previous == null ? bytes : previous + bytes);
+	}
+
+	/**
+	 * @param component the name of the component
+	 * @return Returns the number of bytes retained by the provided component
+	 */
+	public long get(String component) {
+		Long bytes = components.get(component);
+		return bytes == null ? 0 : bytes;
+	}
+
+	/**
+	 * @return Returns a map from component name to the number of bytes retained by the component
+	 */
+	public Map<String, Long> getComponents() {
+		return Collections.unmodifiableMap(components);
+	}
+
+	/**
+	 * @return Returns the total number of bytes retained by all components
+	 */
+	public long getTotal() {
+		long total = 0;
+		for(long bytes : components.values())
+			total += bytes;
+		return total;
+	}
+
+	/**
+	 * @param size an unaligned size in bytes
+	 * @return Returns the size rounded up to the object alignment
+	 */
+	public static long align(long size) {
+		return (size + ALIGNMENT - 1) & ~(long)(ALIGNMENT - 1);
+	}
+
+	/**
+	 * @param references the number of reference fields of the object
+	 * @param primitiveBytes the total size in bytes of the primitive fields of the object
+	 * @return Returns the shallow size of an object
+	 */
+	public static long objectSize(int references, int primitiveBytes) {
+		return align(OBJECT_HEADER + references * REFERENCE + primitiveBytes);
+	}
+
+	/**
+	 * @param length the number of elements in the array
+	 * @param elementSize the size in bytes of each element, {@link #REFERENCE} for object arrays
+	 * @return Returns the shallow size of an array
+	 */
+	public static long arraySize(long length, int elementSize) {
+		return align(ARRAY_HEADER + length * elementSize);
+	}
+
+	/**
+	 * @param s the string, may be null
+	 * @return Returns the size of the string including its backing array
+	 */
+	public static long stringSize(String s) {
+		if(s == null)
+			return 0;
+		return objectSize(1, 8) + arraySize(s.length(), 1);
+	}
+
+	/**
+	 * @param size the number of elements in the list
+	 * @return Returns the size of an {@link java.util.ArrayList} excluding its elements
+	 */
+	public static long listSize(int size) {
+		return objectSize(1, 8) + arraySize(size, REFERENCE);
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the formatted contents of this object.
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table("Estimated retained memory:");
+
+		// Column names
+		t.add("Component");
+		t.setColAlign(Align.LEFT);
+
+		t.add("Bytes");
+		t.setColAlign(Align.RIGHT);
+
+		for(Map.Entry<String, Long> e : components.entrySet()) {
+			t.newRow();
+			t.add(e.getKey());
+			t.add(Long.toString(e.getValue()));
+		}
+
+		t.newRow();
+		t.add("total");
+		t.add(Long.toString(getTotal()));
+
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
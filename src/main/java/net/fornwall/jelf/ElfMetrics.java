@@ -0,0 +1,67 @@
+package net.fornwall.jelf;
+
+/**
+ * Listener notified by {@link ElfParser} and the section factories about the work done while
+ * parsing an {@link ElfFile}. All methods have empty default implementations so that an
+ * implementation only needs to override the events it is interested in.
+ *
+ * <p>
+ * Implementations may be shared between several files and threads, and must therefore be
+ * thread safe. See {@link ElfCountingMetrics} for a lock-free implementation which can be
+ * exported to a monitoring system, and {@link #NOOP} for the default which discards all events.
+ */
+public interface ElfMetrics {
+
+	/** Metrics implementation that ignores all events. This is used when no metrics are provided. */
+	ElfMetrics NOOP = new ElfMetrics() {};
+
+	/**
+	 * Called every time the parser is repositioned
+	 *
+	 * @param offset the new offset in the file
+	 */
+	default void seek(long offset) {}
+
+	/**
+	 * Called every time bytes are read from the underlying file or buffer
+	 *
+	 * @param count the number of bytes read
+	 */
+	default void bytesRead(long count) {}
+
+	/**
+	 * Called when the entries of a section have been decoded
+	 *
+	 * @param sectionType the {@link net.fornwall.jelf.section.ElfSection.Type} value of the section
+	 * @param count the number of entries decoded
+	 */
+	default void entriesDecoded(int sectionType, long count) {}
+
+	/**
+	 * Called when a section has been fully decoded by the section factory
+	 *
+	 * @param sectionType the {@link net.fornwall.jelf.section.ElfSection.Type} value of the section
+	 * @param nanos the time spent decoding the section in nanoseconds
+	 */
+	default void sectionDecoded(int sectionType, long nanos) {}
+
+	/**
+	 * Called every time a string is decoded from a string table
+	 *
+	 * @param length the length in bytes of the decoded string
+	 */
+	default void stringDecoded(int length) {}
+
+	/** Called when a string table lookup was served from the string cache */
+	default void stringCacheHit() {}
+
+	/** Called when a string table lookup had to decode the string */
+	default void stringCacheMiss() {}
+
+	/**
+	 * Called when the header, section headers and program headers of a file have been parsed
+	 *
+	 * @param nanos the time spent parsing the file in nanoseconds
+	 */
+	default void fileParsed(long nanos) {}
+}
@@ -0,0 +1,129 @@
+package net.fornwall.jelf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import net.fornwall.jelf.compress.XzInputStream;
+import net.fornwall.jelf.section.ElfSection;
+
+/**
+ * The MiniDebugInfo of stripped files: an xz compressed ELF file in the .gnu_debugdata section,
+ * which Fedora and derived distributions add to their binaries. Its .symtab holds the function
+ * symbols missing from .dynsym, so that addresses in stripped binaries can still be symbolized,
+ * see {@link ElfFile#getMiniDebugInfo()} and {@link ElfFile#getSymbolIndex()}.
+ *
+ * <p>
+ * The same library is often opened once for every process or core file it is mapped in. Files
+ * given the same cache with {@link ElfFile#setMiniDebugInfoCache(ElfMiniDebugInfoCache)} share
+ * their decompressed files by build ID. The cache holds at most a configurable number of
+ * decompressed bytes and evicts the least recently used files first. Files without a build ID,
+ * or without a cache, decompress their own file.
+ */
+public class ElfMiniDebugInfoCache {
+	/** The name of the section holding the compressed file */
+	public static final String SECTION_NAME = ".gnu_debugdata";
+	/** The default limit of the cache, in decompressed bytes */
+	public static final long DEFAULT_MAX_BYTES = 32L << 20;
+
+	private final ElfLruCache<String, ElfFile> files = new ElfLruCache<String, ElfFile>(DEFAULT_MAX_BYTES,
+			f -> f.getParser().getLength());
+
+	/**
+	 * @param file a file, usually stripped
+	 * @return Returns the file embedded in the .gnu_debugdata section of the file, shared with
+	 * 	other files of the same build, or null if there is none
+	 */
+	public ElfFile get(final ElfFile file) {
+		String buildId = file.getBuildId();
+		if(buildId == null || getSection(file) == null)
+			return open(file);
+		return files.get(buildId, id -> open(file));
+	}
+
+	/**
+	 * @param buildId the build ID of a file
+	 * @param embedded a file embedded in the .gnu_debugdata section of that file
+	 * @return Returns true if this cache holds the embedded file
+	 */
+	boolean holds(String buildId, ElfFile embedded) {
+		return buildId != null && files.getIfPresent(buildId) == embedded;
+	}
+
+	/**
+	 * @return Returns the file embedded in the .gnu_debugdata section of a file, decompressed for
+	 * 	the caller alone, or null if there is none
+	 */
+	static ElfFile open(ElfFile file) {
+		ElfSection section = getSection(file);
+		if(section == null)
+			return null;
+		byte[] image;
+		try(InputStream in = file.getParser().getInputStream(section.getFileOffset(), section.getFileSize())) {
+			image = XzInputStream.decompress(in);
+		} catch(IOException e) {
+			throw new ElfException("Could not decompress " + SECTION_NAME + ": " + e.getMessage());
+		}
+		return new ElfFile(image, file.getParser().getMetrics());
+	}
+
+	private static ElfSection getSection(ElfFile file) {
+		Integer index = file.getSectionHeaders().getSectionIndexByName(SECTION_NAME);
+		ElfSection section = index == null ? null : file.getSectionHeaders().getSectionByIndex(index);
+		if(section == null || section.getType().val == ElfSection.Type.NOBITS || section.getFileSize() == 0)
+			return null;
+		return section;
+	}
+
+	/**
+	 * @param maxBytes the number of decompressed bytes to keep at most
+	 */
+	public void setMaxBytes(long maxBytes) {
+		files.setMaxWeight(maxBytes);
+	}
+
+	/**
+	 * @return Returns the number of decompressed bytes kept at most
+	 */
+	public long getMaxBytes() {
+		return files.getMaxWeight();
+	}
+
+	/**
+	 * @return Returns the number of decompressed bytes currently cached
+	 */
+	public long getCachedBytes() {
+		return files.getWeight();
+	}
+
+	/**
+	 * @param buildId a build ID as returned by {@link ElfFile#getBuildId()}
+	 * @return Returns true if the MiniDebugInfo of the build is cached
+	 */
+	public boolean isCached(String buildId) {
+		return files.containsKey(buildId);
+	}
+
+	/**
+	 * Drops all cached files, files which have already read their MiniDebugInfo keep it
+	 */
+	public void clear() {
+		files.clear();
+	}
+
+	/**
+	 * Adds the heap memory retained by the cached files to the provided estimate. The files are
+	 * not counted by the estimates of the files sharing them.
+	 *
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		List<ElfFile> cached = files.values();
+		if(cached.isEmpty())
+			return;
+		long size = 0;
+		for(ElfFile f : cached)
+			size += f.estimateRetainedBytes();
+		estimate.add(ElfMemoryEstimate.MINI_DEBUG_INFO, size);
+	}
+}
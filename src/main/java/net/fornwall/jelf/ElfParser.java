@@ -2,20 +2,51 @@ package net.fornwall.jelf;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 
 /** Class used for parsing ELF files. */
 public class ElfParser {
 
+	/** Number of bytes read at a time by the streams of {@link #getInputStream(long, long)} */
+	private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
 	private final ElfHeader header;
 	private final ByteArrayInputStream fsFile;
+	/** The contents of fsFile when known, allowing buffers to be returned without copying */
+	private final byte[] fsData;
 
     private final MappedByteBuffer mappedByteBuffer;
     private final long mbbStartPosition;
 
+	private final ElfMetrics metrics;
+
+	/** Number of bytes available to the parser */
+	private final long length;
 
 	public ElfParser(ByteArrayInputStream fsFile) {
+		this(fsFile, ElfMetrics.NOOP);
+	}
+
+	public ElfParser(ByteArrayInputStream fsFile, ElfMetrics metrics) {
+		this(fsFile, null, metrics);
+	}
+
+	/**
+	 * @param data the complete file
+	 * @param metrics the {@link ElfMetrics} to report to
+	 */
+	public ElfParser(byte[] data, ElfMetrics metrics) {
+		this(new ByteArrayInputStream(data), data, metrics);
+	}
+
+	private ElfParser(ByteArrayInputStream fsFile, byte[] fsData, ElfMetrics metrics) {
 		this.fsFile = fsFile;
+		this.fsData = fsData;
+		this.metrics = metrics;
+		this.length = fsFile.available();
         mappedByteBuffer = null;
         mbbStartPosition = -1;
         header = new ElfHeader(this);
@@ -23,15 +54,23 @@ public class ElfParser {
     }
 
     public ElfParser(MappedByteBuffer byteBuffer, long mbbStartPos) {
+		this(byteBuffer, mbbStartPos, ElfMetrics.NOOP);
+	}
+
+	public ElfParser(MappedByteBuffer byteBuffer, long mbbStartPos, ElfMetrics metrics) {
+		this.metrics = metrics;
+		this.length = byteBuffer.capacity() - mbbStartPos;
         mappedByteBuffer = byteBuffer;
         mbbStartPosition = mbbStartPos;
         mappedByteBuffer.position((int)mbbStartPosition);
         fsFile = null;
+        fsData = null;
         header = new ElfHeader(this);
         header.parse();
 	}
 
 	public void seek(long offset) {
+		metrics.seek(offset);
         if (fsFile != null) {
     		fsFile.reset();
 	    	if (fsFile.skip(offset) != offset) throw new ElfException("seeking outside file");
@@ -57,6 +96,12 @@ public class ElfParser {
 	}
 
 	public short readUnsignedByte() {
+		metrics.bytesRead(1);
+		return readByte();
+	}
+
+	/** Reads a single unsigned byte without reporting it to the {@link ElfMetrics}. */
+	private short readByte() {
         int val = -1;
         if (fsFile != null) {
             val = fsFile.read();
@@ -70,18 +115,20 @@ public class ElfParser {
 	}
 
 	public short readShort() throws ElfException {
-		int ch1 = readUnsignedByte();
-		int ch2 = readUnsignedByte();
+		metrics.bytesRead(2);
+		int ch1 = readByte();
+		int ch2 = readByte();
 		short val = (short) ((ch1 << 8) + (ch2 << 0));
 		if (header.getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB) val = byteSwap(val);
 		return val;
 	}
 
 	public int readInt() throws ElfException {
-		int ch1 = readUnsignedByte();
-		int ch2 = readUnsignedByte();
-		int ch3 = readUnsignedByte();
-		int ch4 = readUnsignedByte();
+		metrics.bytesRead(4);
+		int ch1 = readByte();
+		int ch2 = readByte();
+		int ch3 = readByte();
+		int ch4 = readByte();
 		int val = ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
 
 		if (header.getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB) val = byteSwap(val);
@@ -89,15 +136,16 @@ public class ElfParser {
 	}
 
 	public long readLong() {
-		int ch1 = readUnsignedByte();
-		int ch2 = readUnsignedByte();
-		int ch3 = readUnsignedByte();
-		int ch4 = readUnsignedByte();
+		metrics.bytesRead(8);
+		int ch1 = readByte();
+		int ch2 = readByte();
+		int ch3 = readByte();
+		int ch4 = readByte();
 		int val1 = ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
-		int ch5 = readUnsignedByte();
-		int ch6 = readUnsignedByte();
-		int ch7 = readUnsignedByte();
-		int ch8 = readUnsignedByte();
+		int ch5 = readByte();
+		int ch6 = readByte();
+		int ch7 = readByte();
+		int ch8 = readByte();
 		int val2 = ((ch5 << 24) + (ch6 << 16) + (ch7 << 8) + (ch8 << 0));
 
 		long val = ((long) (val1) << 32) + (val2 & 0xFFFFFFFFL);
@@ -124,18 +172,157 @@ public class ElfParser {
 	public int read(byte[] data) {
         if (fsFile != null) {
             try {
-				return fsFile.read(data);
+				int count = fsFile.read(data);
+				metrics.bytesRead(Math.max(count, 0));
+				return count;
 			} catch (IOException e) {
 				throw new ElfException("Could not read file: " + e.getMessage());
 			}
         } else if (mappedByteBuffer != null) {
             mappedByteBuffer.get(data);
+            metrics.bytesRead(data.length);
             return data.length;
         }
         throw new ElfException("No way to read from file or buffer");
 	}
 
+	/**
+	 * Reads the requested number of bytes at the provided offset. The seek and read are
+	 * performed atomically so this is safe to use while other threads use the parser.
+	 * 
+	 * @param offset the offset in the file to read from
+	 * @param length the number of bytes to read
+	 * @return Returns the bytes read
+	 */
+	public synchronized byte[] readBytes(long offset, int length) {
+		byte[] data = new byte[length];
+		seek(offset);
+		int bytesRead = read(data);
+		if (bytesRead != length)
+			throw new ElfException("Error reading " + length + " bytes at offset 0x" + Long.toHexString(offset) + " (read " + bytesRead + " bytes)");
+		return data;
+	}
+
+	/**
+	 * Returns the requested range of the file as a read-only buffer in the byte order of the
+	 * file. Memory mapped files and files parsed from a byte array are not copied, see
+	 * {@link #isZeroCopy()}.
+	 * 
+	 * @param offset the offset in the file of the first byte
+	 * @param length the number of bytes in the buffer
+	 * @return Returns a buffer with position 0 and limit length
+	 */
+	public synchronized ByteBuffer getByteBuffer(long offset, int length) {
+		ByteBuffer buffer;
+		if (mappedByteBuffer != null) {
+			if (offset < 0 || offset + length > this.length)
+				throw new ElfException("Trying to read outside file");
+			ByteBuffer duplicate = mappedByteBuffer.duplicate();
+			duplicate.position((int)(mbbStartPosition + offset));
+			duplicate.limit((int)(mbbStartPosition + offset) + length);
+			buffer = duplicate.slice();
+			metrics.seek(offset);
+			metrics.bytesRead(length);
+		} else if (fsData != null) {
+			if (offset < 0 || offset + length > this.length)
+				throw new ElfException("Trying to read outside file");
+			buffer = ByteBuffer.wrap(fsData, (int)offset, length).slice();
+			metrics.seek(offset);
+			metrics.bytesRead(length);
+		} else {
+			buffer = ByteBuffer.wrap(readBytes(offset, length));
+		}
+		
+		ByteOrder order = header.getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		return buffer.asReadOnlyBuffer().order(order);
+	}
+
+	/**
+	 * Returns a stream over a range of the file which reads it in chunks, so that large ranges
+	 * are never held in memory at once. The chunks of memory mapped files are not copied.
+	 * 
+	 * @param offset the offset in the file of the first byte
+	 * @param length the number of bytes to read
+	 * @return Returns a stream of the bytes of the range
+	 */
+	public InputStream getInputStream(final long offset, final long length) {
+		if (offset < 0 || length < 0 || offset + length > this.length)
+			throw new ElfException("Trying to read outside file");
+		return new InputStream() {
+			private long position = offset;
+			private ByteBuffer chunk = ByteBuffer.allocate(0);
+
+			@Override
+			public int read() {
+				if (!fill())
+					return -1;
+				return chunk.get() & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (len == 0)
+					return 0;
+				if (!fill())
+					return -1;
+				int n = Math.min(len, chunk.remaining());
+				chunk.get(b, off, n);
+				return n;
+			}
+
+			@Override
+			public int available() {
+				return chunk.remaining();
+			}
+
+			private boolean fill() {
+				if (chunk.hasRemaining())
+					return true;
+				int n = (int)Math.min(STREAM_CHUNK_SIZE, offset + length - position);
+				if (n == 0)
+					return false;
+				chunk = getByteBuffer(position, n);
+				position += n;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return Returns true if {@link #getByteBuffer(long, int)} returns views of the file
+	 * 	contents instead of copies
+	 */
+	public boolean isZeroCopy() {
+		return mappedByteBuffer != null || fsData != null;
+	}
+
 	public ElfHeader getHeader() {
 		return header;
 	}
+
+	/**
+	 * @return Returns the number of bytes of the file available to this parser
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Adds the heap memory retained by the file contents to the provided estimate. Memory mapped
+	 * files are not part of the heap and are therefore not counted.
+	 *
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		if (fsFile != null)
+			estimate.add(ElfMemoryEstimate.FILE_DATA, ElfMemoryEstimate.objectSize(1, 12) + ElfMemoryEstimate.arraySize(length, 1));
+	}
+
+	/**
+	 * @return Returns the {@link ElfMetrics} that this parser and the sections parsed
+	 * 	through it report to
+	 */
+	public ElfMetrics getMetrics() {
+		return metrics;
+	}
 }
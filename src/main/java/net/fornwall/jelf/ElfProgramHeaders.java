@@ -1,5 +1,8 @@
 package net.fornwall.jelf;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.fornwall.jelf.Table.Align;
 import net.fornwall.jelf.segment.ElfSegment;
 
@@ -11,9 +14,9 @@ public class ElfProgramHeaders {
 		this.file = file;
 		ElfHeader h = file.getHeader();
 		
-		segments = new ElfSegment[h.getProgramHeaderEntryCount()];
+		segments = new ElfSegment[h.getProgramHeaderCount()];
 		for (int i = 0; i < segments.length; i++) {
-			long programHeaderOffset = h.getProgramHeaderOffset() + (i * h.getProgramHeaderEntrySize());
+			long programHeaderOffset = h.getProgramHeaderOffset() + ((long)i * h.getProgramHeaderEntrySize());
 			segments[i] = ElfSegment.segmentFactory(file, programHeaderOffset);
 		}
 	}
@@ -42,6 +45,36 @@ public class ElfProgramHeaders {
 		return segments[index];
 	}
 	
+	/**
+	 * Translates a virtual address into the offset of its byte in the file through the PT_LOAD
+	 * segments, which is how the addresses of the dynamic section are resolved without section headers
+	 * 
+	 * @param address a virtual address
+	 * @return Returns the offset in the file of the byte loaded at the address
+	 * @throws ElfException if no PT_LOAD segment has file contents at the address
+	 */
+	public long getFileOffset(long address) {
+		for(ElfSegment s : segments) {
+			if(s.getType().val == ElfSegment.Type.LOAD
+					&& Long.compareUnsigned(address - s.getVirtualAddress(), s.getFileSize()) < 0)
+				return s.getOffset() + (address - s.getVirtualAddress());
+		}
+		throw new ElfException("Address 0x" + Long.toHexString(address) + " is not loaded from the file");
+	}
+	
+	/**
+	 * @param c the class of segments to fetch
+	 * @return Returns a list of segments that are an instance of the provided class
+	 */
+	public <T extends ElfSegment> List<T> getSegmentsOfType(Class<T> c) {
+		List<T> result = new ArrayList<T>();
+		for(ElfSegment s : segments) {
+			if(c.isInstance(s))
+				result.add(c.cast(s));
+		}
+		return result;
+	}
+	
 	/**
 	 * @param type the type of segment to get
 	 * @return Returns a the segment of the provided type
@@ -119,6 +152,17 @@ public class ElfProgramHeaders {
 		throw new ElfException("No segment entry of both type " + type.name() + " and " + c.getSimpleName());
 	}
 	
+	/**
+	 * Adds the heap memory retained by the program headers and all segments to the provided estimate
+	 * 
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		estimate.add(ElfMemoryEstimate.HEADERS, ElfMemoryEstimate.objectSize(2, 0) + ElfMemoryEstimate.arraySize(segments.length, ElfMemoryEstimate.REFERENCE));
+		for(ElfSegment s : segments)
+			s.estimateRetainedBytes(estimate);
+	}
+	
 	/**
 	 * See {@link #toString()} to get the formatted string directly
 	 * 
@@ -1,10 +1,13 @@
 package net.fornwall.jelf;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.fornwall.jelf.Table.Align;
+import net.fornwall.jelf.section.ElfGroupSection;
 import net.fornwall.jelf.section.ElfSection;
 import net.fornwall.jelf.section.ElfStringTableSection;
 import net.fornwall.jelf.section.ElfSymbolTableSection;
@@ -16,8 +19,11 @@ public class ElfSectionHeaders {
 	private ElfFile file;
 	private ElfSection[] sections;
 	
-	// String to section index
-	private HashMap<String, Integer> sectionByName;
+	// Section name to the ascending indexes of the sections with that name, names are not unique
+	private HashMap<String, int[]> sectionsByName;
+	
+	// Section index to the index of the group containing it or 0, built on first use
+	private volatile int[] groupBySection;
 	
 	// Special section
 	private ElfStringTableSection sectionStringTable;
@@ -26,25 +32,65 @@ public class ElfSectionHeaders {
 		this.file = file;
 		ElfHeader h = file.getHeader();
 		
-		this.sections = new ElfSection[h.getSectionHeaderEntryCount()];
+		this.sections = new ElfSection[h.getSectionCount()];
 		for (int i = 0; i < sections.length; i++) {
-			long sectionHeaderOffset = h.getSectionHeaderOffset() + (i * h.getSectionHeaderEntrySize());
+			long sectionHeaderOffset = h.getSectionHeaderOffset() + ((long)i * h.getSectionHeaderEntrySize());
 			sections[i] = ElfSection.sectionFactory(file, sectionHeaderOffset);
 		}
 		
+		if(sections.length == 0) {
+			// Without section headers the dynamic sections are located through PT_DYNAMIC
+			if(h.getFileType() != ElfHeader.FileType.CORE)
+				sections = ElfDynamicSections.reconstruct(file);
+			String[] names = new String[sections.length];
+			for(int i = 0; i < sections.length; i++)
+				names[i] = sections[i].getName();
+			sectionsByName = indexNames(names);
+			return;
+		}
+		
 		// Get section string table
-		if(!(sections[h.getSectionHeaderStringTableIndex()] instanceof ElfStringTableSection))
+		if(!(sections[h.getSectionStringTableIndex()] instanceof ElfStringTableSection))
 			throw new ElfException("Invalid section header string table");
 		
-		sectionStringTable = (ElfStringTableSection)sections[h.getSectionHeaderStringTableIndex()];
+		sectionStringTable = (ElfStringTableSection)sections[h.getSectionStringTableIndex()];
 		
-		sectionByName = new HashMap<String, Integer>();
-		for(int i = 0; i < sections.length; i++) {
-			if(sectionByName.put(sectionStringTable.getString(sections[i].getNameIndex()), i) != null) {
-				throw new ElfException("Duplicate section entry: " + 
-						sectionStringTable.getString(sections[i].getNameIndex()));
-			}
+		String[] names = new String[sections.length];
+		for(int i = 0; i < sections.length; i++)
+			names[i] = sectionStringTable.getString(sections[i].getNameIndex());
+		sectionsByName = indexNames(names);
+	}
+	
+	/**
+	 * Relocatable files commonly have several sections with the same name, such as the .group
+	 * and .text._Z... sections of COMDAT groups, so each name maps to an array of indexes.
+	 */
+	private static HashMap<String, int[]> indexNames(String[] names) {
+		HashMap<String, int[]> counts = new HashMap<String, int[]>();
+		for(String name : names) {
+			int[] count = counts.get(name);
+			if(count == null)
+				counts.put(name, count = new int[1]);
+			count[0]++;
+		}
+		
+		HashMap<String, int[]> result = new HashMap<String, int[]>(counts.size() * 2);
+		for(int i = 0; i < names.length; i++) {
+			int[] indexes = result.get(names[i]);
+			if(indexes == null)
+				result.put(names[i], indexes = new int[counts.get(names[i])[0]]);
+			// Filled from the end, the count is decremented to the next free slot
+			indexes[indexes.length - counts.get(names[i])[0]--] = i;
 		}
+		return result;
+	}
+	
+	/**
+	 * @return Returns true if the file has no section headers and the sections were rebuilt from
+	 * 	the PT_DYNAMIC segment, see {@link ElfSection#isReconstructed()}
+	 */
+	public boolean isReconstructed() {
+		return sections.length > 0 && sections[0].isReconstructed();
 	}
 	
 	/**
@@ -86,13 +132,27 @@ public class ElfSectionHeaders {
 	}
 	
 	/**
-	 * @return Returns the section with the provided name
+	 * @return Returns the section with the provided name, the first one if several have the name
 	 */
 	public ElfSection getSectionByName(String name) {
-		Integer index = sectionByName.get(name);
-		if(index == null)
+		int[] indexes = sectionsByName.get(name);
+		if(indexes == null)
 			throw new ElfException("Unknown section name: " + name);
-		return getSectionByIndex(index);
+		return getSectionByIndex(indexes[0]);
+	}
+	
+	/**
+	 * @param name the name of the sections
+	 * @return Returns the sections with the provided name in index order, or an empty list
+	 */
+	public List<ElfSection> getSectionsByName(String name) {
+		int[] indexes = sectionsByName.get(name);
+		List<ElfSection> result = new ArrayList<ElfSection>(indexes == null ? 0 : indexes.length);
+		if(indexes != null) {
+			for(int index : indexes)
+				result.add(sections[index]);
+		}
+		return result;
 	}
 	
 	/**
@@ -111,16 +171,63 @@ public class ElfSectionHeaders {
 	}
 	
 	/**
-	 * @return Returns the index of the requested section or null if it does not exist
+	 * @return Returns the index of the requested section or null if it does not exist, the first
+	 * 	index if several sections have the name
 	 */
 	public Integer getSectionIndexByName(String name) {
-		return sectionByName.get(name);
+		int[] indexes = sectionsByName.get(name);
+		return indexes == null ? null : indexes[0];
+	}
+	
+	/**
+	 * @param name the name of the sections
+	 * @return Returns the ascending indexes of the sections with the provided name, or an empty array
+	 */
+	public int[] getSectionIndexesByName(String name) {
+		int[] indexes = sectionsByName.get(name);
+		return indexes == null ? new int[0] : indexes.clone();
+	}
+	
+	/**
+	 * @return Returns the section groups of a relocatable file
+	 */
+	public List<ElfGroupSection> getGroups() {
+		return getSectionsOfType(ElfGroupSection.class);
+	}
+	
+	/**
+	 * The groups are indexed by member the first time this is called.
+	 * 
+	 * @param index the index of a section
+	 * @return Returns the group containing the section, or null if it is not in a group
+	 */
+	public ElfGroupSection getGroupOf(int index) {
+		int[] groups = groupBySection;
+		if(groups == null) {
+			groups = new int[sections.length];
+			for(int i = 0; i < sections.length; i++) {
+				if(!(sections[i] instanceof ElfGroupSection))
+					continue;
+				ElfGroupSection group = (ElfGroupSection)sections[i];
+				for(int j = 0; j < group.getMemberCount(); j++) {
+					int member = group.getMemberIndex(j);
+					if(member > 0 && member < groups.length)
+						groups[member] = i;
+				}
+			}
+			// Racing threads compute the same array
+			groupBySection = groups;
+		}
+		if(index < 0 || index >= groups.length)
+			throw new ElfException("Section index out of bounds: " + index);
+		return groups[index] == 0 ? null : (ElfGroupSection)sections[groups[index]];
 	}
 	
 	// Special section getters
 	
 	/**
-	 * @return Returns the string table which contains section names
+	 * @return Returns the string table which contains section names, or null if the file has
+	 * 	no section headers
 	 */
 	public ElfStringTableSection getSectionStringTable() {
 		return sectionStringTable;
@@ -228,6 +335,27 @@ public class ElfSectionHeaders {
 		return result;
 	}
 	
+	/**
+	 * Adds the heap memory retained by the section headers and all sections to the provided estimate
+	 * 
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		long size = ElfMemoryEstimate.objectSize(4, 0) + ElfMemoryEstimate.arraySize(sections.length, ElfMemoryEstimate.REFERENCE);
+		
+		// Name to index map
+		size += ElfMemoryEstimate.objectSize(3, 16) + ElfMemoryEstimate.arraySize(Integer.highestOneBit(Math.max(1, sectionsByName.size()) * 2) * 2, ElfMemoryEstimate.REFERENCE);
+		for(Map.Entry<String, int[]> e : sectionsByName.entrySet())
+			size += ElfMemoryEstimate.objectSize(3, 4) + ElfMemoryEstimate.arraySize(e.getValue().length, 4) + ElfMemoryEstimate.stringSize(e.getKey());
+		int[] groups = groupBySection;
+		if(groups != null)
+			size += ElfMemoryEstimate.arraySize(groups.length, 4);
+		estimate.add(ElfMemoryEstimate.HEADERS, size);
+		
+		for(ElfSection s : sections)
+			s.estimateRetainedBytes(estimate);
+	}
+	
 	/**
 	 * See {@link #toString()} to get the formatted string directly
 	 * 
@@ -285,7 +413,7 @@ public class ElfSectionHeaders {
 			t.add("0x" + Long.toHexString(s.getFileSize()));
 			
 			// Type
-			t.add(s.getType().name());
+			t.add(s.getType().name(file.getHeader().getMachine()));
 			
 			// EntSize
 			t.add("0x" + Long.toHexString(s.getEntrySize()));
@@ -312,12 +440,31 @@ public class ElfSectionHeaders {
 		return t;
 	}
 	
-	@Override
-	public String toString() {
+	/**
+	 * Writes the formatted section headers followed by a key to the flags to the
+	 * provided {@link Appendable}
+	 * 
+	 * @param out the destination of the formatted section headers
+	 * @throws IOException if the destination throws an IOException
+	 */
+	public void write(Appendable out) throws IOException {
+		this.getFormattedTable().write(out);
+		
 		// Add a key for the flags
-		String flagKey = "Key to Flags:\n";
+		out.append("Key to Flags:\n");
 		for(String s : ElfSection.Flag.getNameKey().split("\n"))
-			flagKey += " " + s + "\n";
-		return this.getFormattedTable().toString() + flagKey;
+			out.append(' ').append(s).append('\n');
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			write(sb);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+			throw new ElfException(e);
+		}
+		return sb.toString();
 	}
 }
@@ -1,91 +1,865 @@
 package net.fornwall.jelf;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.fornwall.jelf.Table.Align;
+import net.fornwall.jelf.core.ElfBacktrace;
+import net.fornwall.jelf.core.ElfCoreFile;
+import net.fornwall.jelf.core.ElfCoreUnwinder;
+import net.fornwall.jelf.dwarf.Dwarf;
+import net.fornwall.jelf.dwarf.DwarfFde;
+import net.fornwall.jelf.dwarf.DwarfFrameRow;
+import net.fornwall.jelf.dwarf.DwarfInlineFrame;
+import net.fornwall.jelf.dwarf.DwarfNameEntry;
+import net.fornwall.jelf.dwarf.DwarfSourceLine;
+import net.fornwall.jelf.dwarf.DwarfSplitLoader;
+import net.fornwall.jelf.dwarf.DwarfStructLayout;
+import net.fornwall.jelf.dwarf.DwarfTypeReader;
+import net.fornwall.jelf.section.ElfArmExidxSection;
+import net.fornwall.jelf.section.ElfCompressionHeader;
 import net.fornwall.jelf.section.ElfDynamicSection;
+import net.fornwall.jelf.section.ElfGroupSection;
 import net.fornwall.jelf.section.ElfNoteSection;
 import net.fornwall.jelf.section.ElfRelocationSection;
 import net.fornwall.jelf.section.ElfSection;
 import net.fornwall.jelf.section.ElfStringTableSection;
 import net.fornwall.jelf.section.ElfSymbolTableSection;
+import net.fornwall.jelf.section.symbol.ElfSymbolSorter;
+import net.fornwall.jelf.section.unwind.ElfArmUnwindEntry;
+import net.fornwall.jelf.segment.ElfNoteSegment;
 
+/**
+ * Command line tool with output similar to readelf. Only the parts of each file which are
+ * requested on the command line are decoded. Several files are processed concurrently while
+ * their output is written in the order the files were given.
+ */
 public class Main {
 
+	private static final String USAGE =
+			"Usage: jelf <option(s)> elf-file(s)\n" +
+			" Display information about the contents of ELF format files\n" +
+			" Options are:\n" +
+			"  -a --all               Equivalent to: -h -l -S -s -r -d -n\n" +
+			"  -h --file-header       Display the ELF file header\n" +
+			"  -l --program-headers   Display the program headers and section to segment mapping\n" +
+			"     --segments          An alias for --program-headers\n" +
+			"  -S --section-headers   Display the sections' header\n" +
+			"     --sections          An alias for --section-headers\n" +
+			"  -g --section-groups    Display the section groups\n" +
+			"  -e --headers           Equivalent to: -h -l -S\n" +
+			"  -s --syms              Display the symbol tables\n" +
+			"     --symbols           An alias for --syms\n" +
+			"     --dyn-syms          Display the dynamic symbol table\n" +
+			"  -r --relocs            Display the relocations\n" +
+			"  -n --notes             Display the notes\n" +
+			"  -d --dynamic           Display the dynamic section\n" +
+			"     --string-tables     Display the contents of all string table sections\n" +
+			"  -x --hex-dump=<number|name>\n" +
+			"                         Dump the contents of section <number|name> as bytes\n" +
+			"  -p --string-dump=<number|name>\n" +
+			"                         Dump the contents of section <number|name> as strings\n" +
+			"  -z --decompress        Decompress sections before dumping them\n" +
+			"     --nm-sort=<address|size|name>\n" +
+			"                         List the symbols like nm, sorted in the given order\n" +
+			"     --sort-budget=<bytes>\n" +
+			"                         Memory used for sorting before spilling to disk (K, M or G suffix)\n" +
+			"     --sort-tmpdir=<dir> Directory for sort spill files\n" +
+			"     --reverse-sort      Reverse the order of --nm-sort\n" +
+			"     --addr2line=<address[,address...]>\n" +
+			"                         Translate hexadecimal addresses to file names and line numbers\n" +
+			"     --inlines           Show the functions inlined at --addr2line addresses\n" +
+			"     --dwp=<file>        DWARF package holding the split debugging information\n" +
+			"     --debug-file-directory=<dir>\n" +
+			"                         Search <dir> for separate debug files instead of /usr/lib/debug\n" +
+			"     --lookup-name=<name>\n" +
+			"                         Find the debugging information entries defining <name>\n" +
+			"     --struct-layout=<name>\n" +
+			"                         Display the member offsets, holes and padding of a struct\n" +
+			"     --padding-report[=<count>]\n" +
+			"                         List the structs wasting the most bytes in holes and padding\n" +
+			"     --unwind=<address[,address...]>\n" +
+			"                         Display the call frame rules of the functions at hexadecimal addresses\n" +
+			"     --core              Display the threads and mapped files of a core file\n" +
+			"     --backtrace         Unwind and symbolize the threads of a core file\n" +
+			"  -j --threads=<count>   Number of files to process concurrently\n" +
+			"     --metrics           Display parsing metrics after all files\n" +
+			"  -H --help              Display this information\n" +
+			" Without any display option everything is displayed, including the string tables.\n";
+
+	/** The parsed command line */
+	private static final class Options {
+		boolean header;
+		boolean programHeaders;
+		boolean sectionHeaders;
+		boolean sectionGroups;
+		boolean decompress;
+		boolean symbols;
+		boolean dynSyms;
+		boolean relocations;
+		boolean notes;
+		boolean dynamic;
+		boolean stringTables;
+		boolean metrics;
+		ElfSymbolSorter.Order nmSort;
+		long sortBudget = ElfSymbolSorter.DEFAULT_MEMORY_BUDGET;
+		File sortTempDirectory;
+		boolean reverseSort;
+		final List<Long> addresses = new ArrayList<Long>();
+		boolean inlines;
+		File dwarfPackage;
+		final List<File> debugDirectories = new ArrayList<File>();
+		final ElfDebugFileStore debugFiles = new ElfDebugFileStore();
+		// Shared by the files of one run, which are often of the same build
+		final ElfMiniDebugInfoCache miniDebugInfo = new ElfMiniDebugInfoCache();
+		final List<String> names = new ArrayList<String>();
+		final List<String> structLayouts = new ArrayList<String>();
+		int paddingReport;
+		final List<Long> unwindAddresses = new ArrayList<Long>();
+		boolean core;
+		boolean backtrace;
+		final List<String> hexDumps = new ArrayList<String>();
+		final List<String> stringDumps = new ArrayList<String>();
+		final List<String> files = new ArrayList<String>();
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		boolean hasDisplayOption() {
+			return header || programHeaders || sectionHeaders || sectionGroups || symbols || dynSyms || relocations
+					|| notes || dynamic || stringTables || !hexDumps.isEmpty() || !stringDumps.isEmpty() || nmSort != null
+					|| !addresses.isEmpty() || !names.isEmpty() || !structLayouts.isEmpty() || paddingReport > 0
+					|| !unwindAddresses.isEmpty() || core || backtrace;
+		}
+
+		void all() {
+			header = programHeaders = sectionHeaders = symbols = relocations = dynamic = notes = true;
+		}
+	}
+
+	/** The output of a single file, rendered ahead of time when processing files concurrently */
+	private static final class Result {
+		final String output;
+		final String error;
+
+		Result(String output, String error) {
+			this.output = output;
+			this.error = error;
+		}
+	}
+
 	public static void main(String[] args) throws Exception {
-		if(args.length == 0) {
-			args = new String[1];
-			
-			// Default testing file
-			args[0] = "src/test/resources/hello_riscv.out";
+		Options options;
+		try {
+			options = parseOptions(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("jelf: Error: " + e.getMessage());
+			System.err.print(USAGE);
+			System.exit(1);
+			return;
+		}
+
+		if(options == null) {
+			System.out.print(USAGE);
+			return;
+		}
+
+		if(!options.hasDisplayOption()) {
+			// Similar output to readelf -a <elf_file> with the string tables added
+			options.all();
+			options.stringTables = true;
+		}
+
+		ElfMetrics metrics = options.metrics ? new ElfCountingMetrics() : ElfMetrics.NOOP;
+
+		// Stream all output instead of building the formatted tables as strings
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+		boolean success;
+		if(options.files.size() == 1 || options.threads <= 1)
+			success = processSequentially(options, metrics, out);
+		else
+			success = processConcurrently(options, metrics, out);
+
+		if(options.metrics)
+			print(((ElfCountingMetrics)metrics).getFormattedTable(), out);
+		out.flush();
+
+		if(!success)
+			System.exit(1);
+	}
+
+	private static Options parseOptions(String[] args) {
+		Options o = new Options();
+
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+
+			if(arg.startsWith("--")) {
+				String name = arg;
+				String value = null;
+				int eq = arg.indexOf('=');
+				if(eq >= 0) {
+					name = arg.substring(0, eq);
+					value = arg.substring(eq + 1);
+				}
+
+				switch(name) {
+				case "--all": o.all(); break;
+				case "--file-header": o.header = true; break;
+				case "--program-headers":
+				case "--segments": o.programHeaders = true; break;
+				case "--section-headers":
+				case "--sections": o.sectionHeaders = true; break;
+				case "--section-groups": o.sectionGroups = true; break;
+				case "--headers": o.header = o.programHeaders = o.sectionHeaders = true; break;
+				case "--syms":
+				case "--symbols": o.symbols = true; break;
+				case "--dyn-syms": o.dynSyms = true; break;
+				case "--relocs": o.relocations = true; break;
+				case "--notes": o.notes = true; break;
+				case "--dynamic": o.dynamic = true; break;
+				case "--string-tables": o.stringTables = true; break;
+				case "--decompress": o.decompress = true; break;
+				case "--metrics": o.metrics = true; break;
+				case "--help": return null;
+				case "--hex-dump":
+					o.hexDumps.add(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--string-dump":
+					o.stringDumps.add(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--nm-sort":
+					o.nmSort = parseSortOrder(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--sort-budget":
+					o.sortBudget = parseSize(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--sort-tmpdir":
+					o.sortTempDirectory = new File(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--reverse-sort": o.reverseSort = true; break;
+				case "--inlines": o.inlines = true; break;
+				case "--core": o.core = true; break;
+				case "--backtrace": o.backtrace = true; break;
+				case "--dwp":
+					o.dwarfPackage = new File(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--debug-file-directory":
+					o.debugDirectories.add(new File(value != null ? value : requireArgument(args, ++i, name)));
+					break;
+				case "--lookup-name":
+					o.names.add(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--struct-layout":
+					o.structLayouts.add(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				case "--padding-report":
+					o.paddingReport = value != null ? parseCount(value) : 20;
+					break;
+				case "--unwind":
+					parseAddresses(value != null ? value : requireArgument(args, ++i, name), o.unwindAddresses);
+					break;
+				case "--addr2line":
+					parseAddresses(value != null ? value : requireArgument(args, ++i, name), o.addresses);
+					break;
+				case "--threads":
+					o.threads = parseThreads(value != null ? value : requireArgument(args, ++i, name));
+					break;
+				default:
+					throw new IllegalArgumentException("Unrecognized option '" + arg + "'");
+				}
+			}
+			else if(arg.startsWith("-") && arg.length() > 1) {
+				// Short options may be combined, e.g. -hSl
+				for(int j = 1; j < arg.length(); j++) {
+					char c = arg.charAt(j);
+					String rest = arg.substring(j + 1);
+					switch(c) {
+					case 'a': o.all(); break;
+					case 'h': o.header = true; break;
+					case 'l': o.programHeaders = true; break;
+					case 'S': o.sectionHeaders = true; break;
+					case 'g': o.sectionGroups = true; break;
+					case 'z': o.decompress = true; break;
+					case 'e': o.header = o.programHeaders = o.sectionHeaders = true; break;
+					case 's': o.symbols = true; break;
+					case 'r': o.relocations = true; break;
+					case 'n': o.notes = true; break;
+					case 'd': o.dynamic = true; break;
+					case 'H': return null;
+					case 'x':
+						o.hexDumps.add(!rest.isEmpty() ? rest : requireArgument(args, ++i, "-x"));
+						j = arg.length();
+						break;
+					case 'p':
+						o.stringDumps.add(!rest.isEmpty() ? rest : requireArgument(args, ++i, "-p"));
+						j = arg.length();
+						break;
+					case 'j':
+						o.threads = parseThreads(!rest.isEmpty() ? rest : requireArgument(args, ++i, "-j"));
+						j = arg.length();
+						break;
+					default:
+						throw new IllegalArgumentException("Invalid option '-" + c + "'");
+					}
+				}
+			}
+			else {
+				o.files.add(arg);
+			}
 		}
-		else if (args.length != 1) {
-			System.out.println("Usage: java ELFFileParser <elf file>");
-			System.exit(0);
+
+		if(o.files.isEmpty())
+			throw new IllegalArgumentException("Nothing to do");
+		if(!o.debugDirectories.isEmpty())
+			o.debugFiles.setRoots(o.debugDirectories);
+		return o;
+	}
+
+	private static String requireArgument(String[] args, int index, String option) {
+		if(index >= args.length)
+			throw new IllegalArgumentException("Option '" + option + "' requires an argument");
+		return args[index];
+	}
+
+	private static int parseCount(String value) {
+		try {
+			return Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid count '" + value + "'");
 		}
+	}
+
+	private static int parseThreads(String value) {
+		try {
+			return Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid thread count '" + value + "'");
+		}
+	}
 
-		ElfFile file = new ElfFile(new File(args[0]));
+	private static ElfSymbolSorter.Order parseSortOrder(String value) {
+		switch(value) {
+		case "address": return ElfSymbolSorter.Order.ADDRESS;
+		case "size": return ElfSymbolSorter.Order.SIZE;
+		case "name": return ElfSymbolSorter.Order.NAME;
+		default: throw new IllegalArgumentException("Invalid sort order '" + value + "'");
+		}
+	}
+
+	private static void parseAddresses(String value, List<Long> addresses) {
+		for(String address : value.split(",")) {
+			String digits = address.startsWith("0x") || address.startsWith("0X") ? address.substring(2) : address;
+			try {
+				addresses.add(Long.parseUnsignedLong(digits, 16));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid address '" + address + "'");
+			}
+		}
+	}
+
+	private static long parseSize(String value) {
+		long multiplier = 1;
+		String digits = value;
+		if(!value.isEmpty()) {
+			switch(Character.toUpperCase(value.charAt(value.length() - 1))) {
+			case 'K': multiplier = 1L << 10; break;
+			case 'M': multiplier = 1L << 20; break;
+			case 'G': multiplier = 1L << 30; break;
+			}
+			if(multiplier != 1)
+				digits = value.substring(0, value.length() - 1);
+		}
+
+		try {
+			long size = Long.parseLong(digits) * multiplier;
+			if(size <= 0)
+				throw new NumberFormatException();
+			return size;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid size '" + value + "'");
+		}
+	}
+
+	/**
+	 * Processes one file at a time, writing the output of each file directly to out
+	 *
+	 * @return Returns false if any file could not be processed
+	 */
+	private static boolean processSequentially(Options options, ElfMetrics metrics, Writer out) throws IOException {
+		boolean success = true;
+		for(String name : options.files) {
+			try {
+				process(name, options, metrics, out);
+			} catch (ElfException | IOException e) {
+				out.flush();
+				System.err.println("jelf: Error: " + name + ": " + describe(e));
+				success = false;
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * Processes several files concurrently. To bound the memory used for rendered output, at
+	 * most twice as many files as there are threads are rendered ahead of the file which is
+	 * currently being written.
+	 *
+	 * @return Returns false if any file could not be processed
+	 */
+	private static boolean processConcurrently(final Options options, final ElfMetrics metrics, Writer out)
+			throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+		Deque<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+		int window = options.threads * 2;
+		boolean success = true;
+
+		try {
+			for(final String name : options.files) {
+				pending.add(pool.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						StringBuilder sb = new StringBuilder();
+						try {
+							process(name, options, metrics, sb);
+							return new Result(sb.toString(), null);
+						} catch (ElfException | IOException e) {
+							return new Result(sb.toString(), "jelf: Error: " + name + ": " + describe(e));
+						}
+					}
+				}));
+
+				if(pending.size() >= window)
+					success &= writeResult(pending.poll(), out);
+			}
+
+			while(!pending.isEmpty())
+				success &= writeResult(pending.poll(), out);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return success;
+	}
+
+	private static boolean writeResult(Future<Result> future, Writer out) throws IOException, InterruptedException {
+		Result result;
+		try {
+			result = future.get();
+		} catch (ExecutionException e) {
+			throw new ElfException(e.getCause());
+		}
+
+		out.write(result.output);
+		if(result.error == null)
+			return true;
+
+		out.flush();
+		System.err.println(result.error);
+		return false;
+	}
+
+	private static String describe(Exception e) {
+		if(e instanceof NoSuchFileException)
+			return "No such file";
+		return e.getMessage();
+	}
+
+	private static void process(String name, Options options, ElfMetrics metrics, Appendable out) throws IOException {
+		ElfFile file = new ElfFile(new File(name), metrics);
+		file.setMiniDebugInfoCache(options.miniDebugInfo);
+
+		if(options.files.size() > 1)
+			out.append("\nFile: ").append(name).append('\n');
 
-		// Similar output to readelf -a <elf_file>
-		
 		// Print header data
-		System.out.println(file.getHeader());
-		
+		if(options.header)
+			print(file.getHeader().getFormattedTable(), out);
+
 		// Print section data
-		System.out.println(file.getSectionHeaders());
-		
+		if(options.sectionHeaders) {
+			file.getSectionHeaders().write(out);
+			out.append(System.lineSeparator());
+		}
+
+		// Print section groups
+		if(options.sectionGroups) {
+			List<ElfGroupSection> groups = file.getSectionHeaders().getGroups();
+			if(groups.isEmpty())
+				out.append("There are no section groups in this file.").append(System.lineSeparator()).append(System.lineSeparator());
+			for(ElfGroupSection s : groups)
+				print(s.getFormattedTable(), out);
+		}
+
 		// Print segment data
-		System.out.println(file.getProgramHeaders());
-		
-		printSectionMapping(file);
-		
+		if(options.programHeaders) {
+			print(file.getProgramHeaders().getFormattedTable(), out);
+			printSectionMapping(file, out);
+		}
+
 		// Print symbol table sections
-		for(ElfSymbolTableSection s : file.getSectionHeaders().getSectionsOfType(ElfSymbolTableSection.class))
-			System.out.println(s);
-		
+		if(options.symbols || options.dynSyms) {
+			for(ElfSymbolTableSection s : file.getSectionHeaders().getSectionsOfType(ElfSymbolTableSection.class)) {
+				if(options.symbols || s.getType().val == ElfSection.Type.DYNSYM)
+					print(s.getFormattedTable(), out);
+			}
+		}
+
 		// Print relocation sections
-		for(ElfRelocationSection s : file.getSectionHeaders().getSectionsOfType(ElfRelocationSection.class))
-			System.out.println(s);
-		
+		if(options.relocations) {
+			for(ElfRelocationSection s : file.getSectionHeaders().getSectionsOfType(ElfRelocationSection.class))
+				print(s.getFormattedTable(), out);
+		}
+
 		// Print note sections
-		for(ElfNoteSection s : file.getSectionHeaders().getSectionsOfType(ElfNoteSection.class))
-			System.out.println(s);
-		
+		if(options.notes) {
+			for(ElfNoteSection s : file.getSectionHeaders().getSectionsOfType(ElfNoteSection.class))
+				print(s.getFormattedTable(), out);
+			// Files without section headers, like core files, only have note segments
+			if(file.getSectionHeaders().size() == 0) {
+				for(ElfNoteSegment s : file.getProgramHeaders().getSegmentsOfType(ElfNoteSegment.class))
+					print(s.getFormattedTable(), out);
+			}
+		}
+
 		// Print string table sections
-		for(ElfStringTableSection s : file.getSectionHeaders().getSectionsOfType(ElfStringTableSection.class))
-			System.out.println(s);
-		
+		if(options.stringTables) {
+			for(ElfStringTableSection s : file.getSectionHeaders().getSectionsOfType(ElfStringTableSection.class))
+				print(s.getFormattedTable(), out);
+		}
+
 		// Print dynamic sections
-		for(ElfDynamicSection s : file.getSectionHeaders().getSectionsOfType(ElfDynamicSection.class))
-			System.out.println(s);
+		if(options.dynamic) {
+			for(ElfDynamicSection s : file.getSectionHeaders().getSectionsOfType(ElfDynamicSection.class))
+				print(s.getFormattedTable(), out);
+		}
+
+		for(String section : options.hexDumps)
+			printHexDump(file, section, options.decompress, out);
+
+		for(String section : options.stringDumps)
+			printStringDump(file, section, options.decompress, out);
+
+		if(options.nmSort != null)
+			printSortedSymbols(file, options, out);
+
+		if(!options.addresses.isEmpty()) {
+			// Stripped files are symbolized with their separate debug file
+			ElfFile debug = file.getDwarf().hasSection(".debug_line") ? null : options.debugFiles.findFor(file, new File(name));
+			ElfFile lines = debug != null ? debug : file;
+			configureSplitLoader(lines, name, options);
+			if(options.inlines)
+				printInlineFrames(lines, options.addresses, out);
+			else
+				printSourceLines(lines, options.addresses, out);
+		}
+
+		for(String lookup : options.names)
+			printNameEntries(file, lookup, out);
+
+		for(String struct : options.structLayouts)
+			printStructLayouts(file, struct, out);
+
+		if(options.paddingReport > 0)
+			print(DwarfTypeReader.getPaddingReport(file.getDwarf().getTypeReader().getLayouts(), options.paddingReport), out);
+
+		if(!options.unwindAddresses.isEmpty())
+			printFrameTables(file, options.unwindAddresses, out);
+
+		if(options.core) {
+			ElfCoreFile core = new ElfCoreFile(file);
+			print(core.getFormattedTable(), out);
+			print(core.getMappingTable(), out);
+		}
+
+		if(options.backtrace) {
+			ElfCoreUnwinder unwinder = new ElfCoreUnwinder(new ElfCoreFile(file));
+			unwinder.setDebugFileStore(options.debugFiles);
+			for(ElfBacktrace backtrace : unwinder.unwindAllThreads())
+				print(backtrace.getFormattedTable(), out);
+		}
+	}
+
+	/**
+	 * Points the split unit loader at the DWARF package given with --dwp, or else at
+	 * &lt;file&gt;.dwp if it exists, and searches the directory of the file for .dwo files
+	 */
+	private static void configureSplitLoader(ElfFile file, String name, Options options) throws IOException {
+		DwarfSplitLoader loader = file.getDwarf().getSplitLoader();
+		File dwarfPackage = options.dwarfPackage != null ? options.dwarfPackage : new File(name + ".dwp");
+		if(options.dwarfPackage != null || dwarfPackage.isFile())
+			loader.setPackage(dwarfPackage);
+		File directory = new File(name).getAbsoluteFile().getParentFile();
+		if(directory != null)
+			loader.addSearchDirectory(directory);
+	}
+
+	/**
+	 * Prints the source file and line of each address, like addr2line
+	 */
+	private static void printSourceLines(ElfFile file, List<Long> addresses, Appendable out) throws IOException {
+		long[] values = new long[addresses.size()];
+		for(int i = 0; i < values.length; i++)
+			values[i] = addresses.get(i);
+
+		DwarfSourceLine[] found = file.getDwarf().findLines(values);
+		for(int i = 0; i < values.length; i++) {
+			out.append("0x").append(Long.toHexString(values[i])).append(' ');
+			out.append(found[i] == null ? "??:0" : found[i].toString()).append('\n');
+		}
+	}
+
+	/**
+	 * Prints the inline chain of each address, like addr2line -pfi
+	 */
+	private static void printInlineFrames(ElfFile file, List<Long> addresses, Appendable out) throws IOException {
+		Dwarf dwarf = file.getDwarf();
+		for(long address : addresses) {
+			out.append("0x").append(Long.toHexString(address)).append(": ");
+			List<DwarfInlineFrame> frames = dwarf.findFrames(address);
+			if(frames.isEmpty())
+				out.append("?? at ??:0\n");
+			for(int i = 0; i < frames.size(); i++) {
+				if(i > 0)
+					out.append(" (inlined by) ");
+				out.append(frames.get(i).toString()).append('\n');
+			}
+		}
+	}
+
+	/**
+	 * Prints the entries defining a name, found through the name index of the file
+	 */
+	private static void printNameEntries(ElfFile file, String name, Appendable out) throws IOException {
+		List<DwarfNameEntry> entries = file.getDwarf().findEntries(name);
+		if(entries.isEmpty())
+			out.append(name).append(": not found\n");
+		for(DwarfNameEntry entry : entries)
+			out.append(name).append(": ").append(entry.toString()).append('\n');
+	}
+
+	/**
+	 * Prints the layout of each struct with a name, like pahole
+	 */
+	private static void printStructLayouts(ElfFile file, String name, Appendable out) throws IOException {
+		List<DwarfStructLayout> layouts = file.getDwarf().getTypeReader().findLayouts(name);
+		if(layouts.isEmpty())
+			out.append(name).append(": not found\n\n");
+		for(DwarfStructLayout layout : layouts)
+			print(layout.getFormattedTable(), out);
+	}
+
+	/**
+	 * Prints the call frame table of the function at each address, like readelf --debug-dump=frames-interp
+	 */
+	private static void printFrameTables(ElfFile file, List<Long> addresses, Appendable out) throws IOException {
+		Dwarf dwarf = file.getDwarf();
+		for(long address : addresses) {
+			DwarfFde fde = dwarf.findFde(address);
+			if(fde == null) {
+				ElfArmUnwindEntry entry = findArmUnwindEntry(file, address);
+				out.append("0x").append(Long.toHexString(address)).append(": ");
+				if(entry == null)
+					out.append("no call frame information\n\n");
+				else if(entry.getInstructions() == null)
+					out.append(entry.toString()).append("\n\n");
+				else
+					out.append(entry.toString()).append('\n').append(entry.getInstructions().toString()).append("\n\n");
+				continue;
+			}
+			DwarfFrameRow row = fde.getFrameTable().findRow(address);
+			out.append("0x").append(Long.toHexString(address)).append(": CFA=")
+					.append(row == null ? "?" : row.describeCfa(file.getHeader().getMachine())).append('\n');
+			print(fde.getFrameTable().getFormattedTable(file.getHeader().getMachine()), out);
+		}
+	}
+
+	/**
+	 * @return Returns the entry of the ARM exception index table covering the address, or null
+	 */
+	private static ElfArmUnwindEntry findArmUnwindEntry(ElfFile file, long address) {
+		for(ElfArmExidxSection s : file.getSectionHeaders().getSectionsOfType(ElfArmExidxSection.class)) {
+			ElfArmUnwindEntry entry = s.findEntry(address);
+			if(entry != null)
+				return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Lists the symbols of .symtab, or .dynsym for stripped files, like nm does
+	 */
+	private static void printSortedSymbols(ElfFile file, Options options, Appendable out) throws IOException {
+		ElfSymbolTableSection table = null;
+		for(ElfSymbolTableSection s : file.getSectionHeaders().getSectionsOfType(ElfSymbolTableSection.class)) {
+			if(table == null || s.getType().val == ElfSection.Type.SYMTAB)
+				table = s;
+		}
+		if(table == null) {
+			out.append("No symbols\n");
+			return;
+		}
+
+		ElfSymbolSorter sorter = new ElfSymbolSorter(options.nmSort);
+		sorter.setMemoryBudget(options.sortBudget);
+		sorter.setTempDirectory(options.sortTempDirectory);
+		sorter.setReverse(options.reverseSort);
+		sorter.add(table);
+		sorter.write(out);
 	}
-	
-	private static void printSectionMapping(ElfFile file) {
+
+	private static void print(Table t, Appendable out) throws IOException {
+		t.write(out);
+		out.append(System.lineSeparator());
+	}
+
+	/**
+	 * @param section a section index or name
+	 * @return Returns the requested section or null if it does not exist
+	 */
+	private static ElfSection findSection(ElfFile file, String section, Appendable out) throws IOException {
+		ElfSectionHeaders headers = file.getSectionHeaders();
+		Integer index = headers.getSectionIndexByName(section);
+		if(index == null && !section.isEmpty() && section.chars().allMatch(Character::isDigit)) {
+			index = Integer.valueOf(section);
+			if(index >= headers.size())
+				index = null;
+		}
+
+		if(index == null) {
+			out.append("Section '").append(section).append("' was not dumped because it does not exist!\n\n");
+			return null;
+		}
+		return headers.getSectionByIndex(index);
+	}
+
+	private static byte[] getDumpData(ElfSection s, boolean decompress, Appendable out) throws IOException {
+		if(!decompress || !s.isCompressed())
+			return s.getData();
+		ElfCompressionHeader header = s.getCompressionHeader();
+		out.append("[Decompressing section '").append(s.getName()).append("' (").append(Long.toString(s.getFileSize()))
+				.append(" bytes ").append(header.getTypeName()).append(" compressed, ").append(Long.toString(header.getSize()))
+				.append(" bytes uncompressed)]\n");
+		return s.decompress();
+	}
+
+	private static void printHexDump(ElfFile file, String name, boolean decompress, Appendable out) throws IOException {
+		ElfSection s = findSection(file, name, out);
+		if(s == null)
+			return;
+
+		byte[] data = getDumpData(s, decompress, out);
+		if(data.length == 0) {
+			out.append("Section '").append(s.getName()).append("' has no data to dump.\n\n");
+			return;
+		}
+
+		out.append("Hex dump of section '").append(s.getName()).append("':\n");
+
+		char[] line = new char[16 * 3 + 16];
+		for(int offset = 0; offset < data.length; offset += 16) {
+			String addr = Long.toHexString(s.getAddress() + offset);
+			out.append("  0x");
+			for(int i = addr.length(); i < 8; i++)
+				out.append('0');
+			out.append(addr).append(' ');
+
+			// Groups of four bytes followed by the printable characters
+			int pos = 0;
+			for(int i = 0; i < 16; i++) {
+				if(offset + i < data.length) {
+					int b = data[offset + i] & 0xff;
+					line[pos++] = Character.forDigit(b >> 4, 16);
+					line[pos++] = Character.forDigit(b & 0xf, 16);
+				}
+				else {
+					line[pos++] = ' ';
+					line[pos++] = ' ';
+				}
+				if(i % 4 == 3)
+					line[pos++] = ' ';
+			}
+			for(int i = 0; i < 16 && offset + i < data.length; i++) {
+				int b = data[offset + i] & 0xff;
+				line[pos++] = b >= 0x20 && b < 0x7f ? (char)b : '.';
+			}
+
+			out.append(new String(line, 0, pos)).append('\n');
+		}
+		out.append('\n');
+	}
+
+	private static void printStringDump(ElfFile file, String name, boolean decompress, Appendable out) throws IOException {
+		ElfSection s = findSection(file, name, out);
+		if(s == null)
+			return;
+
+		byte[] data = getDumpData(s, decompress, out);
+		if(data.length == 0) {
+			out.append("Section '").append(s.getName()).append("' has no data to dump.\n\n");
+			return;
+		}
+
+		out.append("String dump of section '").append(s.getName()).append("':\n");
+
+		int start = 0;
+		while(start < data.length) {
+			if(data[start] == '\0') {
+				start++;
+				continue;
+			}
+
+			int end = start;
+			while(end < data.length && data[end] != '\0')
+				end++;
+
+			String offset = Integer.toHexString(start);
+			out.append("  [");
+			for(int i = offset.length(); i < 6; i++)
+				out.append(' ');
+			out.append(offset).append("]  ").append(new String(data, start, end - start)).append('\n');
+			start = end;
+		}
+		out.append('\n');
+	}
+
+	private static void printSectionMapping(ElfFile file, Appendable out) throws IOException {
 		Table t = new Table("Section to Segment mapping:");
-		
+
 		// Column names
 		t.add("Segment");
 		t.setColAlign(Align.RIGHT);
-		
+
 		t.add("Sections...");
 		t.setColAlign(Align.LEFT);
-		
+
 		for(int i = 0; i < file.getProgramHeaders().size(); i++) {
 			t.newRow();
-			
+
 			// Segment
 			t.add(Integer.toString(i));
-			
+
 			// Sections
-			String sections = "";
+			StringBuilder sections = new StringBuilder();
 			for(ElfSection s : file.getProgramHeaders().getSegmentByIndex(i).getSections()) {
 				if(!s.getName().isEmpty())
-					sections += s.getName() + " ";
+					sections.append(s.getName()).append(' ');
 			}
-			
-			t.add(sections);
+
+			t.add(sections.toString());
 		}
-		
-		t.printTable();
+
+		print(t, out);
 	}
 }
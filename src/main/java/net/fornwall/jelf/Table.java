@@ -1,6 +1,12 @@
 package net.fornwall.jelf;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Table {
@@ -9,11 +15,21 @@ public class Table {
 		LEFT
 	}
 	
+	/** Spaces used for padding cells, grown when a wider column is encountered */
+	private static volatile String padding = "                                ";
+	
 	private String title;
 	private ArrayList<ArrayList<String>> table;
 	private ArrayList<Align> align;
 	private String seperator;
 	
+	/** Length of the longest cell in each column, maintained as cells are added */
+	private int[] colSizes = new int[8];
+	private int numCols;
+	
+	/** Total length of all cells, used to size the output of {@link #toString()} */
+	private long totalCellLength;
+	
 	/**
 	 * Creates a new table with no title
 	 */
@@ -52,7 +68,18 @@ public class Table {
 	 * @param cell the contents of the new cell
 	 */
 	public void add(String cell) {
-		table.get(table.size() - 1).add(cell);
+		ArrayList<String> row = table.get(table.size() - 1);
+		int col = row.size();
+		row.add(cell);
+		
+		if(col == numCols) {
+			if(numCols == colSizes.length)
+				colSizes = Arrays.copyOf(colSizes, numCols * 2);
+			numCols++;
+		}
+		if(colSizes[col] < cell.length())
+			colSizes[col] = cell.length();
+		totalCellLength += cell.length();
 	}
 	
 	/**
@@ -76,54 +103,91 @@ public class Table {
 	 * Prints the table to standard output
 	 */
 	public void printTable() {
-		System.out.println(this);
+		printTable(System.out);
 	}
 	
-	@Override
-	public String toString() {
-		String table = "";
-		
-		// Get the maximum length string in each column
-		ArrayList<Integer> colSizes = new ArrayList<Integer>();
-		for(List<String> row : this.table) {
-			for(int i = 0; i < row.size(); i++) {
-				if(i == colSizes.size())
-					colSizes.add(row.get(i).length());
-				else if(colSizes.get(i) < row.get(i).length())
-					colSizes.set(i, row.get(i).length());
-			}
+	/**
+	 * Prints the table followed by an empty line to the provided stream without
+	 * building the complete table in memory
+	 * 
+	 * @param out the stream to print to
+	 */
+	public void printTable(PrintStream out) {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+		try {
+			write(writer);
+			writer.write(System.lineSeparator());
+			writer.flush();
+		} catch (IOException e) {
+			throw new ElfException(e);
 		}
-		
+	}
+	
+	/**
+	 * Writes the formatted table row by row to the provided {@link Appendable}
+	 * 
+	 * @param out the destination of the formatted table
+	 * @throws IOException if the destination throws an IOException
+	 */
+	public void write(Appendable out) throws IOException {
 		if(title != null)
-			table += title + "\n";
+			out.append(title).append('\n');
+		
+		String pad = padding(colSizes, numCols);
 		
 		// Print each row
 		for(List<String> row : this.table) {
 			// Print each cell
 			for(int i = 0; i < row.size(); i++) {
-				String result = row.get(i);
-				
-				// Set proper alignment strings
-				String rightAlign = "";
-				String leftAlign = "";
-				switch(align.get(i)) {
-					case RIGHT:
-						rightAlign = " ";
-						break;
-					case LEFT:
-						leftAlign = " ";
-						break;
-				}
+				String cell = row.get(i);
+				int fill = colSizes[i] - cell.length();
 				
 				// Pad the cell so it is the same length as the longest cell
 				// in the column
-				while(result.length() != colSizes.get(i))
-					result = rightAlign + result + leftAlign;
-				table += seperator + result;
+				out.append(seperator);
+				if(i < align.size() && align.get(i) == Align.RIGHT) {
+					out.append(pad, 0, fill);
+					out.append(cell);
+				}
+				else {
+					out.append(cell);
+					out.append(pad, 0, fill);
+				}
 			}
-			table += "\n";
+			out.append('\n');
+		}
+	}
+	
+	@Override
+	public String toString() {
+		long size = (title == null ? 0 : title.length() + 1) + table.size();
+		for(int i = 0; i < numCols; i++)
+			size += (long)(colSizes[i] + seperator.length()) * table.size();
+		
+		StringBuilder sb = new StringBuilder((int)Math.min(Integer.MAX_VALUE - 8, Math.max(size, totalCellLength)));
+		try {
+			write(sb);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+			throw new ElfException(e);
 		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @return Returns a string of spaces at least as long as the widest column
+	 */
+	private static String padding(int[] colSizes, int numCols) {
+		int max = 0;
+		for(int i = 0; i < numCols; i++)
+			max = Math.max(max, colSizes[i]);
 		
-		return table;
+		String pad = padding;
+		if(pad.length() < max) {
+			char[] spaces = new char[Math.max(max, pad.length() * 2)];
+			Arrays.fill(spaces, ' ');
+			padding = pad = new String(spaces);
+		}
+		return pad;
 	}
 }
@@ -0,0 +1,814 @@
+package net.fornwall.jelf.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Decompresses the .xz format with LZMA2 compressed blocks, as used by the MiniDebugInfo in the
+ * .gnu_debugdata section. Concatenated streams and stream padding are supported, as are the
+ * CRC32, CRC64 and SHA-256 integrity checks, which are verified. Other filters than LZMA2, such
+ * as the branch converters, are not supported.
+ *
+ * <p>
+ * The input is read one LZMA2 chunk of at most 64 KiB at a time. When reading from the stream
+ * the decoded data is kept in a window of the dictionary size of the block, which the matches
+ * refer back into. {@link #decompress(InputStream)} keeps all of the output instead.
+ */
+public class XzInputStream extends InputStream {
+	private static final byte[] HEADER_MAGIC = { (byte)0xfd, '7', 'z', 'X', 'Z', 0 };
+	private static final byte[] FOOTER_MAGIC = { 'Y', 'Z' };
+
+	private static final int CHECK_NONE = 0;
+	private static final int CHECK_CRC32 = 1;
+	private static final int CHECK_CRC64 = 4;
+	private static final int CHECK_SHA256 = 10;
+	/** The size of each check type, including the reserved ones */
+	private static final int[] CHECK_SIZES = { 0, 4, 4, 4, 8, 8, 8, 16, 16, 16, 32, 32, 32, 64, 64, 64 };
+
+	private static final int FILTER_LZMA2 = 0x21;
+	private static final long CRC64_POLYNOMIAL = 0xc96c5795d7870f42L;
+	private static final long[] CRC64_TABLE = new long[256];
+
+	static {
+		for(int i = 0; i < 256; i++) {
+			long crc = i;
+			for(int j = 0; j < 8; j++)
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ CRC64_POLYNOMIAL : crc >>> 1;
+			CRC64_TABLE[i] = crc;
+		}
+	}
+
+	private static final int MAX_CHUNK_SIZE = 1 << 16;
+	private static final int MAX_OUTPUT_SIZE = Integer.MAX_VALUE - 8;
+
+	// LZMA model
+	private static final int STATES = 12;
+	private static final int LITERAL_STATES = 7;
+	private static final int POSITION_STATES_MAX = 1 << 4;
+	private static final int DISTANCE_STATES = 4;
+	private static final int DISTANCE_MODEL_START = 4;
+	private static final int DISTANCE_MODEL_END = 14;
+	private static final int ALIGN_BITS = 4;
+	private static final int MATCH_LENGTH_MIN = 2;
+	private static final short PROBABILITY_INIT = 1 << 10;
+
+	private final InputStream in;
+	/** True when all of the output is kept */
+	private final boolean direct;
+
+	private final byte[] input = new byte[8192];
+	private int inputPosition;
+	private int inputLimit;
+	/** The number of bytes consumed before the input buffer */
+	private long inputBase;
+
+	// The decoded data, of which the bytes from readPosition to outputPosition have not been read
+	private byte[] output = new byte[0];
+	private int outputPosition;
+	private int readPosition;
+
+	// State of the current stream
+	private boolean inStream;
+	private int streamCount;
+	private byte[] streamFlags;
+	private int checkType;
+	private long blockCount;
+	private long unpaddedSizes;
+	private long uncompressedSizes;
+
+	// State of the current block
+	private boolean inBlock;
+	private int blockHeaderSize;
+	private long blockStart;
+	private long expectedCompressedSize;
+	private long expectedUncompressedSize;
+	private long blockUncompressedSize;
+	private final CRC32 crc32 = new CRC32();
+	private long crc64;
+	private MessageDigest sha256;
+
+	// LZMA2 state
+	private int dictionarySize;
+	/** The number of bytes decoded since the dictionary was reset */
+	private long position;
+	private boolean needDictionaryReset;
+	private boolean needProperties;
+	private int literalContextBits;
+	private int literalPositionMask;
+	private int positionMask;
+
+	// LZMA state
+	private int state;
+	private final int[] reps = new int[4];
+	private final short[] isMatch = new short[STATES * POSITION_STATES_MAX];
+	private final short[] isRep = new short[STATES];
+	private final short[] isRepG0 = new short[STATES];
+	private final short[] isRepG1 = new short[STATES];
+	private final short[] isRepG2 = new short[STATES];
+	private final short[] isRep0Long = new short[STATES * POSITION_STATES_MAX];
+	private final short[] distanceSlots = new short[DISTANCE_STATES << 6];
+	private final short[][] distanceSpecial = new short[DISTANCE_MODEL_END - DISTANCE_MODEL_START][];
+	private final short[] distanceAlign = new short[1 << ALIGN_BITS];
+	private final short[] literals = new short[0x300 << 4];
+	private final LengthModel matchLength = new LengthModel();
+	private final LengthModel repLength = new LengthModel();
+
+	// Range decoder over the compressed bytes of the current chunk
+	private final byte[] chunk = new byte[MAX_CHUNK_SIZE];
+	private int chunkPosition;
+	private int chunkEnd;
+	private int range;
+	private int code;
+
+	private final byte[] single = new byte[1];
+
+	/** The probabilities of the match lengths */
+	private static final class LengthModel {
+		final short[] choice = new short[2];
+		final short[] low = new short[POSITION_STATES_MAX << 3];
+		final short[] mid = new short[POSITION_STATES_MAX << 3];
+		final short[] high = new short[1 << 8];
+
+		void reset() {
+			Arrays.fill(choice, PROBABILITY_INIT);
+			Arrays.fill(low, PROBABILITY_INIT);
+			Arrays.fill(mid, PROBABILITY_INIT);
+			Arrays.fill(high, PROBABILITY_INIT);
+		}
+	}
+
+	/**
+	 * @param in the compressed data
+	 */
+	public XzInputStream(InputStream in) {
+		this(in, false);
+	}
+
+	private XzInputStream(InputStream in, boolean direct) {
+		this.in = in;
+		this.direct = direct;
+		for(int slot = DISTANCE_MODEL_START; slot < DISTANCE_MODEL_END; slot++)
+			distanceSpecial[slot - DISTANCE_MODEL_START] = new short[1 << ((slot >>> 1) - 1)];
+	}
+
+	/**
+	 * Decompresses all streams of the input.
+	 *
+	 * @param in the compressed data
+	 * @return Returns the decompressed data
+	 * @throws IOException if the data is not valid
+	 */
+	public static byte[] decompress(InputStream in) throws IOException {
+		XzInputStream decoder = new XzInputStream(in, true);
+		while(decoder.decodeChunk())
+			;
+		byte[] result = decoder.output;
+		return result.length == decoder.outputPosition ? result : Arrays.copyOf(result, decoder.outputPosition);
+	}
+
+	@Override
+	public int read() throws IOException {
+		return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		while(readPosition == outputPosition) {
+			if(!decodeChunk())
+				return -1;
+		}
+		int n = Math.min(len, outputPosition - readPosition);
+		System.arraycopy(output, readPosition, b, off, n);
+		readPosition += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Decodes the next LZMA2 chunk, reading the stream and block headers and trailers around it
+	 *
+	 * @return Returns false at the end of the input
+	 */
+	private boolean decodeChunk() throws IOException {
+		while(true) {
+			if(!inStream) {
+				if(!readStreamHeader())
+					return false;
+				continue;
+			}
+			if(!inBlock) {
+				if(!readBlockHeader())
+					readIndexAndFooter();
+				continue;
+			}
+
+			int control = readByte();
+			if(control == 0x00) {
+				finishBlock();
+				continue;
+			}
+
+			int start;
+			if(control == 0x01 || control == 0x02) {
+				if(control == 0x01)
+					resetDictionary();
+				else if(needDictionaryReset)
+					throw new IOException("LZMA2 data does not start with a dictionary reset");
+				int size = (readByte() << 8 | readByte()) + 1;
+				ensureOutput(size);
+				start = outputPosition;
+				readFully(output, outputPosition, size);
+				outputPosition += size;
+				position += size;
+			}
+			else if(control >= 0x80) {
+				if(control >= 0xe0)
+					resetDictionary();
+				else if(needDictionaryReset)
+					throw new IOException("LZMA2 data does not start with a dictionary reset");
+				int size = ((control & 0x1f) << 16 | readByte() << 8 | readByte()) + 1;
+				int packedSize = (readByte() << 8 | readByte()) + 1;
+				if(control >= 0xc0) {
+					setProperties(readByte());
+					needProperties = false;
+				}
+				else if(needProperties) {
+					throw new IOException("LZMA2 chunk is missing the LZMA properties");
+				}
+				else if(control >= 0xa0) {
+					resetState();
+				}
+
+				readFully(chunk, 0, packedSize);
+				chunkEnd = packedSize;
+				if(packedSize < 5 || chunk[0] != 0)
+					throw new IOException("Invalid LZMA2 range coder data");
+				code = (chunk[1] & 0xff) << 24 | (chunk[2] & 0xff) << 16 | (chunk[3] & 0xff) << 8 | chunk[4] & 0xff;
+				range = -1;
+				chunkPosition = 5;
+
+				ensureOutput(size);
+				start = outputPosition;
+				decodeLzma(outputPosition + size);
+				normalize();
+				if(chunkPosition != chunkEnd || code != 0)
+					throw new IOException("LZMA2 chunk does not end with its compressed data");
+			}
+			else {
+				throw new IOException("Invalid LZMA2 control byte 0x" + Integer.toHexString(control));
+			}
+
+			updateCheck(start, outputPosition - start);
+			blockUncompressedSize += outputPosition - start;
+			return true;
+		}
+	}
+
+	/**
+	 * @return Returns false at the end of the input after at least one stream
+	 */
+	private boolean readStreamHeader() throws IOException {
+		int b = read(streamCount > 0);
+		// Streams are followed by padding in multiples of four zero bytes
+		while(b == 0 && streamCount > 0) {
+			for(int i = 0; i < 3; i++) {
+				if(readByte() != 0)
+					throw new IOException("Invalid xz stream padding");
+			}
+			b = read(true);
+		}
+		if(b < 0)
+			return false;
+
+		byte[] header = new byte[12];
+		header[0] = (byte)b;
+		readFully(header, 1, 11);
+		for(int i = 0; i < HEADER_MAGIC.length; i++) {
+			if(header[i] != HEADER_MAGIC[i])
+				throw new IOException("Not xz data");
+		}
+		if(crc32(header, 6, 2) != littleEndianInt(header, 8))
+			throw new IOException("xz stream header is corrupt");
+		if(header[6] != 0 || (header[7] & 0xf0) != 0)
+			throw new IOException("Unsupported xz stream flags");
+
+		streamFlags = Arrays.copyOfRange(header, 6, 8);
+		checkType = header[7];
+		if(checkType == CHECK_SHA256) {
+			try {
+				sha256 = MessageDigest.getInstance("SHA-256");
+			} catch(NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+		}
+		blockCount = 0;
+		unpaddedSizes = 0;
+		uncompressedSizes = 0;
+		inStream = true;
+		streamCount++;
+		return true;
+	}
+
+	/**
+	 * @return Returns false if the index follows instead of a block
+	 */
+	private boolean readBlockHeader() throws IOException {
+		blockStart = consumed();
+		int b = readByte();
+		if(b == 0)
+			return false;
+
+		blockHeaderSize = (b + 1) * 4;
+		byte[] header = new byte[blockHeaderSize];
+		header[0] = (byte)b;
+		readFully(header, 1, blockHeaderSize - 1);
+		if(crc32(header, 0, blockHeaderSize - 4) != littleEndianInt(header, blockHeaderSize - 4))
+			throw new IOException("xz block header is corrupt");
+
+		int flags = header[1] & 0xff;
+		if((flags & 0x3c) != 0)
+			throw new IOException("Unsupported xz block flags");
+		int[] p = { 2 };
+		int end = blockHeaderSize - 4;
+		expectedCompressedSize = (flags & 0x40) != 0 ? readVarint(header, p, end) : -1;
+		expectedUncompressedSize = (flags & 0x80) != 0 ? readVarint(header, p, end) : -1;
+
+		int filterCount = (flags & 3) + 1;
+		for(int i = 0; i < filterCount; i++) {
+			long id = readVarint(header, p, end);
+			long propertiesSize = readVarint(header, p, end);
+			if(id != FILTER_LZMA2 || i != filterCount - 1)
+				throw new IOException("Unsupported xz filter 0x" + Long.toHexString(id));
+			if(propertiesSize != 1 || p[0] >= end)
+				throw new IOException("Invalid LZMA2 filter properties");
+			int bits = header[p[0]++] & 0xff;
+			if(bits > 40)
+				throw new IOException("Invalid LZMA2 dictionary size");
+			long size = bits == 40 ? 0xffffffffL : (2L | (bits & 1)) << (bits / 2 + 11);
+			dictionarySize = (int)Math.min(size, MAX_OUTPUT_SIZE);
+		}
+		while(p[0] < end) {
+			if(header[p[0]++] != 0)
+				throw new IOException("Invalid xz block header padding");
+		}
+
+		blockStart += blockHeaderSize;
+		blockUncompressedSize = 0;
+		crc32.reset();
+		crc64 = -1;
+		if(sha256 != null)
+			sha256.reset();
+		needDictionaryReset = true;
+		needProperties = true;
+		inBlock = true;
+		return true;
+	}
+
+	/**
+	 * Verifies the sizes and the check of the block after its last chunk
+	 */
+	private void finishBlock() throws IOException {
+		long compressedSize = consumed() - blockStart;
+		if((expectedCompressedSize != -1 && expectedCompressedSize != compressedSize)
+				|| (expectedUncompressedSize != -1 && expectedUncompressedSize != blockUncompressedSize))
+			throw new IOException("xz block does not have the size of its header");
+		while(consumed() % 4 != 0) {
+			if(readByte() != 0)
+				throw new IOException("Invalid xz block padding");
+		}
+
+		int checkSize = CHECK_SIZES[checkType];
+		byte[] check = new byte[checkSize];
+		readFully(check, 0, checkSize);
+		boolean valid;
+		switch(checkType) {
+		case CHECK_CRC32:
+			valid = (int)crc32.getValue() == littleEndianInt(check, 0);
+			break;
+		case CHECK_CRC64:
+			valid = ~crc64 == (littleEndianInt(check, 0) & 0xffffffffL | (long)littleEndianInt(check, 4) << 32);
+			break;
+		case CHECK_SHA256:
+			valid = Arrays.equals(sha256.digest(), check);
+			break;
+		default:
+			// No check, or a reserved one which is skipped
+			valid = true;
+			break;
+		}
+		if(!valid)
+			throw new IOException("xz block check failed, the data is corrupt");
+
+		blockCount++;
+		unpaddedSizes += blockHeaderSize + compressedSize + checkSize;
+		uncompressedSizes += blockUncompressedSize;
+		inBlock = false;
+	}
+
+	/**
+	 * Verifies the index against the decoded blocks, and the stream footer, after the index
+	 * indicator has been read
+	 */
+	private void readIndexAndFooter() throws IOException {
+		long indexStart = consumed() - 1;
+		CRC32 indexCrc = new CRC32();
+		indexCrc.update(0);
+		long records = readVarint(indexCrc);
+		long unpadded = 0;
+		long uncompressed = 0;
+		for(long i = 0; i < records; i++) {
+			unpadded += readVarint(indexCrc);
+			uncompressed += readVarint(indexCrc);
+		}
+		if(records != blockCount || unpadded != unpaddedSizes || uncompressed != uncompressedSizes)
+			throw new IOException("xz index does not match the blocks");
+		while(consumed() % 4 != 0) {
+			int b = readByte();
+			if(b != 0)
+				throw new IOException("Invalid xz index padding");
+			indexCrc.update(b);
+		}
+		byte[] crc = new byte[4];
+		readFully(crc, 0, 4);
+		if((int)indexCrc.getValue() != littleEndianInt(crc, 0))
+			throw new IOException("xz index is corrupt");
+		long indexSize = consumed() - indexStart;
+
+		byte[] footer = new byte[12];
+		readFully(footer, 0, 12);
+		if(footer[10] != FOOTER_MAGIC[0] || footer[11] != FOOTER_MAGIC[1])
+			throw new IOException("Invalid xz stream footer");
+		if(crc32(footer, 4, 6) != littleEndianInt(footer, 0))
+			throw new IOException("xz stream footer is corrupt");
+		if(((littleEndianInt(footer, 4) & 0xffffffffL) + 1) * 4 != indexSize
+				|| footer[8] != streamFlags[0] || footer[9] != streamFlags[1])
+			throw new IOException("xz stream footer does not match its header");
+		inStream = false;
+	}
+
+	private void resetDictionary() {
+		needDictionaryReset = false;
+		needProperties = true;
+		position = 0;
+	}
+
+	private void setProperties(int properties) throws IOException {
+		if(properties >= 9 * 5 * 5)
+			throw new IOException("Invalid LZMA properties");
+		int lc = properties % 9;
+		properties /= 9;
+		int lp = properties % 5;
+		int pb = properties / 5;
+		if(lc + lp > 4)
+			throw new IOException("Invalid LZMA2 properties, lc + lp is larger than 4");
+		literalContextBits = lc;
+		literalPositionMask = (1 << lp) - 1;
+		positionMask = (1 << pb) - 1;
+		resetState();
+	}
+
+	private void resetState() {
+		state = 0;
+		Arrays.fill(reps, 0);
+		Arrays.fill(isMatch, PROBABILITY_INIT);
+		Arrays.fill(isRep, PROBABILITY_INIT);
+		Arrays.fill(isRepG0, PROBABILITY_INIT);
+		Arrays.fill(isRepG1, PROBABILITY_INIT);
+		Arrays.fill(isRepG2, PROBABILITY_INIT);
+		Arrays.fill(isRep0Long, PROBABILITY_INIT);
+		Arrays.fill(distanceSlots, PROBABILITY_INIT);
+		for(short[] special : distanceSpecial)
+			Arrays.fill(special, PROBABILITY_INIT);
+		Arrays.fill(distanceAlign, PROBABILITY_INIT);
+		Arrays.fill(literals, PROBABILITY_INIT);
+		matchLength.reset();
+		repLength.reset();
+	}
+
+	/**
+	 * Decodes LZMA data into the output until the end of the chunk
+	 */
+	private void decodeLzma(int end) throws IOException {
+		while(outputPosition < end) {
+			int positionState = (int)position & positionMask;
+			if(decodeBit(isMatch, state * POSITION_STATES_MAX + positionState) == 0) {
+				decodeLiteral();
+				continue;
+			}
+
+			int length;
+			if(decodeBit(isRep, state) == 0) {
+				length = decodeLength(matchLength, positionState);
+				reps[3] = reps[2];
+				reps[2] = reps[1];
+				reps[1] = reps[0];
+				reps[0] = decodeDistance(length);
+				state = state < LITERAL_STATES ? 7 : 10;
+			}
+			else {
+				if(decodeBit(isRepG0, state) == 0) {
+					if(decodeBit(isRep0Long, state * POSITION_STATES_MAX + positionState) == 0) {
+						// A single byte at the last distance
+						state = state < LITERAL_STATES ? 9 : 11;
+						copyMatch(1, end);
+						continue;
+					}
+				}
+				else {
+					int distance;
+					if(decodeBit(isRepG1, state) == 0) {
+						distance = reps[1];
+					}
+					else {
+						if(decodeBit(isRepG2, state) == 0) {
+							distance = reps[2];
+						}
+						else {
+							distance = reps[3];
+							reps[3] = reps[2];
+						}
+						reps[2] = reps[1];
+					}
+					reps[1] = reps[0];
+					reps[0] = distance;
+				}
+				length = decodeLength(repLength, positionState);
+				state = state < LITERAL_STATES ? 8 : 11;
+			}
+			copyMatch(length, end);
+		}
+	}
+
+	private void decodeLiteral() throws IOException {
+		int previous = position > 0 ? output[outputPosition - 1] & 0xff : 0;
+		int base = 0x300 * ((((int)position & literalPositionMask) << literalContextBits)
+				+ (previous >>> (8 - literalContextBits)));
+		int symbol = 1;
+		if(state < LITERAL_STATES) {
+			do {
+				symbol = symbol << 1 | decodeBit(literals, base + symbol);
+			} while(symbol < 0x100);
+		}
+		else {
+			// After a match the byte at the last distance predicts the bits of the literal
+			int matchByte = output[outputPosition - reps[0] - 1] & 0xff;
+			int offset = 0x100;
+			do {
+				matchByte <<= 1;
+				int matchBit = matchByte & offset;
+				int bit = decodeBit(literals, base + offset + matchBit + symbol);
+				symbol = symbol << 1 | bit;
+				offset &= (0 - bit) ^ ~matchBit;
+			} while(symbol < 0x100);
+		}
+		output[outputPosition++] = (byte)symbol;
+		position++;
+		state = state < 4 ? 0 : state < 10 ? state - 3 : state - 6;
+	}
+
+	private int decodeLength(LengthModel model, int positionState) throws IOException {
+		if(decodeBit(model.choice, 0) == 0)
+			return MATCH_LENGTH_MIN + decodeBitTree(model.low, positionState << 3, 3);
+		if(decodeBit(model.choice, 1) == 0)
+			return MATCH_LENGTH_MIN + 8 + decodeBitTree(model.mid, positionState << 3, 3);
+		return MATCH_LENGTH_MIN + 16 + decodeBitTree(model.high, 0, 8);
+	}
+
+	private int decodeDistance(int length) throws IOException {
+		int distanceState = Math.min(length - MATCH_LENGTH_MIN, DISTANCE_STATES - 1);
+		int slot = decodeBitTree(distanceSlots, distanceState << 6, 6);
+		if(slot < DISTANCE_MODEL_START)
+			return slot;
+
+		int footerBits = (slot >>> 1) - 1;
+		int distance = (2 | (slot & 1)) << footerBits;
+		if(slot < DISTANCE_MODEL_END)
+			return distance | decodeReverseBitTree(distanceSpecial[slot - DISTANCE_MODEL_START], footerBits);
+		distance |= decodeDirectBits(footerBits - ALIGN_BITS) << ALIGN_BITS;
+		return distance | decodeReverseBitTree(distanceAlign, ALIGN_BITS);
+	}
+
+	private void copyMatch(int length, int end) throws IOException {
+		if(Integer.toUnsignedLong(reps[0]) >= Math.min(position, dictionarySize))
+			throw new IOException("LZMA match distance " + Integer.toUnsignedLong(reps[0]) + " is outside the dictionary");
+		if(length > end - outputPosition)
+			throw new IOException("LZMA match extends past the end of the LZMA2 chunk");
+		int from = outputPosition - reps[0] - 1;
+		if(reps[0] + 1 >= length) {
+			System.arraycopy(output, from, output, outputPosition, length);
+		}
+		else {
+			// Overlapping matches repeat the bytes being written
+			for(int i = 0; i < length; i++)
+				output[outputPosition + i] = output[from + i];
+		}
+		outputPosition += length;
+		position += length;
+	}
+
+	/**
+	 * Shifts in the next byte when the range gets too small. This happens before decoding each
+	 * bit, and once more after the last bit of a chunk.
+	 */
+	private void normalize() throws IOException {
+		if((range & 0xff000000) == 0) {
+			range <<= 8;
+			code = code << 8 | nextChunkByte();
+		}
+	}
+
+	private int decodeBit(short[] probabilities, int index) throws IOException {
+		normalize();
+		int probability = probabilities[index];
+		int bound = (range >>> 11) * probability;
+		if((code ^ 0x80000000) < (bound ^ 0x80000000)) {
+			range = bound;
+			probabilities[index] = (short)(probability + (((1 << 11) - probability) >>> 5));
+			return 0;
+		}
+		range -= bound;
+		code -= bound;
+		probabilities[index] = (short)(probability - (probability >>> 5));
+		return 1;
+	}
+
+	private int decodeBitTree(short[] probabilities, int offset, int bits) throws IOException {
+		int symbol = 1;
+		for(int i = 0; i < bits; i++)
+			symbol = symbol << 1 | decodeBit(probabilities, offset + symbol);
+		return symbol - (1 << bits);
+	}
+
+	private int decodeReverseBitTree(short[] probabilities, int bits) throws IOException {
+		int symbol = 1;
+		int result = 0;
+		for(int i = 0; i < bits; i++) {
+			int bit = decodeBit(probabilities, symbol);
+			symbol = symbol << 1 | bit;
+			result |= bit << i;
+		}
+		return result;
+	}
+
+	private int decodeDirectBits(int count) throws IOException {
+		int result = 0;
+		for(int i = 0; i < count; i++) {
+			normalize();
+			range >>>= 1;
+			int t = (code - range) >>> 31;
+			code -= range & (t - 1);
+			result = result << 1 | (1 - t);
+		}
+		return result;
+	}
+
+	private int nextChunkByte() throws IOException {
+		if(chunkPosition >= chunkEnd)
+			throw new IOException("LZMA2 chunk is truncated");
+		return chunk[chunkPosition++] & 0xff;
+	}
+
+	/**
+	 * Makes room for decoding more bytes, keeping the dictionary of the stream which later
+	 * matches may refer to
+	 */
+	private void ensureOutput(int length) throws IOException {
+		if((long)outputPosition + length <= output.length)
+			return;
+		if(!direct) {
+			// Everything has been read when a chunk is decoded, only the dictionary is kept
+			int keep = (int)Math.min(Math.min(position, dictionarySize), outputPosition);
+			int start = outputPosition - keep;
+			System.arraycopy(output, start, output, 0, keep);
+			outputPosition -= start;
+			readPosition -= start;
+			if(outputPosition + length <= output.length)
+				return;
+		}
+		long needed = (long)outputPosition + length;
+		if(needed > MAX_OUTPUT_SIZE)
+			throw new IOException("xz data is too large to decompress into memory");
+		output = Arrays.copyOf(output, (int)Math.min(Math.max(needed, 2L * output.length), MAX_OUTPUT_SIZE));
+	}
+
+	private void updateCheck(int offset, int length) {
+		switch(checkType) {
+		case CHECK_CRC32:
+			crc32.update(output, offset, length);
+			break;
+		case CHECK_CRC64:
+			long crc = crc64;
+			for(int i = offset; i < offset + length; i++)
+				crc = CRC64_TABLE[(int)(crc ^ output[i]) & 0xff] ^ (crc >>> 8);
+			crc64 = crc;
+			break;
+		case CHECK_SHA256:
+			sha256.update(output, offset, length);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/** Returns the number of input bytes consumed */
+	private long consumed() {
+		return inputBase + inputPosition;
+	}
+
+	/**
+	 * @param allowEnd true to return -1 at the end of the input instead of failing
+	 */
+	private int read(boolean allowEnd) throws IOException {
+		if(inputPosition == inputLimit && !fill()) {
+			if(allowEnd)
+				return -1;
+			throw new EOFException("xz data is truncated");
+		}
+		return input[inputPosition++] & 0xff;
+	}
+
+	private int readByte() throws IOException {
+		return read(false);
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			if(inputPosition == inputLimit && !fill())
+				throw new EOFException("xz data is truncated");
+			int n = Math.min(len, inputLimit - inputPosition);
+			System.arraycopy(input, inputPosition, b, off, n);
+			inputPosition += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		inputBase += inputLimit;
+		inputPosition = 0;
+		inputLimit = 0;
+		int n = in.read(input, 0, input.length);
+		if(n <= 0)
+			return false;
+		inputLimit = n;
+		return true;
+	}
+
+	/**
+	 * Reads a variable-length integer of the index, which is included in its CRC32
+	 */
+	private long readVarint(CRC32 crc) throws IOException {
+		long value = 0;
+		for(int i = 0; i < 9; i++) {
+			int b = readByte();
+			crc.update(b);
+			value |= (long)(b & 0x7f) << (7 * i);
+			if((b & 0x80) == 0) {
+				if(b == 0 && i > 0)
+					throw new IOException("Invalid xz integer");
+				return value;
+			}
+		}
+		throw new IOException("Invalid xz integer");
+	}
+
+	/**
+	 * Reads a variable-length integer from a header
+	 *
+	 * @param position the position to read from, which is advanced
+	 */
+	private static long readVarint(byte[] b, int[] position, int end) throws IOException {
+		long value = 0;
+		for(int i = 0; i < 9 && position[0] < end; i++) {
+			int c = b[position[0]++] & 0xff;
+			value |= (long)(c & 0x7f) << (7 * i);
+			if((c & 0x80) == 0) {
+				if(c == 0 && i > 0)
+					throw new IOException("Invalid xz integer");
+				return value;
+			}
+		}
+		throw new IOException("Invalid xz integer");
+	}
+
+	private static int crc32(byte[] b, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(b, offset, length);
+		return (int)crc.getValue();
+	}
+
+	private static int littleEndianInt(byte[] b, int offset) {
+		return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8 | (b[offset + 2] & 0xff) << 16 | (b[offset + 3] & 0xff) << 24;
+	}
+}
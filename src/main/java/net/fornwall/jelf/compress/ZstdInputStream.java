@@ -0,0 +1,838 @@
+package net.fornwall.jelf.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decompresses Zstandard data as described by RFC 8878, as used by SHF_COMPRESSED sections of
+ * type ELFCOMPRESS_ZSTD. Concatenated and skippable frames are supported, dictionaries are not,
+ * and the optional content checksum is skipped.
+ *
+ * <p>
+ * The input is read one block of at most 128 KiB at a time. When reading from the stream the
+ * decoded data is kept in a window of the size recorded in the frame header, which the matches
+ * refer back into. {@link #decompress(InputStream, byte[])} decodes directly into the
+ * destination instead, so that the decompressed data is only held once.
+ */
+public class ZstdInputStream extends InputStream {
+	private static final int MAGIC = 0xfd2fb528;
+	private static final int SKIPPABLE_MAGIC = 0x184d2a50;
+	private static final int SKIPPABLE_MASK = 0xfffffff0;
+	private static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+	private static final int RAW_BLOCK = 0;
+	private static final int RLE_BLOCK = 1;
+	private static final int COMPRESSED_BLOCK = 2;
+
+	private static final int RAW_LITERALS = 0;
+	private static final int RLE_LITERALS = 1;
+	private static final int COMPRESSED_LITERALS = 2;
+
+	private static final int PREDEFINED_MODE = 0;
+	private static final int RLE_MODE = 1;
+	private static final int FSE_MODE = 2;
+
+	private static final int[] LITERAL_LENGTH_BASE = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 18,
+			20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536 };
+	private static final int[] LITERAL_LENGTH_BITS = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1,
+			1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+	private static final int[] MATCH_LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20,
+			21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131,
+			259, 515, 1027, 2051, 4099, 8195, 16387, 32771, 65539 };
+	private static final int[] MATCH_LENGTH_BITS = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7,
+			8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+	// The distributions used by the predefined mode of the sequence codes
+	private static final FseTable LITERAL_LENGTH_DEFAULT = new FseTable(new short[] { 4, 3, 2, 2, 2, 2, 2, 2, 2, 2,
+			2, 2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1, -1, -1, -1, -1 }, 36, 6);
+	private static final FseTable MATCH_LENGTH_DEFAULT = new FseTable(new short[] { 1, 4, 3, 2, 2, 2, 2, 2, 2, 1,
+			1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+			-1, -1, -1, -1, -1, -1, -1 }, 53, 6);
+	private static final FseTable OFFSET_DEFAULT = new FseTable(new short[] { 1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1,
+			1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1 }, 29, 5);
+
+	private final InputStream in;
+	/** True when decoding into a destination array which holds all of the output */
+	private final boolean direct;
+
+	// The decoded data, of which the bytes from readPosition to outputPosition have not been read
+	private byte[] output;
+	private int outputPosition;
+	private int readPosition;
+
+	// State of the current frame
+	private boolean inFrame;
+	private boolean checksum;
+	private long windowSize;
+	private int frameStart;
+	private int blockMaximumSize;
+	private final int[] repeatedOffsets = new int[3];
+
+	private final byte[] block = new byte[MAX_BLOCK_SIZE];
+	private final byte[] literals = new byte[MAX_BLOCK_SIZE];
+	private int literalCount;
+
+	// Huffman table of the literals, kept for later blocks which reuse it
+	private final byte[] huffmanSymbols = new byte[1 << 11];
+	private final byte[] huffmanBits = new byte[1 << 11];
+	private int huffmanMaxBits;
+	private final int[] weights = new int[256];
+
+	// The tables of the sequence codes, which later blocks may repeat
+	private final FseTable literalLengthTable = new FseTable(9);
+	private final FseTable offsetTable = new FseTable(8);
+	private final FseTable matchLengthTable = new FseTable(9);
+	private FseTable literalLengths;
+	private FseTable offsets;
+	private FseTable matchLengths;
+
+	private final BackwardBitReader bits = new BackwardBitReader();
+	private final byte[] single = new byte[1];
+
+	/**
+	 * @param in the compressed data
+	 */
+	public ZstdInputStream(InputStream in) {
+		this.in = in;
+		this.direct = false;
+	}
+
+	private ZstdInputStream(InputStream in, byte[] destination) {
+		this.in = in;
+		this.direct = true;
+		this.output = destination;
+	}
+
+	/**
+	 * Decompresses all frames of the input into the destination.
+	 *
+	 * @param in the compressed data
+	 * @param destination the array to decompress into
+	 * @return Returns the number of decompressed bytes
+	 * @throws IOException if the data is not valid or does not fit the destination
+	 */
+	public static int decompress(InputStream in, byte[] destination) throws IOException {
+		ZstdInputStream decoder = new ZstdInputStream(in, destination);
+		while(decoder.decodeBlock())
+			;
+		return decoder.outputPosition;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		while(readPosition == outputPosition) {
+			if(!decodeBlock())
+				return -1;
+		}
+		int n = Math.min(len, outputPosition - readPosition);
+		System.arraycopy(output, readPosition, b, off, n);
+		readPosition += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return outputPosition - readPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Decodes the next block, starting a new frame if needed.
+	 *
+	 * @return Returns false at the end of the input
+	 */
+	private boolean decodeBlock() throws IOException {
+		if(!inFrame && !readFrameHeader())
+			return false;
+
+		int header = readByte() | readByte() << 8 | readByte() << 16;
+		boolean last = (header & 1) != 0;
+		int type = (header >>> 1) & 3;
+		int size = header >>> 3;
+
+		// The size of a compressed block is not known in advance, every copy checks the space left
+		ensureOutput(0);
+		int start = outputPosition;
+		switch(type) {
+		case RAW_BLOCK:
+			checkBlockSize(size);
+			ensureOutput(size);
+			readFully(output, outputPosition, size);
+			outputPosition += size;
+			break;
+		case RLE_BLOCK:
+			checkBlockSize(size);
+			ensureOutput(size);
+			byte value = (byte)readByte();
+			Arrays.fill(output, outputPosition, outputPosition + size, value);
+			outputPosition += size;
+			break;
+		case COMPRESSED_BLOCK:
+			checkBlockSize(size);
+			readFully(block, 0, size);
+			decodeCompressedBlock(size);
+			break;
+		default:
+			throw new IOException("Reserved Zstandard block type");
+		}
+		if(outputPosition - start > blockMaximumSize)
+			throw new IOException("Zstandard block of " + (outputPosition - start) + " bytes is too large");
+
+		if(last) {
+			if(checksum)
+				readFully(block, 0, 4);
+			inFrame = false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Returns false if the input ended before the frame
+	 */
+	private boolean readFrameHeader() throws IOException {
+		int magic;
+		while(true) {
+			int b = in.read();
+			if(b < 0)
+				return false;
+			magic = b | readByte() << 8 | readByte() << 16 | readByte() << 24;
+			if((magic & SKIPPABLE_MASK) != SKIPPABLE_MAGIC)
+				break;
+			long skip = readInt() & 0xffffffffL;
+			while(skip > 0) {
+				int n = (int)Math.min(skip, block.length);
+				readFully(block, 0, n);
+				skip -= n;
+			}
+		}
+		if(magic != MAGIC)
+			throw new IOException("Not Zstandard data, the magic number is 0x" + Integer.toHexString(magic));
+
+		int descriptor = readByte();
+		int contentSizeFlag = descriptor >>> 6;
+		boolean singleSegment = (descriptor & 0x20) != 0;
+		if((descriptor & 0x08) != 0)
+			throw new IOException("Reserved bit set in Zstandard frame header");
+		checksum = (descriptor & 0x04) != 0;
+		int dictionaryIdSize = new int[] { 0, 1, 2, 4 }[descriptor & 3];
+
+		if(!singleSegment) {
+			int w = readByte();
+			long base = 1L << (10 + (w >>> 3));
+			windowSize = base + (base / 8) * (w & 7);
+		}
+		long dictionaryId = 0;
+		for(int i = 0; i < dictionaryIdSize; i++)
+			dictionaryId |= (long)readByte() << (8 * i);
+		if(dictionaryId != 0)
+			throw new IOException("Zstandard dictionaries are not supported");
+
+		int contentSizeBytes = contentSizeFlag == 0 ? (singleSegment ? 1 : 0) : 1 << contentSizeFlag;
+		long contentSize = 0;
+		for(int i = 0; i < contentSizeBytes; i++)
+			contentSize |= (long)readByte() << (8 * i);
+		if(contentSizeBytes == 2)
+			contentSize += 256;
+		if(singleSegment)
+			windowSize = contentSize;
+
+		blockMaximumSize = (int)Math.min(windowSize, MAX_BLOCK_SIZE);
+		repeatedOffsets[0] = 1;
+		repeatedOffsets[1] = 4;
+		repeatedOffsets[2] = 8;
+		huffmanMaxBits = 0;
+		literalLengths = offsets = matchLengths = null;
+
+		if(direct) {
+			frameStart = outputPosition;
+		}
+		else {
+			// All output of the previous frame has been read, the window starts over
+			long capacity = singleSegment ? windowSize : windowSize + Math.max(windowSize, MAX_BLOCK_SIZE);
+			if(capacity > Integer.MAX_VALUE - 16)
+				throw new IOException("Zstandard window of " + windowSize + " bytes is too large");
+			if(output == null || output.length < capacity)
+				output = new byte[(int)capacity];
+			frameStart = outputPosition = readPosition = 0;
+		}
+		inFrame = true;
+		return true;
+	}
+
+	private void checkBlockSize(int size) throws IOException {
+		if(size > blockMaximumSize)
+			throw new IOException("Zstandard block of " + size + " bytes is too large");
+	}
+
+	/**
+	 * Makes room for a block in the window, keeping the data the block may refer to
+	 */
+	private void ensureOutput(int size) throws IOException {
+		if(!direct && output.length - outputPosition < blockMaximumSize && outputPosition - frameStart > windowSize) {
+			int keep = (int)windowSize;
+			System.arraycopy(output, outputPosition - keep, output, 0, keep);
+			frameStart -= outputPosition - keep;
+			outputPosition = readPosition = keep;
+		}
+		if(output.length - outputPosition < size)
+			throw new IOException("Zstandard data is larger than " + (direct ? "expected" : "its window"));
+	}
+
+	private void decodeCompressedBlock(int size) throws IOException {
+		int position = decodeLiterals(size);
+
+		// Sequences section header
+		if(position >= size)
+			throw new IOException("Zstandard block has no sequences section");
+		int count = block[position++] & 0xff;
+		if(count >= 128) {
+			if(count == 255) {
+				count = (block[position] & 0xff) + ((block[position + 1] & 0xff) << 8) + 0x7f00;
+				position += 2;
+			}
+			else {
+				count = ((count - 128) << 8) + (block[position++] & 0xff);
+			}
+		}
+		if(count == 0) {
+			copyLiterals(0, literalCount);
+			return;
+		}
+
+		if(position >= size)
+			throw new IOException("Zstandard sequences section is truncated");
+		int modes = block[position++] & 0xff;
+		if((modes & 3) != 0)
+			throw new IOException("Reserved bits set in Zstandard sequences header");
+		position = selectTable(0, modes >>> 6, position, size);
+		position = selectTable(1, (modes >>> 4) & 3, position, size);
+		position = selectTable(2, (modes >>> 2) & 3, position, size);
+
+		bits.init(block, position, size);
+		int literalLengthState = (int)bits.read(literalLengths.accuracyLog);
+		int offsetState = (int)bits.read(offsets.accuracyLog);
+		int matchLengthState = (int)bits.read(matchLengths.accuracyLog);
+
+		int literalPosition = 0;
+		for(int i = 0; i < count; i++) {
+			int offsetCode = offsets.symbols[offsetState] & 0xff;
+			int literalLengthCode = literalLengths.symbols[literalLengthState] & 0xff;
+			int matchLengthCode = matchLengths.symbols[matchLengthState] & 0xff;
+			if(offsetCode > 31)
+				throw new IOException("Invalid Zstandard offset code " + offsetCode);
+
+			long offsetValue = (1L << offsetCode) + bits.read(offsetCode);
+			int matchLength = MATCH_LENGTH_BASE[matchLengthCode] + (int)bits.read(MATCH_LENGTH_BITS[matchLengthCode]);
+			int literalLength = LITERAL_LENGTH_BASE[literalLengthCode] + (int)bits.read(LITERAL_LENGTH_BITS[literalLengthCode]);
+
+			int offset;
+			if(offsetValue > 3) {
+				offset = (int)(offsetValue - 3);
+				repeatedOffsets[2] = repeatedOffsets[1];
+				repeatedOffsets[1] = repeatedOffsets[0];
+				repeatedOffsets[0] = offset;
+			}
+			else {
+				// One of the three most recent offsets, shifted by one without literals
+				int index = (int)offsetValue - 1 + (literalLength == 0 ? 1 : 0);
+				if(index == 0) {
+					offset = repeatedOffsets[0];
+				}
+				else {
+					offset = index < 3 ? repeatedOffsets[index] : repeatedOffsets[0] - 1;
+					if(index > 1)
+						repeatedOffsets[2] = repeatedOffsets[1];
+					repeatedOffsets[1] = repeatedOffsets[0];
+					repeatedOffsets[0] = offset;
+				}
+			}
+
+			if(i != count - 1) {
+				literalLengthState = literalLengths.next(literalLengthState, bits);
+				matchLengthState = matchLengths.next(matchLengthState, bits);
+				offsetState = offsets.next(offsetState, bits);
+			}
+
+			if(literalLength > literalCount - literalPosition)
+				throw new IOException("Zstandard sequence uses more literals than decoded");
+			copyLiterals(literalPosition, literalLength);
+			literalPosition += literalLength;
+			copyMatch(offset, matchLength);
+		}
+		copyLiterals(literalPosition, literalCount - literalPosition);
+		if(bits.offset != 0)
+			throw new IOException("Zstandard sequences do not end with the bitstream");
+	}
+
+	private void copyLiterals(int from, int length) throws IOException {
+		if(output.length - outputPosition < length)
+			throw new IOException("Zstandard data is larger than " + (direct ? "expected" : "its window"));
+		System.arraycopy(literals, from, output, outputPosition, length);
+		outputPosition += length;
+	}
+
+	private void copyMatch(int offset, int length) throws IOException {
+		if(offset <= 0 || offset > outputPosition - frameStart || offset > windowSize)
+			throw new IOException("Zstandard match offset " + offset + " is outside the window");
+		if(output.length - outputPosition < length)
+			throw new IOException("Zstandard data is larger than " + (direct ? "expected" : "its window"));
+		int from = outputPosition - offset;
+		if(offset >= length) {
+			System.arraycopy(output, from, output, outputPosition, length);
+		}
+		else {
+			// The match overlaps the bytes it produces
+			for(int i = 0; i < length; i++)
+				output[outputPosition + i] = output[from + i];
+		}
+		outputPosition += length;
+	}
+
+	/**
+	 * Decodes the literals section at the start of the block
+	 *
+	 * @return Returns the position in the block after the literals section
+	 */
+	private int decodeLiterals(int size) throws IOException {
+		int b0 = block[0] & 0xff;
+		int type = b0 & 3;
+		int sizeFormat = (b0 >>> 2) & 3;
+
+		if(type == RAW_LITERALS || type == RLE_LITERALS) {
+			int headerSize;
+			switch(sizeFormat) {
+			case 1:
+				headerSize = 2;
+				literalCount = (b0 >>> 4) + ((block[1] & 0xff) << 4);
+				break;
+			case 3:
+				headerSize = 3;
+				literalCount = (b0 >>> 4) + ((block[1] & 0xff) << 4) + ((block[2] & 0xff) << 12);
+				break;
+			default:
+				headerSize = 1;
+				literalCount = b0 >>> 3;
+			}
+			if(literalCount > MAX_BLOCK_SIZE)
+				throw new IOException("Too many Zstandard literals: " + literalCount);
+			if(type == RLE_LITERALS) {
+				if(headerSize >= size)
+					throw new IOException("Zstandard literals section is truncated");
+				Arrays.fill(literals, 0, literalCount, block[headerSize]);
+				return headerSize + 1;
+			}
+			if(headerSize + literalCount > size)
+				throw new IOException("Zstandard literals section is truncated");
+			System.arraycopy(block, headerSize, literals, 0, literalCount);
+			return headerSize + literalCount;
+		}
+
+		// Huffman coded literals in one or four streams, with a new or the previous table
+		int headerSize = sizeFormat < 2 ? 3 : sizeFormat + 2;
+		long header = 0;
+		for(int i = 0; i < headerSize; i++)
+			header |= (long)(block[i] & 0xff) << (8 * i);
+		int sizeBits = headerSize == 3 ? 10 : headerSize == 4 ? 14 : 18;
+		literalCount = (int)(header >>> 4) & ((1 << sizeBits) - 1);
+		int compressedSize = (int)(header >>> (4 + sizeBits)) & ((1 << sizeBits) - 1);
+		int end = headerSize + compressedSize;
+		if(literalCount > MAX_BLOCK_SIZE || end > size)
+			throw new IOException("Invalid Zstandard literals section");
+
+		int position = headerSize;
+		if(type == COMPRESSED_LITERALS)
+			position += readHuffmanTable(position, end);
+		else if(huffmanMaxBits == 0)
+			throw new IOException("Zstandard literals repeat a missing Huffman table");
+
+		if(sizeFormat == 0) {
+			decodeHuffmanStream(position, end, 0, literalCount);
+			return end;
+		}
+
+		if(position + 6 > end)
+			throw new IOException("Zstandard literals section is truncated");
+		int size1 = (block[position] & 0xff) | (block[position + 1] & 0xff) << 8;
+		int size2 = (block[position + 2] & 0xff) | (block[position + 3] & 0xff) << 8;
+		int size3 = (block[position + 4] & 0xff) | (block[position + 5] & 0xff) << 8;
+		position += 6;
+		int perStream = (literalCount + 3) / 4;
+		int lastCount = literalCount - 3 * perStream;
+		if(lastCount < 0 || position + size1 + size2 + size3 > end)
+			throw new IOException("Invalid Zstandard literal streams");
+		decodeHuffmanStream(position, position + size1, 0, perStream);
+		position += size1;
+		decodeHuffmanStream(position, position + size2, perStream, perStream);
+		position += size2;
+		decodeHuffmanStream(position, position + size3, 2 * perStream, perStream);
+		position += size3;
+		decodeHuffmanStream(position, end, 3 * perStream, lastCount);
+		return end;
+	}
+
+	/**
+	 * Reads the weights of the Huffman codes, which are stored directly or FSE compressed, and
+	 * builds the decoding table
+	 *
+	 * @return Returns the size of the table description
+	 */
+	private int readHuffmanTable(int position, int end) throws IOException {
+		int header = block[position] & 0xff;
+		int count;
+		int used;
+		if(header >= 128) {
+			// Four bits per weight
+			count = header - 127;
+			used = 1 + (count + 1) / 2;
+			if(position + used > end)
+				throw new IOException("Zstandard Huffman table is truncated");
+			for(int i = 0; i < count; i++) {
+				int b = block[position + 1 + i / 2] & 0xff;
+				weights[i] = i % 2 == 0 ? b >>> 4 : b & 0xf;
+			}
+		}
+		else {
+			used = 1 + header;
+			if(position + used > end)
+				throw new IOException("Zstandard Huffman table is truncated");
+			FseTable table = new FseTable(6);
+			int start = position + 1 + table.read(block, position + 1, position + used, 255, 6);
+			count = decodeWeights(table, start, position + used);
+		}
+
+		int sum = 0;
+		for(int i = 0; i < count; i++) {
+			if(weights[i] > 11)
+				throw new IOException("Invalid Zstandard Huffman weight " + weights[i]);
+			if(weights[i] > 0)
+				sum += 1 << (weights[i] - 1);
+		}
+		if(sum == 0)
+			throw new IOException("Zstandard Huffman table has no symbols");
+
+		// The weight of the last symbol makes the sum a power of two
+		int maxBits = highestBit(sum) + 1;
+		int left = (1 << maxBits) - sum;
+		if((left & (left - 1)) != 0 || maxBits > 11)
+			throw new IOException("Invalid Zstandard Huffman table");
+		weights[count++] = highestBit(left) + 1;
+
+		// Longer codes get the lower states, each code fills 2^(maxBits - bits) states
+		int[] rankCount = new int[maxBits + 1];
+		for(int i = 0; i < count; i++) {
+			if(weights[i] > 0)
+				rankCount[maxBits + 1 - weights[i]]++;
+		}
+		int[] rankStart = new int[maxBits + 2];
+		for(int b = maxBits; b >= 1; b--)
+			rankStart[b - 1] = rankStart[b] + rankCount[b] * (1 << (maxBits - b));
+		for(int i = 0; i < count; i++) {
+			if(weights[i] == 0)
+				continue;
+			int b = maxBits + 1 - weights[i];
+			int length = 1 << (maxBits - b);
+			Arrays.fill(huffmanSymbols, rankStart[b], rankStart[b] + length, (byte)i);
+			Arrays.fill(huffmanBits, rankStart[b], rankStart[b] + length, (byte)b);
+			rankStart[b] += length;
+		}
+		huffmanMaxBits = maxBits;
+		return used;
+	}
+
+	/**
+	 * Decodes the FSE compressed Huffman weights, which use two interleaved states
+	 *
+	 * @return Returns the number of weights
+	 */
+	private int decodeWeights(FseTable table, int start, int end) throws IOException {
+		bits.init(block, start, end);
+		int state1 = (int)bits.read(table.accuracyLog);
+		int state2 = (int)bits.read(table.accuracyLog);
+		int count = 0;
+		while(true) {
+			if(count > 253)
+				throw new IOException("Too many Zstandard Huffman weights");
+			weights[count++] = table.symbols[state1] & 0xff;
+			state1 = table.next(state1, bits);
+			if(bits.offset < 0) {
+				weights[count++] = table.symbols[state2] & 0xff;
+				return count;
+			}
+			weights[count++] = table.symbols[state2] & 0xff;
+			state2 = table.next(state2, bits);
+			if(bits.offset < 0) {
+				weights[count++] = table.symbols[state1] & 0xff;
+				return count;
+			}
+		}
+	}
+
+	private void decodeHuffmanStream(int start, int end, int to, int count) throws IOException {
+		if(start >= end)
+			throw new IOException("Empty Zstandard literal stream");
+		bits.init(block, start, end);
+		int maxBits = huffmanMaxBits;
+		int mask = (1 << maxBits) - 1;
+		int state = (int)bits.read(maxBits);
+		for(int i = 0; i < count; i++) {
+			literals[to + i] = huffmanSymbols[state];
+			int n = huffmanBits[state];
+			state = ((state << n) | (int)bits.read(n)) & mask;
+		}
+		if(bits.offset != -maxBits)
+			throw new IOException("Zstandard literal stream does not end with the bitstream");
+	}
+
+	/**
+	 * Selects the table of a sequence code for the block according to its mode
+	 *
+	 * @param code 0 for literal lengths, 1 for offsets and 2 for match lengths
+	 * @return Returns the position in the block after the table description
+	 */
+	private int selectTable(int code, int mode, int position, int size) throws IOException {
+		FseTable own = code == 0 ? literalLengthTable : code == 1 ? offsetTable : matchLengthTable;
+		FseTable table;
+		switch(mode) {
+		case PREDEFINED_MODE:
+			table = code == 0 ? LITERAL_LENGTH_DEFAULT : code == 1 ? OFFSET_DEFAULT : MATCH_LENGTH_DEFAULT;
+			break;
+		case RLE_MODE:
+			if(position >= size)
+				throw new IOException("Zstandard sequences section is truncated");
+			own.setSingleSymbol(block[position++]);
+			table = own;
+			break;
+		case FSE_MODE:
+			int maxSymbol = code == 0 ? 35 : code == 1 ? 31 : 52;
+			position += own.read(block, position, size, maxSymbol, code == 1 ? 8 : 9);
+			table = own;
+			break;
+		default:
+			table = code == 0 ? literalLengths : code == 1 ? offsets : matchLengths;
+			if(table == null)
+				throw new IOException("Zstandard sequences repeat a missing table");
+		}
+		if(code == 0)
+			literalLengths = table;
+		else if(code == 1)
+			offsets = table;
+		else
+			matchLengths = table;
+		return position;
+	}
+
+	private static int highestBit(int value) {
+		return 31 - Integer.numberOfLeadingZeros(value);
+	}
+
+	private int readByte() throws IOException {
+		int b = in.read();
+		if(b < 0)
+			throw new EOFException("Zstandard data is truncated");
+		return b;
+	}
+
+	private int readInt() throws IOException {
+		return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			int n = in.read(b, off, len);
+			if(n < 0)
+				throw new EOFException("Zstandard data is truncated");
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * A finite state entropy decoding table. Each state gives a symbol and the number of bits
+	 * to read, which are added to the base of the state to get the next state.
+	 */
+	private static final class FseTable {
+		final byte[] symbols;
+		final byte[] bits;
+		final int[] base;
+		int accuracyLog;
+
+		FseTable(int maxAccuracyLog) {
+			symbols = new byte[1 << maxAccuracyLog];
+			bits = new byte[1 << maxAccuracyLog];
+			base = new int[1 << maxAccuracyLog];
+		}
+
+		FseTable(short[] distribution, int symbolCount, int accuracyLog) {
+			this(accuracyLog);
+			try {
+				build(distribution, symbolCount, accuracyLog);
+			} catch(IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		int next(int state, BackwardBitReader reader) {
+			return base[state] + (int)reader.read(bits[state]);
+		}
+
+		void setSingleSymbol(byte symbol) {
+			accuracyLog = 0;
+			symbols[0] = symbol;
+			bits[0] = 0;
+			base[0] = 0;
+		}
+
+		/**
+		 * Reads a table description, which gives the normalized probability of each symbol
+		 *
+		 * @return Returns the size of the description in bytes
+		 */
+		int read(byte[] src, int start, int end, int maxSymbol, int maxAccuracyLog) throws IOException {
+			long position = 0;
+			int log = (int)readForward(src, start, end, position, 4) + 5;
+			position += 4;
+			if(log > maxAccuracyLog)
+				throw new IOException("Zstandard table accuracy " + log + " is too large");
+
+			short[] distribution = new short[maxSymbol + 1];
+			int remaining = 1 << log;
+			int symbol = 0;
+			while(remaining > 0 && symbol <= maxSymbol) {
+				// Small values use one bit less when they can not be confused with large ones
+				int n = highestBit(remaining + 1) + 1;
+				int value = (int)readForward(src, start, end, position, n);
+				position += n;
+				int lowerMask = (1 << (n - 1)) - 1;
+				int threshold = (1 << n) - 1 - (remaining + 1);
+				if((value & lowerMask) < threshold) {
+					position--;
+					value &= lowerMask;
+				}
+				else if(value > lowerMask) {
+					value -= threshold;
+				}
+				int probability = value - 1;
+				remaining -= Math.abs(probability);
+				distribution[symbol++] = (short)probability;
+
+				if(probability == 0) {
+					// Runs of zero probabilities are counted in two bit repeat flags
+					int repeat;
+					do {
+						repeat = (int)readForward(src, start, end, position, 2);
+						position += 2;
+						for(int i = 0; i < repeat && symbol <= maxSymbol; i++)
+							distribution[symbol++] = 0;
+					} while(repeat == 3);
+				}
+			}
+			int size = (int)((position + 7) / 8);
+			if(remaining != 0 || start + size > end)
+				throw new IOException("Invalid Zstandard table description");
+			build(distribution, symbol, log);
+			return size;
+		}
+
+		private void build(short[] distribution, int symbolCount, int log) throws IOException {
+			int size = 1 << log;
+			int[] next = new int[symbolCount];
+
+			// Symbols with a probability below one get a single state at the end
+			int high = size;
+			for(int s = 0; s < symbolCount; s++) {
+				if(distribution[s] == -1) {
+					symbols[--high] = (byte)s;
+					next[s] = 1;
+				}
+			}
+
+			// Spread the other symbols over the remaining states
+			int step = (size >>> 1) + (size >>> 3) + 3;
+			int mask = size - 1;
+			int position = 0;
+			for(int s = 0; s < symbolCount; s++) {
+				if(distribution[s] <= 0)
+					continue;
+				next[s] = distribution[s];
+				for(int i = 0; i < distribution[s]; i++) {
+					symbols[position] = (byte)s;
+					do {
+						position = (position + step) & mask;
+					} while(position >= high);
+				}
+			}
+			if(position != 0)
+				throw new IOException("Invalid Zstandard probability distribution");
+
+			for(int i = 0; i < size; i++) {
+				int state = next[symbols[i] & 0xff]++;
+				int n = log - highestBit(state);
+				bits[i] = (byte)n;
+				base[i] = (state << n) - size;
+			}
+			accuracyLog = log;
+		}
+
+		private static long readForward(byte[] src, int start, int end, long position, int n) {
+			int first = start + (int)(position >>> 3);
+			long value = 0;
+			for(int i = Math.min(end, first + 8) - 1; i >= first; i--)
+				value = (value << 8) | (src[i] & 0xff);
+			return (value >>> (position & 7)) & ((1L << n) - 1);
+		}
+	}
+
+	/**
+	 * Reads a bitstream from its end towards its start. The last byte is padded with zeroes
+	 * up to a marker bit, and reading past the start gives zeroes.
+	 */
+	private static final class BackwardBitReader {
+		private byte[] src;
+		private int start;
+		private int end;
+		/** The number of unread bits, negative once past the start */
+		long offset;
+
+		void init(byte[] src, int start, int end) throws IOException {
+			if(end <= start || src[end - 1] == 0)
+				throw new IOException("Invalid Zstandard bitstream");
+			this.src = src;
+			this.start = start;
+			this.end = end;
+			offset = (long)(end - start - 1) * 8 + highestBit(src[end - 1] & 0xff);
+		}
+
+		long read(int n) {
+			if(n == 0)
+				return 0;
+			offset -= n;
+			if(offset >= 0)
+				return bitsAt(offset, n);
+			if(offset + n <= 0)
+				return 0;
+			return bitsAt(0, (int)(offset + n)) << -offset;
+		}
+
+		private long bitsAt(long position, int n) {
+			int first = start + (int)(position >>> 3);
+			long value = 0;
+			for(int i = Math.min(end, first + 8) - 1; i >= first; i--)
+				value = (value << 8) | (src[i] & 0xff);
+			return (value >>> (position & 7)) & ((1L << n) - 1);
+		}
+	}
+}
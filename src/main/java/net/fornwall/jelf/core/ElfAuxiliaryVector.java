@@ -0,0 +1,109 @@
+package net.fornwall.jelf.core;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.section.note.ElfNote;
+
+/**
+ * The auxiliary vector the kernel passed to the process, from the NT_AUXV note of a core file.
+ * It holds, among others, the location of the program headers of the executable and the
+ * address of the vDSO.
+ *
+ * <pre>
+ * http://man7.org/linux/man-pages/man3/getauxval.3.html
+ * </pre>
+ */
+public class ElfAuxiliaryVector {
+	/** AT_NULL: End of the vector */
+	public static final int AT_NULL = 0;
+	/** AT_PHDR: Address of the program headers of the executable */
+	public static final int AT_PHDR = 3;
+	/** AT_PHENT: Size of a program header entry */
+	public static final int AT_PHENT = 4;
+	/** AT_PHNUM: Number of program headers */
+	public static final int AT_PHNUM = 5;
+	/** AT_PAGESZ: System page size */
+	public static final int AT_PAGESZ = 6;
+	/** AT_BASE: Base address of the interpreter */
+	public static final int AT_BASE = 7;
+	/** AT_ENTRY: Entry point of the executable */
+	public static final int AT_ENTRY = 9;
+	/** AT_PLATFORM: Address of the string identifying the platform */
+	public static final int AT_PLATFORM = 15;
+	/** AT_HWCAP: Hardware capabilities */
+	public static final int AT_HWCAP = 16;
+	/** AT_RANDOM: Address of 16 random bytes */
+	public static final int AT_RANDOM = 25;
+	/** AT_HWCAP2: Further hardware capabilities */
+	public static final int AT_HWCAP2 = 26;
+	/** AT_EXECFN: Address of the path name used to execute the program */
+	public static final int AT_EXECFN = 31;
+	/** AT_SYSINFO_EHDR: Address of the ELF header of the vDSO */
+	public static final int AT_SYSINFO_EHDR = 33;
+
+	private final long[] types;
+	private final long[] values;
+
+	/**
+	 * @param note the NT_AUXV note
+	 */
+	public ElfAuxiliaryVector(ElfNote note) {
+		int word = note.getFile().getHeader().getBitClass() == ElfHeader.BitClass.ELFCLASS64 ? 8 : 4;
+		ByteBuffer b = note.getDescBuffer();
+		int count = 0;
+		while((count + 1) * 2 * word <= b.limit() && readWord(b, count * 2 * word, word) != AT_NULL)
+			count++;
+
+		types = new long[count];
+		values = new long[count];
+		for(int i = 0; i < count; i++) {
+			types[i] = readWord(b, i * 2 * word, word);
+			values[i] = readWord(b, i * 2 * word + word, word);
+		}
+	}
+
+	private static long readWord(ByteBuffer b, int offset, int word) {
+		return word == 8 ? b.getLong(offset) : b.getInt(offset) & 0xffffffffL;
+	}
+
+	/**
+	 * @return Returns the number of entries, not counting the terminating AT_NULL entry
+	 */
+	public int size() {
+		return types.length;
+	}
+
+	/**
+	 * @param index the index of the entry
+	 * @return Returns the type of the entry, one of the AT_* constants
+	 */
+	public long getEntryType(int index) {
+		if(index < 0 || index >= types.length)
+			throw new ElfException("Auxiliary vector index out of bounds: " + index);
+		return types[index];
+	}
+
+	/**
+	 * @param index the index of the entry
+	 * @return Returns the value of the entry
+	 */
+	public long getEntryValue(int index) {
+		if(index < 0 || index >= values.length)
+			throw new ElfException("Auxiliary vector index out of bounds: " + index);
+		return values[index];
+	}
+
+	/**
+	 * @param type one of the AT_* constants
+	 * @return Returns the value of the first entry of the type, or null if there is none
+	 */
+	public Long get(int type) {
+		for(int i = 0; i < types.length; i++) {
+			if(types[i] == type)
+				return values[i];
+		}
+		return null;
+	}
+}
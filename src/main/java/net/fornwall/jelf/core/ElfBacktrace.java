@@ -0,0 +1,90 @@
+package net.fornwall.jelf.core;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+
+/**
+ * The stack of a thread of a core file, see {@link ElfCoreUnwinder}
+ */
+public class ElfBacktrace {
+	private final ElfCoreThread thread;
+	private final List<ElfStackFrame> frames;
+	private final String stopReason;
+
+	/**
+	 * @param thread the unwound thread
+	 * @param frames the frames, innermost first
+	 * @param stopReason why unwinding stopped
+	 */
+	public ElfBacktrace(ElfCoreThread thread, List<ElfStackFrame> frames, String stopReason) {
+		this.thread = thread;
+		this.frames = Collections.unmodifiableList(frames);
+		this.stopReason = stopReason;
+	}
+
+	/**
+	 * @return Returns the unwound thread
+	 */
+	public ElfCoreThread getThread() {
+		return thread;
+	}
+
+	/**
+	 * @return Returns the frames, innermost first
+	 */
+	public List<ElfStackFrame> getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return Returns why unwinding stopped, for example because the outermost frame was reached
+	 */
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the frames of the thread
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table("Thread " + thread.getPid() + (thread.getSignal() == 0 ? "" : " (signal "
+				+ thread.getSignal() + ")") + ", " + frames.size() + " frames, " + stopReason);
+
+		// Column names
+		t.add("#");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("PC");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("SP");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Function");
+		t.add("Module");
+		t.add("Via");
+		t.add("Source");
+
+		for(ElfStackFrame frame : frames) {
+			t.newRow();
+			t.add(Integer.toString(frame.getIndex()));
+			t.add("0x" + Long.toHexString(frame.getProgramCounter()));
+			t.add("0x" + Long.toHexString(frame.getStackPointer()));
+			t.add(frame.getFunction());
+			t.add(frame.getModulePath() == null ? "" : frame.getModulePath());
+			t.add(frame.getMethodName());
+			t.add(frame.getSourceLine() == null ? "" : frame.getSourceLine().toString());
+		}
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return getFormattedTable().toString();
+	}
+}
@@ -0,0 +1,524 @@
+package net.fornwall.jelf.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMetrics;
+import net.fornwall.jelf.ElfParser;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+import net.fornwall.jelf.section.note.ElfNote;
+import net.fornwall.jelf.section.note.ElfNoteType;
+import net.fornwall.jelf.segment.ElfNoteSegment;
+import net.fornwall.jelf.segment.ElfSegment;
+
+/**
+ * A core dump (ET_CORE). Core files have no section headers: the PT_NOTE segments describe
+ * the threads, the process and the mapped files, and the PT_LOAD segments hold the memory of
+ * the process.
+ *
+ * The notes are decoded on first use. Memory is never read up front: {@link #readMemory(long, int)}
+ * finds the PT_LOAD segment of an address with a binary search over a sorted index and reads
+ * only the requested bytes. Opening a core with {@link #ElfCoreFile(File)} maps the file instead
+ * of reading it, and reads memory beyond the first 2 GB through the file channel, so cores of
+ * any size can be opened.
+ *
+ * <pre>
+ * http://man7.org/linux/man-pages/man5/core.5.html
+ * </pre>
+ */
+public class ElfCoreFile implements Closeable {
+	private final ElfFile file;
+	/** Channel to read memory beyond the end of the parser, or null */
+	private final FileChannel channel;
+	private final int addressSize;
+
+	// PT_LOAD segments sorted by address
+	private final long[] starts;
+	private final long[] ends;
+	private final long[] offsets;
+	/** Number of bytes of each segment present in the file, which may be less than its memory size */
+	private final long[] availableSizes;
+
+	private volatile boolean notesLoaded;
+	private List<ElfCoreThread> threads;
+	private ElfCoreProcessInfo processInfo;
+	private ElfAuxiliaryVector auxiliaryVector;
+	private List<ElfCoreMapping> mappings;
+	private long pageSize;
+
+	/**
+	 * Opens a core file without reading its contents
+	 *
+	 * @param file the core file
+	 * @throws IOException if the file can not be opened
+	 * @throws ElfException if the file is not a core file
+	 */
+	public ElfCoreFile(File file) throws IOException {
+		this(file, ElfMetrics.NOOP);
+	}
+
+	/**
+	 * Opens a core file without reading its contents
+	 *
+	 * @param file the core file
+	 * @param metrics the {@link ElfMetrics} that the parsing of the headers reports to
+	 * @throws IOException if the file can not be opened
+	 * @throws ElfException if the file is not a core file
+	 */
+	public ElfCoreFile(File file, ElfMetrics metrics) throws IOException {
+		this(FileChannel.open(file.toPath(), StandardOpenOption.READ), metrics);
+	}
+
+	private ElfCoreFile(FileChannel channel, ElfMetrics metrics) throws IOException {
+		this(map(channel, metrics), channel);
+	}
+
+	/**
+	 * @param file a parsed core file, memory is read through its parser
+	 * @throws ElfException if the file is not a core file
+	 */
+	public ElfCoreFile(ElfFile file) {
+		this(file, null);
+	}
+
+	private ElfCoreFile(ElfFile file, FileChannel channel) {
+		this.file = file;
+		this.channel = channel;
+		ElfHeader header = file.getHeader();
+		if(header.getFileType() != ElfHeader.FileType.CORE) {
+			closeQuietly(channel);
+			throw new ElfException("Not a core file: " + header.getFileType());
+		}
+		addressSize = header.getBitClass() == ElfHeader.BitClass.ELFCLASS64 ? 8 : 4;
+
+		List<ElfSegment> loads = new ArrayList<ElfSegment>();
+		for(int i = 0; i < file.getProgramHeaders().size(); i++) {
+			ElfSegment s = file.getProgramHeaders().getSegmentByIndex(i);
+			if(s.getType().val == ElfSegment.Type.LOAD && s.getMemSize() != 0)
+				loads.add(s);
+		}
+		Collections.sort(loads, new Comparator<ElfSegment>() {
+			@Override
+			public int compare(ElfSegment a, ElfSegment b) {
+				return Long.compareUnsigned(a.getVirtualAddress(), b.getVirtualAddress());
+			}
+		});
+
+		long fileLength;
+		try {
+			fileLength = channel != null ? channel.size() : file.getParser().getLength();
+		} catch(IOException e) {
+			closeQuietly(channel);
+			throw new ElfException("Could not read core file: " + e.getMessage(), e);
+		}
+		starts = new long[loads.size()];
+		ends = new long[loads.size()];
+		offsets = new long[loads.size()];
+		availableSizes = new long[loads.size()];
+		for(int i = 0; i < loads.size(); i++) {
+			ElfSegment s = loads.get(i);
+			starts[i] = s.getVirtualAddress();
+			ends[i] = s.getVirtualAddress() + s.getMemSize();
+			offsets[i] = s.getOffset();
+			// Truncated cores lack the end of the last segments
+			availableSizes[i] = Math.max(0, Math.min(s.getFileSize(), fileLength - s.getOffset()));
+		}
+	}
+
+	private static ElfFile map(FileChannel channel, ElfMetrics metrics) throws IOException {
+		try {
+			// Mapping only reserves address space, the headers and notes are at the start of the file
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+			return new ElfFile(buffer, 0, metrics);
+		} catch(IOException | RuntimeException e) {
+			closeQuietly(channel);
+			throw e;
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		if(channel == null)
+			return;
+		try {
+			channel.close();
+		} catch(IOException e) {
+			// Nothing to do when already failing
+		}
+	}
+
+	/**
+	 * @return Returns the parsed headers of the core file
+	 */
+	public ElfFile getFile() {
+		return file;
+	}
+
+	private void ensureNotesLoaded() {
+		if(notesLoaded)
+			return;
+		synchronized(this) {
+			if(notesLoaded)
+				return;
+
+			List<ElfCoreThread> t = new ArrayList<ElfCoreThread>();
+			List<ElfCoreMapping> m = new ArrayList<ElfCoreMapping>();
+			for(ElfNoteSegment segment : file.getProgramHeaders().getSegmentsOfType(ElfNoteSegment.class)) {
+				for(int i = 0; i < segment.getNoteCount(); i++) {
+					ElfNote n = segment.getNote(i);
+					if(!ElfNoteType.CORE.equals(n.getNoteName()))
+						continue;
+					switch(n.getNoteType()) {
+					case ElfNoteType.PRSTATUS:
+						t.add(new ElfCoreThread(n));
+						break;
+					case ElfNoteType.PRPSINFO:
+						processInfo = new ElfCoreProcessInfo(n);
+						break;
+					case ElfNoteType.AUXV:
+						auxiliaryVector = new ElfAuxiliaryVector(n);
+						break;
+					case ElfNoteType.FILE:
+						readMappings(n, m);
+						break;
+					}
+				}
+			}
+			Collections.sort(m, new Comparator<ElfCoreMapping>() {
+				@Override
+				public int compare(ElfCoreMapping a, ElfCoreMapping b) {
+					return Long.compareUnsigned(a.getStart(), b.getStart());
+				}
+			});
+			threads = Collections.unmodifiableList(t);
+			mappings = Collections.unmodifiableList(m);
+			notesLoaded = true;
+		}
+	}
+
+	/**
+	 * Decodes an NT_FILE note: the number of mappings and the page size, a start address, end
+	 * address and page offset for each mapping, and then the null terminated path of each mapping
+	 */
+	private void readMappings(ElfNote note, List<ElfCoreMapping> result) {
+		ByteBuffer b = note.getDescBuffer();
+		long count = readWord(b, 0);
+		pageSize = readWord(b, addressSize);
+		long pathOffset = (2 + 3 * count) * addressSize;
+		if(count < 0 || pathOffset > b.limit())
+			throw new ElfException("NT_FILE note with " + count + " mappings exceeds the note");
+
+		int p = (int)pathOffset;
+		for(int i = 0; i < count; i++) {
+			int entry = (2 + 3 * i) * addressSize;
+			int end = p;
+			while(end < b.limit() && b.get(end) != 0)
+				end++;
+			byte[] path = new byte[end - p];
+			for(int j = 0; j < path.length; j++)
+				path[j] = b.get(p + j);
+			p = end + 1;
+			result.add(new ElfCoreMapping(readWord(b, entry), readWord(b, entry + addressSize),
+					readWord(b, entry + 2 * addressSize) * pageSize, new String(path)));
+		}
+	}
+
+	private long readWord(ByteBuffer b, int offset) {
+		return addressSize == 8 ? b.getLong(offset) : b.getInt(offset) & 0xffffffffL;
+	}
+
+	/**
+	 * @return Returns the threads of the process, the thread which received the fatal signal first
+	 */
+	public List<ElfCoreThread> getThreads() {
+		ensureNotesLoaded();
+		return threads;
+	}
+
+	/**
+	 * @return Returns the information about the process, or null if the core file has no NT_PRPSINFO note
+	 */
+	public ElfCoreProcessInfo getProcessInfo() {
+		ensureNotesLoaded();
+		return processInfo;
+	}
+
+	/**
+	 * @return Returns the auxiliary vector of the process, or null if the core file has no NT_AUXV note
+	 */
+	public ElfAuxiliaryVector getAuxiliaryVector() {
+		ensureNotesLoaded();
+		return auxiliaryVector;
+	}
+
+	/**
+	 * @return Returns the files mapped into the process sorted by address, empty if the core
+	 * 	file has no NT_FILE note
+	 */
+	public List<ElfCoreMapping> getMappings() {
+		ensureNotesLoaded();
+		return mappings;
+	}
+
+	/**
+	 * @param address an address in the process
+	 * @return Returns the file mapping holding the address, or null if no file is mapped there
+	 */
+	public ElfCoreMapping findMapping(long address) {
+		List<ElfCoreMapping> m = getMappings();
+		int low = 0;
+		int high = m.size() - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			ElfCoreMapping mapping = m.get(mid);
+			if(mapping.contains(address))
+				return mapping;
+			if(Long.compareUnsigned(address, mapping.getStart()) < 0)
+				high = mid - 1;
+			else
+				low = mid + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * @return Returns the page size of the NT_FILE note, or 0 if the core file has none
+	 */
+	public long getPageSize() {
+		ensureNotesLoaded();
+		return pageSize;
+	}
+
+	/**
+	 * @return Returns the size of an address of the process in bytes
+	 */
+	public int getAddressSize() {
+		return addressSize;
+	}
+
+	/**
+	 * @return Returns the number of PT_LOAD segments holding memory of the process
+	 */
+	public int getMemorySegmentCount() {
+		return starts.length;
+	}
+
+	/**
+	 * @return Returns the index of the PT_LOAD segment holding the address, or -1
+	 */
+	private int findSegment(long address) {
+		int low = 0;
+		int high = starts.length - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(starts[mid], address) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		if(found < 0 || Long.compareUnsigned(address - starts[found], ends[found] - starts[found]) >= 0)
+			return -1;
+		return found;
+	}
+
+	/**
+	 * Memory of a segment which is not present in the file was either not dumped, as is usual
+	 * for read-only file mappings, or cut off by a size limit. It is unavailable rather than zero.
+	 *
+	 * @param address the address of the first byte
+	 * @param length the number of bytes
+	 * @return Returns true if all bytes of the range are present in the core file
+	 */
+	public boolean isAvailable(long address, long length) {
+		long done = 0;
+		while(done < length) {
+			int i = findSegment(address + done);
+			if(i < 0)
+				return false;
+			long inSegment = address + done - starts[i];
+			if(inSegment >= availableSizes[i])
+				return false;
+			done += availableSizes[i] - inSegment;
+		}
+		return true;
+	}
+
+	/**
+	 * @param address an address in the process
+	 * @return Returns the number of bytes present in the core file from the address up to the end
+	 * 	of its segment, or 0 if the address is not available
+	 */
+	public long getAvailableLength(long address) {
+		int i = findSegment(address);
+		if(i < 0)
+			return 0;
+		return Math.max(0, availableSizes[i] - (address - starts[i]));
+	}
+
+	/**
+	 * @param address the address of the first byte
+	 * @param length the number of bytes to read
+	 * @return Returns the memory of the process at the address
+	 * @throws ElfException if part of the range is not present in the core file, see {@link #isAvailable(long, long)}
+	 */
+	public byte[] readMemory(long address, int length) {
+		byte[] result = new byte[length];
+		int done = 0;
+		while(done < length) {
+			long current = address + done;
+			int i = findSegment(current);
+			if(i < 0)
+				throw new ElfException("Address 0x" + Long.toHexString(current) + " is not mapped in the core file");
+			long inSegment = current - starts[i];
+			if(inSegment >= availableSizes[i])
+				throw new ElfException("Memory at 0x" + Long.toHexString(current) + " is not present in the core file");
+			int count = (int)Math.min(length - done, availableSizes[i] - inSegment);
+			readFile(offsets[i] + inSegment, result, done, count);
+			done += count;
+		}
+		return result;
+	}
+
+	/**
+	 * @param address the address of the pointer
+	 * @return Returns the pointer sized value at the address in the byte order of the process
+	 * @throws ElfException if the memory is not present in the core file
+	 */
+	public long readPointer(long address) {
+		return readValue(address, addressSize);
+	}
+
+	/**
+	 * @param address the address of the value
+	 * @param size the size of the value, 1 to 8 bytes
+	 * @return Returns the unsigned value at the address in the byte order of the process
+	 * @throws ElfException if the memory is not present in the core file
+	 */
+	public long readValue(long address, int size) {
+		if(size < 1 || size > 8)
+			throw new ElfException("Invalid value size: " + size);
+		byte[] bytes = readMemory(address, size);
+		boolean littleEndian = file.getHeader().getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB;
+		long value = 0;
+		for(int i = 0; i < size; i++)
+			value = (value << 8) | (bytes[littleEndian ? size - 1 - i : i] & 0xff);
+		return value;
+	}
+
+	private void readFile(long offset, byte[] destination, int destinationOffset, int length) {
+		ElfParser parser = file.getParser();
+		if(offset + length <= parser.getLength()) {
+			parser.getByteBuffer(offset, length).get(destination, destinationOffset, length);
+			return;
+		}
+		if(channel == null)
+			throw new ElfException("Trying to read outside file");
+
+		ByteBuffer target = ByteBuffer.wrap(destination, destinationOffset, length);
+		try {
+			while(target.hasRemaining()) {
+				// Positional reads leave the channel position alone, so threads can read concurrently
+				if(channel.read(target, offset + target.position() - destinationOffset) < 0)
+					throw new ElfException("Core file ends before offset 0x" + Long.toHexString(offset + length));
+			}
+		} catch(IOException e) {
+			throw new ElfException("Could not read core file: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Closes the file channel of a core file opened with {@link #ElfCoreFile(File)}
+	 */
+	@Override
+	public void close() throws IOException {
+		if(channel != null)
+			channel.close();
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the threads of the process
+	 */
+	public Table getFormattedTable() {
+		ElfCoreProcessInfo info = getProcessInfo();
+		String title = "Core file with " + getThreads().size() + " threads";
+		if(info != null)
+			title += " of process " + info.getPid() + " (" + info.getFileName() + "): " + info.getArguments();
+		Table t = new Table(title);
+
+		// Column names
+		t.add("Thread");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Signal");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("PC");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("SP");
+		t.setColAlign(Align.RIGHT);
+
+		for(ElfCoreThread thread : getThreads()) {
+			t.newRow();
+			t.add(Integer.toString(thread.getPid()));
+			t.add(Integer.toString(thread.getSignal()));
+			t.add("0x" + Long.toHexString(thread.getProgramCounter()));
+			t.add("0x" + Long.toHexString(thread.getStackPointer()));
+		}
+		return t;
+	}
+
+	/**
+	 * @return Returns a {@link Table} object that contains the mapped files, like readelf --notes
+	 * 	shows the NT_FILE note
+	 */
+	public Table getMappingTable() {
+		Table t = new Table("Mapped files, page size " + getPageSize() + ":");
+
+		// Column names
+		t.add("Start");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("End");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Offset");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Path");
+		t.setColAlign(Align.LEFT);
+
+		for(ElfCoreMapping m : getMappings()) {
+			t.newRow();
+			t.add("0x" + Long.toHexString(m.getStart()));
+			t.add("0x" + Long.toHexString(m.getEnd()));
+			t.add("0x" + Long.toHexString(m.getFileOffset()));
+			t.add(m.getPath());
+		}
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
@@ -0,0 +1,66 @@
+package net.fornwall.jelf.core;
+
+/**
+ * A file mapped into the process of a core file, from its NT_FILE note
+ */
+public class ElfCoreMapping {
+	private final long start;
+	private final long end;
+	private final long fileOffset;
+	private final String path;
+
+	/**
+	 * @param start the address of the first byte of the mapping
+	 * @param end the address following the last byte of the mapping
+	 * @param fileOffset the offset in the file of the first byte of the mapping
+	 * @param path the path of the file
+	 */
+	public ElfCoreMapping(long start, long end, long fileOffset, String path) {
+		this.start = start;
+		this.end = end;
+		this.fileOffset = fileOffset;
+		this.path = path;
+	}
+
+	/**
+	 * @return Returns the address of the first byte of the mapping
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return Returns the address following the last byte of the mapping
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return Returns the offset in the file of the first byte of the mapping
+	 */
+	public long getFileOffset() {
+		return fileOffset;
+	}
+
+	/**
+	 * @return Returns the path of the mapped file at the time of the dump
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @param address an address in the process
+	 * @return Returns true if the address is part of this mapping
+	 */
+	public boolean contains(long address) {
+		return Long.compareUnsigned(address - start, end - start) < 0;
+	}
+
+	@Override
+	public String toString() {
+		return "0x" + Long.toHexString(start) + "-0x" + Long.toHexString(end) + " @0x" + Long.toHexString(fileOffset)
+				+ " " + path;
+	}
+}
@@ -0,0 +1,128 @@
+package net.fornwall.jelf.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.segment.ElfSegment;
+
+/**
+ * An executable or shared library mapped into the process of a core file. The module is
+ * parsed once and shared by all threads and frames, see {@link ElfCoreUnwinder}. A module
+ * which could not be loaded is kept with its error, so that it is not retried for every frame.
+ */
+public class ElfCoreModule {
+	private final String path;
+	private final ElfFile file;
+	private final String error;
+
+	// PT_LOAD segments of the module, to translate file offsets into addresses of the module
+	private final long[] offsets;
+	private final long[] sizes;
+	private final long[] addresses;
+
+	/**
+	 * @param path the path of the module in the process
+	 * @param file the parsed module
+	 */
+	public ElfCoreModule(String path, ElfFile file) {
+		this.path = path;
+		this.file = file;
+		this.error = null;
+
+		int count = 0;
+		for(int i = 0; i < file.getProgramHeaders().size(); i++) {
+			if(file.getProgramHeaders().getSegmentByIndex(i).getType().val == ElfSegment.Type.LOAD)
+				count++;
+		}
+		offsets = new long[count];
+		sizes = new long[count];
+		addresses = new long[count];
+		count = 0;
+		for(int i = 0; i < file.getProgramHeaders().size(); i++) {
+			ElfSegment s = file.getProgramHeaders().getSegmentByIndex(i);
+			if(s.getType().val != ElfSegment.Type.LOAD)
+				continue;
+			offsets[count] = s.getOffset();
+			sizes[count] = s.getFileSize();
+			addresses[count] = s.getVirtualAddress();
+			count++;
+		}
+	}
+
+	private ElfCoreModule(String path, String error) {
+		this.path = path;
+		this.file = null;
+		this.error = error;
+		offsets = sizes = addresses = new long[0];
+	}
+
+	/**
+	 * Maps and parses a module file. Failures are recorded in the returned module instead of
+	 * thrown, see {@link #getError()}.
+	 *
+	 * @param path the path of the module in the process
+	 * @param location the file to read, which may differ from the path when a sysroot is used
+	 * @return Returns the module
+	 */
+	public static ElfCoreModule load(String path, File location) {
+		try {
+			return new ElfCoreModule(path, ElfFile.map(location));
+		} catch(IOException | ElfException e) {
+			return failed(path, location + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param path the path of the module in the process
+	 * @param error the reason the module could not be loaded
+	 * @return Returns a module without a file
+	 */
+	public static ElfCoreModule failed(String path, String error) {
+		return new ElfCoreModule(path, error);
+	}
+
+	/**
+	 * @return Returns the path of the module in the process
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Returns the parsed module, or null if it could not be loaded
+	 */
+	public ElfFile getFile() {
+		return file;
+	}
+
+	/**
+	 * @return Returns the reason the module could not be loaded, or null if it was loaded
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Translates an address of the process into an address of the module, which is what the
+	 * symbols and call frame information of the module refer to.
+	 *
+	 * @param mapping the mapping of the module containing the address
+	 * @param address an address in the process
+	 * @return Returns the address in the module, or -1 if the address is not in a loaded segment
+	 */
+	public long toModuleAddress(ElfCoreMapping mapping, long address) {
+		long fileOffset = address - mapping.getStart() + mapping.getFileOffset();
+		for(int i = 0; i < offsets.length; i++) {
+			if(Long.compareUnsigned(fileOffset - offsets[i], sizes[i]) < 0)
+				return fileOffset - offsets[i] + addresses[i];
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return path + (error == null ? "" : " (" + error + ")");
+	}
+}
@@ -0,0 +1,171 @@
+package net.fornwall.jelf.core;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.section.note.ElfNote;
+
+/**
+ * The process of a core file, decoded from its NT_PRPSINFO note (struct elf_prpsinfo)
+ */
+public class ElfCoreProcessInfo {
+	private final char state;
+	private final boolean zombie;
+	private final int nice;
+	private final long flags;
+	private final int uid;
+	private final int gid;
+	private final int pid;
+	private final int parentPid;
+	private final int processGroup;
+	private final int session;
+	private final String fileName;
+	private final String arguments;
+
+	/**
+	 * @param note the NT_PRPSINFO note
+	 * @throws ElfException if the note has an unknown size
+	 */
+	public ElfCoreProcessInfo(ElfNote note) {
+		ElfHeader header = note.getFile().getHeader();
+		ByteBuffer b = note.getDescBuffer();
+
+		// char pr_state, pr_sname, pr_zomb, pr_nice, then the unsigned long pr_flag
+		int p;
+		boolean shortIds;
+		if(header.getBitClass() == ElfHeader.BitClass.ELFCLASS64) {
+			if(b.limit() != 136)
+				throw new ElfException("NT_PRPSINFO note of " + b.limit() + " bytes has an unknown layout");
+			flags = b.getLong(8);
+			p = 16;
+			shortIds = false;
+		}
+		else {
+			// i386 and ARM use 16 bit user and group ids
+			if(b.limit() != 124 && b.limit() != 128)
+				throw new ElfException("NT_PRPSINFO note of " + b.limit() + " bytes has an unknown layout");
+			flags = b.getInt(4) & 0xffffffffL;
+			p = 8;
+			shortIds = b.limit() == 124;
+		}
+		state = (char)(b.get(1) & 0xff);
+		zombie = b.get(2) != 0;
+		nice = b.get(3);
+		if(shortIds) {
+			uid = b.getShort(p) & 0xffff;
+			gid = b.getShort(p + 2) & 0xffff;
+			p += 4;
+		}
+		else {
+			uid = b.getInt(p);
+			gid = b.getInt(p + 4);
+			p += 8;
+		}
+		pid = b.getInt(p);
+		parentPid = b.getInt(p + 4);
+		processGroup = b.getInt(p + 8);
+		session = b.getInt(p + 12);
+		fileName = readString(b, p + 16, 16);
+		arguments = readString(b, p + 32, 80);
+	}
+
+	private static String readString(ByteBuffer b, int offset, int size) {
+		int length = 0;
+		while(length < size && b.get(offset + length) != 0)
+			length++;
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+			bytes[i] = b.get(offset + i);
+		return new String(bytes);
+	}
+
+	/**
+	 * @return Returns the state of the process, like the state column of ps, for example 'R' or 'S'
+	 */
+	public char getState() {
+		return state;
+	}
+
+	/**
+	 * @return Returns true if the process is a zombie
+	 */
+	public boolean isZombie() {
+		return zombie;
+	}
+
+	/**
+	 * @return Returns the nice value of the process
+	 */
+	public int getNice() {
+		return nice;
+	}
+
+	/**
+	 * @return Returns the flags of the process
+	 */
+	public long getFlags() {
+		return flags;
+	}
+
+	/**
+	 * @return Returns the id of the user running the process
+	 */
+	public int getUid() {
+		return uid;
+	}
+
+	/**
+	 * @return Returns the id of the group running the process
+	 */
+	public int getGid() {
+		return gid;
+	}
+
+	/**
+	 * @return Returns the id of the process
+	 */
+	public int getPid() {
+		return pid;
+	}
+
+	/**
+	 * @return Returns the id of the parent process
+	 */
+	public int getParentPid() {
+		return parentPid;
+	}
+
+	/**
+	 * @return Returns the id of the process group
+	 */
+	public int getProcessGroup() {
+		return processGroup;
+	}
+
+	/**
+	 * @return Returns the id of the session
+	 */
+	public int getSession() {
+		return session;
+	}
+
+	/**
+	 * @return Returns the file name of the executable, truncated to 15 characters
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return Returns the command line of the process, truncated to 79 characters
+	 */
+	public String getArguments() {
+		return arguments;
+	}
+
+	@Override
+	public String toString() {
+		return "Process " + pid + " (" + fileName + "): " + arguments;
+	}
+}
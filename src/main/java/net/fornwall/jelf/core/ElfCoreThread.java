@@ -0,0 +1,255 @@
+package net.fornwall.jelf.core;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.section.note.ElfNote;
+
+/**
+ * A thread of a core file, decoded from its NT_PRSTATUS note (struct elf_prstatus). The
+ * general purpose registers are kept in the order of the kernel's user_regs_struct of the
+ * machine.
+ *
+ * <pre>
+ * https://github.com/torvalds/linux/blob/master/include/linux/elfcore.h
+ * </pre>
+ */
+public class ElfCoreThread {
+	private static final String[] X64_REGISTERS = { "r15", "r14", "r13", "r12", "rbp", "rbx", "r11", "r10", "r9",
+			"r8", "rax", "rcx", "rdx", "rsi", "rdi", "orig_rax", "rip", "cs", "eflags", "rsp", "ss", "fs_base",
+			"gs_base", "ds", "es", "fs", "gs" };
+	private static final String[] I386_REGISTERS = { "ebx", "ecx", "edx", "esi", "edi", "ebp", "eax", "ds", "es",
+			"fs", "gs", "orig_eax", "eip", "cs", "eflags", "esp", "ss" };
+	private static final String[] ARM_REGISTERS = { "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7", "r8", "r9",
+			"r10", "r11", "r12", "sp", "lr", "pc", "cpsr", "orig_r0" };
+	private static final String[] AARCH64_REGISTERS = new String[34];
+	private static final String[] RISCV_REGISTERS = { "pc", "ra", "sp", "gp", "tp", "t0", "t1", "t2", "s0", "s1",
+			"a0", "a1", "a2", "a3", "a4", "a5", "a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7", "s8", "s9", "s10",
+			"s11", "t3", "t4", "t5", "t6" };
+	static {
+		for(int i = 0; i < 31; i++)
+			AARCH64_REGISTERS[i] = "x" + i;
+		AARCH64_REGISTERS[31] = "sp";
+		AARCH64_REGISTERS[32] = "pc";
+		AARCH64_REGISTERS[33] = "pstate";
+	}
+
+	private final ElfHeader.Machine machine;
+	private final int signal;
+	private final long pendingSignals;
+	private final long heldSignals;
+	private final int pid;
+	private final int parentPid;
+	private final int processGroup;
+	private final int session;
+	private final long userTime;
+	private final long systemTime;
+	private final long[] registers;
+	private final boolean floatingPointValid;
+
+	/**
+	 * @param note the NT_PRSTATUS note
+	 * @throws ElfException if the note is too small for the registers of the machine
+	 */
+	public ElfCoreThread(ElfNote note) {
+		ElfHeader header = note.getFile().getHeader();
+		machine = header.getMachine();
+		boolean wide = header.getBitClass() == ElfHeader.BitClass.ELFCLASS64;
+		int word = wide ? 8 : 4;
+		ByteBuffer b = note.getDescBuffer();
+
+		// struct elf_siginfo pr_info (3 ints), short pr_cursig and padding to the next word
+		int registerOffset = wide ? 112 : 72;
+		if(b.limit() < registerOffset + 4)
+			throw new ElfException("NT_PRSTATUS note of " + b.limit() + " bytes is too small");
+		signal = b.getShort(12);
+		pendingSignals = readWord(b, 16, word);
+		heldSignals = readWord(b, 16 + word, word);
+		int p = 16 + 2 * word;
+		pid = b.getInt(p);
+		parentPid = b.getInt(p + 4);
+		processGroup = b.getInt(p + 8);
+		session = b.getInt(p + 12);
+		// struct timeval pr_utime and pr_stime, the times of children are skipped
+		p += 16;
+		userTime = readWord(b, p, word) * 1000000 + readWord(b, p + word, word);
+		systemTime = readWord(b, p + 2 * word, word) * 1000000 + readWord(b, p + 3 * word, word);
+
+		// The registers are followed by int pr_fpvalid and padding
+		int count = (b.limit() - registerOffset - 4) / word;
+		registers = new long[count];
+		for(int i = 0; i < count; i++)
+			registers[i] = readWord(b, registerOffset + i * word, word);
+		floatingPointValid = b.getInt(registerOffset + count * word) != 0;
+	}
+
+	private static long readWord(ByteBuffer b, int offset, int word) {
+		return word == 8 ? b.getLong(offset) : b.getInt(offset) & 0xffffffffL;
+	}
+
+	/**
+	 * @return Returns the signal which stopped the thread, 0 for threads which did not receive it
+	 */
+	public int getSignal() {
+		return signal;
+	}
+
+	/**
+	 * @return Returns the mask of pending signals
+	 */
+	public long getPendingSignals() {
+		return pendingSignals;
+	}
+
+	/**
+	 * @return Returns the mask of blocked signals
+	 */
+	public long getHeldSignals() {
+		return heldSignals;
+	}
+
+	/**
+	 * @return Returns the id of the thread, which is the process id for the main thread
+	 */
+	public int getPid() {
+		return pid;
+	}
+
+	/**
+	 * @return Returns the id of the parent process
+	 */
+	public int getParentPid() {
+		return parentPid;
+	}
+
+	/**
+	 * @return Returns the id of the process group
+	 */
+	public int getProcessGroup() {
+		return processGroup;
+	}
+
+	/**
+	 * @return Returns the id of the session
+	 */
+	public int getSession() {
+		return session;
+	}
+
+	/**
+	 * @return Returns the user time of the thread in microseconds
+	 */
+	public long getUserTime() {
+		return userTime;
+	}
+
+	/**
+	 * @return Returns the system time of the thread in microseconds
+	 */
+	public long getSystemTime() {
+		return systemTime;
+	}
+
+	/**
+	 * @return Returns true if the core file holds the floating point registers of the thread
+	 */
+	public boolean isFloatingPointValid() {
+		return floatingPointValid;
+	}
+
+	/**
+	 * @return Returns the number of general purpose registers
+	 */
+	public int getRegisterCount() {
+		return registers.length;
+	}
+
+	/**
+	 * @param index the index of the register in the user_regs_struct of the machine
+	 * @return Returns the value of the register
+	 */
+	public long getRegister(int index) {
+		if(index < 0 || index >= registers.length)
+			throw new ElfException("Register index out of bounds: " + index);
+		return registers[index];
+	}
+
+	/**
+	 * @param index the index of the register in the user_regs_struct of the machine
+	 * @return Returns the name of the register, or its index for unknown machines
+	 */
+	public String getRegisterName(int index) {
+		String[] names = registerNames(machine);
+		if(names != null && index >= 0 && index < names.length)
+			return names[index];
+		return Integer.toString(index);
+	}
+
+	/**
+	 * @return Returns the program counter of the thread
+	 * @throws ElfException if the register layout of the machine is unknown
+	 */
+	public long getProgramCounter() {
+		switch(machine) {
+		case X64:
+			return getRegister(16);
+		case I386:
+			return getRegister(12);
+		case ARM:
+			return getRegister(15);
+		case AARCH64:
+			return getRegister(32);
+		case RISCV:
+			return getRegister(0);
+		default:
+			throw new ElfException("Unknown register layout of machine " + machine);
+		}
+	}
+
+	/**
+	 * @return Returns the stack pointer of the thread
+	 * @throws ElfException if the register layout of the machine is unknown
+	 */
+	public long getStackPointer() {
+		switch(machine) {
+		case X64:
+			return getRegister(19);
+		case I386:
+			return getRegister(15);
+		case ARM:
+			return getRegister(13);
+		case AARCH64:
+			return getRegister(31);
+		case RISCV:
+			return getRegister(2);
+		default:
+			throw new ElfException("Unknown register layout of machine " + machine);
+		}
+	}
+
+	private static String[] registerNames(ElfHeader.Machine machine) {
+		switch(machine) {
+		case X64:
+			return X64_REGISTERS;
+		case I386:
+			return I386_REGISTERS;
+		case ARM:
+			return ARM_REGISTERS;
+		case AARCH64:
+			return AARCH64_REGISTERS;
+		case RISCV:
+			return RISCV_REGISTERS;
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Thread ").append(pid);
+		if(signal != 0)
+			sb.append(" (signal ").append(signal).append(')');
+		return sb.toString();
+	}
+}
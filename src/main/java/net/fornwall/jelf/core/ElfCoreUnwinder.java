@@ -0,0 +1,558 @@
+package net.fornwall.jelf.core;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.fornwall.jelf.ElfDebugFileStore;
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.dwarf.DwarfExpression;
+import net.fornwall.jelf.dwarf.DwarfFde;
+import net.fornwall.jelf.dwarf.DwarfFrameRow;
+import net.fornwall.jelf.dwarf.DwarfRegisterRule;
+import net.fornwall.jelf.dwarf.DwarfRegisters;
+import net.fornwall.jelf.dwarf.DwarfSourceLine;
+import net.fornwall.jelf.section.ElfArmExidxSection;
+import net.fornwall.jelf.section.symbol.ElfSymbolIndex;
+import net.fornwall.jelf.section.unwind.ElfArmUnwindState;
+
+/**
+ * Unwinds the stacks of the threads of a core file into symbolized backtraces. The registers
+ * of each thread come from its NT_PRSTATUS note and the stack from the PT_LOAD segments. The
+ * executable and shared libraries are found through the NT_FILE note and parsed once per path,
+ * and the vDSO is parsed from the memory of the core. Frames are unwound with the call frame
+ * information of .eh_frame and .debug_frame, falling back to the ARM exception index table and
+ * then to frame pointers.
+ *
+ * Modules are shared by all threads, so {@link #unwindAllThreads(int)} unwinds the threads in
+ * parallel. Passing the same module map to the unwinders of several cores of the same program
+ * parses each library only once.
+ *
+ * <pre>
+ * try(ElfCoreFile core = new ElfCoreFile(new File("core"))) {
+ *     for(ElfBacktrace backtrace : ElfCoreUnwinder.unwindAllThreads(core))
+ *         System.out.println(backtrace);
+ * }
+ * </pre>
+ */
+public class ElfCoreUnwinder {
+	public static final int DEFAULT_MAX_FRAMES = 256;
+	/** DWARF registers above this are not tracked, they are vector registers which never hold addresses */
+	private static final int REGISTER_COUNT = 128;
+	private static final String VDSO = "[vdso]";
+
+	// The index in the NT_PRSTATUS registers of each DWARF register, -1 for none
+	private static final int[] X64_REGISTERS = { 10, 12, 11, 5, 13, 14, 4, 19, 9, 8, 7, 6, 3, 2, 1, 0, 16 };
+	private static final int[] I386_REGISTERS = { 6, 1, 2, 0, 15, 5, 3, 4, 12 };
+
+	private final ElfCoreFile core;
+	private final ElfHeader.Machine machine;
+	private final ByteOrder order;
+	private final int addressSize;
+	private final File sysroot;
+	private final ConcurrentMap<String, ElfCoreModule> modules;
+	private volatile int maxFrames = DEFAULT_MAX_FRAMES;
+	private volatile ElfDebugFileStore debugFiles;
+
+	private final int[] dwarfRegisters;
+	private final int stackPointer;
+	private final int framePointer;
+
+	private volatile boolean vdsoLoaded;
+	private ElfCoreModule vdso;
+	private ElfCoreMapping vdsoMapping;
+
+	/**
+	 * @param core the core file to unwind
+	 * @throws ElfException if unwinding is not supported for the machine of the core
+	 */
+	public ElfCoreUnwinder(ElfCoreFile core) {
+		this(core, null, new ConcurrentHashMap<String, ElfCoreModule>());
+	}
+
+	/**
+	 * @param core the core file to unwind
+	 * @param sysroot the directory the paths of the mapped files are relative to, or null to
+	 * 	read them from the root of this machine
+	 * @param modules the cache of parsed modules by path, which may be shared between unwinders
+	 * @throws ElfException if unwinding is not supported for the machine of the core
+	 */
+	public ElfCoreUnwinder(ElfCoreFile core, File sysroot, ConcurrentMap<String, ElfCoreModule> modules) {
+		this.core = core;
+		this.sysroot = sysroot;
+		this.modules = modules;
+		ElfHeader header = core.getFile().getHeader();
+		machine = header.getMachine();
+		order = header.getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		addressSize = core.getAddressSize();
+		stackPointer = DwarfRegisters.getStackPointer(machine);
+
+		switch(machine) {
+		case X64:
+			dwarfRegisters = X64_REGISTERS;
+			framePointer = 6;
+			break;
+		case I386:
+			dwarfRegisters = I386_REGISTERS;
+			framePointer = 5;
+			break;
+		case ARM:
+			dwarfRegisters = identity(0, 16);
+			// Thumb and ARM code use different frame pointer registers
+			framePointer = -1;
+			break;
+		case AARCH64:
+			dwarfRegisters = identity(0, 32);
+			framePointer = DwarfRegisters.AARCH64_X29;
+			break;
+		case RISCV:
+			// x0 is always zero, the pc is at index 0 of the registers
+			dwarfRegisters = identity(0, 32);
+			dwarfRegisters[0] = -1;
+			framePointer = DwarfRegisters.RISCV_S0;
+			break;
+		default:
+			throw new ElfException("Unwinding is not supported for machine " + machine);
+		}
+	}
+
+	private static int[] identity(int from, int count) {
+		int[] result = new int[count];
+		for(int i = 0; i < count; i++)
+			result[i] = from + i;
+		return result;
+	}
+
+	/**
+	 * @param maxFrames the maximum number of frames of a backtrace, {@link #DEFAULT_MAX_FRAMES} by default
+	 */
+	public void setMaxFrames(int maxFrames) {
+		if(maxFrames < 1)
+			throw new IllegalArgumentException("maxFrames must be positive: " + maxFrames);
+		this.maxFrames = maxFrames;
+	}
+
+	/**
+	 * @param debugFiles the store of separate debug files to symbolize stripped modules with,
+	 * 	or null to only use the modules themselves
+	 */
+	public void setDebugFileStore(ElfDebugFileStore debugFiles) {
+		this.debugFiles = debugFiles;
+	}
+
+	/**
+	 * @return Returns the core file being unwound
+	 */
+	public ElfCoreFile getCore() {
+		return core;
+	}
+
+	/**
+	 * Unwinds all threads of a core file in parallel with a new unwinder
+	 *
+	 * @param core the core file
+	 * @return Returns the backtraces of the threads, in the order of the notes
+	 */
+	public static List<ElfBacktrace> unwindAllThreads(ElfCoreFile core) {
+		return new ElfCoreUnwinder(core).unwindAllThreads();
+	}
+
+	/**
+	 * @return Returns the backtraces of the threads, unwound with one task per processor
+	 */
+	public List<ElfBacktrace> unwindAllThreads() {
+		return unwindAllThreads(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism the maximum number of threads unwound concurrently
+	 * @return Returns the backtraces of the threads, in the order of the notes
+	 */
+	public List<ElfBacktrace> unwindAllThreads(int parallelism) {
+		List<ElfCoreThread> threads = core.getThreads();
+		List<ElfBacktrace> result = new ArrayList<ElfBacktrace>(threads.size());
+		if(parallelism <= 1 || threads.size() <= 1) {
+			for(ElfCoreThread thread : threads)
+				result.add(unwind(thread));
+			return result;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, threads.size()));
+		try {
+			List<Future<ElfBacktrace>> futures = new ArrayList<Future<ElfBacktrace>>(threads.size());
+			for(ElfCoreThread thread : threads)
+				futures.add(pool.submit(() -> unwind(thread)));
+			for(Future<ElfBacktrace> future : futures)
+				result.add(future.get());
+			return result;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ElfException("Interrupted while unwinding threads", e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new ElfException("Could not unwind thread", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param thread a thread of the core file
+	 * @return Returns the backtrace of the thread
+	 */
+	public ElfBacktrace unwind(ElfCoreThread thread) {
+		Registers registers = new Registers();
+		for(int i = 0; i < dwarfRegisters.length; i++) {
+			if(dwarfRegisters[i] >= 0 && dwarfRegisters[i] < thread.getRegisterCount())
+				registers.set(i, thread.getRegister(dwarfRegisters[i]));
+		}
+		if(machine == ElfHeader.Machine.RISCV)
+			registers.set(0, 0);
+		registers.pc = thread.getProgramCounter();
+		registers.exact = true;
+
+		List<ElfStackFrame> frames = new ArrayList<ElfStackFrame>();
+		int method = ElfStackFrame.CONTEXT;
+		String stopReason;
+		while(true) {
+			// The return address of a call may already belong to the next function
+			long lookup = registers.exact ? registers.pc : registers.pc - 1;
+			Location location = locate(lookup);
+			frames.add(symbolize(frames.size(), registers, method, location, lookup));
+			if(frames.size() >= maxFrames) {
+				stopReason = "reached the limit of " + maxFrames + " frames";
+				break;
+			}
+
+			Registers caller;
+			try {
+				caller = unwindWithCallFrameInformation(registers, location);
+				if(caller != null) {
+					method = ElfStackFrame.CFI;
+				}
+				else if((caller = unwindWithExceptionIndex(registers, location)) != null) {
+					method = ElfStackFrame.EXIDX;
+				}
+				else if((caller = unwindWithFramePointer(registers)) != null) {
+					method = ElfStackFrame.FRAME_POINTER;
+				}
+				else {
+					stopReason = "no unwind information for 0x" + Long.toHexString(registers.pc)
+							+ (location.module != null && location.module.getError() != null
+								? ": " + location.module.getError() : "");
+					break;
+				}
+				if(caller.outermost || caller.pc == 0) {
+					stopReason = "outermost frame";
+					break;
+				}
+				long sp = registers.get(stackPointer);
+				long callerSp = caller.get(stackPointer);
+				if(Long.compareUnsigned(callerSp, sp) < 0 || (callerSp == sp && caller.pc == registers.pc)) {
+					stopReason = "stack pointer did not advance";
+					break;
+				}
+			} catch(ElfException e) {
+				stopReason = e.getMessage();
+				break;
+			}
+			registers = caller;
+		}
+		return new ElfBacktrace(thread, frames, stopReason);
+	}
+
+	private ElfStackFrame symbolize(int index, Registers registers, int method, Location location, long lookup) {
+		long sp = registers.valid[stackPointer] ? registers.values[stackPointer] : 0;
+		if(location.module == null)
+			return new ElfStackFrame(index, registers.pc, sp, method, location.mapping == null ? null
+					: location.mapping.getPath(), -1, null, 0, null);
+
+		String symbolName = null;
+		long symbolOffset = 0;
+		DwarfSourceLine line = null;
+		ElfFile file = location.module.getFile();
+		if(file != null && location.moduleAddress != -1) {
+			try {
+				// The debug file of a stripped module has the full symbol table and debugging information
+				ElfDebugFileStore store = debugFiles;
+				ElfFile debug = store == null ? null : store.findFor(file, locate(location.module.getPath()));
+				for(ElfFile f : debug == null ? new ElfFile[] { file } : new ElfFile[] { debug, file }) {
+					ElfSymbolIndex symbols = f.getSymbolIndex();
+					int i = symbols.findIndex(location.moduleAddress);
+					if(i >= 0) {
+						symbolName = symbols.getSymbol(i).getName();
+						// Offsets are of the program counter itself, like gdb prints them
+						symbolOffset = location.moduleAddress + (registers.pc - lookup) - symbols.getStart(i);
+						break;
+					}
+				}
+				if(debug != null)
+					line = debug.getDwarf().findLine(location.moduleAddress);
+				if(line == null)
+					line = file.getDwarf().findLine(location.moduleAddress);
+			} catch(ElfException e) {
+				// Frames are still useful without symbols
+			}
+		}
+		return new ElfStackFrame(index, registers.pc, sp, method, location.module.getPath(), location.moduleAddress,
+				symbolName, symbolOffset, line);
+	}
+
+	private Registers unwindWithCallFrameInformation(Registers registers, Location location) {
+		if(location.file() == null)
+			return null;
+		DwarfFde fde = location.file().getDwarf().findFde(location.moduleAddress);
+		DwarfFrameRow row = fde == null ? null : fde.getFrameTable().findRow(location.moduleAddress);
+		if(row == null)
+			return null;
+
+		DwarfExpression.Context context = registers.context();
+		long cfa;
+		if(row.isCfaExpression())
+			cfa = new DwarfExpression(row.getCfaExpression(), order, addressSize).evaluate(context);
+		else
+			cfa = truncate(registers.get(row.getCfaRegister()) + row.getCfaOffset());
+
+		Registers caller = registers.copy();
+		for(int register : row.getRegisters()) {
+			if(register >= REGISTER_COUNT)
+				continue;
+			DwarfRegisterRule rule = row.getRule(register);
+			switch(rule.getKind()) {
+			case DwarfRegisterRule.UNDEFINED:
+				caller.valid[register] = false;
+				break;
+			case DwarfRegisterRule.SAME_VALUE:
+				break;
+			case DwarfRegisterRule.OFFSET:
+				caller.set(register, core.readValue(truncate(cfa + rule.getOffset()), addressSize));
+				break;
+			case DwarfRegisterRule.VAL_OFFSET:
+				caller.set(register, truncate(cfa + rule.getOffset()));
+				break;
+			case DwarfRegisterRule.REGISTER:
+				caller.set(register, registers.get(rule.getRegister()));
+				break;
+			case DwarfRegisterRule.EXPRESSION:
+				long address = new DwarfExpression(rule.getExpression(), order, addressSize).evaluate(context, cfa);
+				caller.set(register, core.readValue(address, addressSize));
+				break;
+			default:
+				caller.set(register, new DwarfExpression(rule.getExpression(), order, addressSize).evaluate(context, cfa));
+				break;
+			}
+		}
+
+		int returnAddress = fde.getCie().getReturnAddressRegister();
+		DwarfRegisterRule returnAddressRule = row.getRule(returnAddress);
+		if((returnAddressRule != null && returnAddressRule.getKind() == DwarfRegisterRule.UNDEFINED)
+				|| returnAddress >= REGISTER_COUNT || !caller.valid[returnAddress]) {
+			caller.outermost = true;
+			return caller;
+		}
+		caller.pc = caller.values[returnAddress];
+		if(row.isReturnAddressSigned())
+			caller.pc &= 0x0000ffffffffffffL;
+		if(machine == ElfHeader.Machine.ARM)
+			caller.pc &= ~1L;
+
+		// The CFA is the stack pointer of the caller, unless a signal frame restores it explicitly
+		DwarfRegisterRule stackPointerRule = row.getRule(stackPointer);
+		if(stackPointerRule == null || stackPointerRule.getKind() == DwarfRegisterRule.SAME_VALUE
+				|| stackPointerRule.getKind() == DwarfRegisterRule.UNDEFINED)
+			caller.set(stackPointer, cfa);
+		// Interrupted code resumes at the saved program counter instead of returning to it
+		caller.exact = fde.getCie().isSignalFrame();
+		return caller;
+	}
+
+	private Registers unwindWithExceptionIndex(Registers registers, Location location) {
+		if(machine != ElfHeader.Machine.ARM || location.file() == null)
+			return null;
+		for(ElfArmExidxSection section : location.file().getSectionHeaders().getSectionsOfType(ElfArmExidxSection.class)) {
+			if(section.findEntry(location.moduleAddress) == null)
+				continue;
+			ElfArmUnwindState state = new ElfArmUnwindState(address -> core.readValue(address, 4));
+			for(int i = 0; i < 16; i++)
+				state.setRegister(i, registers.valid[i] ? registers.values[i] : 0);
+			// The table is looked up with the address in the module, the opcodes restore process addresses
+			state.setRegister(ElfArmUnwindState.PC, location.moduleAddress);
+			if(!section.unwind(state))
+				return null;
+			Registers caller = registers.copy();
+			for(int i = 0; i < 16; i++)
+				caller.set(i, state.getRegister(i));
+			caller.pc = state.getRegister(ElfArmUnwindState.PC) & ~1L;
+			return caller;
+		}
+		return null;
+	}
+
+	/**
+	 * Follows the frame record of x86, AArch64 and RISC-V code compiled with frame pointers:
+	 * the saved frame pointer and the return address, next to each other on the stack
+	 */
+	private Registers unwindWithFramePointer(Registers registers) {
+		if(framePointer < 0 || !registers.valid[framePointer] || !registers.valid[stackPointer])
+			return null;
+		long fp = registers.values[framePointer];
+		if(fp == 0 || fp % addressSize != 0 || Long.compareUnsigned(fp, registers.values[stackPointer]) < 0)
+			return null;
+
+		// RISC-V points the frame pointer above the record, the others at it
+		long record = machine == ElfHeader.Machine.RISCV ? fp - 2 * addressSize : fp;
+		if(!core.isAvailable(record, 2 * addressSize))
+			return null;
+		Registers caller = registers.copy();
+		caller.set(framePointer, core.readValue(record, addressSize));
+		caller.pc = core.readValue(record + addressSize, addressSize);
+		caller.set(stackPointer, machine == ElfHeader.Machine.RISCV ? fp : fp + 2 * addressSize);
+		return caller;
+	}
+
+	private long truncate(long value) {
+		return addressSize == 4 ? value & 0xffffffffL : value;
+	}
+
+	private Location locate(long address) {
+		ElfCoreMapping mapping = core.findMapping(address);
+		ElfCoreModule module = null;
+		if(mapping != null) {
+			module = getModule(mapping);
+		}
+		else {
+			loadVdso();
+			if(vdsoMapping != null && vdsoMapping.contains(address)) {
+				mapping = vdsoMapping;
+				module = vdso;
+			}
+		}
+		long moduleAddress = module == null || module.getFile() == null ? -1 : module.toModuleAddress(mapping, address);
+		return new Location(mapping, module, moduleAddress);
+	}
+
+	/**
+	 * Returns the module of a mapped file, parsed on first use. Modules are parsed outside of the
+	 * module map, so threads which need different modules do not wait for each other. Threads
+	 * which need the same new module at once may both parse it, the first one stored is kept.
+	 *
+	 * @param mapping a mapping of the core file
+	 * @return Returns the module of the mapped file
+	 */
+	public ElfCoreModule getModule(ElfCoreMapping mapping) {
+		String path = mapping.getPath();
+		ElfCoreModule module = modules.get(path);
+		if(module == null) {
+			module = ElfCoreModule.load(path, locate(path));
+			ElfCoreModule previous = modules.putIfAbsent(path, module);
+			if(previous != null)
+				module = previous;
+		}
+		return module;
+	}
+
+	/** The file of a path in the process, which is below the sysroot if one is used */
+	private File locate(String path) {
+		return sysroot == null ? new File(path) : new File(sysroot, path);
+	}
+
+	/** The vDSO has no file, it is parsed from the memory of the process */
+	private void loadVdso() {
+		if(vdsoLoaded)
+			return;
+		synchronized(this) {
+			if(vdsoLoaded)
+				return;
+			ElfAuxiliaryVector auxiliaryVector = core.getAuxiliaryVector();
+			Long base = auxiliaryVector == null ? null : auxiliaryVector.get(ElfAuxiliaryVector.AT_SYSINFO_EHDR);
+			if(base != null) {
+				long length = Math.min(core.getAvailableLength(base), 1 << 24);
+				if(length > 0) {
+					vdsoMapping = new ElfCoreMapping(base, base + length, 0, VDSO);
+					try {
+						vdso = new ElfCoreModule(VDSO, new ElfFile(core.readMemory(base, (int)length)));
+					} catch(ElfException e) {
+						vdso = ElfCoreModule.failed(VDSO, e.getMessage());
+					}
+				}
+			}
+			vdsoLoaded = true;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ElfCoreUnwinder[" + core + ", modules=" + modules.size() + "]";
+	}
+
+	/** The module and mapping of a code address */
+	private static final class Location {
+		final ElfCoreMapping mapping;
+		final ElfCoreModule module;
+		final long moduleAddress;
+
+		Location(ElfCoreMapping mapping, ElfCoreModule module, long moduleAddress) {
+			this.mapping = mapping;
+			this.module = module;
+			this.moduleAddress = moduleAddress;
+		}
+
+		ElfFile file() {
+			return moduleAddress == -1 ? null : module.getFile();
+		}
+	}
+
+	/** The registers of a frame by DWARF number */
+	private final class Registers {
+		final long[] values = new long[REGISTER_COUNT];
+		final boolean[] valid = new boolean[REGISTER_COUNT];
+		long pc;
+		/** True if pc is the address of the next instruction to execute rather than a return address */
+		boolean exact;
+		/** True if the return address is undefined, which marks the outermost frame */
+		boolean outermost;
+
+		void set(int register, long value) {
+			values[register] = truncate(value);
+			valid[register] = true;
+		}
+
+		long get(int register) {
+			if(register < 0 || register >= REGISTER_COUNT || !valid[register])
+				throw new ElfException("Value of register " + DwarfRegisters.getName(machine, register) + " is not known");
+			return values[register];
+		}
+
+		Registers copy() {
+			Registers result = new Registers();
+			System.arraycopy(values, 0, result.values, 0, REGISTER_COUNT);
+			System.arraycopy(valid, 0, result.valid, 0, REGISTER_COUNT);
+			result.pc = pc;
+			return result;
+		}
+
+		DwarfExpression.Context context() {
+			return new DwarfExpression.Context() {
+				@Override
+				public long getRegister(int register) {
+					return get(register);
+				}
+
+				@Override
+				public long readMemory(long address, int size) {
+					return core.readValue(address, size);
+				}
+			};
+		}
+	}
+}
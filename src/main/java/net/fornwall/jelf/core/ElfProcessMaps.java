@@ -0,0 +1,141 @@
+package net.fornwall.jelf.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * A snapshot of the /proc/&lt;pid&gt;/maps file of a process, as shipped with the program counters
+ * sampled by a profiler. Each line describes a mapping:
+ *
+ * <pre>
+ * 7f1c2a400000-7f1c2a428000 r--p 00000000 08:01 1837   /usr/lib/x86_64-linux-gnu/libc.so.6
+ * </pre>
+ *
+ * Only mappings of files are kept, anonymous mappings and pseudo files like [heap] and [vdso]
+ * can not be symbolized from the file system. See {@link ElfSymbolizer}.
+ */
+public class ElfProcessMaps {
+	private static final String DELETED = " (deleted)";
+
+	private final int pid;
+	private final ElfCoreMapping[] mappings;
+	private final long[] starts;
+
+	/**
+	 * @param pid the process ID, only used to identify the snapshot
+	 * @param mappings the mappings of files in the process
+	 */
+	public ElfProcessMaps(int pid, List<ElfCoreMapping> mappings) {
+		this.pid = pid;
+		List<ElfCoreMapping> sorted = new ArrayList<ElfCoreMapping>(mappings);
+		Collections.sort(sorted, new Comparator<ElfCoreMapping>() {
+			@Override
+			public int compare(ElfCoreMapping a, ElfCoreMapping b) {
+				return Long.compareUnsigned(a.getStart(), b.getStart());
+			}
+		});
+		this.mappings = sorted.toArray(new ElfCoreMapping[sorted.size()]);
+		starts = new long[this.mappings.length];
+		for(int i = 0; i < starts.length; i++)
+			starts[i] = this.mappings[i].getStart();
+	}
+
+	/**
+	 * @param pid the process ID, only used to identify the snapshot
+	 * @param text the contents of the maps file
+	 * @return Returns the snapshot
+	 */
+	public static ElfProcessMaps parse(int pid, String text) {
+		try {
+			return read(pid, new StringReader(text));
+		} catch(IOException e) {
+			throw new ElfException(e);
+		}
+	}
+
+	/**
+	 * @param pid the process ID, only used to identify the snapshot
+	 * @param reader the contents of the maps file, which is not closed
+	 * @return Returns the snapshot
+	 * @throws IOException if the reader fails
+	 */
+	public static ElfProcessMaps read(int pid, Reader reader) throws IOException {
+		BufferedReader in = new BufferedReader(reader);
+		List<ElfCoreMapping> result = new ArrayList<ElfCoreMapping>();
+		String line;
+		for(int number = 1; (line = in.readLine()) != null; number++) {
+			if(line.trim().isEmpty())
+				continue;
+			// The path is the rest of the line and may contain spaces
+			String[] fields = line.trim().split("\\s+", 6);
+			if(fields.length < 5)
+				throw new ElfException("Malformed line " + number + " of maps: " + line);
+			String path = fields.length == 6 ? fields[5] : "";
+			if(!path.startsWith("/"))
+				continue;
+			if(path.endsWith(DELETED))
+				path = path.substring(0, path.length() - DELETED.length());
+
+			int dash = fields[0].indexOf('-');
+			try {
+				long start = Long.parseUnsignedLong(fields[0].substring(0, dash), 16);
+				long end = Long.parseUnsignedLong(fields[0].substring(dash + 1), 16);
+				long offset = Long.parseUnsignedLong(fields[2], 16);
+				result.add(new ElfCoreMapping(start, end, offset, path));
+			} catch(NumberFormatException | StringIndexOutOfBoundsException e) {
+				throw new ElfException("Malformed line " + number + " of maps: " + line);
+			}
+		}
+		return new ElfProcessMaps(pid, result);
+	}
+
+	/**
+	 * @return Returns the process ID
+	 */
+	public int getPid() {
+		return pid;
+	}
+
+	/**
+	 * @return Returns the mappings of files, sorted by address
+	 */
+	public List<ElfCoreMapping> getMappings() {
+		List<ElfCoreMapping> result = new ArrayList<ElfCoreMapping>(mappings.length);
+		Collections.addAll(result, mappings);
+		return result;
+	}
+
+	/**
+	 * @param address an address in the process
+	 * @return Returns the mapping of a file containing the address, or null if there is none
+	 */
+	public ElfCoreMapping findMapping(long address) {
+		int low = 0;
+		int high = starts.length - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(starts[mid], address) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return found >= 0 && mappings[found].contains(address) ? mappings[found] : null;
+	}
+
+	@Override
+	public String toString() {
+		return "ElfProcessMaps[pid=" + pid + ", mappings=" + mappings.length + "]";
+	}
+}
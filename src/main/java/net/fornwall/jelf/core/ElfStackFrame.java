@@ -0,0 +1,154 @@
+package net.fornwall.jelf.core;
+
+import net.fornwall.jelf.dwarf.DwarfSourceLine;
+
+/**
+ * A frame of a {@link ElfBacktrace}, symbolized with the module containing its program counter
+ */
+public class ElfStackFrame {
+	/** The registers of the innermost frame, from the NT_PRSTATUS note of the thread */
+	public static final int CONTEXT = 0;
+	/** Unwound with the call frame information of .eh_frame or .debug_frame */
+	public static final int CFI = 1;
+	/** Unwound with the ARM exception index table */
+	public static final int EXIDX = 2;
+	/** Unwound by following the chain of saved frame pointers */
+	public static final int FRAME_POINTER = 3;
+
+	private final int index;
+	private final long programCounter;
+	private final long stackPointer;
+	private final int method;
+	private final String modulePath;
+	private final long moduleAddress;
+	private final String symbolName;
+	private final long symbolOffset;
+	private final DwarfSourceLine sourceLine;
+
+	/**
+	 * @param index the depth of the frame, 0 for the innermost frame
+	 * @param programCounter the program counter of the frame, for callers the return address
+	 * @param stackPointer the stack pointer of the frame
+	 * @param method how the frame was found, for example {@link #CFI}
+	 * @param modulePath the path of the module containing the program counter, or null
+	 * @param moduleAddress the address in the module which was looked up, or -1
+	 * @param symbolName the name of the function containing the address, or null
+	 * @param symbolOffset the offset of the address in the function
+	 * @param sourceLine the source line of the address, or null
+	 */
+	public ElfStackFrame(int index, long programCounter, long stackPointer, int method, String modulePath,
+			long moduleAddress, String symbolName, long symbolOffset, DwarfSourceLine sourceLine) {
+		this.index = index;
+		this.programCounter = programCounter;
+		this.stackPointer = stackPointer;
+		this.method = method;
+		this.modulePath = modulePath;
+		this.moduleAddress = moduleAddress;
+		this.symbolName = symbolName;
+		this.symbolOffset = symbolOffset;
+		this.sourceLine = sourceLine;
+	}
+
+	/**
+	 * @return Returns the depth of the frame, 0 for the innermost frame
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return Returns the program counter of the frame, which is the return address for callers
+	 */
+	public long getProgramCounter() {
+		return programCounter;
+	}
+
+	/**
+	 * @return Returns the stack pointer of the frame
+	 */
+	public long getStackPointer() {
+		return stackPointer;
+	}
+
+	/**
+	 * @return Returns how the frame was found, one of {@link #CONTEXT}, {@link #CFI},
+	 * 	{@link #EXIDX} and {@link #FRAME_POINTER}
+	 */
+	public int getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return Returns a short name of {@link #getMethod()}
+	 */
+	public String getMethodName() {
+		switch(method) {
+		case CONTEXT:
+			return "context";
+		case CFI:
+			return "cfi";
+		case EXIDX:
+			return "exidx";
+		default:
+			return "fp";
+		}
+	}
+
+	/**
+	 * @return Returns the path of the module containing the program counter, or null if it is not
+	 * 	in a mapped file
+	 */
+	public String getModulePath() {
+		return modulePath;
+	}
+
+	/**
+	 * For callers this is the return address minus one, which is inside the call instruction.
+	 *
+	 * @return Returns the address in the module which was looked up, or -1 if it is not known
+	 */
+	public long getModuleAddress() {
+		return moduleAddress;
+	}
+
+	/**
+	 * @return Returns the name of the function, or null if it is not known
+	 */
+	public String getSymbolName() {
+		return symbolName;
+	}
+
+	/**
+	 * @return Returns the offset of the module address in the function
+	 */
+	public long getSymbolOffset() {
+		return symbolOffset;
+	}
+
+	/**
+	 * @return Returns the source line of the module address, or null if it is not known
+	 */
+	public DwarfSourceLine getSourceLine() {
+		return sourceLine;
+	}
+
+	/**
+	 * @return Returns the function and offset like gdb does, for example main+0x1a, or ?? if it is not known
+	 */
+	public String getFunction() {
+		if(symbolName == null)
+			return "??";
+		return symbolOffset == 0 ? symbolName : symbolName + "+0x" + Long.toHexString(symbolOffset);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("#").append(index).append(" 0x").append(Long.toHexString(programCounter))
+				.append(" in ").append(getFunction());
+		if(modulePath != null)
+			sb.append(" (").append(modulePath).append(')');
+		if(sourceLine != null)
+			sb.append(" at ").append(sourceLine);
+		return sb.toString();
+	}
+}
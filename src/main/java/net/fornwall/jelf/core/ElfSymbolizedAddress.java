@@ -0,0 +1,107 @@
+package net.fornwall.jelf.core;
+
+import net.fornwall.jelf.dwarf.DwarfSourceLine;
+
+/**
+ * A program counter of a process symbolized by {@link ElfSymbolizer}
+ */
+public class ElfSymbolizedAddress {
+	private final long address;
+	private final String modulePath;
+	private final long fileOffset;
+	private final long moduleAddress;
+	private final String symbolName;
+	private final long symbolOffset;
+	private final DwarfSourceLine sourceLine;
+
+	/**
+	 * @param address the address in the process
+	 * @param modulePath the path of the mapped file containing the address, or null
+	 * @param fileOffset the offset of the address in the mapped file, or -1
+	 * @param moduleAddress the address in the module which was looked up, or -1
+	 * @param symbolName the name of the function containing the address, or null
+	 * @param symbolOffset the offset of the address in the function
+	 * @param sourceLine the source line of the address, or null
+	 */
+	public ElfSymbolizedAddress(long address, String modulePath, long fileOffset, long moduleAddress, String symbolName,
+			long symbolOffset, DwarfSourceLine sourceLine) {
+		this.address = address;
+		this.modulePath = modulePath;
+		this.fileOffset = fileOffset;
+		this.moduleAddress = moduleAddress;
+		this.symbolName = symbolName;
+		this.symbolOffset = symbolOffset;
+		this.sourceLine = sourceLine;
+	}
+
+	/**
+	 * @return Returns the address in the process
+	 */
+	public long getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return Returns the path of the mapped file containing the address in the process, or null
+	 * 	if it is not in a mapped file
+	 */
+	public String getModulePath() {
+		return modulePath;
+	}
+
+	/**
+	 * @return Returns the offset of the address in the mapped file, or -1 if it is not in a mapped file
+	 */
+	public long getFileOffset() {
+		return fileOffset;
+	}
+
+	/**
+	 * @return Returns the address in the module which was looked up, or -1 if it is not in a
+	 * 	loaded segment of a module
+	 */
+	public long getModuleAddress() {
+		return moduleAddress;
+	}
+
+	/**
+	 * @return Returns the name of the function, or null if it is not known
+	 */
+	public String getSymbolName() {
+		return symbolName;
+	}
+
+	/**
+	 * @return Returns the offset of the module address in the function
+	 */
+	public long getSymbolOffset() {
+		return symbolOffset;
+	}
+
+	/**
+	 * @return Returns the source line of the module address, or null if it is not known or was
+	 * 	not requested
+	 */
+	public DwarfSourceLine getSourceLine() {
+		return sourceLine;
+	}
+
+	/**
+	 * @return Returns the function and offset like gdb does, for example main+0x1a, or ?? if it is not known
+	 */
+	public String getFunction() {
+		if(symbolName == null)
+			return "??";
+		return symbolOffset == 0 ? symbolName : symbolName + "+0x" + Long.toHexString(symbolOffset);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("0x").append(Long.toHexString(address)).append(" in ").append(getFunction());
+		if(modulePath != null)
+			sb.append(" (").append(modulePath).append(" @0x").append(Long.toHexString(fileOffset)).append(')');
+		if(sourceLine != null)
+			sb.append(" at ").append(sourceLine);
+		return sb.toString();
+	}
+}
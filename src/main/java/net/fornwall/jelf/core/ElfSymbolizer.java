@@ -0,0 +1,326 @@
+package net.fornwall.jelf.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import net.fornwall.jelf.ElfDebugFileStore;
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.dwarf.Dwarf;
+import net.fornwall.jelf.dwarf.DwarfSourceLine;
+import net.fornwall.jelf.section.symbol.ElfSymbolIndex;
+
+/**
+ * Symbolizes the program counters sampled from running processes, given a snapshot of the
+ * /proc/&lt;pid&gt;/maps file of each process, see {@link ElfProcessMaps}. Each address is
+ * translated into an offset of the mapped file, and through the PT_LOAD segments of the file into
+ * an address of the module, which removes the bias of address space layout randomization.
+ *
+ * <p>
+ * Addresses are symbolized in batches: the addresses of all processes are grouped by module,
+ * and the addresses of each module are sorted, deduplicated and looked up in the shared
+ * {@link ElfSymbolIndex} of the module, with the modules resolved in parallel. Modules are
+ * parsed once per path and shared by build ID, so the same library mapped into a thousand
+ * processes, even from different paths such as in containers, is indexed once. Files at other
+ * paths are only opened to read their build ID.
+ *
+ * <pre>
+ * ElfSymbolizer symbolizer = new ElfSymbolizer();
+ * ElfProcessMaps maps = ElfProcessMaps.read(pid, new FileReader(mapsFile));
+ * for(ElfSymbolizedAddress a : symbolizer.symbolize(maps, programCounters))
+ *     System.out.println(a);
+ * </pre>
+ *
+ * Program counters are looked up as they are, profilers which sample return addresses should
+ * subtract one from them first so that the call instruction is looked up.
+ */
+public class ElfSymbolizer {
+	private final Map<String, ElfCoreModule> modulesByPath = new ConcurrentHashMap<String, ElfCoreModule>();
+	private final Map<String, ElfCoreModule> modulesByBuildId = new ConcurrentHashMap<String, ElfCoreModule>();
+	private volatile File sysroot;
+	private volatile ElfDebugFileStore debugFiles;
+	private volatile boolean sourceLines;
+
+	/** The addresses of the processes which fall into one module */
+	private static final class Batch {
+		final ElfCoreModule module;
+		long[] moduleAddresses = new long[16];
+		// The process in the upper and the index of the address in the lower 32 bits
+		long[] slots = new long[16];
+		// The mapping containing each address, found while grouping the addresses
+		ElfCoreMapping[] mappings = new ElfCoreMapping[16];
+		int size;
+
+		Batch(ElfCoreModule module) {
+			this.module = module;
+		}
+
+		void add(long moduleAddress, int process, int index, ElfCoreMapping mapping) {
+			if(size == slots.length) {
+				moduleAddresses = Arrays.copyOf(moduleAddresses, size * 2);
+				slots = Arrays.copyOf(slots, size * 2);
+				mappings = Arrays.copyOf(mappings, size * 2);
+			}
+			moduleAddresses[size] = moduleAddress;
+			slots[size] = (long)process << 32 | index;
+			mappings[size] = mapping;
+			size++;
+		}
+	}
+
+	/**
+	 * @param sysroot the directory the paths of the maps files are relative to, or null to use
+	 * 	them as they are
+	 */
+	public void setSysroot(File sysroot) {
+		this.sysroot = sysroot;
+	}
+
+	/**
+	 * @param debugFiles the store of separate debug files to symbolize stripped modules with,
+	 * 	or null to only use the modules themselves
+	 */
+	public void setDebugFileStore(ElfDebugFileStore debugFiles) {
+		this.debugFiles = debugFiles;
+	}
+
+	/**
+	 * @param sourceLines true to also look up the source lines of the addresses in the DWARF line
+	 * 	tables, which is off by default
+	 */
+	public void setSourceLines(boolean sourceLines) {
+		this.sourceLines = sourceLines;
+	}
+
+	/**
+	 * @param maps the maps snapshot of a process
+	 * @param addresses the program counters sampled from the process
+	 * @return Returns the symbolized addresses, in the order of the program counters
+	 */
+	public ElfSymbolizedAddress[] symbolize(ElfProcessMaps maps, long[] addresses) {
+		return symbolize(Collections.singletonList(maps), Collections.singletonList(addresses)).get(0);
+	}
+
+	/**
+	 * Symbolizes the program counters of several processes on the common pool
+	 *
+	 * @param processes the maps snapshots of the processes
+	 * @param addresses the program counters sampled from each process
+	 * @return Returns the symbolized addresses of each process, in the order of its program counters
+	 */
+	public List<ElfSymbolizedAddress[]> symbolize(List<ElfProcessMaps> processes, List<long[]> addresses) {
+		return symbolize(processes, addresses, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Symbolizes the program counters of several processes. The addresses are grouped by module
+	 * first, and the modules are resolved by separate tasks.
+	 *
+	 * @param processes the maps snapshots of the processes
+	 * @param addresses the program counters sampled from each process
+	 * @param pool the pool to resolve the modules on
+	 * @return Returns the symbolized addresses of each process, in the order of its program counters
+	 */
+	public List<ElfSymbolizedAddress[]> symbolize(List<ElfProcessMaps> processes, final List<long[]> addresses,
+			ForkJoinPool pool) {
+		if(processes.size() != addresses.size())
+			throw new IllegalArgumentException(processes.size() + " processes but " + addresses.size() + " address lists");
+
+		final List<ElfSymbolizedAddress[]> result = new ArrayList<ElfSymbolizedAddress[]>(processes.size());
+		Map<ElfCoreModule, Batch> batches = new LinkedHashMap<ElfCoreModule, Batch>();
+		for(int p = 0; p < processes.size(); p++) {
+			ElfProcessMaps maps = processes.get(p);
+			long[] pcs = addresses.get(p);
+			ElfSymbolizedAddress[] symbolized = new ElfSymbolizedAddress[pcs.length];
+			result.add(symbolized);
+			for(int i = 0; i < pcs.length; i++) {
+				ElfCoreMapping mapping = maps.findMapping(pcs[i]);
+				if(mapping == null) {
+					symbolized[i] = new ElfSymbolizedAddress(pcs[i], null, -1, -1, null, 0, null);
+					continue;
+				}
+				ElfCoreModule module = getModule(mapping.getPath());
+				long moduleAddress = module.getFile() == null ? -1 : module.toModuleAddress(mapping, pcs[i]);
+				if(moduleAddress == -1) {
+					symbolized[i] = new ElfSymbolizedAddress(pcs[i], mapping.getPath(), fileOffset(mapping, pcs[i]), -1,
+							null, 0, null);
+					continue;
+				}
+				Batch batch = batches.get(module);
+				if(batch == null)
+					batches.put(module, batch = new Batch(module));
+				batch.add(moduleAddress, p, i, mapping);
+			}
+		}
+
+		final List<Batch> work = new ArrayList<Batch>(batches.values());
+		try {
+			pool.submit(() -> work.parallelStream().forEach(b -> resolve(b, addresses, result))).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ElfException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof ElfException)
+				throw (ElfException)cause;
+			throw new ElfException(cause);
+		}
+		return result;
+	}
+
+	private void resolve(Batch batch, List<long[]> addresses, List<ElfSymbolizedAddress[]> result) {
+		// Sorted and deduplicated, so each distinct address is looked up once and in order
+		long[] unique = Arrays.copyOf(batch.moduleAddresses, batch.size);
+		Arrays.sort(unique);
+		int count = 0;
+		for(int j = 0; j < unique.length; j++) {
+			if(count == 0 || unique[j] != unique[count - 1])
+				unique[count++] = unique[j];
+		}
+
+		String[] names = new String[count];
+		long[] offsets = new long[count];
+		DwarfSourceLine[] lines = new DwarfSourceLine[count];
+		ElfFile file = batch.module.getFile();
+		// The debug file of a stripped module has the full symbol table and debugging information
+		ElfFile debug = null;
+		ElfDebugFileStore store = debugFiles;
+		try {
+			debug = store == null ? null : store.findFor(file, locate(batch.module.getPath()));
+		} catch(ElfException e) {
+			// The module itself may still have symbols
+		}
+		ElfFile[] files = debug == null ? new ElfFile[] { file } : new ElfFile[] { debug, file };
+		ElfSymbolIndex[] indexes = new ElfSymbolIndex[files.length];
+		int[] previous = new int[files.length];
+		for(int k = 0; k < files.length; k++) {
+			try {
+				indexes[k] = files[k].getSymbolIndex();
+			} catch(ElfException e) {
+				// Looked up in the other files only
+			}
+			previous[k] = -1;
+		}
+		// Files whose debugging information could not be read are not asked again
+		Dwarf[] dwarfs = new Dwarf[files.length];
+		for(int k = 0; sourceLines && k < files.length; k++) {
+			try {
+				dwarfs[k] = files[k].getDwarf();
+			} catch(ElfException e) {
+				// Looked up in the other files only
+			}
+		}
+		for(int j = 0; j < count; j++) {
+			long address = unique[j];
+			for(int k = 0; names[j] == null && k < indexes.length; k++) {
+				ElfSymbolIndex index = indexes[k];
+				if(index == null)
+					continue;
+				try {
+					// Consecutive addresses often fall into the function of the previous one
+					int s = previous[k];
+					if(s < 0 || Long.compareUnsigned(address - index.getStart(s), index.getEnd(s) - index.getStart(s)) >= 0)
+						s = previous[k] = index.findIndex(address);
+					if(s >= 0) {
+						names[j] = index.getSymbol(s).getName();
+						offsets[j] = address - index.getStart(s);
+					}
+				} catch(ElfException e) {
+					// Addresses are still useful without symbols
+					previous[k] = -1;
+				}
+			}
+			for(int k = 0; lines[j] == null && k < files.length; k++) {
+				if(dwarfs[k] == null)
+					continue;
+				try {
+					lines[j] = dwarfs[k].findLine(address);
+				} catch(ElfException e) {
+					// A damaged unit only loses the lines of its own addresses
+				}
+			}
+		}
+
+		for(int n = 0; n < batch.size; n++) {
+			int j = Arrays.binarySearch(unique, 0, count, batch.moduleAddresses[n]);
+			int p = (int)(batch.slots[n] >>> 32);
+			int i = (int)batch.slots[n];
+			long pc = addresses.get(p)[i];
+			ElfCoreMapping mapping = batch.mappings[n];
+			result.get(p)[i] = new ElfSymbolizedAddress(pc, mapping.getPath(), fileOffset(mapping, pc),
+					batch.moduleAddresses[n], names[j], offsets[j], lines[j]);
+		}
+	}
+
+	private static long fileOffset(ElfCoreMapping mapping, long address) {
+		return address - mapping.getStart() + mapping.getFileOffset();
+	}
+
+	/**
+	 * Returns the module of a mapped file. Files are parsed once per path, and files with the
+	 * build ID of an already parsed file share its module. Files are parsed outside of the module
+	 * maps, so threads which need different modules do not wait for each other. Threads which
+	 * need the same new module at once may both parse it, the first one stored is kept.
+	 *
+	 * @param path the path of a mapped file in a process
+	 * @return Returns the module, which records its error if the file could not be loaded
+	 */
+	public ElfCoreModule getModule(String path) {
+		ElfCoreModule module = modulesByPath.get(path);
+		if(module != null)
+			return module;
+
+		module = ElfCoreModule.load(path, locate(path));
+		String buildId = null;
+		try {
+			buildId = module.getFile() == null ? null : module.getFile().getBuildId();
+		} catch(ElfException e) {
+			// Not shared with other paths
+		}
+		if(buildId != null) {
+			ElfCoreModule previous = modulesByBuildId.putIfAbsent(buildId, module);
+			if(previous != null)
+				module = previous;
+		}
+		ElfCoreModule previous = modulesByPath.putIfAbsent(path, module);
+		return previous != null ? previous : module;
+	}
+
+	/** The file of a path in the process, which is below the sysroot if one is used */
+	private File locate(String path) {
+		File root = sysroot;
+		return root == null ? new File(path) : new File(root, path);
+	}
+
+	/**
+	 * @return Returns the number of distinct modules, modules shared by build ID are counted once
+	 */
+	public int getModuleCount() {
+		Map<ElfCoreModule, Boolean> distinct = new IdentityHashMap<ElfCoreModule, Boolean>();
+		for(ElfCoreModule module : modulesByPath.values())
+			distinct.put(module, Boolean.TRUE);
+		return distinct.size();
+	}
+
+	/**
+	 * Drops all parsed modules, so that files replaced since are parsed again
+	 */
+	public void clear() {
+		modulesByPath.clear();
+		modulesByBuildId.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "ElfSymbolizer[modules=" + getModuleCount() + "]";
+	}
+}
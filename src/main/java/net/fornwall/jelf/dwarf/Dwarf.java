@@ -0,0 +1,816 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.ElfProgramHeaders;
+import net.fornwall.jelf.ElfSectionHeaders;
+import net.fornwall.jelf.section.ElfSection;
+import net.fornwall.jelf.segment.ElfSegment;
+
+/**
+ * Entry point to the DWARF debugging information of an {@link ElfFile}, see
+ * {@link ElfFile#getDwarf()}. Sections are read the first time they are needed and decoded
+ * structures are cached, so a single instance can serve any number of lookups from any number
+ * of threads.
+ *
+ * <pre>
+ * http://dwarfstd.org/doc/DWARF5.pdf
+ * </pre>
+ */
+public class Dwarf {
+	/** The default number of decompressed bytes kept for the lifetime of an instance */
+	public static final long DEFAULT_MAX_DECOMPRESSED_BYTES = 256L << 20;
+
+	/** Marker for sections which do not exist, since null can not be cached */
+	private static final ByteBuffer MISSING = ByteBuffer.allocate(0);
+
+	private final ElfFile file;
+	/** Suffix of the names of the debugging sections, ".dwo" in split debugging information */
+	private final String sectionSuffix;
+	private final ConcurrentHashMap<String, ByteBuffer> sections = new ConcurrentHashMap<String, ByteBuffer>();
+	/** The names of the sections which were decompressed into the heap */
+	private final Set<String> decompressedSections = ConcurrentHashMap.newKeySet();
+	/** Locked while a section is decompressed, so that each section is decompressed by one thread */
+	private final ConcurrentHashMap<String, Object> decompressionLocks = new ConcurrentHashMap<String, Object>();
+	private final AtomicLong decompressedBytes = new AtomicLong();
+	private volatile long maxDecompressedBytes = DEFAULT_MAX_DECOMPRESSED_BYTES;
+
+	private final ConcurrentHashMap<Long, DwarfAbbreviation.Table> abbreviations = new ConcurrentHashMap<Long, DwarfAbbreviation.Table>();
+	private final ConcurrentHashMap<Long, DwarfUnit> units = new ConcurrentHashMap<Long, DwarfUnit>();
+
+	private volatile DwarfLineSection lineSection;
+	private volatile long[] unitOffsets;
+	private volatile DwarfAddressIndex addressIndex;
+	private volatile DwarfNameIndex nameIndex;
+	private volatile DwarfSplitLoader splitLoader;
+	private volatile Map<Long, DwarfUnit> typeUnits;
+	private volatile DwarfTypeReader typeReader;
+	private volatile boolean framesLoaded;
+	private DwarfEhFrameHeader ehFrameHeader;
+	private DwarfFrameSection ehFrame;
+	private DwarfFrameSection debugFrame;
+
+	public Dwarf(ElfFile file) {
+		this(file, "");
+	}
+
+	/**
+	 * @param file the file containing the debugging information
+	 * @param sectionSuffix the suffix of the names of the debugging sections, ".dwo" for the
+	 * 	split debugging information of .dwo and .dwp files
+	 */
+	public Dwarf(ElfFile file, String sectionSuffix) {
+		this.file = file;
+		this.sectionSuffix = sectionSuffix;
+	}
+
+	/**
+	 * @return Returns the file containing the debugging information
+	 */
+	public ElfFile getFile() {
+		return file;
+	}
+
+	/**
+	 * @return Returns the size in bytes of a target address, used where DWARF does not record it
+	 */
+	public int getAddressSize() {
+		return file.getHeader().getBitClass() == ElfHeader.BitClass.ELFCLASS32 ? 4 : 8;
+	}
+
+	/**
+	 * Returns the contents of a debugging section. The returned buffer is shared and must only be
+	 * read with absolute positions, for example through a {@link DwarfReader}.
+	 *
+	 * <p>
+	 * Compressed sections are decompressed once and kept for the lifetime of this object, as
+	 * units and the line decoder hold on to their sections, up to the limit set by
+	 * {@link #setMaxDecompressedBytes(long)}. These sections are not evictable. Sections which do
+	 * not fit are served from the bounded cache of the file instead, see
+	 * {@link ElfSection#getUncompressedDataBuffer()}, which decompresses sections larger than its
+	 * own limit on every request, so lookups in such files are slow unless a limit is raised.
+	 *
+	 * @param name the name of the section, for example ".debug_line". The section suffix is
+	 * 	appended if the file has such a section.
+	 * @return Returns the contents of the section or null if the file does not have it
+	 */
+	public ByteBuffer getSection(String name) {
+		ByteBuffer buffer = sections.get(name);
+		if(buffer == null) {
+			ElfSectionHeaders headers = file.getSectionHeaders();
+			Integer index = headers.getSectionIndexByName(name + sectionSuffix);
+			if(index == null && !sectionSuffix.isEmpty())
+				index = headers.getSectionIndexByName(name);
+			if(index != null && headers.getSectionByIndex(index).isCompressed())
+				return getDecompressedSection(name, headers.getSectionByIndex(index));
+			buffer = index == null ? MISSING : headers.getSectionByIndex(index).getDataBuffer();
+			ByteBuffer previous = sections.putIfAbsent(name, buffer);
+			if(previous != null)
+				buffer = previous;
+		}
+		return buffer == MISSING ? null : buffer;
+	}
+
+	private ByteBuffer getDecompressedSection(String name, ElfSection section) {
+		// Decompressed by a single thread, large sections are expensive to decompress twice, but
+		// without blocking the lookups of other sections
+		Object lock = decompressionLocks.computeIfAbsent(name, n -> new Object());
+		synchronized(lock) {
+			ByteBuffer buffer = sections.get(name);
+			if(buffer != null)
+				return buffer;
+			if(!reserveDecompressedBytes(section.getUncompressedSize()))
+				return section.getUncompressedDataBuffer();
+			try {
+				ByteOrder order = file.getHeader().getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB
+						? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+				buffer = ByteBuffer.wrap(section.decompress()).asReadOnlyBuffer().order(order);
+			} catch(RuntimeException e) {
+				decompressedBytes.addAndGet(-section.getUncompressedSize());
+				throw e;
+			}
+			decompressedSections.add(name);
+			sections.put(name, buffer);
+			return buffer;
+		}
+	}
+
+	private boolean reserveDecompressedBytes(long size) {
+		for(;;) {
+			long current = decompressedBytes.get();
+			if(size > maxDecompressedBytes - current)
+				return false;
+			if(decompressedBytes.compareAndSet(current, current + size))
+				return true;
+		}
+	}
+
+	/**
+	 * Sets the number of decompressed bytes kept for the lifetime of this object. Sections which
+	 * are already kept are not released, only sections decompressed later are affected.
+	 *
+	 * @param maxBytes the number of decompressed bytes to keep at most
+	 */
+	public void setMaxDecompressedBytes(long maxBytes) {
+		maxDecompressedBytes = maxBytes;
+	}
+
+	/**
+	 * @return Returns the number of decompressed bytes kept at most
+	 */
+	public long getMaxDecompressedBytes() {
+		return maxDecompressedBytes;
+	}
+
+	/**
+	 * @return Returns the number of decompressed bytes kept for the lifetime of this object
+	 */
+	public long getDecompressedBytes() {
+		return decompressedBytes.get();
+	}
+
+	/**
+	 * @param name the name of the section
+	 * @return Returns true if the file has the debugging section
+	 */
+	public boolean hasSection(String name) {
+		return getSection(name) != null;
+	}
+
+	/**
+	 * @return Returns the decoder of the .debug_line section, or null if the file has no line information
+	 */
+	public DwarfLineSection getLineSection() {
+		DwarfLineSection result = lineSection;
+		if(result == null) {
+			ByteBuffer data = getSection(".debug_line");
+			if(data == null)
+				return null;
+			synchronized(this) {
+				result = lineSection;
+				if(result == null)
+					lineSection = result = new DwarfLineSection(this, data);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param offset the offset of an abbreviation table in .debug_abbrev
+	 * @return Returns the decoded abbreviation table, which is shared by all units using it
+	 */
+	public DwarfAbbreviation.Table getAbbreviations(long offset) {
+		DwarfAbbreviation.Table table = abbreviations.get(offset);
+		if(table == null) {
+			ByteBuffer data = getSection(".debug_abbrev");
+			if(data == null)
+				throw new ElfException("Missing .debug_abbrev section");
+			table = DwarfAbbreviation.decodeTable(data, offset);
+			DwarfAbbreviation.Table previous = abbreviations.putIfAbsent(offset, table);
+			if(previous != null)
+				table = previous;
+		}
+		return table;
+	}
+
+	/**
+	 * @return Returns the offsets of all units in .debug_info, which is empty if the file has none
+	 */
+	public long[] getUnitOffsets() {
+		long[] result = unitOffsets;
+		if(result == null) {
+			ByteBuffer data = getSection(".debug_info");
+			long[] offsets = new long[16];
+			int count = 0;
+			if(data != null) {
+				DwarfReader r = new DwarfReader(data);
+				while(r.hasRemaining()) {
+					if(count == offsets.length)
+						offsets = Arrays.copyOf(offsets, count * 2);
+					offsets[count++] = r.position();
+					r.skip(DwarfReader.lengthOf(r.unitLength()));
+				}
+			}
+			unitOffsets = result = Arrays.copyOf(offsets, count);
+		}
+		return result.clone();
+	}
+
+	/**
+	 * @param offset the offset of a unit header in .debug_info
+	 * @return Returns the unit, which is cached
+	 */
+	public DwarfUnit getUnit(long offset) {
+		DwarfUnit unit = units.get(offset);
+		if(unit == null) {
+			ByteBuffer data = getSection(".debug_info");
+			if(data == null)
+				throw new ElfException("Missing .debug_info section");
+			unit = DwarfUnit.read(this, data, offset);
+			DwarfUnit previous = units.putIfAbsent(offset, unit);
+			if(previous != null)
+				unit = previous;
+		}
+		return unit;
+	}
+
+	/**
+	 * @param offset the offset of an entry in .debug_info
+	 * @return Returns the unit containing the offset
+	 */
+	public DwarfUnit getUnitContaining(long offset) {
+		long[] offsets = unitOffsets;
+		if(offsets == null) {
+			getUnitOffsets();
+			offsets = unitOffsets;
+		}
+		int index = Arrays.binarySearch(offsets, offset);
+		if(index < 0)
+			index = -index - 2;
+		if(index < 0)
+			throw new ElfException("Entry offset 0x" + Long.toHexString(offset) + " is before the first unit");
+		return getUnit(offsets[index]);
+	}
+
+	/**
+	 * @param offset the offset of an entry in .debug_info, as returned by {@link DwarfDie#getReference(int)}
+	 * @return Returns the entry, which may be in any unit
+	 */
+	public DwarfDie getDie(long offset) {
+		return getUnitContaining(offset).readDie(offset);
+	}
+
+	/**
+	 * Returns a unit of split debugging information, bound to the skeleton unit in the main
+	 * file which supplies its addresses and line table. The unit is cached like those returned
+	 * by {@link #getUnit(long)}.
+	 *
+	 * @param offset the offset of the unit header in .debug_info.dwo
+	 * @param skeleton the skeleton unit
+	 * @param packageIndex the index of the package holding the unit, or null for a .dwo file
+	 * @param row the row of the unit in the package index
+	 * @return Returns the split unit
+	 */
+	DwarfUnit getSplitUnit(long offset, DwarfUnit skeleton, DwarfPackageIndex packageIndex, int row) {
+		DwarfUnit unit = units.get(offset);
+		if(unit == null) {
+			ByteBuffer data = getSection(".debug_info");
+			if(data == null)
+				throw new ElfException("Missing .debug_info.dwo section");
+			unit = DwarfUnit.read(this, data, offset, skeleton, packageIndex, row);
+			DwarfUnit previous = units.putIfAbsent(offset, unit);
+			if(previous != null)
+				unit = previous;
+		}
+		return unit;
+	}
+
+	/**
+	 * Returns the type units of the file by signature: those in .debug_info with a DWARF 5 type
+	 * unit header and those in the .debug_types section of DWARF 4. The map is built on first use.
+	 *
+	 * @return Returns the type units keyed by their signature
+	 */
+	public Map<Long, DwarfUnit> getTypeUnits() {
+		Map<Long, DwarfUnit> result = typeUnits;
+		if(result == null) {
+			synchronized(this) {
+				result = typeUnits;
+				if(result == null) {
+					result = new HashMap<Long, DwarfUnit>();
+					for(DwarfUnit unit : getUnits()) {
+						if(unit.isTypeUnit())
+							result.put(unit.getTypeSignature(), unit);
+					}
+					ByteBuffer types = getSection(".debug_types");
+					if(types != null) {
+						DwarfReader r = new DwarfReader(types);
+						while(r.hasRemaining()) {
+							DwarfUnit unit = DwarfUnit.readTypeUnit(this, types, r.position());
+							result.put(unit.getTypeSignature(), unit);
+							r.seek((int)unit.getEndOffset());
+						}
+					}
+					typeUnits = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Follows a reference attribute, including DW_FORM_ref_sig8 references to the type of a type
+	 * unit. References local to a unit stay in that unit, which may be in .debug_types.
+	 *
+	 * @param die the entry with the attribute
+	 * @param attribute the name of an attribute of the reference class
+	 * @return Returns the referenced entry, or null if a type signature is not found
+	 */
+	public DwarfDie getReferencedDie(DwarfDie die, int attribute) {
+		DwarfUnit unit = die.getUnit();
+		switch(die.getForm(attribute)) {
+		case DwarfForm.REF_SIG8:
+			DwarfUnit typeUnit = unit.getDwarf().getTypeUnits().get(die.getUnsigned(attribute, 0));
+			return typeUnit == null ? null : typeUnit.getTypeEntry();
+		case DwarfForm.REF_ADDR:
+			return unit.getDwarf().getDie(die.getReference(attribute));
+		default:
+			return unit.readDie(die.getReference(attribute));
+		}
+	}
+
+	/**
+	 * @return Returns the reader of struct layouts, which caches the types it has resolved
+	 */
+	public DwarfTypeReader getTypeReader() {
+		DwarfTypeReader result = typeReader;
+		if(result == null) {
+			synchronized(this) {
+				result = typeReader;
+				if(result == null)
+					typeReader = result = new DwarfTypeReader(this);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Returns the loader used to find the split units of skeleton units, see {@link DwarfUnit#getSplitUnit()}
+	 */
+	public DwarfSplitLoader getSplitLoader() {
+		DwarfSplitLoader result = splitLoader;
+		if(result == null) {
+			synchronized(this) {
+				result = splitLoader;
+				if(result == null)
+					splitLoader = result = new DwarfSplitLoader();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param splitLoader the loader to find split units with, for example one configured with a .dwp package
+	 */
+	public void setSplitLoader(DwarfSplitLoader splitLoader) {
+		this.splitLoader = splitLoader;
+	}
+
+	/**
+	 * @return Returns all units of .debug_info. Only the unit headers are decoded.
+	 */
+	public List<DwarfUnit> getUnits() {
+		long[] offsets = getUnitOffsets();
+		List<DwarfUnit> result = new ArrayList<DwarfUnit>(offsets.length);
+		for(long offset : offsets)
+			result.add(getUnit(offset));
+		return result;
+	}
+
+	/**
+	 * Decodes the entry trees of all units in parallel on the common fork/join pool
+	 *
+	 * @return Returns all units of .debug_info
+	 */
+	public List<DwarfUnit> decodeUnits() {
+		return decodeUnits(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Decodes the entry trees of all units in parallel. Units are independent of each other and
+	 * only share the abbreviation tables and the section contents, so each unit is decoded by a
+	 * separate task.
+	 *
+	 * @param pool the pool to decode the units on
+	 * @return Returns all units of .debug_info
+	 */
+	public List<DwarfUnit> decodeUnits(ForkJoinPool pool) {
+		final List<DwarfUnit> result = getUnits();
+		try {
+			pool.submit(() -> result.parallelStream().forEach(DwarfUnit::getTree)).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ElfException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof ElfException)
+				throw (ElfException)cause;
+			throw new ElfException(cause);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index from addresses to compile units. It is built on first use from
+	 * .debug_aranges or the unit entries and kept for the lifetime of the file.
+	 *
+	 * @return Returns the address index, which is empty if the file has no .debug_info
+	 */
+	public DwarfAddressIndex getAddressIndex() {
+		DwarfAddressIndex result = addressIndex;
+		if(result == null) {
+			synchronized(this) {
+				result = addressIndex;
+				if(result == null)
+					addressIndex = result = DwarfAddressIndex.build(this);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param address an address in the file
+	 * @return Returns the compile unit covering the address, or null if no unit covers it
+	 */
+	public DwarfUnit findUnit(long address) {
+		long offset = getAddressIndex().findUnitOffset(address);
+		return offset < 0 ? null : getUnit(offset);
+	}
+
+	/**
+	 * Finds the source line of an address. The compile unit covering the address is found
+	 * through the address index, and only its line table is decoded. Files with line tables but
+	 * no .debug_info fall back to searching the line tables in order.
+	 *
+	 * @param address an address in the file
+	 * @return Returns the source line containing the address or null if it is not known
+	 */
+	public DwarfSourceLine findLine(long address) {
+		DwarfLineSection lines = getLineSection();
+		if(lines == null)
+			return null;
+		if(!hasSection(".debug_info"))
+			return lines.findLine(address);
+
+		DwarfUnit unit = findUnit(address);
+		DwarfLineTable table = unit == null ? null : unit.getLineTable();
+		return table == null ? null : table.findLine(address);
+	}
+
+	/**
+	 * Finds the source lines of many addresses, see {@link #findLine(long)}. The addresses are
+	 * visited in sorted order, so the units and line tables are decoded in address order and the
+	 * lookups of neighbouring addresses hit the same tables.
+	 *
+	 * @param addresses the addresses to look up, in any order
+	 * @return Returns the source line of each address, with null for addresses which are not known
+	 */
+	public DwarfSourceLine[] findLines(long[] addresses) {
+		DwarfSourceLine[] result = new DwarfSourceLine[addresses.length];
+		for(int i : DwarfSort.orderUnsigned(addresses, addresses.length))
+			result[i] = findLine(addresses[i]);
+		return result;
+	}
+
+	/**
+	 * Returns the index from names to entries. The .debug_names section is used if present,
+	 * then .gdb_index; otherwise an index is built from all units on first use. The index is
+	 * kept for the lifetime of the file.
+	 *
+	 * @return Returns the name index
+	 */
+	public DwarfNameIndex getNameIndex() {
+		DwarfNameIndex result = nameIndex;
+		if(result == null) {
+			synchronized(this) {
+				result = nameIndex;
+				if(result == null) {
+					ByteBuffer names = getSection(".debug_names");
+					ByteBuffer gdbIndex = getSection(".gdb_index");
+					if(names != null)
+						result = new DwarfDebugNames(names, getStringSection());
+					else if(gdbIndex != null)
+						result = new DwarfGdbIndex(gdbIndex);
+					else
+						result = DwarfDieNameIndex.build(this);
+					nameIndex = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private ByteBuffer getStringSection() {
+		ByteBuffer strings = getSection(".debug_str");
+		if(strings == null)
+			throw new ElfException("Missing .debug_str section");
+		return strings;
+	}
+
+	/**
+	 * @param name the name of a function, variable or type
+	 * @return Returns the entries defining the name, see {@link #getNameIndex()}
+	 */
+	public List<DwarfNameEntry> findEntries(String name) {
+		return getNameIndex().find(name);
+	}
+
+	/**
+	 * Symbolizes an address including the functions inlined at it. The scopes containing the
+	 * address are found in the interval tree of its compile unit, see {@link DwarfUnit#getScopeIndex()},
+	 * and each inlined instance contributes the call site recorded by DW_AT_call_file and
+	 * DW_AT_call_line as the location in its caller. Skeleton units are resolved to their split
+	 * units through {@link #getSplitLoader()}.
+	 *
+	 * @param address an address in the file
+	 * @return Returns the frames from the innermost inlined function to the function containing
+	 * 	the address, which is empty if the address is not known
+	 */
+	public List<DwarfInlineFrame> findFrames(long address) {
+		List<DwarfInlineFrame> frames = new ArrayList<DwarfInlineFrame>();
+		if(!hasSection(".debug_info")) {
+			DwarfSourceLine line = findLine(address);
+			if(line != null)
+				frames.add(new DwarfInlineFrame(null, null, null, line));
+			return frames;
+		}
+
+		DwarfUnit unit = findUnit(address);
+		if(unit == null)
+			return frames;
+		DwarfLineTable table = unit.getLineTable();
+		DwarfSourceLine location = table == null ? null : table.findLine(address);
+
+		// The functions of split units are in the .dwo file, the line table stays with the skeleton
+		DwarfUnit split = unit.isSkeleton() ? unit.getSplitUnit() : null;
+		DwarfScopeIndex index = (split != null ? split : unit).getScopeIndex();
+		int[] scopes = index.findScopes(address);
+		if(scopes.length == 0 && location != null)
+			frames.add(new DwarfInlineFrame(null, null, null, location));
+
+		for(int scope : scopes) {
+			DwarfDie entry = index.getTree().getDie(scope);
+			DwarfDie declaration = getDeclaration(entry);
+			frames.add(new DwarfInlineFrame(entry, declaration.getName(), getLinkageName(declaration), location));
+
+			if(entry.getTag() != DwarfTag.INLINED_SUBROUTINE)
+				break;
+			// The caller executes the call which was inlined
+			String file = table == null ? null : table.getFileName((int)entry.getUnsigned(DwarfAttribute.CALL_FILE, -1));
+			location = new DwarfSourceLine(address, file, (int)entry.getUnsigned(DwarfAttribute.CALL_LINE, 0));
+		}
+		return frames;
+	}
+
+	/**
+	 * @return Returns the binary search table of .eh_frame_hdr, or null if the file does not have one
+	 */
+	public DwarfEhFrameHeader getEhFrameHeader() {
+		loadFrames();
+		return ehFrameHeader;
+	}
+
+	/**
+	 * @return Returns the call frame information of .eh_frame, or null if the file does not have it
+	 */
+	public DwarfFrameSection getEhFrame() {
+		loadFrames();
+		return ehFrame;
+	}
+
+	/**
+	 * @return Returns the call frame information of .debug_frame, or null if the file does not have it
+	 */
+	public DwarfFrameSection getDebugFrame() {
+		loadFrames();
+		return debugFrame;
+	}
+
+	/**
+	 * Finds the frame description entry describing how to unwind from an address. The search
+	 * table of .eh_frame_hdr is used when present, so that only the entries visited by the
+	 * binary search are read. Otherwise a sorted table of the entries of .eh_frame and then
+	 * .debug_frame is built on first use.
+	 *
+	 * @param address a code address
+	 * @return Returns the entry covering the address, or null if there is none
+	 */
+	public DwarfFde findFde(long address) {
+		loadFrames();
+		DwarfEhFrameHeader header = ehFrameHeader;
+		if(header != null && ehFrame != null && header.getFdeCount() > 0) {
+			long fdeAddress = header.findFdeAddress(address);
+			if(fdeAddress != -1) {
+				DwarfFde fde = ehFrame.readFde(fdeAddress - ehFrame.getAddress());
+				if(fde != null && fde.contains(address))
+					return fde;
+			}
+		}
+		else if(ehFrame != null) {
+			DwarfFde fde = ehFrame.findFde(address);
+			if(fde != null)
+				return fde;
+		}
+		return debugFrame == null ? null : debugFrame.findFde(address);
+	}
+
+	/**
+	 * Finds the rules to unwind the frame of an address, see {@link #findFde(long)} and
+	 * {@link DwarfFrameTable}
+	 *
+	 * @param address a code address
+	 * @return Returns the row of the call frame table covering the address, or null if there is none
+	 */
+	public DwarfFrameRow findFrameRow(long address) {
+		DwarfFde fde = findFde(address);
+		return fde == null ? null : fde.getFrameTable().findRow(address);
+	}
+
+	private void loadFrames() {
+		if(framesLoaded)
+			return;
+		synchronized(this) {
+			if(framesLoaded)
+				return;
+			int addressSize = getAddressSize();
+			ElfSectionHeaders headers = file.getSectionHeaders();
+
+			ElfSection section = getFrameSection(headers, ".eh_frame_hdr");
+			if(section != null) {
+				ehFrameHeader = new DwarfEhFrameHeader(section.getDataBuffer(), section.getAddress(), addressSize);
+			}
+			else {
+				// The segment remains when the section headers are stripped
+				ElfSegment segment = findSegment(ElfSegment.Type.GNU_EH_FRAME, -1);
+				if(segment != null && segment.getFileSize() > 0)
+					ehFrameHeader = new DwarfEhFrameHeader(getSegmentData(segment, segment.getVirtualAddress()),
+							segment.getVirtualAddress(), addressSize);
+			}
+
+			section = getFrameSection(headers, ".eh_frame");
+			if(section != null) {
+				ehFrame = new DwarfFrameSection(section.getDataBuffer(), section.getAddress(), true, addressSize);
+			}
+			else if(ehFrameHeader != null && ehFrameHeader.getEhFramePointer() != 0) {
+				// Without section headers the length of .eh_frame is not known, the rest of its segment is used
+				long ehFrameAddress = ehFrameHeader.getEhFramePointer();
+				ElfSegment segment = findSegment(ElfSegment.Type.LOAD, ehFrameAddress);
+				if(segment != null)
+					ehFrame = new DwarfFrameSection(getSegmentData(segment, ehFrameAddress), ehFrameAddress, true, addressSize);
+			}
+
+			section = getFrameSection(headers, ".debug_frame");
+			if(section != null)
+				debugFrame = new DwarfFrameSection(section.isCompressed() ? getSection(".debug_frame") : section.getDataBuffer(),
+						section.getAddress(), false, addressSize);
+			framesLoaded = true;
+		}
+	}
+
+	private static ElfSection getFrameSection(ElfSectionHeaders headers, String name) {
+		Integer index = headers.getSectionIndexByName(name);
+		if(index == null)
+			return null;
+		ElfSection section = headers.getSectionByIndex(index);
+		return section.getType().val == ElfSection.Type.NOBITS || section.getFileSize() == 0 ? null : section;
+	}
+
+	/**
+	 * @param address an address in the segment, or -1 to match any segment of the type
+	 */
+	private ElfSegment findSegment(int type, long address) {
+		ElfProgramHeaders segments = file.getProgramHeaders();
+		for(int i = 0; i < segments.size(); i++) {
+			ElfSegment segment = segments.getSegmentByIndex(i);
+			if(segment.getType().val != type)
+				continue;
+			if(address == -1 || Long.compareUnsigned(address - segment.getVirtualAddress(), segment.getFileSize()) < 0)
+				return segment;
+		}
+		return null;
+	}
+
+	/** Returns the file contents of a segment from an address to the end of the segment */
+	private ByteBuffer getSegmentData(ElfSegment segment, long address) {
+		long skip = address - segment.getVirtualAddress();
+		return file.getParser().getByteBuffer(segment.getOffset() + skip, (int)(segment.getFileSize() - skip));
+	}
+
+	/**
+	 * Follows DW_AT_abstract_origin and DW_AT_specification to the entry naming a function
+	 */
+	DwarfDie getDeclaration(DwarfDie entry) {
+		// Bound the chain in case of malformed references
+		for(int i = 0; i < 8 && entry.getName() == null; i++) {
+			// Split units refer to entries of their own file
+			Dwarf owner = entry.getUnit().getDwarf();
+			if(entry.hasAttribute(DwarfAttribute.ABSTRACT_ORIGIN))
+				entry = owner.getDie(entry.getReference(DwarfAttribute.ABSTRACT_ORIGIN));
+			else if(entry.hasAttribute(DwarfAttribute.SPECIFICATION))
+				entry = owner.getDie(entry.getReference(DwarfAttribute.SPECIFICATION));
+			else
+				break;
+		}
+		return entry;
+	}
+
+	private String getLinkageName(DwarfDie entry) {
+		String name = entry.getString(DwarfAttribute.LINKAGE_NAME);
+		if(name == null)
+			name = entry.getString(DwarfAttribute.MIPS_LINKAGE_NAME);
+		if(name == null && entry.hasAttribute(DwarfAttribute.SPECIFICATION))
+			name = getLinkageName(entry.getUnit().getDwarf().getDie(entry.getReference(DwarfAttribute.SPECIFICATION)));
+		return name;
+	}
+
+	/**
+	 * Adds the heap memory retained by the decoded debugging information to the provided estimate
+	 *
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		// Sections are only copied when the parser can not share the file contents, or decompressed
+		boolean zeroCopy = file.getParser().isZeroCopy();
+		for(Map.Entry<String, ByteBuffer> e : sections.entrySet()) {
+			if(e.getValue() != MISSING && (!zeroCopy || decompressedSections.contains(e.getKey())))
+				estimate.add(ElfMemoryEstimate.DEBUG_INFO, ElfMemoryEstimate.arraySize(e.getValue().capacity(), 1));
+		}
+
+		DwarfLineSection lines = lineSection;
+		if(lines != null)
+			lines.estimateRetainedBytes(estimate);
+
+		for(DwarfUnit unit : units.values()) {
+			if(unit.isTreeDecoded())
+				estimate.add(ElfMemoryEstimate.DEBUG_INFO, unit.getTree().estimateRetainedBytes());
+			if(unit.isScopeIndexBuilt())
+				estimate.add(ElfMemoryEstimate.DEBUG_INFO, unit.getScopeIndex().estimateRetainedBytes());
+		}
+
+		DwarfAddressIndex index = addressIndex;
+		if(index != null)
+			estimate.add(ElfMemoryEstimate.DEBUG_INFO, index.estimateRetainedBytes());
+
+		DwarfNameIndex names = nameIndex;
+		if(names != null)
+			estimate.add(ElfMemoryEstimate.DEBUG_INFO, names.estimateRetainedBytes());
+
+		DwarfTypeReader types = typeReader;
+		if(types != null)
+			estimate.add(ElfMemoryEstimate.DEBUG_INFO, types.estimateRetainedBytes());
+
+		if(framesLoaded) {
+			if(ehFrameHeader != null)
+				estimate.add(ElfMemoryEstimate.DEBUG_INFO, ehFrameHeader.estimateRetainedBytes());
+			if(ehFrame != null)
+				estimate.add(ElfMemoryEstimate.DEBUG_INFO, ehFrame.estimateRetainedBytes());
+			if(debugFrame != null)
+				estimate.add(ElfMemoryEstimate.DEBUG_INFO, debugFrame.estimateRetainedBytes());
+		}
+	}
+}
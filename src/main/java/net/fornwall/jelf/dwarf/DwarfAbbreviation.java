@@ -0,0 +1,187 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * An abbreviation declaration from .debug_abbrev, describing the tag and the attribute
+ * encodings shared by debugging information entries.
+ */
+public final class DwarfAbbreviation {
+	private final long code;
+	private final int tag;
+	private final boolean children;
+	private final int[] attributes;
+	private final int[] forms;
+	/** Values of attributes with the DW_FORM_implicit_const form */
+	private final long[] implicitConstants;
+
+	private DwarfAbbreviation(long code, int tag, boolean children, int[] attributes, int[] forms, long[] implicitConstants) {
+		this.code = code;
+		this.tag = tag;
+		this.children = children;
+		this.attributes = attributes;
+		this.forms = forms;
+		this.implicitConstants = implicitConstants;
+	}
+
+	/** The abbreviation declarations of one abbreviation table, looked up by code */
+	public static final class Table {
+		/** Declarations indexed by code when the codes are dense, which they nearly always are */
+		private final DwarfAbbreviation[] byCode;
+		private final Map<Long, DwarfAbbreviation> sparse;
+
+		private Table(List<DwarfAbbreviation> list) {
+			long max = 0;
+			for(DwarfAbbreviation a : list)
+				max = Math.max(max, a.code);
+
+			if(max <= list.size() * 2L + 16) {
+				byCode = new DwarfAbbreviation[(int)max + 1];
+				for(DwarfAbbreviation a : list)
+					byCode[(int)a.code] = a;
+				sparse = null;
+			}
+			else {
+				byCode = null;
+				sparse = new HashMap<Long, DwarfAbbreviation>();
+				for(DwarfAbbreviation a : list)
+					sparse.put(a.code, a);
+			}
+		}
+
+		/**
+		 * @param code the abbreviation code of an entry
+		 * @return Returns the declaration with the provided code
+		 */
+		public DwarfAbbreviation get(long code) {
+			DwarfAbbreviation a = null;
+			if(byCode != null) {
+				if(code > 0 && code < byCode.length)
+					a = byCode[(int)code];
+			}
+			else {
+				a = sparse.get(code);
+			}
+			if(a == null)
+				throw new ElfException("Unknown DWARF abbreviation code " + code);
+			return a;
+		}
+	}
+
+	/**
+	 * @param data the contents of .debug_abbrev
+	 * @param offset the offset of the abbreviation table, as given by a unit header
+	 * @return Returns the decoded abbreviation table
+	 */
+	public static Table decodeTable(ByteBuffer data, long offset) {
+		DwarfReader r = new DwarfReader(data, (int)offset);
+		List<DwarfAbbreviation> list = new ArrayList<DwarfAbbreviation>();
+		while(r.hasRemaining()) {
+			long code = r.uleb128();
+			if(code == 0)
+				break;
+			int tag = (int)r.uleb128();
+			boolean children = r.u8() != 0;
+
+			int[] attributes = new int[8];
+			int[] forms = new int[8];
+			long[] constants = null;
+			int count = 0;
+			while(true) {
+				int attribute = (int)r.uleb128();
+				int form = (int)r.uleb128();
+				if(attribute == 0 && form == 0)
+					break;
+				if(count == attributes.length) {
+					attributes = Arrays.copyOf(attributes, count * 2);
+					forms = Arrays.copyOf(forms, count * 2);
+				}
+				if(form == DwarfForm.IMPLICIT_CONST) {
+					if(constants == null)
+						constants = new long[attributes.length];
+					else if(constants.length < attributes.length)
+						constants = Arrays.copyOf(constants, attributes.length);
+					constants[count] = r.sleb128();
+				}
+				attributes[count] = attribute;
+				forms[count] = form;
+				count++;
+			}
+
+			list.add(new DwarfAbbreviation(code, tag, children, Arrays.copyOf(attributes, count),
+					Arrays.copyOf(forms, count), constants == null ? null : Arrays.copyOf(constants, count)));
+		}
+		return new Table(list);
+	}
+
+	/**
+	 * @return Returns the abbreviation code
+	 */
+	public long getCode() {
+		return code;
+	}
+
+	/**
+	 * @return Returns the tag of entries using this abbreviation, see {@link DwarfTag}
+	 */
+	public int getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return Returns true if entries using this abbreviation are followed by children
+	 */
+	public boolean hasChildren() {
+		return children;
+	}
+
+	/**
+	 * @return Returns the number of attributes
+	 */
+	public int getAttributeCount() {
+		return attributes.length;
+	}
+
+	/**
+	 * @param index the index of the attribute
+	 * @return Returns the name of the attribute, see {@link DwarfAttribute}
+	 */
+	public int getAttribute(int index) {
+		return attributes[index];
+	}
+
+	/**
+	 * @param index the index of the attribute
+	 * @return Returns the form of the attribute, see {@link DwarfForm}
+	 */
+	public int getForm(int index) {
+		return forms[index];
+	}
+
+	/**
+	 * @param index the index of an attribute with the DW_FORM_implicit_const form
+	 * @return Returns the value stored in the abbreviation
+	 */
+	public long getImplicitConstant(int index) {
+		return implicitConstants[index];
+	}
+
+	/**
+	 * @param attribute the name of an attribute, see {@link DwarfAttribute}
+	 * @return Returns the index of the attribute or -1 if entries using this abbreviation do not have it
+	 */
+	public int indexOf(int attribute) {
+		for(int i = 0; i < attributes.length; i++) {
+			if(attributes[i] == attribute)
+				return i;
+		}
+		return -1;
+	}
+}
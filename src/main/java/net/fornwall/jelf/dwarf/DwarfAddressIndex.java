@@ -0,0 +1,239 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+
+/**
+ * Sorted table of address intervals mapping addresses to the compile unit covering them. The
+ * table is built from .debug_aranges where present. Compile units which .debug_aranges does not
+ * describe, or all of them when the section is missing, contribute the ranges of their unit
+ * entry, decoded from DW_AT_low_pc and DW_AT_high_pc or from the range lists in .debug_rnglists
+ * or .debug_ranges.
+ */
+public class DwarfAddressIndex {
+	private final long[] starts;
+	private final long[] ends;
+	private final long[] unitOffsets;
+	// The largest end of the intervals up to each index, so lookups know when to stop looking back
+	private final long[] maxEnds;
+
+	private DwarfAddressIndex(long[] starts, long[] ends, long[] unitOffsets) {
+		this.starts = starts;
+		this.ends = ends;
+		this.unitOffsets = unitOffsets;
+		maxEnds = new long[ends.length];
+		for(int i = 0; i < ends.length; i++)
+			maxEnds[i] = i > 0 && Long.compareUnsigned(maxEnds[i - 1], ends[i]) > 0 ? maxEnds[i - 1] : ends[i];
+	}
+
+	/** Growable list of intervals used while building the index */
+	private static final class Builder {
+		long[] starts = new long[64];
+		long[] ends = new long[64];
+		long[] units = new long[64];
+		int size;
+
+		void add(long start, long end, long unit) {
+			if(start == end)
+				return;
+			if(size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				units = Arrays.copyOf(units, size * 2);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			units[size] = unit;
+			size++;
+		}
+
+		DwarfAddressIndex build() {
+			int[] order = DwarfSort.orderUnsigned(starts, size);
+
+			long[] sortedStarts = new long[size];
+			long[] sortedEnds = new long[size];
+			long[] sortedUnits = new long[size];
+			for(int i = 0; i < size; i++) {
+				sortedStarts[i] = starts[order[i]];
+				sortedEnds[i] = ends[order[i]];
+				sortedUnits[i] = units[order[i]];
+			}
+			return new DwarfAddressIndex(sortedStarts, sortedEnds, sortedUnits);
+		}
+	}
+
+	/**
+	 * @param dwarf the debugging information to index
+	 * @return Returns the address index of the compile units in .debug_info
+	 */
+	public static DwarfAddressIndex build(Dwarf dwarf) {
+		Builder builder = new Builder();
+		Set<Long> covered = new HashSet<Long>();
+
+		ByteBuffer aranges = dwarf.getSection(".debug_aranges");
+		if(aranges != null)
+			readAddressRanges(aranges, builder, covered);
+
+		for(long offset : dwarf.getUnitOffsets()) {
+			if(covered.contains(offset))
+				continue;
+			DwarfUnit unit = dwarf.getUnit(offset);
+			if(unit.getUnitType() == DwarfUnit.TYPE_TYPE || unit.getUnitType() == DwarfUnit.TYPE_SPLIT_TYPE)
+				continue;
+
+			DwarfDie root = unit.getRoot();
+			if(root == null)
+				continue;
+			long[] ranges = root.getRanges();
+			if(ranges.length == 0) {
+				// Some producers only describe the functions, not the unit as a whole
+				for(DwarfDie child : unit.getChildren(root)) {
+					if(child.getTag() == DwarfTag.SUBPROGRAM) {
+						long[] r = child.getRanges();
+						for(int i = 0; i < r.length; i += 2)
+							builder.add(r[i], r[i + 1], offset);
+					}
+				}
+			}
+			for(int i = 0; i < ranges.length; i += 2)
+				builder.add(ranges[i], ranges[i + 1], offset);
+		}
+		return builder.build();
+	}
+
+	private static void readAddressRanges(ByteBuffer data, Builder builder, Set<Long> covered) {
+		DwarfReader r = new DwarfReader(data);
+		while(r.hasRemaining()) {
+			int start = r.position();
+			long unitLength = r.unitLength();
+			boolean dwarf64 = DwarfReader.isDwarf64(unitLength);
+			int end = (int)(r.position() + DwarfReader.lengthOf(unitLength));
+
+			r.u16(); // version
+			long unitOffset = r.offset(dwarf64);
+			int addressSize = r.u8();
+			int segmentSize = r.u8();
+
+			// The tuples are aligned to twice the address size from the start of the set
+			int tupleSize = 2 * addressSize + segmentSize;
+			int pos = r.position() - start;
+			r.skip((tupleSize - pos % tupleSize) % tupleSize);
+
+			while(r.position() + tupleSize <= end) {
+				r.skip(segmentSize);
+				long address = r.address(addressSize);
+				long length = r.address(addressSize);
+				if(address == 0 && length == 0)
+					break;
+				builder.add(address, address + length, unitOffset);
+			}
+			covered.add(unitOffset);
+			r.seek(end);
+		}
+	}
+
+	/**
+	 * @param address an address
+	 * @return Returns the offset in .debug_info of the unit covering the address, or -1 if none does
+	 */
+	public long findUnitOffset(long address) {
+		int low = 0;
+		int high = starts.length - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(starts[mid], address) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+
+		// Overlapping intervals are searched back to the last one starting before the address,
+		// until no earlier interval reaches the address
+		for(int i = found; i >= 0 && Long.compareUnsigned(address, maxEnds[i]) < 0; i--) {
+			if(Long.compareUnsigned(address, ends[i]) < 0)
+				return unitOffsets[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Returns the number of intervals in the index
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+	/**
+	 * @param index the index of an interval
+	 * @return Returns the first address of the interval
+	 */
+	public long getStart(int index) {
+		return starts[index];
+	}
+
+	/**
+	 * @param index the index of an interval
+	 * @return Returns the address following the interval
+	 */
+	public long getEnd(int index) {
+		return ends[index];
+	}
+
+	/**
+	 * @param index the index of an interval
+	 * @return Returns the offset in .debug_info of the unit covering the interval
+	 */
+	public long getUnitOffset(int index) {
+		return unitOffsets[index];
+	}
+
+	/**
+	 * @return Returns the estimated heap size of this index
+	 */
+	public long estimateRetainedBytes() {
+		return ElfMemoryEstimate.objectSize(4, 0) + 4 * ElfMemoryEstimate.arraySize(starts.length, 8);
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the formatted contents of this index.
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table("Address index contains " + starts.length + " intervals");
+
+		// Column names
+		t.add("Start");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("End");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Unit");
+		t.setColAlign(Align.RIGHT);
+
+		for(int i = 0; i < starts.length; i++) {
+			t.newRow();
+			t.add("0x" + Long.toHexString(starts[i]));
+			t.add("0x" + Long.toHexString(ends[i]));
+			t.add("0x" + Long.toHexString(unitOffsets[i]));
+		}
+
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
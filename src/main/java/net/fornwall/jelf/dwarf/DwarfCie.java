@@ -0,0 +1,145 @@
+package net.fornwall.jelf.dwarf;
+
+/**
+ * A common information entry of .eh_frame or .debug_frame: the properties shared by the frame
+ * description entries referring to it, and the call frame instructions run before theirs.
+ */
+public final class DwarfCie {
+	private final long offset;
+	private final int version;
+	private final String augmentation;
+	private final int addressSize;
+	private final long codeAlignment;
+	private final long dataAlignment;
+	private final int returnAddressRegister;
+	private final int fdeEncoding;
+	private final int lsdaEncoding;
+	private final long personality;
+	private final boolean signalFrame;
+	private final boolean hasAugmentationData;
+	private final int instructions;
+	private final int end;
+
+	DwarfCie(long offset, int version, String augmentation, int addressSize, long codeAlignment, long dataAlignment,
+			int returnAddressRegister, int fdeEncoding, int lsdaEncoding, long personality, boolean signalFrame,
+			boolean hasAugmentationData, int instructions, int end) {
+		this.offset = offset;
+		this.version = version;
+		this.augmentation = augmentation;
+		this.addressSize = addressSize;
+		this.codeAlignment = codeAlignment;
+		this.dataAlignment = dataAlignment;
+		this.returnAddressRegister = returnAddressRegister;
+		this.fdeEncoding = fdeEncoding;
+		this.lsdaEncoding = lsdaEncoding;
+		this.personality = personality;
+		this.signalFrame = signalFrame;
+		this.hasAugmentationData = hasAugmentationData;
+		this.instructions = instructions;
+		this.end = end;
+	}
+
+	/**
+	 * @return Returns the offset of this entry in its section
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Returns the version of the call frame information, 1, 3 or 4
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Returns the augmentation string, for example "zR" or "zPLR"
+	 */
+	public String getAugmentation() {
+		return augmentation;
+	}
+
+	/**
+	 * @return Returns the size of the addresses of the described code
+	 */
+	public int getAddressSize() {
+		return addressSize;
+	}
+
+	/**
+	 * @return Returns the factor applied to the operands of advance instructions
+	 */
+	public long getCodeAlignment() {
+		return codeAlignment;
+	}
+
+	/**
+	 * @return Returns the factor applied to the offsets of register rules
+	 */
+	public long getDataAlignment() {
+		return dataAlignment;
+	}
+
+	/**
+	 * @return Returns the register holding the return address
+	 */
+	public int getReturnAddressRegister() {
+		return returnAddressRegister;
+	}
+
+	/**
+	 * @return Returns the encoding of the addresses of the frame description entries, see {@link DwarfPointerEncoding}
+	 */
+	public int getFdeEncoding() {
+		return fdeEncoding;
+	}
+
+	/**
+	 * @return Returns the encoding of the language specific data area pointers, or {@link DwarfPointerEncoding#OMIT}
+	 */
+	public int getLsdaEncoding() {
+		return lsdaEncoding;
+	}
+
+	/**
+	 * @return Returns the address of the personality routine, or 0 if there is none
+	 */
+	public long getPersonality() {
+		return personality;
+	}
+
+	/**
+	 * @return Returns true if the described functions are signal handlers
+	 */
+	public boolean isSignalFrame() {
+		return signalFrame;
+	}
+
+	/**
+	 * @return Returns true if the augmentation string starts with 'z', so that the entries
+	 * 	referring to this one have an augmentation data length
+	 */
+	boolean hasAugmentationData() {
+		return hasAugmentationData;
+	}
+
+	/**
+	 * @return Returns the offset of the initial instructions in the section
+	 */
+	int getInstructionsOffset() {
+		return instructions;
+	}
+
+	/**
+	 * @return Returns the offset following this entry in the section
+	 */
+	int getEndOffset() {
+		return end;
+	}
+
+	@Override
+	public String toString() {
+		return "DwarfCie[offset=0x" + Long.toHexString(offset) + ", augmentation=" + augmentation + "]";
+	}
+}
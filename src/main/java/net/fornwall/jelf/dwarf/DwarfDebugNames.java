@@ -0,0 +1,299 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * Reader of the DWARF 5 .debug_names name index. The section holds one or more name tables,
+ * each with a hash table of names pointing into a pool of entries describing the debugging
+ * information entries with that name. Only the table headers and abbreviations are decoded up
+ * front; lookups hash the name, walk its bucket and compare the candidate strings in .debug_str
+ * byte for byte.
+ */
+public class DwarfDebugNames implements DwarfNameIndex {
+	/** Attributes of name table entries (DW_IDX_*) */
+	public static final int IDX_COMPILE_UNIT = 1;
+	public static final int IDX_TYPE_UNIT = 2;
+	public static final int IDX_DIE_OFFSET = 3;
+	public static final int IDX_PARENT = 4;
+	public static final int IDX_TYPE_HASH = 5;
+
+	private final ByteBuffer data;
+	private final ByteBuffer strings;
+	private final List<NameTable> tables = new ArrayList<NameTable>();
+
+	/** The description of the entries of a name table sharing an abbreviation code */
+	private static final class Abbreviation {
+		final int tag;
+		final int[] indices;
+		final int[] forms;
+
+		Abbreviation(int tag, int[] indices, int[] forms) {
+			this.tag = tag;
+			this.indices = indices;
+			this.forms = forms;
+		}
+	}
+
+	/** The decoded header of one name table */
+	private static final class NameTable {
+		boolean dwarf64;
+		long[] compileUnits;
+		long[] localTypeUnits;
+		int foreignTypeUnitCount;
+		int bucketCount;
+		int nameCount;
+		int buckets;
+		int hashes;
+		int stringOffsets;
+		int entryOffsets;
+		int entryPool;
+		Map<Long, Abbreviation> abbreviations;
+
+		int offsetSize() {
+			return dwarf64 ? 8 : 4;
+		}
+	}
+
+	/**
+	 * @param data the contents of .debug_names
+	 * @param strings the contents of .debug_str, which holds the names
+	 */
+	public DwarfDebugNames(ByteBuffer data, ByteBuffer strings) {
+		this.data = data;
+		this.strings = strings;
+
+		DwarfReader r = new DwarfReader(data);
+		while(r.hasRemaining()) {
+			long unitLength = r.unitLength();
+			int end = (int)(r.position() + DwarfReader.lengthOf(unitLength));
+			tables.add(readHeader(r, DwarfReader.isDwarf64(unitLength)));
+			r.seek(end);
+		}
+	}
+
+	private static NameTable readHeader(DwarfReader r, boolean dwarf64) {
+		NameTable t = new NameTable();
+		t.dwarf64 = dwarf64;
+		int version = r.u16();
+		if(version != 5)
+			throw new ElfException("Unsupported .debug_names version " + version);
+		r.u16(); // padding
+		int compileUnitCount = (int)r.u32();
+		int localTypeUnitCount = (int)r.u32();
+		t.foreignTypeUnitCount = (int)r.u32();
+		t.bucketCount = (int)r.u32();
+		t.nameCount = (int)r.u32();
+		long abbreviationTableSize = r.u32();
+		long augmentationSize = r.u32();
+		r.skip((augmentationSize + 3) & ~3L);
+
+		t.compileUnits = new long[compileUnitCount];
+		for(int i = 0; i < compileUnitCount; i++)
+			t.compileUnits[i] = r.offset(dwarf64);
+		t.localTypeUnits = new long[localTypeUnitCount];
+		for(int i = 0; i < localTypeUnitCount; i++)
+			t.localTypeUnits[i] = r.offset(dwarf64);
+		r.skip(8L * t.foreignTypeUnitCount);
+
+		t.buckets = r.position();
+		r.skip(4L * t.bucketCount);
+		t.hashes = r.position();
+		if(t.bucketCount > 0)
+			r.skip(4L * t.nameCount);
+		t.stringOffsets = r.position();
+		r.skip((long)t.offsetSize() * t.nameCount);
+		t.entryOffsets = r.position();
+		r.skip((long)t.offsetSize() * t.nameCount);
+
+		int abbreviationTable = r.position();
+		t.entryPool = (int)(abbreviationTable + abbreviationTableSize);
+		t.abbreviations = readAbbreviations(r, t.entryPool);
+		return t;
+	}
+
+	private static Map<Long, Abbreviation> readAbbreviations(DwarfReader r, int end) {
+		Map<Long, Abbreviation> result = new HashMap<Long, Abbreviation>();
+		while(r.position() < end) {
+			long code = r.uleb128();
+			if(code == 0)
+				break;
+			int tag = (int)r.uleb128();
+			int[] indices = new int[4];
+			int[] forms = new int[4];
+			int count = 0;
+			while(true) {
+				int index = (int)r.uleb128();
+				int form = (int)r.uleb128();
+				if(index == 0 && form == 0)
+					break;
+				if(count == indices.length) {
+					indices = Arrays.copyOf(indices, count * 2);
+					forms = Arrays.copyOf(forms, count * 2);
+				}
+				indices[count] = index;
+				forms[count] = form;
+				count++;
+			}
+			result.put(code, new Abbreviation(tag, Arrays.copyOf(indices, count), Arrays.copyOf(forms, count)));
+		}
+		return result;
+	}
+
+	/**
+	 * The hash function of .debug_names, the DJB hash of the case folded name. Only ASCII letters
+	 * are folded; {@link #find(String)} scans the names of tables for other names.
+	 *
+	 * @param name the UTF-8 bytes of a name
+	 * @return Returns the hash of the name
+	 */
+	public static int hash(byte[] name) {
+		int h = 5381;
+		for(byte b : name) {
+			int c = b & 0xff;
+			if(c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			h = h * 33 + c;
+		}
+		return h;
+	}
+
+	@Override
+	public List<DwarfNameEntry> find(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		boolean ascii = true;
+		for(byte b : bytes)
+			ascii &= b >= 0;
+		int hash = hash(bytes);
+
+		List<DwarfNameEntry> result = new ArrayList<DwarfNameEntry>();
+		for(NameTable t : tables) {
+			if(t.bucketCount == 0 || !ascii) {
+				for(int i = 0; i < t.nameCount; i++) {
+					if(nameMatches(t, i, bytes))
+						readEntries(t, i, result);
+				}
+				continue;
+			}
+
+			int bucket = Integer.remainderUnsigned(hash, t.bucketCount);
+			int first = data.getInt(t.buckets + 4 * bucket);
+			if(first == 0)
+				continue;
+			for(int i = first - 1; i < t.nameCount; i++) {
+				int h = data.getInt(t.hashes + 4 * i);
+				if(Integer.remainderUnsigned(h, t.bucketCount) != bucket)
+					break;
+				if(h == hash && nameMatches(t, i, bytes))
+					readEntries(t, i, result);
+			}
+		}
+		return result;
+	}
+
+	private boolean nameMatches(NameTable t, int name, byte[] bytes) {
+		DwarfReader r = new DwarfReader(data, t.stringOffsets + t.offsetSize() * name);
+		return DwarfReader.matches(strings, r.offset(t.dwarf64), bytes);
+	}
+
+	private void readEntries(NameTable t, int name, List<DwarfNameEntry> result) {
+		DwarfReader r = new DwarfReader(data, t.entryOffsets + t.offsetSize() * name);
+		r.seek((int)(t.entryPool + r.offset(t.dwarf64)));
+		while(true) {
+			long code = r.uleb128();
+			if(code == 0)
+				break;
+			Abbreviation a = t.abbreviations.get(code);
+			if(a == null)
+				throw new ElfException("Unknown .debug_names abbreviation code " + code);
+
+			long compileUnit = t.compileUnits.length == 1 ? 0 : -1;
+			long typeUnit = -1;
+			long dieOffset = -1;
+			for(int i = 0; i < a.indices.length; i++) {
+				long value = readValue(r, a.forms[i], t.dwarf64);
+				switch(a.indices[i]) {
+				case IDX_COMPILE_UNIT: compileUnit = value; break;
+				case IDX_TYPE_UNIT: typeUnit = value; break;
+				case IDX_DIE_OFFSET: dieOffset = value; break;
+				default: break;
+				}
+			}
+
+			long unitOffset;
+			if(typeUnit >= 0)
+				unitOffset = typeUnit < t.localTypeUnits.length ? t.localTypeUnits[(int)typeUnit] : -1;
+			else if(compileUnit >= 0 && compileUnit < t.compileUnits.length)
+				unitOffset = t.compileUnits[(int)compileUnit];
+			else
+				continue;
+			// Entries of foreign type units can only be resolved in the file holding the unit
+			result.add(new DwarfNameEntry(unitOffset, unitOffset < 0 || dieOffset < 0 ? -1 : unitOffset + dieOffset, a.tag));
+		}
+	}
+
+	private static long readValue(DwarfReader r, int form, boolean dwarf64) {
+		switch(form) {
+		case DwarfForm.FLAG_PRESENT:
+			return 1;
+		case DwarfForm.DATA1:
+		case DwarfForm.REF1:
+		case DwarfForm.FLAG:
+			return r.u8();
+		case DwarfForm.DATA2:
+		case DwarfForm.REF2:
+			return r.u16();
+		case DwarfForm.DATA4:
+		case DwarfForm.REF4:
+			return r.u32();
+		case DwarfForm.DATA8:
+		case DwarfForm.REF8:
+		case DwarfForm.REF_SIG8:
+			return r.u64();
+		case DwarfForm.UDATA:
+		case DwarfForm.REF_UDATA:
+			return r.uleb128();
+		case DwarfForm.SDATA:
+			return r.sleb128();
+		case DwarfForm.SEC_OFFSET:
+			return r.offset(dwarf64);
+		default:
+			throw new ElfException("Unsupported .debug_names attribute form 0x" + Integer.toHexString(form));
+		}
+	}
+
+	/**
+	 * @return Returns the number of names in all name tables of the section
+	 */
+	public int getNameCount() {
+		int count = 0;
+		for(NameTable t : tables)
+			count += t.nameCount;
+		return count;
+	}
+
+	@Override
+	public String getSectionName() {
+		return ".debug_names";
+	}
+
+	@Override
+	public long estimateRetainedBytes() {
+		long size = ElfMemoryEstimate.objectSize(3, 0);
+		for(NameTable t : tables) {
+			size += ElfMemoryEstimate.objectSize(4, 34) + ElfMemoryEstimate.arraySize(t.compileUnits.length, 8)
+					+ ElfMemoryEstimate.arraySize(t.localTypeUnits.length, 8);
+			for(Abbreviation a : t.abbreviations.values())
+				size += ElfMemoryEstimate.objectSize(2, 4) + 2 * ElfMemoryEstimate.arraySize(a.indices.length, 4);
+		}
+		return size;
+	}
+}
@@ -0,0 +1,315 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * A debugging information entry. Only the positions of the attribute values are recorded when
+ * the entry is read, the values themselves are decoded when they are requested.
+ */
+public final class DwarfDie {
+	private final DwarfUnit unit;
+	private final long offset;
+	private final DwarfAbbreviation abbreviation;
+	private final int[] positions;
+	private final long nextOffset;
+
+	DwarfDie(DwarfUnit unit, long offset, DwarfAbbreviation abbreviation, int[] positions, long nextOffset) {
+		this.unit = unit;
+		this.offset = offset;
+		this.abbreviation = abbreviation;
+		this.positions = positions;
+		this.nextOffset = nextOffset;
+	}
+
+	/**
+	 * @return Returns the unit containing this entry
+	 */
+	public DwarfUnit getUnit() {
+		return unit;
+	}
+
+	/**
+	 * @return Returns the offset of this entry in .debug_info
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Returns the offset following the attributes of this entry, where its first child starts
+	 */
+	public long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * @return Returns the tag of this entry, see {@link DwarfTag}
+	 */
+	public int getTag() {
+		return abbreviation.getTag();
+	}
+
+	/**
+	 * @return Returns true if this entry has children
+	 */
+	public boolean hasChildren() {
+		return abbreviation.hasChildren();
+	}
+
+	/**
+	 * @param attribute the name of an attribute, see {@link DwarfAttribute}
+	 * @return Returns true if this entry has the attribute
+	 */
+	public boolean hasAttribute(int attribute) {
+		return abbreviation.indexOf(attribute) >= 0;
+	}
+
+	/**
+	 * @param attribute the name of an attribute, see {@link DwarfAttribute}
+	 * @return Returns the form of the attribute or 0 if this entry does not have it
+	 */
+	public int getForm(int attribute) {
+		int index = abbreviation.indexOf(attribute);
+		if(index < 0)
+			return 0;
+		int form = abbreviation.getForm(index);
+		if(form == DwarfForm.INDIRECT)
+			form = (int)new DwarfReader(unit.getData(), positions[index]).uleb128();
+		return form;
+	}
+
+	/** Returns a reader positioned at the value of the attribute, after any indirect form */
+	private DwarfReader reader(int index) {
+		DwarfReader r = new DwarfReader(unit.getData(), positions[index]);
+		if(abbreviation.getForm(index) == DwarfForm.INDIRECT)
+			r.uleb128();
+		return r;
+	}
+
+	/**
+	 * Returns the value of an attribute of the constant, flag, address, reference or section
+	 * offset classes. References are returned relative to the unit, see {@link #getReference(int)}
+	 * for absolute references.
+	 *
+	 * @param attribute the name of an attribute, see {@link DwarfAttribute}
+	 * @param defaultValue the value returned if this entry does not have the attribute
+	 * @return Returns the value of the attribute
+	 */
+	public long getUnsigned(int attribute, long defaultValue) {
+		int index = abbreviation.indexOf(attribute);
+		if(index < 0)
+			return defaultValue;
+
+		int form = getForm(attribute);
+		DwarfReader r = reader(index);
+		switch(form) {
+		case DwarfForm.FLAG_PRESENT:
+			return 1;
+		case DwarfForm.IMPLICIT_CONST:
+			return abbreviation.getImplicitConstant(index);
+		case DwarfForm.DATA1:
+		case DwarfForm.REF1:
+		case DwarfForm.FLAG:
+			return r.u8();
+		case DwarfForm.DATA2:
+		case DwarfForm.REF2:
+			return r.u16();
+		case DwarfForm.DATA4:
+		case DwarfForm.REF4:
+			return r.u32();
+		case DwarfForm.DATA8:
+		case DwarfForm.REF8:
+		case DwarfForm.REF_SIG8:
+			return r.u64();
+		case DwarfForm.SDATA:
+			return r.sleb128();
+		case DwarfForm.UDATA:
+		case DwarfForm.REF_UDATA:
+		case DwarfForm.LOCLISTX:
+		case DwarfForm.RNGLISTX:
+			return r.uleb128();
+		case DwarfForm.SEC_OFFSET:
+		case DwarfForm.GNU_REF_ALT:
+			return r.offset(unit.isDwarf64());
+		case DwarfForm.REF_ADDR:
+			return unit.getVersion() <= 2 ? r.address(unit.getAddressSize()) : r.offset(unit.isDwarf64());
+		case DwarfForm.ADDR:
+		case DwarfForm.ADDRX:
+		case DwarfForm.ADDRX1:
+		case DwarfForm.ADDRX2:
+		case DwarfForm.ADDRX3:
+		case DwarfForm.ADDRX4:
+		case DwarfForm.GNU_ADDR_INDEX:
+			return getAddress(attribute);
+		default:
+			throw new ElfException("Attribute 0x" + Integer.toHexString(attribute) + " with form 0x"
+					+ Integer.toHexString(form) + " is not a constant");
+		}
+	}
+
+	/**
+	 * @param attribute the name of an attribute, see {@link DwarfAttribute}
+	 * @param defaultValue the value returned if this entry does not have the attribute
+	 * @return Returns the value of a signed constant attribute
+	 */
+	public long getSigned(int attribute, long defaultValue) {
+		switch(getForm(attribute)) {
+		case 0:
+			return defaultValue;
+		case DwarfForm.DATA1:
+			return (byte)getUnsigned(attribute, 0);
+		case DwarfForm.DATA2:
+			return (short)getUnsigned(attribute, 0);
+		case DwarfForm.DATA4:
+			return (int)getUnsigned(attribute, 0);
+		default:
+			return getUnsigned(attribute, defaultValue);
+		}
+	}
+
+	/**
+	 * @param attribute the name of an attribute of the address class
+	 * @return Returns the address, resolving indices into the address table
+	 */
+	public long getAddress(int attribute) {
+		int index = abbreviation.indexOf(attribute);
+		if(index < 0)
+			throw new ElfException("Entry at offset 0x" + Long.toHexString(offset) + " has no attribute 0x" + Integer.toHexString(attribute));
+
+		DwarfReader r = reader(index);
+		switch(getForm(attribute)) {
+		case DwarfForm.ADDR:
+			return r.address(unit.getAddressSize());
+		case DwarfForm.ADDRX:
+		case DwarfForm.GNU_ADDR_INDEX:
+			return unit.getIndexedAddress(r.uleb128());
+		case DwarfForm.ADDRX1:
+			return unit.getIndexedAddress(r.u8());
+		case DwarfForm.ADDRX2:
+			return unit.getIndexedAddress(r.u16());
+		case DwarfForm.ADDRX3:
+			return unit.getIndexedAddress(r.unsigned(3));
+		case DwarfForm.ADDRX4:
+			return unit.getIndexedAddress(r.u32());
+		default:
+			return getUnsigned(attribute, 0);
+		}
+	}
+
+	/**
+	 * @param attribute the name of an attribute of the reference class
+	 * @return Returns the offset in .debug_info of the referenced entry
+	 */
+	public long getReference(int attribute) {
+		switch(getForm(attribute)) {
+		case DwarfForm.REF1:
+		case DwarfForm.REF2:
+		case DwarfForm.REF4:
+		case DwarfForm.REF8:
+		case DwarfForm.REF_UDATA:
+			return unit.getOffset() + getUnsigned(attribute, 0);
+		case DwarfForm.REF_ADDR:
+			return getUnsigned(attribute, 0);
+		default:
+			throw new ElfException("Attribute 0x" + Integer.toHexString(attribute) + " of entry at offset 0x"
+					+ Long.toHexString(offset) + " is not a reference into .debug_info");
+		}
+	}
+
+	/**
+	 * @param attribute the name of an attribute, see {@link DwarfAttribute}
+	 * @return Returns the string value of the attribute, or null if this entry does not have it
+	 * 	or the string is in a supplementary file
+	 */
+	public String getString(int attribute) {
+		int index = abbreviation.indexOf(attribute);
+		if(index < 0)
+			return null;
+
+		DwarfReader r = reader(index);
+		switch(getForm(attribute)) {
+		case DwarfForm.STRING:
+			return r.cstring();
+		case DwarfForm.STRP:
+			return sectionString(".debug_str", r.offset(unit.isDwarf64()));
+		case DwarfForm.LINE_STRP:
+			return sectionString(".debug_line_str", r.offset(unit.isDwarf64()));
+		case DwarfForm.STRX:
+		case DwarfForm.GNU_STR_INDEX:
+			return unit.getIndexedString(r.uleb128());
+		case DwarfForm.STRX1:
+			return unit.getIndexedString(r.u8());
+		case DwarfForm.STRX2:
+			return unit.getIndexedString(r.u16());
+		case DwarfForm.STRX3:
+			return unit.getIndexedString(r.unsigned(3));
+		case DwarfForm.STRX4:
+			return unit.getIndexedString(r.u32());
+		default:
+			return null;
+		}
+	}
+
+	private String sectionString(String section, long stringOffset) {
+		ByteBuffer strings = unit.getDwarf().getSection(section);
+		if(strings == null)
+			throw new ElfException("String attribute refers to missing section " + section);
+		return DwarfReader.cstring(strings, stringOffset);
+	}
+
+	/**
+	 * @param attribute the name of an attribute of the block or exprloc class
+	 * @return Returns the contents of the block, or null if this entry does not have the attribute
+	 */
+	public byte[] getBlock(int attribute) {
+		int index = abbreviation.indexOf(attribute);
+		if(index < 0)
+			return null;
+
+		DwarfReader r = reader(index);
+		long length;
+		switch(getForm(attribute)) {
+		case DwarfForm.BLOCK1:
+			length = r.u8();
+			break;
+		case DwarfForm.BLOCK2:
+			length = r.u16();
+			break;
+		case DwarfForm.BLOCK4:
+			length = r.u32();
+			break;
+		case DwarfForm.BLOCK:
+		case DwarfForm.EXPRLOC:
+			length = r.uleb128();
+			break;
+		default:
+			return null;
+		}
+
+		byte[] result = new byte[(int)length];
+		for(int i = 0; i < result.length; i++)
+			result[i] = r.s8();
+		return result;
+	}
+
+	/**
+	 * @return Returns the value of DW_AT_name, or null if this entry has no name
+	 */
+	public String getName() {
+		return getString(DwarfAttribute.NAME);
+	}
+
+	/**
+	 * @return Returns the address ranges of this entry, see {@link DwarfUnit#getRanges(DwarfDie)}
+	 */
+	public long[] getRanges() {
+		return unit.getRanges(this);
+	}
+
+	@Override
+	public String toString() {
+		return "DwarfDie[offset=0x" + Long.toHexString(offset) + ", tag=0x" + Integer.toHexString(getTag()) + "]";
+	}
+}
@@ -0,0 +1,117 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * Name index built from the debugging information entries, used when a file has neither
+ * .debug_names nor .gdb_index. All units are decoded, in parallel, and the defining entries of
+ * functions, variables, types, namespaces and enumerators are indexed by name. Functions defined
+ * out of line are indexed under the name of their declaration.
+ */
+public class DwarfDieNameIndex implements DwarfNameIndex {
+	private final Map<String, List<DwarfNameEntry>> entries;
+	private final int entryCount;
+
+	private DwarfDieNameIndex(Map<String, List<DwarfNameEntry>> entries, int entryCount) {
+		this.entries = entries;
+		this.entryCount = entryCount;
+	}
+
+	/**
+	 * @param dwarf the debugging information to index
+	 * @return Returns the index of the names of all units
+	 */
+	public static DwarfDieNameIndex build(Dwarf dwarf) {
+		Map<String, List<DwarfNameEntry>> entries = new HashMap<String, List<DwarfNameEntry>>();
+		int count = 0;
+		for(DwarfUnit unit : dwarf.decodeUnits()) {
+			DwarfDieTree tree = unit.getTree();
+			for(int i = 0; i < tree.size(); i++) {
+				int tag = tree.getTag(i);
+				if(!isIndexed(tag))
+					continue;
+				// Local variables are only meaningful inside their function
+				if(tag == DwarfTag.VARIABLE && !isGlobalScope(tree, tree.getParent(i)))
+					continue;
+
+				DwarfDie die = tree.getDie(i);
+				if(die.hasAttribute(DwarfAttribute.DECLARATION))
+					continue;
+				String name = (tag == DwarfTag.SUBPROGRAM ? dwarf.getDeclaration(die) : die).getName();
+				if(name == null)
+					continue;
+
+				List<DwarfNameEntry> list = entries.get(name);
+				if(list == null)
+					entries.put(name, list = new ArrayList<DwarfNameEntry>(1));
+				list.add(new DwarfNameEntry(unit.getOffset(), die.getOffset(), tag));
+				count++;
+			}
+		}
+		return new DwarfDieNameIndex(entries, count);
+	}
+
+	private static boolean isIndexed(int tag) {
+		switch(tag) {
+		case DwarfTag.SUBPROGRAM:
+		case DwarfTag.VARIABLE:
+		case DwarfTag.BASE_TYPE:
+		case DwarfTag.CLASS_TYPE:
+		case DwarfTag.STRUCTURE_TYPE:
+		case DwarfTag.UNION_TYPE:
+		case DwarfTag.ENUMERATION_TYPE:
+		case DwarfTag.TYPEDEF:
+		case DwarfTag.NAMESPACE:
+		case DwarfTag.ENUMERATOR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isGlobalScope(DwarfDieTree tree, int parent) {
+		if(parent < 0)
+			return true;
+		switch(tree.getTag(parent)) {
+		case DwarfTag.COMPILE_UNIT:
+		case DwarfTag.PARTIAL_UNIT:
+		case DwarfTag.TYPE_UNIT:
+		case DwarfTag.NAMESPACE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	@Override
+	public List<DwarfNameEntry> find(String name) {
+		List<DwarfNameEntry> result = entries.get(name);
+		return result == null ? new ArrayList<DwarfNameEntry>() : new ArrayList<DwarfNameEntry>(result);
+	}
+
+	/**
+	 * @return Returns the number of distinct names in the index
+	 */
+	public int getNameCount() {
+		return entries.size();
+	}
+
+	@Override
+	public String getSectionName() {
+		return null;
+	}
+
+	@Override
+	public long estimateRetainedBytes() {
+		long size = ElfMemoryEstimate.objectSize(1, 4) + ElfMemoryEstimate.arraySize(entries.size() * 2L, ElfMemoryEstimate.REFERENCE);
+		for(String name : entries.keySet())
+			size += ElfMemoryEstimate.objectSize(4, 4) + ElfMemoryEstimate.stringSize(name) + ElfMemoryEstimate.listSize(1);
+		size += entryCount * ElfMemoryEstimate.objectSize(0, 20);
+		return size;
+	}
+}
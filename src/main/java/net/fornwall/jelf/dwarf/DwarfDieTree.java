@@ -0,0 +1,203 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * The complete tree of debugging information entries of one unit, decoded in a single pass.
+ * Each entry is described by its offset, its abbreviation and the index of its parent, which
+ * takes 12 bytes per entry; the attribute values stay in the section and are decoded when an
+ * entry is materialized with {@link #getDie(int)}. Entries are numbered in section order, so
+ * the descendants of an entry directly follow it.
+ */
+public final class DwarfDieTree {
+	private final DwarfUnit unit;
+	private final int[] offsets;
+	private final int[] parents;
+	private final DwarfAbbreviation[] abbreviations;
+
+	private DwarfDieTree(DwarfUnit unit, int[] offsets, int[] parents, DwarfAbbreviation[] abbreviations) {
+		this.unit = unit;
+		this.offsets = offsets;
+		this.parents = parents;
+		this.abbreviations = abbreviations;
+	}
+
+	/**
+	 * Decodes all entries of a unit without materializing them
+	 *
+	 * @param unit the unit to decode
+	 * @param table the abbreviation table of the unit
+	 * @param firstDieOffset the offset of the first entry of the unit
+	 * @return Returns the decoded tree
+	 */
+	static DwarfDieTree decode(DwarfUnit unit, DwarfAbbreviation.Table table, long firstDieOffset) {
+		int capacity = 64;
+		int[] offsets = new int[capacity];
+		int[] parents = new int[capacity];
+		DwarfAbbreviation[] abbreviations = new DwarfAbbreviation[capacity];
+		int size = 0;
+
+		// Stack of the indices of the entries whose children are being read
+		int[] stack = new int[32];
+		int depth = 0;
+		int parent = -1;
+
+		DwarfReader r = new DwarfReader(unit.getData(), (int)firstDieOffset);
+		long end = unit.getEndOffset();
+		while(r.position() < end) {
+			int offset = r.position();
+			long code = r.uleb128();
+			if(code == 0) {
+				// End of the children of the current parent
+				if(depth == 0 || --depth == 0)
+					break;
+				parent = stack[depth - 1];
+				continue;
+			}
+
+			DwarfAbbreviation abbreviation = table.get(code);
+			for(int i = 0; i < abbreviation.getAttributeCount(); i++)
+				unit.skipForm(r, abbreviation.getForm(i));
+
+			if(size == capacity) {
+				capacity *= 2;
+				offsets = Arrays.copyOf(offsets, capacity);
+				parents = Arrays.copyOf(parents, capacity);
+				abbreviations = Arrays.copyOf(abbreviations, capacity);
+			}
+			offsets[size] = offset;
+			parents[size] = parent;
+			abbreviations[size] = abbreviation;
+
+			if(abbreviation.hasChildren()) {
+				if(depth == stack.length)
+					stack = Arrays.copyOf(stack, depth * 2);
+				stack[depth++] = size;
+				parent = size;
+			}
+			size++;
+
+			// A unit has a single root entry
+			if(depth == 0)
+				break;
+		}
+
+		return new DwarfDieTree(unit, Arrays.copyOf(offsets, size), Arrays.copyOf(parents, size), Arrays.copyOf(abbreviations, size));
+	}
+
+	/**
+	 * @return Returns the unit of this tree
+	 */
+	public DwarfUnit getUnit() {
+		return unit;
+	}
+
+	/**
+	 * @return Returns the number of entries in the unit
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * @param index the index of an entry
+	 * @return Returns the offset of the entry in .debug_info
+	 */
+	public long getOffset(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * @param index the index of an entry
+	 * @return Returns the index of the parent entry, or -1 for the root entry
+	 */
+	public int getParent(int index) {
+		return parents[index];
+	}
+
+	/**
+	 * @param index the index of an entry
+	 * @return Returns the tag of the entry, see {@link DwarfTag}
+	 */
+	public int getTag(int index) {
+		return abbreviations[index].getTag();
+	}
+
+	/**
+	 * @param index the index of an entry
+	 * @return Returns the entry with its attributes
+	 */
+	public DwarfDie getDie(int index) {
+		return unit.readDie(offsets[index]);
+	}
+
+	/**
+	 * @param offset the offset of an entry in .debug_info
+	 * @return Returns the index of the entry, or -1 if no entry of this unit starts at the offset
+	 */
+	public int indexOf(long offset) {
+		if(offset < 0 || offset > Integer.MAX_VALUE)
+			return -1;
+		int index = Arrays.binarySearch(offsets, (int)offset);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * @param index the index of an entry
+	 * @return Returns the indices of the direct children of the entry
+	 */
+	public int[] getChildren(int index) {
+		int count = 0;
+		int[] children = new int[8];
+		// Every descendant has a parent at or after the entry, the first entry after them does not
+		for(int i = index + 1; i < offsets.length && parents[i] >= index; i++) {
+			if(parents[i] == index) {
+				if(count == children.length)
+					children = Arrays.copyOf(children, count * 2);
+				children[count++] = i;
+			}
+		}
+		return Arrays.copyOf(children, count);
+	}
+
+	/**
+	 * @param tag the tag of the entries to find, see {@link DwarfTag}
+	 * @return Returns the indices of all entries with the tag
+	 */
+	public int[] findByTag(int tag) {
+		int count = 0;
+		int[] result = new int[16];
+		for(int i = 0; i < abbreviations.length; i++) {
+			if(abbreviations[i].getTag() == tag) {
+				if(count == result.length)
+					result = Arrays.copyOf(result, count * 2);
+				result[count++] = i;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * @param tag the tag of the entries to find, see {@link DwarfTag}
+	 * @return Returns all entries with the tag
+	 */
+	public List<DwarfDie> getDiesByTag(int tag) {
+		int[] indices = findByTag(tag);
+		List<DwarfDie> result = new ArrayList<DwarfDie>(indices.length);
+		for(int i : indices)
+			result.add(getDie(i));
+		return result;
+	}
+
+	/**
+	 * @return Returns the estimated heap size of this tree
+	 */
+	public long estimateRetainedBytes() {
+		return ElfMemoryEstimate.objectSize(4, 0) + 2 * ElfMemoryEstimate.arraySize(offsets.length, 4)
+				+ ElfMemoryEstimate.arraySize(abbreviations.length, ElfMemoryEstimate.REFERENCE);
+	}
+}
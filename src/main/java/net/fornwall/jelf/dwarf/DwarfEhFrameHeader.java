@@ -0,0 +1,164 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * Reader of .eh_frame_hdr, the binary search table over the frame description entries of
+ * .eh_frame written by the linker. The table is read in place, so looking up an address costs
+ * O(log n) reads of the file contents and nothing is allocated.
+ *
+ * <pre>
+ * https://refspecs.linuxfoundation.org/LSB_5.0.0/LSB-Core-generic/LSB-Core-generic/ehframechpt.html
+ * </pre>
+ */
+public class DwarfEhFrameHeader {
+	private final ByteBuffer data;
+	private final long address;
+	private final int addressSize;
+	private final int version;
+	private final int ehFramePointerEncoding;
+	private final int fdeCountEncoding;
+	private final int tableEncoding;
+	private final long ehFramePointer;
+	private final int fdeCount;
+	/** Offset of the table in the header */
+	private final int tableOffset;
+	/** Size of a single value of the table, an entry is two values */
+	private final int valueSize;
+
+	/**
+	 * @param data the contents of .eh_frame_hdr
+	 * @param address the address of .eh_frame_hdr, which data relative values are relative to
+	 * @param addressSize the size of an address of the target
+	 * @throws ElfException if the header has an unsupported version or table encoding
+	 */
+	public DwarfEhFrameHeader(ByteBuffer data, long address, int addressSize) {
+		this.data = data;
+		this.address = address;
+		this.addressSize = addressSize;
+
+		DwarfReader r = new DwarfReader(data);
+		version = r.u8();
+		if(version != 1)
+			throw new ElfException("Unsupported .eh_frame_hdr version " + version);
+		ehFramePointerEncoding = r.u8();
+		fdeCountEncoding = r.u8();
+		tableEncoding = r.u8();
+		ehFramePointer = DwarfPointerEncoding.read(r, ehFramePointerEncoding, address, address, addressSize);
+		if(fdeCountEncoding == DwarfPointerEncoding.OMIT || tableEncoding == DwarfPointerEncoding.OMIT) {
+			fdeCount = 0;
+		}
+		else {
+			long count = DwarfPointerEncoding.read(r, fdeCountEncoding, address, address, addressSize);
+			if(count < 0 || count > Integer.MAX_VALUE)
+				throw new ElfException("Invalid .eh_frame_hdr entry count " + count);
+			fdeCount = (int)count;
+		}
+		tableOffset = r.position();
+
+		int size = DwarfPointerEncoding.getSize(tableEncoding, addressSize);
+		if(fdeCount > 0 && (size < 0 || (tableEncoding & DwarfPointerEncoding.INDIRECT) != 0))
+			throw new ElfException("Unsupported .eh_frame_hdr table encoding 0x" + Integer.toHexString(tableEncoding));
+		valueSize = size;
+		if(fdeCount > 0 && tableOffset + 2L * fdeCount * valueSize > data.limit())
+			throw new ElfException(".eh_frame_hdr table of " + fdeCount + " entries exceeds the section");
+	}
+
+	/**
+	 * @return Returns the version of the header, always 1
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Returns the address of .eh_frame_hdr
+	 */
+	public long getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return Returns the encoding of the search table, see {@link DwarfPointerEncoding}
+	 */
+	public int getTableEncoding() {
+		return tableEncoding;
+	}
+
+	/**
+	 * @return Returns the address of .eh_frame
+	 */
+	public long getEhFramePointer() {
+		return ehFramePointer;
+	}
+
+	/**
+	 * @return Returns the number of entries in the search table, 0 if the header has no table
+	 */
+	public int getFdeCount() {
+		return fdeCount;
+	}
+
+	/**
+	 * @param index the index of the table entry
+	 * @return Returns the initial location of the frame description entry, entries are sorted by it
+	 */
+	public long getInitialLocation(int index) {
+		return readValue(tableOffset + index * 2 * valueSize);
+	}
+
+	/**
+	 * @param index the index of the table entry
+	 * @return Returns the address of the frame description entry in .eh_frame
+	 */
+	public long getFdeAddress(int index) {
+		return readValue(tableOffset + (index * 2 + 1) * valueSize);
+	}
+
+	private long readValue(int offset) {
+		// The linkers only ever write datarel sdata4 tables
+		if(tableEncoding == (DwarfPointerEncoding.DATAREL | DwarfPointerEncoding.SDATA4)) {
+			long result = address + data.getInt(offset);
+			return addressSize == 4 ? result & 0xffffffffL : result;
+		}
+		return DwarfPointerEncoding.read(new DwarfReader(data, offset), tableEncoding, address, address, addressSize);
+	}
+
+	/**
+	 * @param address a code address
+	 * @return Returns the address of the frame description entry with the greatest initial
+	 * 	location not above the address, or -1 if there is none. The entry has to be checked to
+	 * 	actually cover the address.
+	 */
+	public long findFdeAddress(long address) {
+		int low = 0;
+		int high = fdeCount - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(getInitialLocation(mid), address) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return found < 0 ? -1 : getFdeAddress(found);
+	}
+
+	/**
+	 * @return Returns an estimate of the heap memory retained by this header
+	 */
+	public long estimateRetainedBytes() {
+		return ElfMemoryEstimate.objectSize(1, 48);
+	}
+
+	@Override
+	public String toString() {
+		return "DwarfEhFrameHeader[eh_frame=0x" + Long.toHexString(ehFramePointer) + ", entries=" + fdeCount + "]";
+	}
+}
@@ -0,0 +1,344 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * Evaluates the DWARF expressions of call frame information: the CFA expressions and the
+ * DW_CFA_expression and DW_CFA_val_expression register rules of a {@link DwarfFrameRow}. These
+ * are short stack programs, for example the CFA of a PLT entry on x86-64 depends on rip.
+ * Operations which only make sense in location descriptions of variables, like DW_OP_fbreg or
+ * DW_OP_piece, are rejected.
+ *
+ * <pre>
+ * http://dwarfstd.org/doc/DWARF5.pdf, section 2.5
+ * </pre>
+ */
+public final class DwarfExpression {
+	/** Registers and memory of the frame an expression is evaluated in */
+	public interface Context {
+		/**
+		 * @param register a DWARF register number
+		 * @return Returns the value of the register
+		 * @throws ElfException if the value of the register is not known
+		 */
+		long getRegister(int register);
+
+		/**
+		 * @param address the address to read
+		 * @param size the number of bytes to read, 1 to 8
+		 * @return Returns the bytes at the address as an unsigned value
+		 * @throws ElfException if the memory is not available
+		 */
+		long readMemory(long address, int size);
+	}
+
+	public static final int DW_OP_addr = 0x03;
+	public static final int DW_OP_deref = 0x06;
+	public static final int DW_OP_const1u = 0x08;
+	public static final int DW_OP_const1s = 0x09;
+	public static final int DW_OP_const2u = 0x0a;
+	public static final int DW_OP_const2s = 0x0b;
+	public static final int DW_OP_const4u = 0x0c;
+	public static final int DW_OP_const4s = 0x0d;
+	public static final int DW_OP_const8u = 0x0e;
+	public static final int DW_OP_const8s = 0x0f;
+	public static final int DW_OP_constu = 0x10;
+	public static final int DW_OP_consts = 0x11;
+	public static final int DW_OP_dup = 0x12;
+	public static final int DW_OP_drop = 0x13;
+	public static final int DW_OP_over = 0x14;
+	public static final int DW_OP_pick = 0x15;
+	public static final int DW_OP_swap = 0x16;
+	public static final int DW_OP_rot = 0x17;
+	public static final int DW_OP_abs = 0x19;
+	public static final int DW_OP_and = 0x1a;
+	public static final int DW_OP_div = 0x1b;
+	public static final int DW_OP_minus = 0x1c;
+	public static final int DW_OP_mod = 0x1d;
+	public static final int DW_OP_mul = 0x1e;
+	public static final int DW_OP_neg = 0x1f;
+	public static final int DW_OP_not = 0x20;
+	public static final int DW_OP_or = 0x21;
+	public static final int DW_OP_plus = 0x22;
+	public static final int DW_OP_plus_uconst = 0x23;
+	public static final int DW_OP_shl = 0x24;
+	public static final int DW_OP_shr = 0x25;
+	public static final int DW_OP_shra = 0x26;
+	public static final int DW_OP_xor = 0x27;
+	public static final int DW_OP_bra = 0x28;
+	public static final int DW_OP_eq = 0x29;
+	public static final int DW_OP_ge = 0x2a;
+	public static final int DW_OP_gt = 0x2b;
+	public static final int DW_OP_le = 0x2c;
+	public static final int DW_OP_lt = 0x2d;
+	public static final int DW_OP_ne = 0x2e;
+	public static final int DW_OP_skip = 0x2f;
+	public static final int DW_OP_lit0 = 0x30;
+	public static final int DW_OP_reg0 = 0x50;
+	public static final int DW_OP_breg0 = 0x70;
+	public static final int DW_OP_regx = 0x90;
+	public static final int DW_OP_bregx = 0x92;
+	public static final int DW_OP_deref_size = 0x94;
+	public static final int DW_OP_nop = 0x96;
+
+	/** Upper bound on the operations executed, as branches may loop */
+	private static final int MAX_OPERATIONS = 10000;
+	private static final int MAX_STACK = 64;
+
+	private final byte[] code;
+	private final ByteOrder order;
+	private final int addressSize;
+
+	/**
+	 * @param code the encoded expression, for example from {@link DwarfRegisterRule#getExpression()}
+	 * @param order the byte order of the file the expression is from
+	 * @param addressSize the size of an address, 4 or 8
+	 */
+	public DwarfExpression(byte[] code, ByteOrder order, int addressSize) {
+		this.code = code;
+		this.order = order;
+		this.addressSize = addressSize;
+	}
+
+	/**
+	 * @param context the registers and memory of the frame
+	 * @param initialStack values pushed before evaluation, the CFA for register rules
+	 * @return Returns the value on top of the stack after evaluation, truncated to the address size
+	 * @throws ElfException if the expression is malformed or uses an unsupported operation
+	 */
+	public long evaluate(Context context, long... initialStack) {
+		long[] stack = new long[MAX_STACK];
+		int sp = 0;
+		for(long value : initialStack)
+			stack[sp++] = value;
+
+		DwarfReader reader = new DwarfReader(ByteBuffer.wrap(code).order(order));
+		int operations = 0;
+		while(reader.hasRemaining()) {
+			if(++operations > MAX_OPERATIONS)
+				throw new ElfException("DWARF expression does not terminate");
+			if(sp >= MAX_STACK - 1)
+				throw new ElfException("DWARF expression stack overflow");
+			int op = reader.u8();
+			if(op >= DW_OP_lit0 && op < DW_OP_lit0 + 32) {
+				stack[sp++] = op - DW_OP_lit0;
+				continue;
+			}
+			if(op >= DW_OP_breg0 && op < DW_OP_breg0 + 32) {
+				stack[sp++] = context.getRegister(op - DW_OP_breg0) + reader.sleb128();
+				continue;
+			}
+			if(op >= DW_OP_reg0 && op < DW_OP_reg0 + 32)
+				throw new ElfException("DWARF register location DW_OP_reg" + (op - DW_OP_reg0) + " is not a value");
+
+			switch(op) {
+			case DW_OP_addr:
+				stack[sp++] = reader.address(addressSize);
+				break;
+			case DW_OP_deref:
+				check(sp, 1);
+				stack[sp - 1] = context.readMemory(stack[sp - 1], addressSize);
+				break;
+			case DW_OP_deref_size:
+				check(sp, 1);
+				int size = reader.u8();
+				if(size < 1 || size > 8)
+					throw new ElfException("Invalid DW_OP_deref_size of " + size + " bytes");
+				stack[sp - 1] = context.readMemory(stack[sp - 1], size);
+				break;
+			case DW_OP_const1u:
+				stack[sp++] = reader.u8();
+				break;
+			case DW_OP_const1s:
+				stack[sp++] = reader.s8();
+				break;
+			case DW_OP_const2u:
+				stack[sp++] = reader.u16();
+				break;
+			case DW_OP_const2s:
+				stack[sp++] = (short)reader.u16();
+				break;
+			case DW_OP_const4u:
+				stack[sp++] = reader.u32();
+				break;
+			case DW_OP_const4s:
+				stack[sp++] = (int)reader.u32();
+				break;
+			case DW_OP_const8u:
+			case DW_OP_const8s:
+				stack[sp++] = reader.u64();
+				break;
+			case DW_OP_constu:
+				stack[sp++] = reader.uleb128();
+				break;
+			case DW_OP_consts:
+				stack[sp++] = reader.sleb128();
+				break;
+			case DW_OP_bregx: {
+				int register = (int)reader.uleb128();
+				stack[sp++] = context.getRegister(register) + reader.sleb128();
+				break;
+			}
+			case DW_OP_dup:
+				check(sp, 1);
+				stack[sp] = stack[sp - 1];
+				sp++;
+				break;
+			case DW_OP_drop:
+				check(sp, 1);
+				sp--;
+				break;
+			case DW_OP_over:
+				check(sp, 2);
+				stack[sp] = stack[sp - 2];
+				sp++;
+				break;
+			case DW_OP_pick: {
+				int index = reader.u8();
+				check(sp, index + 1);
+				stack[sp] = stack[sp - 1 - index];
+				sp++;
+				break;
+			}
+			case DW_OP_swap: {
+				check(sp, 2);
+				long top = stack[sp - 1];
+				stack[sp - 1] = stack[sp - 2];
+				stack[sp - 2] = top;
+				break;
+			}
+			case DW_OP_rot: {
+				check(sp, 3);
+				long top = stack[sp - 1];
+				stack[sp - 1] = stack[sp - 2];
+				stack[sp - 2] = stack[sp - 3];
+				stack[sp - 3] = top;
+				break;
+			}
+			case DW_OP_abs:
+				check(sp, 1);
+				stack[sp - 1] = Math.abs(signed(stack[sp - 1]));
+				break;
+			case DW_OP_neg:
+				check(sp, 1);
+				stack[sp - 1] = -stack[sp - 1];
+				break;
+			case DW_OP_not:
+				check(sp, 1);
+				stack[sp - 1] = ~stack[sp - 1];
+				break;
+			case DW_OP_plus_uconst:
+				check(sp, 1);
+				stack[sp - 1] += reader.uleb128();
+				break;
+			case DW_OP_and:
+			case DW_OP_div:
+			case DW_OP_minus:
+			case DW_OP_mod:
+			case DW_OP_mul:
+			case DW_OP_or:
+			case DW_OP_plus:
+			case DW_OP_shl:
+			case DW_OP_shr:
+			case DW_OP_shra:
+			case DW_OP_xor:
+			case DW_OP_eq:
+			case DW_OP_ge:
+			case DW_OP_gt:
+			case DW_OP_le:
+			case DW_OP_lt:
+			case DW_OP_ne:
+				check(sp, 2);
+				stack[sp - 2] = binary(op, stack[sp - 2], stack[sp - 1]);
+				sp--;
+				break;
+			case DW_OP_skip:
+				branch(reader, (short)reader.u16());
+				break;
+			case DW_OP_bra: {
+				int offset = (short)reader.u16();
+				check(sp, 1);
+				if(stack[--sp] != 0)
+					branch(reader, offset);
+				break;
+			}
+			case DW_OP_nop:
+				break;
+			case DW_OP_regx:
+				throw new ElfException("DWARF register location DW_OP_regx is not a value");
+			default:
+				throw new ElfException("Unsupported DWARF expression operation 0x" + Integer.toHexString(op));
+			}
+		}
+		check(sp, 1);
+		return addressSize == 4 ? stack[sp - 1] & 0xffffffffL : stack[sp - 1];
+	}
+
+	private long binary(int op, long a, long b) {
+		switch(op) {
+		case DW_OP_and:
+			return a & b;
+		case DW_OP_div:
+			if(b == 0)
+				throw new ElfException("Division by zero in DWARF expression");
+			return signed(a) / signed(b);
+		case DW_OP_minus:
+			return a - b;
+		case DW_OP_mod:
+			if(b == 0)
+				throw new ElfException("Division by zero in DWARF expression");
+			return Long.remainderUnsigned(a, b);
+		case DW_OP_mul:
+			return a * b;
+		case DW_OP_or:
+			return a | b;
+		case DW_OP_plus:
+			return a + b;
+		case DW_OP_shl:
+			return b >= 64 ? 0 : a << b;
+		case DW_OP_shr:
+			return b >= 64 ? 0 : a >>> b;
+		case DW_OP_shra:
+			return signed(a) >> Math.min(b, 63);
+		case DW_OP_xor:
+			return a ^ b;
+		case DW_OP_eq:
+			return signed(a) == signed(b) ? 1 : 0;
+		case DW_OP_ge:
+			return signed(a) >= signed(b) ? 1 : 0;
+		case DW_OP_gt:
+			return signed(a) > signed(b) ? 1 : 0;
+		case DW_OP_le:
+			return signed(a) <= signed(b) ? 1 : 0;
+		case DW_OP_lt:
+			return signed(a) < signed(b) ? 1 : 0;
+		default:
+			return signed(a) != signed(b) ? 1 : 0;
+		}
+	}
+
+	/** Comparisons and signed arithmetic operate on values of the size of an address */
+	private long signed(long value) {
+		return addressSize == 4 ? (int)value : value;
+	}
+
+	private static void branch(DwarfReader reader, int offset) {
+		int target = reader.position() + offset;
+		if(target < 0 || target > reader.limit())
+			throw new ElfException("DWARF expression branches out of bounds");
+		reader.seek(target);
+	}
+
+	private static void check(int sp, int needed) {
+		if(sp < needed)
+			throw new ElfException("DWARF expression stack underflow");
+	}
+
+	@Override
+	public String toString() {
+		return "DwarfExpression[" + code.length + " bytes]";
+	}
+}
@@ -0,0 +1,105 @@
+package net.fornwall.jelf.dwarf;
+
+/**
+ * A frame description entry of .eh_frame or .debug_frame, describing how to unwind the frames
+ * of a range of code addresses.
+ */
+public final class DwarfFde {
+	private final DwarfFrameSection section;
+	private final long offset;
+	private final DwarfCie cie;
+	private final long initialLocation;
+	private final long addressRange;
+	private final long lsda;
+	private final int instructions;
+	private final int end;
+
+	DwarfFde(DwarfFrameSection section, long offset, DwarfCie cie, long initialLocation, long addressRange, long lsda,
+			int instructions, int end) {
+		this.section = section;
+		this.offset = offset;
+		this.cie = cie;
+		this.initialLocation = initialLocation;
+		this.addressRange = addressRange;
+		this.lsda = lsda;
+		this.instructions = instructions;
+		this.end = end;
+	}
+
+	/**
+	 * @return Returns the section containing this entry
+	 */
+	public DwarfFrameSection getSection() {
+		return section;
+	}
+
+	/**
+	 * @return Returns the offset of this entry in its section
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Returns the common information entry this entry refers to
+	 */
+	public DwarfCie getCie() {
+		return cie;
+	}
+
+	/**
+	 * @return Returns the first address described by this entry
+	 */
+	public long getInitialLocation() {
+		return initialLocation;
+	}
+
+	/**
+	 * @return Returns the number of bytes of code described by this entry
+	 */
+	public long getAddressRange() {
+		return addressRange;
+	}
+
+	/**
+	 * @param address a code address
+	 * @return Returns true if this entry describes the address
+	 */
+	public boolean contains(long address) {
+		return Long.compareUnsigned(address - initialLocation, addressRange) < 0;
+	}
+
+	/**
+	 * @return Returns the address of the language specific data area, or 0 if there is none
+	 */
+	public long getLsda() {
+		return lsda;
+	}
+
+	/**
+	 * @return Returns the call frame table of this entry, which is cached by its section
+	 */
+	public DwarfFrameTable getFrameTable() {
+		return section.getFrameTable(this);
+	}
+
+	/**
+	 * @return Returns the offset of the call frame instructions in the section
+	 */
+	int getInstructionsOffset() {
+		return instructions;
+	}
+
+	/**
+	 * @return Returns the offset following this entry in the section
+	 */
+	int getEndOffset() {
+		return end;
+	}
+
+	@Override
+	public String toString() {
+		return "DwarfFde[offset=0x" + Long.toHexString(offset) + ", pc=0x" + Long.toHexString(initialLocation) + "..0x"
+				+ Long.toHexString(initialLocation + addressRange) + "]";
+	}
+}
@@ -0,0 +1,150 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.Arrays;
+
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * A row of the call frame table: how to compute the canonical frame address (CFA) and recover
+ * the registers of the caller for the code addresses of the row.
+ */
+public final class DwarfFrameRow {
+	private final long start;
+	private final long end;
+	private final int cfaRegister;
+	private final long cfaOffset;
+	private final byte[] cfaExpression;
+	/** Registers with a rule, sorted */
+	private final int[] registers;
+	private final DwarfRegisterRule[] rules;
+	private final boolean returnAddressSigned;
+
+	DwarfFrameRow(long start, long end, int cfaRegister, long cfaOffset, byte[] cfaExpression, int[] registers,
+			DwarfRegisterRule[] rules, boolean returnAddressSigned) {
+		this.start = start;
+		this.end = end;
+		this.cfaRegister = cfaRegister;
+		this.cfaOffset = cfaOffset;
+		this.cfaExpression = cfaExpression;
+		this.registers = registers;
+		this.rules = rules;
+		this.returnAddressSigned = returnAddressSigned;
+	}
+
+	/**
+	 * @return Returns the first address of the row
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return Returns the address following the row
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * @param address a code address
+	 * @return Returns true if the row applies to the address
+	 */
+	public boolean contains(long address) {
+		return Long.compareUnsigned(address - start, end - start) < 0;
+	}
+
+	/**
+	 * @return Returns true if the CFA is computed by a DWARF expression rather than as register + offset
+	 */
+	public boolean isCfaExpression() {
+		return cfaExpression != null;
+	}
+
+	/**
+	 * @return Returns the register the CFA is relative to, or -1 if it is not defined
+	 */
+	public int getCfaRegister() {
+		return cfaRegister;
+	}
+
+	/**
+	 * @return Returns the offset added to the CFA register
+	 */
+	public long getCfaOffset() {
+		return cfaOffset;
+	}
+
+	/**
+	 * @return Returns the DWARF expression computing the CFA, or null
+	 */
+	public byte[] getCfaExpression() {
+		return cfaExpression == null ? null : cfaExpression.clone();
+	}
+
+	/**
+	 * @return Returns the registers with a rule in this row, sorted
+	 */
+	public int[] getRegisters() {
+		return registers.clone();
+	}
+
+	/**
+	 * @param register a DWARF register number
+	 * @return Returns the rule of the register, or null if the row has none. Registers without
+	 * 	a rule are usually preserved by the callee.
+	 */
+	public DwarfRegisterRule getRule(int register) {
+		int i = Arrays.binarySearch(registers, register);
+		return i < 0 ? null : rules[i];
+	}
+
+	/**
+	 * @return Returns true if the return address is signed with pointer authentication, on AArch64
+	 */
+	public boolean isReturnAddressSigned() {
+		return returnAddressSigned;
+	}
+
+	/**
+	 * @param machine the target architecture, for register names
+	 * @return Returns the CFA rule in the notation of readelf --debug-dump=frames-interp
+	 */
+	public String describeCfa(ElfHeader.Machine machine) {
+		if(cfaExpression != null)
+			return "exp";
+		if(cfaRegister < 0)
+			return "u";
+		return DwarfRegisters.getName(machine, cfaRegister) + (cfaOffset < 0 ? "" : "+") + cfaOffset;
+	}
+
+	/**
+	 * @return Returns true if the rows share the arrays holding their register rules
+	 */
+	boolean sharesRules(DwarfFrameRow other) {
+		return registers == other.registers;
+	}
+
+	/**
+	 * @param includeRules false if the register rules are shared with a row already counted
+	 */
+	long estimateRetainedBytes(boolean includeRules) {
+		long size = ElfMemoryEstimate.objectSize(3, 29);
+		if(includeRules) {
+			size += ElfMemoryEstimate.arraySize(registers.length, 4);
+			size += ElfMemoryEstimate.arraySize(rules.length, ElfMemoryEstimate.REFERENCE);
+		}
+		if(cfaExpression != null)
+			size += ElfMemoryEstimate.arraySize(cfaExpression.length, 1);
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("DwarfFrameRow[0x").append(Long.toHexString(start)).append("..0x")
+				.append(Long.toHexString(end)).append(", cfa=").append(describeCfa(ElfHeader.Machine.NONE));
+		for(int i = 0; i < registers.length; i++)
+			sb.append(", r").append(registers[i]).append('=').append(rules[i]);
+		return sb.append(']').toString();
+	}
+}
@@ -0,0 +1,339 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * Reader of the call frame information in .eh_frame or .debug_frame. Entries are decoded from
+ * the section contents on request and common information entries are cached. Lookups by
+ * address use a table sorted by initial location, built on first use by scanning the section;
+ * for .eh_frame the sorted table of .eh_frame_hdr is used instead when the file has one, see
+ * {@link Dwarf#findFde(long)}.
+ */
+public class DwarfFrameSection {
+	private final ByteBuffer data;
+	private final long address;
+	private final boolean ehFrame;
+	private final int addressSize;
+	private final ConcurrentHashMap<Long, DwarfCie> cies = new ConcurrentHashMap<Long, DwarfCie>();
+	private final ConcurrentHashMap<Long, DwarfFrameTable> tables = new ConcurrentHashMap<Long, DwarfFrameTable>();
+
+	private volatile Index index;
+
+	/** Initial locations of all frame description entries, sorted, with their offsets */
+	private static final class Index {
+		final long[] starts;
+		final long[] ends;
+		final int[] offsets;
+
+		Index(long[] starts, long[] ends, int[] offsets) {
+			this.starts = starts;
+			this.ends = ends;
+			this.offsets = offsets;
+		}
+	}
+
+	/**
+	 * @param data the contents of the section
+	 * @param address the address of the section, which pc relative pointers in .eh_frame are relative to
+	 * @param ehFrame true for .eh_frame, false for .debug_frame
+	 * @param addressSize the size of an address of the target
+	 */
+	public DwarfFrameSection(ByteBuffer data, long address, boolean ehFrame, int addressSize) {
+		this.data = data;
+		this.address = address;
+		this.ehFrame = ehFrame;
+		this.addressSize = addressSize;
+	}
+
+	/**
+	 * @return Returns the contents of the section
+	 */
+	public ByteBuffer getData() {
+		return data;
+	}
+
+	/**
+	 * @return Returns the address of the section
+	 */
+	public long getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return Returns true for .eh_frame, false for .debug_frame
+	 */
+	public boolean isEhFrame() {
+		return ehFrame;
+	}
+
+	/**
+	 * @return Returns the size of an address of the target
+	 */
+	public int getAddressSize() {
+		return addressSize;
+	}
+
+	/** Returns true if the id field of an entry marks a common information entry */
+	private boolean isCieId(long id, boolean dwarf64) {
+		if(ehFrame)
+			return id == 0;
+		return dwarf64 ? id == -1L : id == 0xffffffffL;
+	}
+
+	/** The CIE pointer of .eh_frame is 4 bytes even in the 64-bit format */
+	private long readId(DwarfReader r, boolean dwarf64) {
+		return ehFrame ? r.u32() : r.offset(dwarf64);
+	}
+
+	/**
+	 * @param offset the offset of a common information entry in the section
+	 * @return Returns the entry, which is cached
+	 */
+	public DwarfCie getCie(long offset) {
+		DwarfCie cie = cies.get(offset);
+		if(cie == null) {
+			cie = readCie(offset);
+			DwarfCie previous = cies.putIfAbsent(offset, cie);
+			if(previous != null)
+				cie = previous;
+		}
+		return cie;
+	}
+
+	private DwarfCie readCie(long offset) {
+		if(offset < 0 || offset >= data.limit())
+			throw new ElfException("CIE offset 0x" + Long.toHexString(offset) + " outside frame section");
+		DwarfReader r = new DwarfReader(data, (int)offset);
+		long unitLength = r.unitLength();
+		boolean dwarf64 = DwarfReader.isDwarf64(unitLength);
+		int end = (int)(r.position() + DwarfReader.lengthOf(unitLength));
+		if(!isCieId(readId(r, dwarf64), dwarf64))
+			throw new ElfException("Entry at offset 0x" + Long.toHexString(offset) + " is not a CIE");
+
+		int version = r.u8();
+		if(version != 1 && version != 3 && version != 4)
+			throw new ElfException("Unsupported call frame information version " + version);
+		String augmentation = r.cstring();
+		if(augmentation.contains("eh"))
+			r.address(addressSize);
+
+		int cieAddressSize = addressSize;
+		if(version >= 4) {
+			cieAddressSize = r.u8();
+			r.u8(); // segment_selector_size
+		}
+		long codeAlignment = r.uleb128();
+		long dataAlignment = r.sleb128();
+		int returnAddressRegister = version == 1 ? r.u8() : (int)r.uleb128();
+
+		int fdeEncoding = DwarfPointerEncoding.ABSPTR;
+		int lsdaEncoding = DwarfPointerEncoding.OMIT;
+		long personality = 0;
+		boolean signalFrame = false;
+		boolean hasAugmentationData = augmentation.startsWith("z");
+		int instructions = end;
+		if(hasAugmentationData) {
+			long length = r.uleb128();
+			int augmentationEnd = (int)(r.position() + length);
+			for(int i = 1; i < augmentation.length(); i++) {
+				char c = augmentation.charAt(i);
+				if(c == 'L')
+					lsdaEncoding = r.u8();
+				else if(c == 'R')
+					fdeEncoding = r.u8();
+				else if(c == 'P') {
+					int encoding = r.u8();
+					personality = DwarfPointerEncoding.read(r, encoding, address, 0, addressSize);
+				}
+				else if(c == 'S')
+					signalFrame = true;
+				else if(c != 'B' && c != 'G')
+					break;
+			}
+			r.seek(augmentationEnd);
+			instructions = r.position();
+		}
+		else if(augmentation.isEmpty() || augmentation.equals("eh")) {
+			instructions = r.position();
+		}
+		// Instructions following an unknown augmentation can not be located
+
+		return new DwarfCie(offset, version, augmentation, cieAddressSize, codeAlignment, dataAlignment,
+				returnAddressRegister, fdeEncoding, lsdaEncoding, personality, signalFrame, hasAugmentationData,
+				instructions, end);
+	}
+
+	/**
+	 * @param offset the offset of an entry in the section
+	 * @return Returns the frame description entry at the offset, or null if the entry is a
+	 * 	common information entry or the terminator of .eh_frame
+	 */
+	public DwarfFde readFde(long offset) {
+		if(offset < 0 || offset >= data.limit())
+			throw new ElfException("FDE offset 0x" + Long.toHexString(offset) + " outside frame section");
+		DwarfReader r = new DwarfReader(data, (int)offset);
+		long unitLength = r.unitLength();
+		if(unitLength == 0)
+			return null;
+		boolean dwarf64 = DwarfReader.isDwarf64(unitLength);
+		int end = (int)(r.position() + DwarfReader.lengthOf(unitLength));
+		int idPosition = r.position();
+		long id = readId(r, dwarf64);
+		if(isCieId(id, dwarf64))
+			return null;
+
+		DwarfCie cie = getCie(ehFrame ? idPosition - id : id);
+		long initialLocation;
+		long addressRange;
+		if(ehFrame) {
+			initialLocation = DwarfPointerEncoding.read(r, cie.getFdeEncoding(), address, 0, addressSize);
+			addressRange = DwarfPointerEncoding.read(r, cie.getFdeEncoding() & 0x0f, address, 0, addressSize);
+		}
+		else {
+			initialLocation = r.address(cie.getAddressSize());
+			addressRange = r.address(cie.getAddressSize());
+		}
+
+		long lsda = 0;
+		if(cie.hasAugmentationData()) {
+			long length = r.uleb128();
+			int augmentationEnd = (int)(r.position() + length);
+			if(cie.getLsdaEncoding() != DwarfPointerEncoding.OMIT && length > 0)
+				lsda = DwarfPointerEncoding.read(r, cie.getLsdaEncoding(), address, 0, addressSize);
+			r.seek(augmentationEnd);
+		}
+		return new DwarfFde(this, offset, cie, initialLocation, addressRange, lsda, r.position(), end);
+	}
+
+	/**
+	 * Returns the call frame table of an entry, computed the first time it is requested
+	 *
+	 * @param fde a frame description entry of this section
+	 * @return Returns the rows of the entry
+	 * @throws ElfException if the call frame instructions are malformed
+	 */
+	public DwarfFrameTable getFrameTable(DwarfFde fde) {
+		DwarfFrameTable table = tables.get(fde.getOffset());
+		if(table == null) {
+			table = DwarfFrameTable.interpret(fde);
+			DwarfFrameTable previous = tables.putIfAbsent(fde.getOffset(), table);
+			if(previous != null)
+				table = previous;
+		}
+		return table;
+	}
+
+	/**
+	 * @param address a code address
+	 * @return Returns the frame description entry describing the address, or null if there is none
+	 */
+	public DwarfFde findFde(long address) {
+		Index idx = getIndex();
+		int low = 0;
+		int high = idx.starts.length - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(idx.starts[mid], address) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		if(found < 0 || Long.compareUnsigned(address, idx.ends[found]) >= 0)
+			return null;
+		return readFde(idx.offsets[found]);
+	}
+
+	/**
+	 * @return Returns the number of frame description entries in the section
+	 */
+	public int getFdeCount() {
+		return getIndex().offsets.length;
+	}
+
+	private Index getIndex() {
+		Index result = index;
+		if(result == null) {
+			synchronized(this) {
+				result = index;
+				if(result == null)
+					index = result = buildIndex();
+			}
+		}
+		return result;
+	}
+
+	private Index buildIndex() {
+		long[] starts = new long[64];
+		long[] ends = new long[64];
+		int[] offsets = new int[64];
+		int size = 0;
+
+		DwarfReader r = new DwarfReader(data);
+		while(r.position() + 4 <= data.limit()) {
+			int offset = r.position();
+			long unitLength = r.unitLength();
+			// A zero length terminates .eh_frame
+			if(unitLength == 0 && ehFrame)
+				break;
+			r.skip(DwarfReader.lengthOf(unitLength));
+
+			DwarfFde fde = unitLength == 0 ? null : readFde(offset);
+			if(fde == null || fde.getAddressRange() == 0)
+				continue;
+			if(size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2);
+			}
+			starts[size] = fde.getInitialLocation();
+			ends[size] = fde.getInitialLocation() + fde.getAddressRange();
+			offsets[size] = offset;
+			size++;
+		}
+
+		int[] order = DwarfSort.orderUnsigned(starts, size);
+
+		long[] sortedStarts = new long[size];
+		long[] sortedEnds = new long[size];
+		int[] sortedOffsets = new int[size];
+		for(int i = 0; i < size; i++) {
+			sortedStarts[i] = starts[order[i]];
+			sortedEnds[i] = ends[order[i]];
+			sortedOffsets[i] = offsets[order[i]];
+		}
+		return new Index(sortedStarts, sortedEnds, sortedOffsets);
+	}
+
+	/**
+	 * @return Returns true if the sorted table of entries has been built
+	 */
+	public boolean isIndexBuilt() {
+		return index != null;
+	}
+
+	/**
+	 * @return Returns an estimate of the heap memory retained by the cached entries, call frame
+	 * 	tables and the sorted table
+	 */
+	public long estimateRetainedBytes() {
+		long size = ElfMemoryEstimate.objectSize(5, 16);
+		size += cies.size() * (ElfMemoryEstimate.objectSize(4, 4) + ElfMemoryEstimate.objectSize(1, 72));
+		for(DwarfFrameTable table : tables.values())
+			size += ElfMemoryEstimate.objectSize(4, 4) + table.estimateRetainedBytes();
+		Index idx = index;
+		if(idx != null) {
+			size += ElfMemoryEstimate.objectSize(3, 0) + 2 * ElfMemoryEstimate.arraySize(idx.starts.length, 8)
+					+ ElfMemoryEstimate.arraySize(idx.offsets.length, 4);
+		}
+		return size;
+	}
+}
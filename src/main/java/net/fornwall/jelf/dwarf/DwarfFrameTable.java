@@ -0,0 +1,387 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+
+/**
+ * The call frame table of a frame description entry, computed by running the call frame
+ * instructions of its CIE and then its own. Each row gives the CFA rule and the register rules
+ * for a range of code addresses. Tables are cached by their section, see
+ * {@link DwarfFrameSection#getFrameTable(DwarfFde)}.
+ *
+ * <pre>
+ * http://dwarfstd.org/doc/DWARF5.pdf, section 6.4
+ * </pre>
+ */
+public final class DwarfFrameTable {
+	private final DwarfFde fde;
+	private final DwarfFrameRow[] rows;
+
+	private DwarfFrameTable(DwarfFde fde, DwarfFrameRow[] rows) {
+		this.fde = fde;
+		this.rows = rows;
+	}
+
+	/**
+	 * @return Returns the frame description entry of the table
+	 */
+	public DwarfFde getFde() {
+		return fde;
+	}
+
+	/**
+	 * @return Returns the rows sorted by address
+	 */
+	public List<DwarfFrameRow> getRows() {
+		return Collections.unmodifiableList(Arrays.asList(rows));
+	}
+
+	/**
+	 * @param address a code address
+	 * @return Returns the row applying to the address, or null if the entry does not cover it
+	 */
+	public DwarfFrameRow findRow(long address) {
+		int low = 0;
+		int high = rows.length - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			DwarfFrameRow row = rows[mid];
+			if(Long.compareUnsigned(address, row.getStart()) < 0)
+				high = mid - 1;
+			else if(Long.compareUnsigned(address, row.getEnd()) >= 0)
+				low = mid + 1;
+			else
+				return row;
+		}
+		return null;
+	}
+
+	/**
+	 * @param machine the target architecture, for register names
+	 * @return Returns the rows in the layout of readelf --debug-dump=frames-interp, with a
+	 * 	column for every register which has a rule in any row
+	 */
+	public Table getFormattedTable(ElfHeader.Machine machine) {
+		DwarfCie cie = fde.getCie();
+		Table t = new Table("FDE 0x" + Long.toHexString(fde.getOffset()) + " cie=0x" + Long.toHexString(cie.getOffset())
+				+ " pc=0x" + Long.toHexString(fde.getInitialLocation()) + "..0x"
+				+ Long.toHexString(fde.getInitialLocation() + fde.getAddressRange()) + " augmentation=\""
+				+ cie.getAugmentation() + "\"");
+
+		TreeSet<Integer> registers = new TreeSet<Integer>();
+		for(DwarfFrameRow row : rows) {
+			for(int r : row.getRegisters())
+				registers.add(r);
+		}
+		// The return address column is always shown last, as readelf does
+		int returnAddress = cie.getReturnAddressRegister();
+		registers.remove(returnAddress);
+
+		// Column names
+		t.add("LOC");
+		t.setColAlign(Align.LEFT);
+
+		t.add("CFA");
+		t.setColAlign(Align.LEFT);
+
+		for(int r : registers) {
+			t.add(DwarfRegisters.getName(machine, r));
+			t.setColAlign(Align.LEFT);
+		}
+		t.add("ra");
+		t.setColAlign(Align.LEFT);
+
+		int width = fde.getSection().getAddressSize() * 2;
+		for(DwarfFrameRow row : rows) {
+			t.newRow();
+			String location = Long.toHexString(row.getStart());
+			t.add(location.length() < width ? String.format("%" + width + "s", location).replace(' ', '0') : location);
+			t.add(row.describeCfa(machine) + (row.isReturnAddressSigned() ? " (signed ra)" : ""));
+			for(int r : registers)
+				t.add(describe(row.getRule(r), machine));
+			t.add(describe(row.getRule(returnAddress), machine));
+		}
+		return t;
+	}
+
+	private static String describe(DwarfRegisterRule rule, ElfHeader.Machine machine) {
+		return rule == null ? "u" : rule.describe(machine);
+	}
+
+	/**
+	 * @return Returns an estimate of the heap memory retained by the table
+	 */
+	public long estimateRetainedBytes() {
+		long size = ElfMemoryEstimate.objectSize(2, 0) + ElfMemoryEstimate.arraySize(rows.length, ElfMemoryEstimate.REFERENCE);
+		DwarfFrameRow previous = null;
+		for(DwarfFrameRow row : rows) {
+			size += row.estimateRetainedBytes(previous == null || !row.sharesRules(previous));
+			previous = row;
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "DwarfFrameTable[fde=0x" + Long.toHexString(fde.getOffset()) + ", rows=" + rows.length + "]";
+	}
+
+	/** The register rules while the instructions are run */
+	private static final class State {
+		int cfaRegister = -1;
+		long cfaOffset;
+		byte[] cfaExpression;
+		TreeMap<Integer, DwarfRegisterRule> rules = new TreeMap<Integer, DwarfRegisterRule>();
+		boolean returnAddressSigned;
+
+		State copy() {
+			State s = new State();
+			s.cfaRegister = cfaRegister;
+			s.cfaOffset = cfaOffset;
+			s.cfaExpression = cfaExpression;
+			s.rules = new TreeMap<Integer, DwarfRegisterRule>(rules);
+			s.returnAddressSigned = returnAddressSigned;
+			return s;
+		}
+	}
+
+	/**
+	 * Runs the call frame instructions of an entry
+	 *
+	 * @param fde the frame description entry
+	 * @return Returns the call frame table of the entry
+	 * @throws ElfException if the instructions are malformed
+	 */
+	static DwarfFrameTable interpret(DwarfFde fde) {
+		DwarfCie cie = fde.getCie();
+		DwarfFrameSection section = fde.getSection();
+		ByteBuffer data = section.getData();
+		long end = fde.getInitialLocation() + fde.getAddressRange();
+
+		Interpreter interpreter = new Interpreter(fde, section, data, end);
+		interpreter.run(cie.getInstructionsOffset(), cie.getEndOffset());
+		interpreter.initial = interpreter.state.copy();
+		interpreter.run(fde.getInstructionsOffset(), fde.getEndOffset());
+		interpreter.emit(end);
+		return new DwarfFrameTable(fde, interpreter.rows.toArray(new DwarfFrameRow[0]));
+	}
+
+	private static final class Interpreter {
+		final DwarfFde fde;
+		final DwarfCie cie;
+		final DwarfFrameSection section;
+		final ByteBuffer data;
+		final long end;
+		final List<DwarfFrameRow> rows = new ArrayList<DwarfFrameRow>();
+		final Deque<State> remembered = new ArrayDeque<State>();
+		State state = new State();
+		/** The rules after the initial instructions of the CIE, for DW_CFA_restore */
+		State initial;
+		long location;
+
+		/** Register arrays of the previous row, shared while the rules do not change */
+		int[] registers = new int[0];
+		DwarfRegisterRule[] rules = new DwarfRegisterRule[0];
+		boolean rulesChanged = true;
+
+		Interpreter(DwarfFde fde, DwarfFrameSection section, ByteBuffer data, long end) {
+			this.fde = fde;
+			this.cie = fde.getCie();
+			this.section = section;
+			this.data = data;
+			this.end = end;
+			this.location = fde.getInitialLocation();
+		}
+
+		void run(int offset, int limit) {
+			DwarfReader r = new DwarfReader(data, offset);
+			long codeAlignment = cie.getCodeAlignment();
+			long dataAlignment = cie.getDataAlignment();
+			while(r.position() < limit) {
+				int opcode = r.u8();
+				int operand = opcode & 0x3f;
+				switch(opcode & 0xc0) {
+				case DwarfCallFrameInstruction.ADVANCE_LOC:
+					advance(location + operand * codeAlignment);
+					continue;
+				case DwarfCallFrameInstruction.OFFSET:
+					setRule(operand, new DwarfRegisterRule(DwarfRegisterRule.OFFSET, r.uleb128() * dataAlignment, null));
+					continue;
+				case DwarfCallFrameInstruction.RESTORE:
+					restore(operand);
+					continue;
+				default:
+					break;
+				}
+
+				switch(opcode) {
+				case DwarfCallFrameInstruction.NOP:
+					break;
+				case DwarfCallFrameInstruction.GNU_ARGS_SIZE:
+					// Only needed when unwinding into a landing pad
+					r.uleb128();
+					break;
+				case DwarfCallFrameInstruction.SET_LOC:
+					if(section.isEhFrame())
+						advance(DwarfPointerEncoding.read(r, cie.getFdeEncoding(), section.getAddress(), 0, section.getAddressSize()));
+					else
+						advance(r.address(cie.getAddressSize()));
+					break;
+				case DwarfCallFrameInstruction.ADVANCE_LOC1:
+					advance(location + r.u8() * codeAlignment);
+					break;
+				case DwarfCallFrameInstruction.ADVANCE_LOC2:
+					advance(location + r.u16() * codeAlignment);
+					break;
+				case DwarfCallFrameInstruction.ADVANCE_LOC4:
+					advance(location + r.u32() * codeAlignment);
+					break;
+				case DwarfCallFrameInstruction.MIPS_ADVANCE_LOC8:
+					advance(location + r.u64() * codeAlignment);
+					break;
+				case DwarfCallFrameInstruction.OFFSET_EXTENDED:
+					setRule(register(r), new DwarfRegisterRule(DwarfRegisterRule.OFFSET, r.uleb128() * dataAlignment, null));
+					break;
+				case DwarfCallFrameInstruction.OFFSET_EXTENDED_SF:
+					setRule(register(r), new DwarfRegisterRule(DwarfRegisterRule.OFFSET, r.sleb128() * dataAlignment, null));
+					break;
+				case DwarfCallFrameInstruction.GNU_NEGATIVE_OFFSET_EXTENDED:
+					setRule(register(r), new DwarfRegisterRule(DwarfRegisterRule.OFFSET, -r.uleb128() * dataAlignment, null));
+					break;
+				case DwarfCallFrameInstruction.VAL_OFFSET:
+					setRule(register(r), new DwarfRegisterRule(DwarfRegisterRule.VAL_OFFSET, r.uleb128() * dataAlignment, null));
+					break;
+				case DwarfCallFrameInstruction.VAL_OFFSET_SF:
+					setRule(register(r), new DwarfRegisterRule(DwarfRegisterRule.VAL_OFFSET, r.sleb128() * dataAlignment, null));
+					break;
+				case DwarfCallFrameInstruction.RESTORE_EXTENDED:
+					restore(register(r));
+					break;
+				case DwarfCallFrameInstruction.UNDEFINED:
+					setRule(register(r), DwarfRegisterRule.UNDEFINED_RULE);
+					break;
+				case DwarfCallFrameInstruction.SAME_VALUE:
+					setRule(register(r), DwarfRegisterRule.SAME_VALUE_RULE);
+					break;
+				case DwarfCallFrameInstruction.REGISTER: {
+					int target = register(r);
+					setRule(target, new DwarfRegisterRule(DwarfRegisterRule.REGISTER, register(r), null));
+					break;
+				}
+				case DwarfCallFrameInstruction.EXPRESSION: {
+					int target = register(r);
+					setRule(target, new DwarfRegisterRule(DwarfRegisterRule.EXPRESSION, 0, block(r)));
+					break;
+				}
+				case DwarfCallFrameInstruction.VAL_EXPRESSION: {
+					int target = register(r);
+					setRule(target, new DwarfRegisterRule(DwarfRegisterRule.VAL_EXPRESSION, 0, block(r)));
+					break;
+				}
+				case DwarfCallFrameInstruction.REMEMBER_STATE:
+					remembered.push(state.copy());
+					break;
+				case DwarfCallFrameInstruction.RESTORE_STATE:
+					if(remembered.isEmpty())
+						throw new ElfException("DW_CFA_restore_state without remembered state in FDE at offset 0x"
+								+ Long.toHexString(fde.getOffset()));
+					state = remembered.pop();
+					rulesChanged = true;
+					break;
+				case DwarfCallFrameInstruction.DEF_CFA:
+					state.cfaRegister = register(r);
+					state.cfaOffset = r.uleb128();
+					state.cfaExpression = null;
+					break;
+				case DwarfCallFrameInstruction.DEF_CFA_SF:
+					state.cfaRegister = register(r);
+					state.cfaOffset = r.sleb128() * dataAlignment;
+					state.cfaExpression = null;
+					break;
+				case DwarfCallFrameInstruction.DEF_CFA_REGISTER:
+					state.cfaRegister = register(r);
+					state.cfaExpression = null;
+					break;
+				case DwarfCallFrameInstruction.DEF_CFA_OFFSET:
+					state.cfaOffset = r.uleb128();
+					break;
+				case DwarfCallFrameInstruction.DEF_CFA_OFFSET_SF:
+					state.cfaOffset = r.sleb128() * dataAlignment;
+					break;
+				case DwarfCallFrameInstruction.DEF_CFA_EXPRESSION:
+					state.cfaExpression = block(r);
+					break;
+				case DwarfCallFrameInstruction.AARCH64_NEGATE_RA_STATE:
+					state.returnAddressSigned = !state.returnAddressSigned;
+					break;
+				default:
+					throw new ElfException("Unsupported call frame instruction 0x" + Integer.toHexString(opcode)
+							+ " in FDE at offset 0x" + Long.toHexString(fde.getOffset()));
+				}
+			}
+		}
+
+		private static int register(DwarfReader r) {
+			return (int)r.uleb128();
+		}
+
+		private static byte[] block(DwarfReader r) {
+			int length = (int)r.uleb128();
+			byte[] block = new byte[length];
+			for(int i = 0; i < length; i++)
+				block[i] = (byte)r.u8();
+			return block;
+		}
+
+		private void setRule(int register, DwarfRegisterRule rule) {
+			state.rules.put(register, rule);
+			rulesChanged = true;
+		}
+
+		private void restore(int register) {
+			DwarfRegisterRule rule = initial == null ? null : initial.rules.get(register);
+			if(rule == null)
+				state.rules.remove(register);
+			else
+				state.rules.put(register, rule);
+			rulesChanged = true;
+		}
+
+		/** Ends the current row at the new location */
+		private void advance(long next) {
+			emit(Long.compareUnsigned(next, end) < 0 ? next : end);
+			location = next;
+		}
+
+		void emit(long next) {
+			if(Long.compareUnsigned(location, next) >= 0)
+				return;
+			if(rulesChanged) {
+				registers = new int[state.rules.size()];
+				rules = new DwarfRegisterRule[registers.length];
+				int i = 0;
+				for(Map.Entry<Integer, DwarfRegisterRule> e : state.rules.entrySet()) {
+					registers[i] = e.getKey();
+					rules[i++] = e.getValue();
+				}
+				rulesChanged = false;
+			}
+			rows.add(new DwarfFrameRow(location, next, state.cfaRegister, state.cfaOffset, state.cfaExpression, registers,
+					rules, state.returnAddressSigned));
+		}
+	}
+}
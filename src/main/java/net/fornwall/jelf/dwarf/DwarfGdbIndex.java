@@ -0,0 +1,144 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * Reader of the .gdb_index section written by gold, lld and gdb-add-index. Its symbol table is
+ * an open addressing hash table mapping names to the list of units defining them, so lookups
+ * return units but not the entries inside them. All values are little endian regardless of the
+ * byte order of the file.
+ */
+public class DwarfGdbIndex implements DwarfNameIndex {
+	/** Symbol kinds stored in the unit lists (GDB_INDEX_SYMBOL_KIND_*) */
+	public static final int KIND_NONE = 0;
+	public static final int KIND_TYPE = 1;
+	public static final int KIND_VARIABLE = 2;
+	public static final int KIND_FUNCTION = 3;
+	public static final int KIND_OTHER = 4;
+
+	private final ByteBuffer data;
+	private final int version;
+	private final int compileUnitCount;
+	private final int compileUnitList;
+	private final int typeUnitCount;
+	private final int symbolTable;
+	private final int symbolTableSlots;
+	private final int constantPool;
+
+	/**
+	 * @param data the contents of .gdb_index
+	 */
+	public DwarfGdbIndex(ByteBuffer data) {
+		this.data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		DwarfReader r = new DwarfReader(this.data);
+		version = (int)r.u32();
+		if(version < 4 || version > 9)
+			throw new ElfException("Unsupported .gdb_index version " + version);
+		compileUnitList = (int)r.u32();
+		int typeUnitList = (int)r.u32();
+		int addressArea = (int)r.u32();
+		symbolTable = (int)r.u32();
+		// Version 9 adds a shortcut table between the symbol table and the constant pool
+		int symbolTableEnd = version >= 9 ? (int)r.u32() : -1;
+		constantPool = (int)r.u32();
+		if(symbolTableEnd < 0)
+			symbolTableEnd = constantPool;
+
+		compileUnitCount = (typeUnitList - compileUnitList) / 16;
+		typeUnitCount = (addressArea - typeUnitList) / 24;
+		symbolTableSlots = (symbolTableEnd - symbolTable) / 8;
+	}
+
+	/**
+	 * The hash function of .gdb_index. Versions before 5 did not fold the case of the name.
+	 *
+	 * @param name the UTF-8 bytes of a name
+	 * @param version the version of the index
+	 * @return Returns the hash of the name
+	 */
+	public static int hash(byte[] name, int version) {
+		int h = 0;
+		for(byte b : name) {
+			int c = b & 0xff;
+			if(version >= 5 && c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			h = h * 67 + c - 113;
+		}
+		return h;
+	}
+
+	/**
+	 * The entries are returned with the tag of a subprogram or variable for those kinds of
+	 * symbols, and no tag for the others.
+	 */
+	@Override
+	public List<DwarfNameEntry> find(String name) {
+		List<DwarfNameEntry> result = new ArrayList<DwarfNameEntry>();
+		if(symbolTableSlots == 0)
+			return result;
+
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(bytes, version);
+		int mask = symbolTableSlots - 1;
+		int slot = hash & mask;
+		int step = ((hash * 17) & mask) | 1;
+		for(int probes = 0; probes < symbolTableSlots; probes++) {
+			int nameOffset = data.getInt(symbolTable + 8 * slot);
+			int vectorOffset = data.getInt(symbolTable + 8 * slot + 4);
+			if(nameOffset == 0 && vectorOffset == 0)
+				break;
+			if(DwarfReader.matches(data, constantPool + (nameOffset & 0xffffffffL), bytes)) {
+				readUnits(constantPool + vectorOffset, result);
+				break;
+			}
+			slot = (slot + step) & mask;
+		}
+		return result;
+	}
+
+	private void readUnits(int vector, List<DwarfNameEntry> result) {
+		int count = data.getInt(vector);
+		for(int i = 0; i < count; i++) {
+			int value = data.getInt(vector + 4 + 4 * i);
+			int unit = value & 0xffffff;
+			int kind = (value >>> 28) & 7;
+			int tag = kind == KIND_FUNCTION ? DwarfTag.SUBPROGRAM : kind == KIND_VARIABLE ? DwarfTag.VARIABLE : 0;
+			// Type units listed after the compile units are in .debug_types, not .debug_info
+			long unitOffset = unit < compileUnitCount ? data.getLong(compileUnitList + 16 * unit) : -1;
+			DwarfNameEntry entry = new DwarfNameEntry(unitOffset, -1, tag);
+			if(!result.contains(entry))
+				result.add(entry);
+		}
+	}
+
+	/**
+	 * @return Returns the version of the index
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Returns the number of compile units and type units listed in the index
+	 */
+	public int getUnitCount() {
+		return compileUnitCount + typeUnitCount;
+	}
+
+	@Override
+	public String getSectionName() {
+		return ".gdb_index";
+	}
+
+	@Override
+	public long estimateRetainedBytes() {
+		return ElfMemoryEstimate.objectSize(1, 28);
+	}
+}
@@ -0,0 +1,63 @@
+package net.fornwall.jelf.dwarf;
+
+/**
+ * One frame of the inline chain of an address: a function, or an instance of a function inlined
+ * into the next frame, together with the source line executing in it. For the innermost frame
+ * this is the line of the address itself, for the outer frames it is the line of the call which
+ * was inlined.
+ */
+public final class DwarfInlineFrame {
+	private final DwarfDie entry;
+	private final String name;
+	private final String linkageName;
+	private final DwarfSourceLine location;
+
+	public DwarfInlineFrame(DwarfDie entry, String name, String linkageName, DwarfSourceLine location) {
+		this.entry = entry;
+		this.name = name;
+		this.linkageName = linkageName;
+		this.location = location;
+	}
+
+	/**
+	 * @return Returns the DW_TAG_subprogram or DW_TAG_inlined_subroutine entry of this frame,
+	 * 	or null if no function covers the address
+	 */
+	public DwarfDie getEntry() {
+		return entry;
+	}
+
+	/**
+	 * @return Returns true if this frame is an inlined instance of a function
+	 */
+	public boolean isInlined() {
+		return entry != null && entry.getTag() == DwarfTag.INLINED_SUBROUTINE;
+	}
+
+	/**
+	 * @return Returns the name of the function, or null if it is not known
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Returns the mangled name of the function, or null if it does not have one
+	 */
+	public String getLinkageName() {
+		return linkageName;
+	}
+
+	/**
+	 * @return Returns the source line executing in this frame, or null if it is not known
+	 */
+	public DwarfSourceLine getLocation() {
+		return location;
+	}
+
+	@Override
+	public String toString() {
+		String function = linkageName != null ? linkageName : name;
+		return (function == null ? "??" : function) + " at " + (location == null ? "??:0" : location.toString());
+	}
+}
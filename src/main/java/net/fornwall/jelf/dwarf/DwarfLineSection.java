@@ -0,0 +1,131 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * Decoder of the .debug_line section. The section is split into one line table per compilation
+ * unit; each table is decoded the first time an address inside it is looked up and then cached,
+ * so only the units which are actually needed are ever decoded.
+ */
+public class DwarfLineSection {
+	private final Dwarf dwarf;
+	private final ByteBuffer data;
+
+	/** Offsets of all units in the section, found by walking the unit headers */
+	private volatile long[] unitOffsets;
+	private final ConcurrentHashMap<Long, DwarfLineTable> tables = new ConcurrentHashMap<Long, DwarfLineTable>();
+
+	/** The table of the most recent successful lookup, checked first since lookups tend to cluster */
+	private volatile DwarfLineTable lastTable;
+
+	public DwarfLineSection(Dwarf dwarf, ByteBuffer data) {
+		this.dwarf = dwarf;
+		this.data = data;
+	}
+
+	/**
+	 * @return Returns the offsets of all line tables in the section
+	 */
+	public long[] getUnitOffsets() {
+		long[] result = unitOffsets;
+		if(result == null) {
+			long[] offsets = new long[16];
+			int count = 0;
+			DwarfReader r = new DwarfReader(data);
+			while(r.hasRemaining()) {
+				if(count == offsets.length)
+					offsets = Arrays.copyOf(offsets, count * 2);
+				offsets[count++] = r.position();
+				long length = r.unitLength();
+				r.skip(DwarfReader.lengthOf(length));
+			}
+			unitOffsets = result = Arrays.copyOf(offsets, count);
+		}
+		return result.clone();
+	}
+
+	/**
+	 * @param offset the offset of the unit in .debug_line, as given by DW_AT_stmt_list
+	 * @return Returns the decoded line table of the unit
+	 */
+	public DwarfLineTable getLineTable(long offset) {
+		return getLineTable(offset, null);
+	}
+
+	/**
+	 * @param offset the offset of the unit in .debug_line, as given by DW_AT_stmt_list
+	 * @param compilationDirectory the DW_AT_comp_dir of the compilation unit, or null if not known
+	 * @return Returns the decoded line table of the unit
+	 */
+	public DwarfLineTable getLineTable(long offset, String compilationDirectory) {
+		DwarfLineTable table = tables.get(offset);
+		if(table == null) {
+			table = DwarfLineTable.decode(dwarf, data, offset, compilationDirectory);
+			DwarfLineTable previous = tables.putIfAbsent(offset, table);
+			if(previous != null)
+				table = previous;
+		}
+		return table;
+	}
+
+	/**
+	 * Finds the source line of an address by searching the line tables in section order. Tables
+	 * are decoded as they are searched, so the first lookup of an address late in the section
+	 * decodes every table before it.
+	 *
+	 * @param address an address
+	 * @return Returns the source line covering the address, or null if no table covers it
+	 */
+	public DwarfSourceLine findLine(long address) {
+		DwarfLineTable last = lastTable;
+		if(last != null) {
+			DwarfSourceLine line = last.findLine(address);
+			if(line != null)
+				return line;
+		}
+
+		for(long offset : getUnitOffsets()) {
+			DwarfLineTable table = getLineTable(offset);
+			if(table == last)
+				continue;
+			DwarfSourceLine line = table.findLine(address);
+			if(line != null) {
+				lastTable = table;
+				return line;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the source lines of many addresses. The addresses are visited in sorted order so that
+	 * consecutive lookups are served by the same table.
+	 *
+	 * @param addresses the addresses to look up
+	 * @return Returns the source line of each address, with null for addresses which are not covered
+	 */
+	public DwarfSourceLine[] findLines(long[] addresses) {
+		int[] order = DwarfSort.orderUnsigned(addresses, addresses.length);
+
+		DwarfSourceLine[] result = new DwarfSourceLine[addresses.length];
+		for(int i : order)
+			result[i] = findLine(addresses[i]);
+		return result;
+	}
+
+	/**
+	 * Adds the heap memory retained by the decoded line tables to the provided estimate
+	 *
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		long size = 0;
+		for(DwarfLineTable table : tables.values())
+			size += table.estimateRetainedBytes();
+		estimate.add(ElfMemoryEstimate.DEBUG_INFO, size);
+	}
+}
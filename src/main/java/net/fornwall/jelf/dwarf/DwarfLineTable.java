@@ -0,0 +1,593 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+
+/**
+ * The decoded line number program of one compilation unit in .debug_line, supporting DWARF
+ * versions 2 through 5.
+ *
+ * <p>
+ * The rows are kept in two parallel arrays sorted by address: the addresses themselves and the
+ * file and line of each row packed into a long. Rows which end a sequence have no file and mark
+ * the end of the preceding row. Looking up an address is a binary search over the addresses.
+ * VLIW operation indices are not tracked, which is correct for every target except Itanium.
+ */
+public class DwarfLineTable {
+	/** Standard opcodes */
+	private static final int DW_LNS_copy = 1;
+	private static final int DW_LNS_advance_pc = 2;
+	private static final int DW_LNS_advance_line = 3;
+	private static final int DW_LNS_set_file = 4;
+	private static final int DW_LNS_set_column = 5;
+	private static final int DW_LNS_negate_stmt = 6;
+	private static final int DW_LNS_set_basic_block = 7;
+	private static final int DW_LNS_const_add_pc = 8;
+	private static final int DW_LNS_fixed_advance_pc = 9;
+	private static final int DW_LNS_set_prologue_end = 10;
+	private static final int DW_LNS_set_epilogue_begin = 11;
+	private static final int DW_LNS_set_isa = 12;
+
+	/** Extended opcodes */
+	private static final int DW_LNE_end_sequence = 1;
+	private static final int DW_LNE_set_address = 2;
+	private static final int DW_LNE_define_file = 3;
+
+	/** Content type codes of DWARF 5 directory and file name entries */
+	private static final int DW_LNCT_path = 1;
+	private static final int DW_LNCT_directory_index = 2;
+
+	/** File value of rows which end a sequence */
+	private static final int END_SEQUENCE = -1;
+
+	private final long offset;
+	private final int version;
+	private final String[] directories;
+	private final String[] fileNames;
+	private final int[] fileDirectories;
+	private final String compilationDirectory;
+
+	private final long[] addresses;
+	/** File index in the upper and line number in the lower 32 bits of each row */
+	private final long[] fileLines;
+
+	private DwarfLineTable(long offset, int version, String[] directories, String[] fileNames, int[] fileDirectories,
+			String compilationDirectory, long[] addresses, long[] fileLines) {
+		this.offset = offset;
+		this.version = version;
+		this.directories = directories;
+		this.fileNames = fileNames;
+		this.fileDirectories = fileDirectories;
+		this.compilationDirectory = compilationDirectory;
+		this.addresses = addresses;
+		this.fileLines = fileLines;
+	}
+
+	/** Growable list of rows used while running the line number program */
+	private static final class RowBuilder {
+		long[] addresses = new long[64];
+		long[] fileLines = new long[64];
+		int size;
+		int sequenceStart;
+		boolean sorted = true;
+		long lastSequenceStart = Long.MIN_VALUE;
+
+		void add(long address, int file, int line) {
+			if(size == addresses.length) {
+				addresses = Arrays.copyOf(addresses, size * 2);
+				fileLines = Arrays.copyOf(fileLines, size * 2);
+			}
+			addresses[size] = address;
+			fileLines[size] = (long)file << 32 | (line & 0xffffffffL);
+			size++;
+		}
+
+		void endSequence(long address) {
+			add(address, END_SEQUENCE, 0);
+			long start = addresses[sequenceStart];
+			if(Long.compareUnsigned(start, lastSequenceStart) < 0 && lastSequenceStart != Long.MIN_VALUE)
+				sorted = false;
+			lastSequenceStart = start;
+			sequenceStart = size;
+		}
+
+		/** Orders the sequences by start address. Rows within a sequence are already ordered. */
+		void sortSequences() {
+			// Rows of an unterminated sequence are dropped
+			size = sequenceStart;
+			if(sorted)
+				return;
+
+			int count = 0;
+			for(int i = 0; i < size; i++) {
+				if((int)(fileLines[i] >> 32) == END_SEQUENCE)
+					count++;
+			}
+			int[] starts = new int[count];
+			int[] ends = new int[count];
+			long[] startAddresses = new long[count];
+			for(int i = 0, s = 0, start = 0; i < size; i++) {
+				if((int)(fileLines[i] >> 32) == END_SEQUENCE) {
+					starts[s] = start;
+					startAddresses[s] = addresses[start];
+					ends[s++] = i + 1;
+					start = i + 1;
+				}
+			}
+
+			int[] order = DwarfSort.orderUnsigned(startAddresses, count);
+
+			long[] sortedAddresses = new long[size];
+			long[] sortedFileLines = new long[size];
+			int pos = 0;
+			for(int i : order) {
+				int length = ends[i] - starts[i];
+				System.arraycopy(addresses, starts[i], sortedAddresses, pos, length);
+				System.arraycopy(fileLines, starts[i], sortedFileLines, pos, length);
+				pos += length;
+			}
+			addresses = sortedAddresses;
+			fileLines = sortedFileLines;
+		}
+	}
+
+	/**
+	 * Decodes the line number program of the unit at the provided offset in .debug_line
+	 *
+	 * @param dwarf the debugging information the section belongs to
+	 * @param data the contents of .debug_line
+	 * @param offset the offset of the unit in .debug_line
+	 * @param compilationDirectory the DW_AT_comp_dir of the compilation unit, or null if not known
+	 * @return Returns the decoded line table
+	 */
+	public static DwarfLineTable decode(Dwarf dwarf, ByteBuffer data, long offset, String compilationDirectory) {
+		DwarfReader r = new DwarfReader(data, (int)offset);
+		long unitLength = r.unitLength();
+		boolean dwarf64 = DwarfReader.isDwarf64(unitLength);
+		long end = r.position() + DwarfReader.lengthOf(unitLength);
+		if(end > data.limit())
+			throw new ElfException("Line table at offset 0x" + Long.toHexString(offset) + " extends past end of .debug_line");
+
+		int version = r.u16();
+		if(version < 2 || version > 5)
+			throw new ElfException("Unsupported line table version " + version + " at offset 0x" + Long.toHexString(offset));
+
+		if(version >= 5) {
+			// The address size is also implied by DW_LNE_set_address
+			r.u8(); // address_size
+			r.u8(); // segment_selector_size
+		}
+
+		long headerLength = r.offset(dwarf64);
+		long programStart = r.position() + headerLength;
+		int minInstructionLength = r.u8();
+		if(version >= 4)
+			r.u8(); // maximum_operations_per_instruction
+		r.u8(); // default_is_stmt
+		int lineBase = r.s8();
+		int lineRange = r.u8();
+		int opcodeBase = r.u8();
+		if(lineRange == 0)
+			throw new ElfException("Line table at offset 0x" + Long.toHexString(offset) + " has a line range of 0");
+
+		int[] standardOpcodeLengths = new int[opcodeBase];
+		for(int i = 1; i < opcodeBase; i++)
+			standardOpcodeLengths[i] = r.u8();
+
+		String[] directories;
+		String[] fileNames;
+		int[] fileDirectories;
+		if(version >= 5) {
+			long[][] dirs = readEntries(r, dwarf64);
+			directories = new String[dirs.length];
+			for(int i = 0; i < dirs.length; i++)
+				directories[i] = entryPath(dwarf, r, dirs[i]);
+
+			long[][] files = readEntries(r, dwarf64);
+			fileNames = new String[files.length];
+			fileDirectories = new int[files.length];
+			for(int i = 0; i < files.length; i++) {
+				fileNames[i] = entryPath(dwarf, r, files[i]);
+				fileDirectories[i] = (int)files[i][2];
+			}
+		}
+		else {
+			// Index 0 is the compilation directory and file indices start at 1
+			List<String> dirs = new ArrayList<String>();
+			dirs.add(compilationDirectory);
+			for(String s = r.cstring(); !s.isEmpty(); s = r.cstring())
+				dirs.add(s);
+			directories = dirs.toArray(new String[dirs.size()]);
+
+			List<String> names = new ArrayList<String>();
+			List<Integer> nameDirs = new ArrayList<Integer>();
+			names.add(null);
+			nameDirs.add(0);
+			for(String s = r.cstring(); !s.isEmpty(); s = r.cstring()) {
+				names.add(s);
+				nameDirs.add((int)r.uleb128());
+				r.uleb128(); // modification time
+				r.uleb128(); // length
+			}
+			fileNames = names.toArray(new String[names.size()]);
+			fileDirectories = new int[nameDirs.size()];
+			for(int i = 0; i < fileDirectories.length; i++)
+				fileDirectories[i] = nameDirs.get(i);
+		}
+
+		// Run the line number program
+		r.seek((int)programStart);
+		RowBuilder rows = new RowBuilder();
+		List<String> definedFiles = null;
+		List<Integer> definedDirectories = null;
+
+		long address = 0;
+		int file = 1;
+		int line = 1;
+		while(r.position() < end) {
+			int opcode = r.u8();
+			if(opcode >= opcodeBase) {
+				int adjusted = opcode - opcodeBase;
+				address += (long)(adjusted / lineRange) * minInstructionLength;
+				line += lineBase + adjusted % lineRange;
+				rows.add(address, file, line);
+				continue;
+			}
+
+			switch(opcode) {
+			case 0: {
+				long length = r.uleb128();
+				int next = (int)(r.position() + length);
+				if(length == 0)
+					break;
+				int extended = r.u8();
+				switch(extended) {
+				case DW_LNE_end_sequence:
+					rows.endSequence(address);
+					address = 0;
+					file = 1;
+					line = 1;
+					break;
+				case DW_LNE_set_address:
+					address = r.address((int)length - 1);
+					break;
+				case DW_LNE_define_file:
+					if(definedFiles == null) {
+						definedFiles = new ArrayList<String>(Arrays.asList(fileNames));
+						definedDirectories = new ArrayList<Integer>();
+						for(int d : fileDirectories)
+							definedDirectories.add(d);
+					}
+					definedFiles.add(r.cstring());
+					definedDirectories.add((int)r.uleb128());
+					break;
+				default:
+					// DW_LNE_set_discriminator and vendor extensions carry nothing we need
+					break;
+				}
+				r.seek(next);
+				break;
+			}
+			case DW_LNS_copy:
+				rows.add(address, file, line);
+				break;
+			case DW_LNS_advance_pc:
+				address += r.uleb128() * minInstructionLength;
+				break;
+			case DW_LNS_advance_line:
+				line += (int)r.sleb128();
+				break;
+			case DW_LNS_set_file:
+				file = (int)r.uleb128();
+				break;
+			case DW_LNS_const_add_pc:
+				address += (long)((255 - opcodeBase) / lineRange) * minInstructionLength;
+				break;
+			case DW_LNS_fixed_advance_pc:
+				address += r.u16();
+				break;
+			case DW_LNS_set_column:
+			case DW_LNS_set_isa:
+			case DW_LNS_negate_stmt:
+			case DW_LNS_set_basic_block:
+			case DW_LNS_set_prologue_end:
+			case DW_LNS_set_epilogue_begin:
+			default:
+				// Skip the operands of opcodes which do not affect the address or line
+				for(int i = 0; i < standardOpcodeLengths[opcode]; i++)
+					r.uleb128();
+				break;
+			}
+		}
+
+		if(definedFiles != null) {
+			fileNames = definedFiles.toArray(new String[definedFiles.size()]);
+			fileDirectories = new int[definedDirectories.size()];
+			for(int i = 0; i < fileDirectories.length; i++)
+				fileDirectories[i] = definedDirectories.get(i);
+		}
+
+		rows.sortSequences();
+		return new DwarfLineTable(offset, version, directories, fileNames, fileDirectories, compilationDirectory,
+				Arrays.copyOf(rows.addresses, rows.size), Arrays.copyOf(rows.fileLines, rows.size));
+	}
+
+	/**
+	 * Reads a DWARF 5 directory or file name entry list. Each entry is returned as the form of
+	 * the path, the value of the path and the directory index. Paths are resolved by {@link #entryPath}.
+	 */
+	private static long[][] readEntries(DwarfReader r, boolean dwarf64) {
+		int formatCount = r.u8();
+		int[] contentTypes = new int[formatCount];
+		int[] forms = new int[formatCount];
+		for(int i = 0; i < formatCount; i++) {
+			contentTypes[i] = (int)r.uleb128();
+			forms[i] = (int)r.uleb128();
+		}
+
+		int count = (int)r.uleb128();
+		long[][] entries = new long[count][3];
+		for(int i = 0; i < count; i++) {
+			for(int j = 0; j < formatCount; j++) {
+				int form = forms[j];
+				long value;
+				if(form == DwarfForm.STRING) {
+					value = r.position();
+					r.cstring();
+				}
+				else {
+					value = readValue(r, form, dwarf64);
+				}
+
+				if(contentTypes[j] == DW_LNCT_path) {
+					entries[i][0] = form;
+					entries[i][1] = value;
+				}
+				else if(contentTypes[j] == DW_LNCT_directory_index) {
+					entries[i][2] = value;
+				}
+			}
+		}
+		return entries;
+	}
+
+	private static long readValue(DwarfReader r, int form, boolean dwarf64) {
+		switch(form) {
+		case DwarfForm.DATA1:
+		case DwarfForm.STRX1:
+			return r.u8();
+		case DwarfForm.DATA2:
+		case DwarfForm.STRX2:
+			return r.u16();
+		case DwarfForm.STRX3:
+			return r.unsigned(3);
+		case DwarfForm.DATA4:
+		case DwarfForm.STRX4:
+			return r.u32();
+		case DwarfForm.DATA8:
+			return r.u64();
+		case DwarfForm.DATA16:
+			r.skip(16);
+			return 0;
+		case DwarfForm.UDATA:
+		case DwarfForm.STRX:
+			return r.uleb128();
+		case DwarfForm.SDATA:
+			return r.sleb128();
+		case DwarfForm.BLOCK:
+			r.skip(r.uleb128());
+			return 0;
+		case DwarfForm.LINE_STRP:
+		case DwarfForm.STRP:
+		case DwarfForm.STRP_SUP:
+		case DwarfForm.GNU_STRP_ALT:
+		case DwarfForm.SEC_OFFSET:
+			return r.offset(dwarf64);
+		default:
+			throw new ElfException("Unsupported form 0x" + Integer.toHexString(form) + " in line table header");
+		}
+	}
+
+	private static String entryPath(Dwarf dwarf, DwarfReader r, long[] entry) {
+		int form = (int)entry[0];
+		long value = entry[1];
+		switch(form) {
+		case DwarfForm.STRING:
+			return DwarfReader.cstring(r.getBuffer(), value);
+		case DwarfForm.LINE_STRP:
+			return sectionString(dwarf, ".debug_line_str", value);
+		case DwarfForm.STRP:
+			return sectionString(dwarf, ".debug_str", value);
+		default:
+			// String index forms need the string offsets of the compilation unit
+			return null;
+		}
+	}
+
+	private static String sectionString(Dwarf dwarf, String section, long offset) {
+		ByteBuffer strings = dwarf.getSection(section);
+		if(strings == null)
+			throw new ElfException("Line table refers to missing section " + section);
+		return DwarfReader.cstring(strings, offset);
+	}
+
+	/**
+	 * @return Returns the offset of this unit in .debug_line
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Returns the DWARF version of the line table
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Returns the number of rows, including the rows which end a sequence
+	 */
+	public int getRowCount() {
+		return addresses.length;
+	}
+
+	/**
+	 * @return Returns the lowest address covered by this table, or 0 if the table is empty
+	 */
+	public long getLowAddress() {
+		return addresses.length == 0 ? 0 : addresses[0];
+	}
+
+	/**
+	 * @return Returns the address following the highest address covered by this table
+	 */
+	public long getHighAddress() {
+		return addresses.length == 0 ? 0 : addresses[addresses.length - 1];
+	}
+
+	/**
+	 * @param row the row index
+	 * @return Returns the first address of the row
+	 */
+	public long getAddress(int row) {
+		return addresses[row];
+	}
+
+	/**
+	 * @param row the row index
+	 * @return Returns the file index of the row, or -1 if the row ends a sequence
+	 */
+	public int getFile(int row) {
+		return (int)(fileLines[row] >> 32);
+	}
+
+	/**
+	 * @param row the row index
+	 * @return Returns the line number of the row
+	 */
+	public int getLine(int row) {
+		return (int)fileLines[row];
+	}
+
+	/**
+	 * @param address an address
+	 * @return Returns the index of the row covering the address, or -1 if no row covers it
+	 */
+	public int findRow(long address) {
+		int low = 0;
+		int high = addresses.length - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(addresses[mid], address) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+
+		if(found < 0 || getFile(found) == END_SEQUENCE)
+			return -1;
+		return found;
+	}
+
+	/**
+	 * @param address an address
+	 * @return Returns the source line covering the address, or null if no row covers it
+	 */
+	public DwarfSourceLine findLine(long address) {
+		int row = findRow(address);
+		if(row < 0)
+			return null;
+		return new DwarfSourceLine(addresses[row], getFileName(getFile(row)), getLine(row));
+	}
+
+	/**
+	 * @param file a file index as used by the rows of this table
+	 * @return Returns the path of the file including its directory, or null if the index is invalid
+	 */
+	public String getFileName(int file) {
+		if(file < 0 || file >= fileNames.length || fileNames[file] == null)
+			return null;
+
+		String name = fileNames[file];
+		if(name.startsWith("/"))
+			return name;
+
+		int dir = fileDirectories[file];
+		String directory = dir >= 0 && dir < directories.length ? directories[dir] : null;
+		if(directory == null || directory.isEmpty())
+			return name;
+		// Relative directories are relative to the compilation directory
+		String base = version >= 5 ? directories[0] : compilationDirectory;
+		if(!directory.startsWith("/") && dir != 0 && base != null)
+			directory = base + "/" + directory;
+		return directory + "/" + name;
+	}
+
+	/**
+	 * @return Returns the estimated heap size of this table
+	 */
+	public long estimateRetainedBytes() {
+		long size = ElfMemoryEstimate.objectSize(7, 12)
+				+ ElfMemoryEstimate.arraySize(addresses.length, 8) * 2
+				+ ElfMemoryEstimate.arraySize(fileDirectories.length, 4)
+				+ ElfMemoryEstimate.arraySize(directories.length, ElfMemoryEstimate.REFERENCE)
+				+ ElfMemoryEstimate.arraySize(fileNames.length, ElfMemoryEstimate.REFERENCE);
+		for(String s : directories)
+			size += ElfMemoryEstimate.stringSize(s);
+		for(String s : fileNames)
+			size += ElfMemoryEstimate.stringSize(s);
+		return size;
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the formatted contents of this table.
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table("Line table at offset 0x" + Long.toHexString(offset) + " contains " + addresses.length + " rows");
+
+		// Column names
+		t.add("Address");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Line");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("File");
+		t.setColAlign(Align.LEFT);
+
+		for(int i = 0; i < addresses.length; i++) {
+			t.newRow();
+			t.add("0x" + Long.toHexString(addresses[i]));
+			if(getFile(i) == END_SEQUENCE) {
+				t.add("-");
+				t.add("(end of sequence)");
+			}
+			else {
+				t.add(Integer.toString(getLine(i)));
+				String name = getFileName(getFile(i));
+				t.add(name == null ? "??" : name);
+			}
+		}
+
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
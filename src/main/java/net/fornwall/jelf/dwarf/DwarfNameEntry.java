@@ -0,0 +1,61 @@
+package net.fornwall.jelf.dwarf;
+
+/**
+ * A debugging information entry found through a name index, see {@link DwarfNameIndex}.
+ * Depending on the index, only the unit of the entry may be known.
+ */
+public final class DwarfNameEntry {
+	private final long unitOffset;
+	private final long dieOffset;
+	private final int tag;
+
+	public DwarfNameEntry(long unitOffset, long dieOffset, int tag) {
+		this.unitOffset = unitOffset;
+		this.dieOffset = dieOffset;
+		this.tag = tag;
+	}
+
+	/**
+	 * @return Returns the offset in .debug_info of the unit containing the entry, or -1 if the
+	 * 	entry is in a type unit outside .debug_info
+	 */
+	public long getUnitOffset() {
+		return unitOffset;
+	}
+
+	/**
+	 * @return Returns the offset in .debug_info of the entry, or -1 if the index only records its unit
+	 */
+	public long getDieOffset() {
+		return dieOffset;
+	}
+
+	/**
+	 * @return Returns the tag of the entry, see {@link DwarfTag}, or 0 if the index does not record it
+	 */
+	public int getTag() {
+		return tag;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(!(o instanceof DwarfNameEntry))
+			return false;
+		DwarfNameEntry e = (DwarfNameEntry)o;
+		return unitOffset == e.unitOffset && dieOffset == e.dieOffset && tag == e.tag;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int)(dieOffset ^ (dieOffset >>> 32)) * 31 + (int)unitOffset;
+	}
+
+	@Override
+	public String toString() {
+		return "unit 0x" + Long.toHexString(unitOffset)
+				+ (dieOffset < 0 ? "" : " entry 0x" + Long.toHexString(dieOffset))
+				+ (tag == 0 ? "" : " tag 0x" + Integer.toHexString(tag));
+	}
+}
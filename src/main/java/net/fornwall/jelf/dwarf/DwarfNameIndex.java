@@ -0,0 +1,29 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.List;
+
+/**
+ * Index from names to the debugging information entries defining them. Files may carry one of
+ * two hash based accelerator sections, {@link DwarfDebugNames} for .debug_names and
+ * {@link DwarfGdbIndex} for .gdb_index, which answer lookups without decoding .debug_info.
+ * Without either section {@link DwarfDieNameIndex} builds an index from the entries themselves.
+ * See {@link Dwarf#getNameIndex()}.
+ */
+public interface DwarfNameIndex {
+
+	/**
+	 * @param name the name to look up, compared byte for byte in UTF-8
+	 * @return Returns the entries with the name, which is empty if there are none
+	 */
+	List<DwarfNameEntry> find(String name);
+
+	/**
+	 * @return Returns the name of the section the index is read from, or null if it was built
+	 */
+	String getSectionName();
+
+	/**
+	 * @return Returns the estimated heap size of the index, excluding the section contents
+	 */
+	long estimateRetainedBytes();
+}
@@ -0,0 +1,137 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * Reader of the .debug_cu_index and .debug_tu_index sections of a DWARF package (.dwp) file.
+ * A package concatenates the sections of many .dwo files; the index is a hash table from the
+ * unit id to a row giving the offset and size of the contribution of the unit to each section.
+ * Both the pre-standard version 2 and the DWARF 5 layout are supported, and section ids are
+ * reported using the DWARF 5 numbering.
+ */
+public class DwarfPackageIndex {
+	/** Section ids (DW_SECT_*) as numbered by DWARF 5 */
+	public static final int SECT_INFO = 1;
+	public static final int SECT_TYPES = 2;
+	public static final int SECT_ABBREV = 3;
+	public static final int SECT_LINE = 4;
+	public static final int SECT_LOCLISTS = 5;
+	public static final int SECT_STR_OFFSETS = 6;
+	public static final int SECT_MACRO = 7;
+	public static final int SECT_RNGLISTS = 8;
+	/** .debug_macinfo.dwo, which only exists in version 2 packages */
+	public static final int SECT_MACINFO = 9;
+
+	private final ByteBuffer data;
+	private final int version;
+	private final int unitCount;
+	private final int slotCount;
+	/** The column of each section id in the offset and size tables, or -1 */
+	private final int[] columns = new int[SECT_MACINFO + 1];
+	private final int columnCount;
+	private final int hashTable;
+	private final int indexTable;
+	private final int offsetTable;
+	private final int sizeTable;
+
+	/**
+	 * @param data the contents of .debug_cu_index or .debug_tu_index
+	 */
+	public DwarfPackageIndex(ByteBuffer data) {
+		this.data = data;
+		DwarfReader r = new DwarfReader(data);
+		// Version 2 has a 4 byte version, DWARF 5 a 2 byte version followed by padding
+		version = r.u32() == 2 ? 2 : new DwarfReader(data).u16();
+		if(version != 2 && version != 5)
+			throw new ElfException("Unsupported DWARF package index version " + version);
+		columnCount = (int)r.u32();
+		unitCount = (int)r.u32();
+		slotCount = (int)r.u32();
+
+		hashTable = r.position();
+		indexTable = hashTable + 8 * slotCount;
+		int header = indexTable + 4 * slotCount;
+		offsetTable = header + 4 * columnCount;
+		sizeTable = offsetTable + 4 * columnCount * unitCount;
+		if(unitCount > 0 && sizeTable + 4L * columnCount * unitCount > data.limit())
+			throw new ElfException("DWARF package index extends past the end of the section");
+
+		for(int i = 0; i < columns.length; i++)
+			columns[i] = -1;
+		for(int i = 0; i < columnCount; i++) {
+			int id = (int)(data.getInt(header + 4 * i) & 0xffffffffL);
+			if(version == 2) {
+				// Version 2 numbered .debug_loc.dwo 5, .debug_macinfo.dwo 7 and .debug_macro.dwo 8
+				if(id == 7)
+					id = SECT_MACINFO;
+				else if(id == 8)
+					id = SECT_MACRO;
+			}
+			if(id > 0 && id < columns.length)
+				columns[id] = i;
+		}
+	}
+
+	/**
+	 * @return Returns the version of the index, 2 or 5
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Returns the number of units in the package
+	 */
+	public int getUnitCount() {
+		return unitCount;
+	}
+
+	/**
+	 * Finds the row of a unit by its id, the DWO id of a compile unit or the signature of a type
+	 * unit. The hash table is probed with the low bits of the id and a step taken from its high bits.
+	 *
+	 * @param id the id of the unit
+	 * @return Returns the row of the unit in the offset and size tables, or -1 if the package does not contain it
+	 */
+	public int findRow(long id) {
+		if(slotCount == 0)
+			return -1;
+		int mask = slotCount - 1;
+		int slot = (int)(id & mask);
+		int step = (int)((id >>> 32) & mask) | 1;
+		for(int probes = 0; probes < slotCount; probes++) {
+			long signature = data.getLong(hashTable + 8 * slot);
+			int row = data.getInt(indexTable + 4 * slot);
+			if(row == 0)
+				return -1;
+			if(signature == id)
+				return row - 1;
+			slot = (slot + step) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param row a row returned by {@link #findRow(long)}
+	 * @param section a section id, see {@link #SECT_INFO}
+	 * @return Returns the offset of the contribution of the unit to the section, or 0 if the
+	 * 	package does not have the section
+	 */
+	public long getOffset(int row, int section) {
+		int column = columns[section];
+		return column < 0 ? 0 : data.getInt(offsetTable + 4 * (row * columnCount + column)) & 0xffffffffL;
+	}
+
+	/**
+	 * @param row a row returned by {@link #findRow(long)}
+	 * @param section a section id, see {@link #SECT_INFO}
+	 * @return Returns the size of the contribution of the unit to the section, or 0 if the
+	 * 	package does not have the section
+	 */
+	public long getSize(int row, int section) {
+		int column = columns[section];
+		return column < 0 ? 0 : data.getInt(sizeTable + 4 * (row * columnCount + column)) & 0xffffffffL;
+	}
+}
@@ -0,0 +1,133 @@
+package net.fornwall.jelf.dwarf;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * Pointer encodings (DW_EH_PE_*) of .eh_frame and .eh_frame_hdr. The low four bits give the
+ * format of the value, the next three bits what it is relative to, and the top bit marks an
+ * indirect pointer.
+ */
+public final class DwarfPointerEncoding {
+	public static final int ABSPTR = 0x00;
+	public static final int ULEB128 = 0x01;
+	public static final int UDATA2 = 0x02;
+	public static final int UDATA4 = 0x03;
+	public static final int UDATA8 = 0x04;
+	public static final int SLEB128 = 0x09;
+	public static final int SDATA2 = 0x0a;
+	public static final int SDATA4 = 0x0b;
+	public static final int SDATA8 = 0x0c;
+
+	/** Relative to the address of the encoded value */
+	public static final int PCREL = 0x10;
+	public static final int TEXTREL = 0x20;
+	/** Relative to the start of .eh_frame_hdr */
+	public static final int DATAREL = 0x30;
+	public static final int FUNCREL = 0x40;
+	public static final int ALIGNED = 0x50;
+
+	/** The encoded value is the address of the pointer */
+	public static final int INDIRECT = 0x80;
+	/** No value is present */
+	public static final int OMIT = 0xff;
+
+	private DwarfPointerEncoding() {
+	}
+
+	/**
+	 * @param encoding a pointer encoding
+	 * @param addressSize the size of an address of the target
+	 * @return Returns the size in bytes of values with the encoding, or -1 for variable length encodings
+	 */
+	public static int getSize(int encoding, int addressSize) {
+		switch(encoding & 0x0f) {
+		case ABSPTR:
+			return addressSize;
+		case UDATA2:
+		case SDATA2:
+			return 2;
+		case UDATA4:
+		case SDATA4:
+			return 4;
+		case UDATA8:
+		case SDATA8:
+			return 8;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads an encoded pointer. Indirect pointers are returned as the address holding the pointer.
+	 *
+	 * @param r the reader positioned at the value
+	 * @param encoding the pointer encoding
+	 * @param sectionAddress the address of the start of the section the reader reads from, for pc relative values
+	 * @param dataAddress the address data relative values are relative to, the start of .eh_frame_hdr
+	 * @param addressSize the size of an address of the target
+	 * @return Returns the decoded pointer, or 0 for {@link #OMIT}
+	 */
+	public static long read(DwarfReader r, int encoding, long sectionAddress, long dataAddress, int addressSize) {
+		if(encoding == OMIT)
+			return 0;
+		if((encoding & 0x70) == ALIGNED) {
+			int misalignment = r.position() % addressSize;
+			if(misalignment != 0)
+				r.skip(addressSize - misalignment);
+			return r.address(addressSize);
+		}
+
+		long base;
+		switch(encoding & 0x70) {
+		case 0:
+			base = 0;
+			break;
+		case PCREL:
+			base = sectionAddress + r.position();
+			break;
+		case DATAREL:
+			base = dataAddress;
+			break;
+		case TEXTREL:
+		case FUNCREL:
+			// Only used by LSDA pointers of some targets, the base is not known here
+			base = 0;
+			break;
+		default:
+			throw new ElfException("Unsupported pointer encoding 0x" + Integer.toHexString(encoding));
+		}
+
+		long value;
+		switch(encoding & 0x0f) {
+		case ABSPTR:
+			value = r.address(addressSize);
+			break;
+		case ULEB128:
+			value = r.uleb128();
+			break;
+		case UDATA2:
+			value = r.u16();
+			break;
+		case UDATA4:
+			value = r.u32();
+			break;
+		case UDATA8:
+		case SDATA8:
+			value = r.u64();
+			break;
+		case SLEB128:
+			value = r.sleb128();
+			break;
+		case SDATA2:
+			value = (short)r.u16();
+			break;
+		case SDATA4:
+			value = (int)r.u32();
+			break;
+		default:
+			throw new ElfException("Unsupported pointer encoding 0x" + Integer.toHexString(encoding));
+		}
+		long result = base + value;
+		return addressSize == 4 ? result & 0xffffffffL : result;
+	}
+}
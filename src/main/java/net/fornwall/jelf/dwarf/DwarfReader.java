@@ -0,0 +1,257 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * Cursor over the contents of a DWARF section. All reads use absolute positions in the
+ * underlying buffer so several readers can share one buffer, and the byte order of the buffer
+ * is the byte order of the file.
+ */
+public final class DwarfReader {
+	private final ByteBuffer buffer;
+	private int pos;
+
+	public DwarfReader(ByteBuffer buffer) {
+		this(buffer, 0);
+	}
+
+	public DwarfReader(ByteBuffer buffer, int pos) {
+		this.buffer = buffer;
+		this.pos = pos;
+	}
+
+	/**
+	 * @return Returns the buffer this reader reads from
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return Returns the current position in the section
+	 */
+	public int position() {
+		return pos;
+	}
+
+	/**
+	 * @param pos the new position in the section
+	 */
+	public void seek(int pos) {
+		if(pos < 0 || pos > buffer.limit())
+			throw new ElfException("Seeking outside DWARF section: " + pos);
+		this.pos = pos;
+	}
+
+	/**
+	 * @param count the number of bytes to skip
+	 */
+	public void skip(long count) {
+		seek((int)Math.min(pos + count, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * @return Returns the length of the section
+	 */
+	public int limit() {
+		return buffer.limit();
+	}
+
+	/**
+	 * @return Returns true if there are bytes left to read in the section
+	 */
+	public boolean hasRemaining() {
+		return pos < buffer.limit();
+	}
+
+	private void check(int size) {
+		if(pos + size > buffer.limit())
+			throw new ElfException("Reading outside DWARF section at offset 0x" + Integer.toHexString(pos));
+	}
+
+	public int u8() {
+		check(1);
+		return buffer.get(pos++) & 0xff;
+	}
+
+	public byte s8() {
+		check(1);
+		return buffer.get(pos++);
+	}
+
+	public int u16() {
+		check(2);
+		int val = buffer.getShort(pos) & 0xffff;
+		pos += 2;
+		return val;
+	}
+
+	public long u32() {
+		check(4);
+		long val = buffer.getInt(pos) & 0xffffffffL;
+		pos += 4;
+		return val;
+	}
+
+	public long u64() {
+		check(8);
+		long val = buffer.getLong(pos);
+		pos += 8;
+		return val;
+	}
+
+	/**
+	 * @param size the size in bytes of the value, between 1 and 8
+	 * @return Returns an unsigned value of the provided size
+	 */
+	public long unsigned(int size) {
+		switch(size) {
+		case 1: return u8();
+		case 2: return u16();
+		case 4: return u32();
+		case 8: return u64();
+		case 3: return u16() | (long)u8() << 16;
+		default: throw new ElfException("Unsupported DWARF value size: " + size);
+		}
+	}
+
+	/**
+	 * @param size the size in bytes of an address, 4 or 8
+	 * @return Returns an address of the provided size
+	 */
+	public long address(int size) {
+		return unsigned(size);
+	}
+
+	/**
+	 * @param dwarf64 true if the unit uses the 64-bit DWARF format
+	 * @return Returns a section offset, which is 8 bytes in the 64-bit DWARF format and 4 bytes otherwise
+	 */
+	public long offset(boolean dwarf64) {
+		return dwarf64 ? u64() : u32();
+	}
+
+	/**
+	 * Reads the initial length field of a unit. An initial 0xffffffff escape selects the 64-bit
+	 * DWARF format, use {@link #isDwarf64(long)} and {@link #lengthOf(long)} to decode the result.
+	 *
+	 * @return Returns the unit length, with {@link #DWARF64_FLAG} set for 64-bit units
+	 */
+	public long unitLength() {
+		long length = u32();
+		if(length == 0xffffffffL)
+			return u64() | DWARF64_FLAG;
+		if(length >= 0xfffffff0L)
+			throw new ElfException("Reserved DWARF unit length 0x" + Long.toHexString(length));
+		return length;
+	}
+
+	/** Flag set by {@link #unitLength()} on units in the 64-bit DWARF format */
+	public static final long DWARF64_FLAG = Long.MIN_VALUE;
+
+	/**
+	 * @param unitLength a value returned from {@link #unitLength()}
+	 * @return Returns true if the unit uses the 64-bit DWARF format
+	 */
+	public static boolean isDwarf64(long unitLength) {
+		return (unitLength & DWARF64_FLAG) != 0;
+	}
+
+	/**
+	 * @param unitLength a value returned from {@link #unitLength()}
+	 * @return Returns the length in bytes of the unit following the initial length field
+	 */
+	public static long lengthOf(long unitLength) {
+		return unitLength & ~DWARF64_FLAG;
+	}
+
+	public long uleb128() {
+		long result = 0;
+		int shift = 0;
+		while(true) {
+			int b = u8();
+			if(shift < 64)
+				result |= (long)(b & 0x7f) << shift;
+			shift += 7;
+			if((b & 0x80) == 0)
+				return result;
+		}
+	}
+
+	public long sleb128() {
+		long result = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = u8();
+			if(shift < 64)
+				result |= (long)(b & 0x7f) << shift;
+			shift += 7;
+		} while((b & 0x80) != 0);
+
+		if(shift < 64 && (b & 0x40) != 0)
+			result |= -1L << shift;
+		return result;
+	}
+
+	/**
+	 * @return Returns a null terminated UTF-8 string
+	 */
+	public String cstring() {
+		int end = pos;
+		int limit = buffer.limit();
+		while(end < limit && buffer.get(end) != 0)
+			end++;
+		if(end == limit)
+			throw new ElfException("Unterminated string in DWARF section at offset 0x" + Integer.toHexString(pos));
+
+		String result = string(buffer, pos, end - pos);
+		pos = end + 1;
+		return result;
+	}
+
+	/**
+	 * @param buffer the buffer containing the string
+	 * @param offset the offset of the string in the buffer
+	 * @return Returns the null terminated UTF-8 string at the provided offset
+	 */
+	public static String cstring(ByteBuffer buffer, long offset) {
+		if(offset < 0 || offset >= buffer.limit())
+			throw new ElfException("String offset 0x" + Long.toHexString(offset) + " outside DWARF string section");
+		DwarfReader r = new DwarfReader(buffer, (int)offset);
+		return r.cstring();
+	}
+
+	/**
+	 * Compares a null terminated string in a section with the provided bytes without decoding it
+	 *
+	 * @param buffer the buffer containing the string
+	 * @param offset the offset of the string in the buffer
+	 * @param bytes the UTF-8 bytes to compare with, without a terminator
+	 * @return Returns true if the string consists of exactly the provided bytes
+	 */
+	public static boolean matches(ByteBuffer buffer, long offset, byte[] bytes) {
+		if(offset < 0 || offset + bytes.length >= buffer.limit())
+			return false;
+		int pos = (int)offset;
+		for(int i = 0; i < bytes.length; i++) {
+			if(buffer.get(pos + i) != bytes[i])
+				return false;
+		}
+		return buffer.get(pos + bytes.length) == 0;
+	}
+
+	private static String string(ByteBuffer buffer, int offset, int length) {
+		if(buffer.hasArray())
+			return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+
+		byte[] bytes = new byte[length];
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,107 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.Arrays;
+
+import net.fornwall.jelf.ElfHeader;
+
+/**
+ * A rule to recover the value a register had in the caller, one column of a {@link DwarfFrameRow}.
+ */
+public final class DwarfRegisterRule {
+	/** The register has no recoverable value */
+	public static final int UNDEFINED = 0;
+	/** The register is not modified by the callee */
+	public static final int SAME_VALUE = 1;
+	/** The value is saved at CFA + offset */
+	public static final int OFFSET = 2;
+	/** The value is CFA + offset */
+	public static final int VAL_OFFSET = 3;
+	/** The value is held in another register */
+	public static final int REGISTER = 4;
+	/** The value is saved at the address computed by a DWARF expression */
+	public static final int EXPRESSION = 5;
+	/** The value is computed by a DWARF expression */
+	public static final int VAL_EXPRESSION = 6;
+
+	static final DwarfRegisterRule UNDEFINED_RULE = new DwarfRegisterRule(UNDEFINED, 0, null);
+	static final DwarfRegisterRule SAME_VALUE_RULE = new DwarfRegisterRule(SAME_VALUE, 0, null);
+
+	private final int kind;
+	private final long value;
+	private final byte[] expression;
+
+	DwarfRegisterRule(int kind, long value, byte[] expression) {
+		this.kind = kind;
+		this.value = value;
+		this.expression = expression;
+	}
+
+	/**
+	 * @return Returns the kind of rule, for example {@link #OFFSET}
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return Returns the offset from the CFA of {@link #OFFSET} and {@link #VAL_OFFSET} rules
+	 */
+	public long getOffset() {
+		return value;
+	}
+
+	/**
+	 * @return Returns the register holding the value of {@link #REGISTER} rules
+	 */
+	public int getRegister() {
+		return (int)value;
+	}
+
+	/**
+	 * @return Returns the DWARF expression of {@link #EXPRESSION} and {@link #VAL_EXPRESSION} rules, or null
+	 */
+	public byte[] getExpression() {
+		return expression == null ? null : expression.clone();
+	}
+
+	/**
+	 * @param machine the target architecture, for register names
+	 * @return Returns the rule in the notation of readelf --debug-dump=frames-interp
+	 */
+	public String describe(ElfHeader.Machine machine) {
+		switch(kind) {
+		case UNDEFINED:
+			return "u";
+		case SAME_VALUE:
+			return "s";
+		case OFFSET:
+			return "c" + (value < 0 ? "" : "+") + value;
+		case VAL_OFFSET:
+			return "v" + (value < 0 ? "" : "+") + value;
+		case REGISTER:
+			return DwarfRegisters.getName(machine, (int)value);
+		case EXPRESSION:
+			return "exp";
+		default:
+			return "vexp";
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof DwarfRegisterRule))
+			return false;
+		DwarfRegisterRule other = (DwarfRegisterRule)o;
+		return kind == other.kind && value == other.value && Arrays.equals(expression, other.expression);
+	}
+
+	@Override
+	public int hashCode() {
+		return (kind * 31 + Long.hashCode(value)) * 31 + Arrays.hashCode(expression);
+	}
+
+	@Override
+	public String toString() {
+		return describe(ElfHeader.Machine.NONE);
+	}
+}
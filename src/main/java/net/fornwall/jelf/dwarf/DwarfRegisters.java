@@ -0,0 +1,106 @@
+package net.fornwall.jelf.dwarf;
+
+import net.fornwall.jelf.ElfHeader;
+
+/**
+ * DWARF register numbers of the architectures supported by the call frame interpreter, see
+ * {@link DwarfFrameTable}. The numbering of each architecture is defined by its psABI.
+ */
+public final class DwarfRegisters {
+	public static final int X64_RSP = 7;
+	/** The return address column of x86-64, holding rip of the caller */
+	public static final int X64_RA = 16;
+
+	public static final int AARCH64_X29 = 29;
+	public static final int AARCH64_X30 = 30;
+	public static final int AARCH64_SP = 31;
+
+	public static final int I386_ESP = 4;
+	/** The return address column of i386, holding eip of the caller */
+	public static final int I386_RA = 8;
+
+	public static final int ARM_SP = 13;
+	public static final int ARM_LR = 14;
+
+	public static final int RISCV_RA = 1;
+	public static final int RISCV_SP = 2;
+	public static final int RISCV_S0 = 8;
+
+	private static final String[] X64_NAMES = {
+		"rax", "rdx", "rcx", "rbx", "rsi", "rdi", "rbp", "rsp",
+		"r8", "r9", "r10", "r11", "r12", "r13", "r14", "r15", "rip"
+	};
+
+	private static final String[] RISCV_NAMES = {
+		"zero", "ra", "sp", "gp", "tp", "t0", "t1", "t2",
+		"s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5",
+		"a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7",
+		"s8", "s9", "s10", "s11", "t3", "t4", "t5", "t6"
+	};
+
+	private DwarfRegisters() {
+	}
+
+	/**
+	 * @param machine the target architecture
+	 * @param register a DWARF register number
+	 * @return Returns the name of the register, or "r" followed by the number if it is not known
+	 */
+	public static String getName(ElfHeader.Machine machine, int register) {
+		switch(machine) {
+		case X64:
+			if(register >= 0 && register < X64_NAMES.length)
+				return X64_NAMES[register];
+			if(register >= 17 && register <= 32)
+				return "xmm" + (register - 17);
+			if(register >= 33 && register <= 40)
+				return "st" + (register - 33);
+			if(register == 49)
+				return "rflags";
+			break;
+		case AARCH64:
+			if(register >= 0 && register <= 30)
+				return "x" + register;
+			if(register == AARCH64_SP)
+				return "sp";
+			if(register == 32)
+				return "pc";
+			if(register == 34)
+				return "ra_sign_state";
+			if(register >= 64 && register <= 95)
+				return "v" + (register - 64);
+			break;
+		case RISCV:
+			if(register >= 0 && register < RISCV_NAMES.length)
+				return RISCV_NAMES[register];
+			if(register >= 32 && register <= 63)
+				return "f" + (register - 32);
+			break;
+		default:
+			break;
+		}
+		return "r" + register;
+	}
+
+	/**
+	 * @param machine the target architecture
+	 * @return Returns the DWARF number of the stack pointer, which is the value of the CFA in
+	 * 	the caller, or -1 if the architecture is not supported
+	 */
+	public static int getStackPointer(ElfHeader.Machine machine) {
+		switch(machine) {
+		case X64:
+			return X64_RSP;
+		case I386:
+			return I386_ESP;
+		case ARM:
+			return ARM_SP;
+		case AARCH64:
+			return AARCH64_SP;
+		case RISCV:
+			return RISCV_SP;
+		default:
+			return -1;
+		}
+	}
+}
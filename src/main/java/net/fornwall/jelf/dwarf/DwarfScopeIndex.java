@@ -0,0 +1,163 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.Arrays;
+
+import net.fornwall.jelf.ElfMemoryEstimate;
+
+/**
+ * Interval tree over the address ranges of the functions and inlined function instances of one
+ * unit. The intervals are sorted by start address and form an implicit balanced tree where each
+ * node also records the greatest end address below it, so finding every scope containing an
+ * address takes O(log n) plus the number of scopes found.
+ */
+public final class DwarfScopeIndex {
+	private final DwarfDieTree tree;
+	private final long[] starts;
+	private final long[] ends;
+	/** The greatest end address in the subtree rooted at each node */
+	private final long[] maxEnds;
+	/** The tree index of the entry owning each interval */
+	private final int[] entries;
+
+	private DwarfScopeIndex(DwarfDieTree tree, long[] starts, long[] ends, int[] entries) {
+		this.tree = tree;
+		this.starts = starts;
+		this.ends = ends;
+		this.entries = entries;
+		this.maxEnds = new long[starts.length];
+		computeMaxEnds(0, starts.length);
+	}
+
+	/**
+	 * @param unit the unit to index
+	 * @return Returns the index of the DW_TAG_subprogram and DW_TAG_inlined_subroutine entries of the unit
+	 */
+	static DwarfScopeIndex build(DwarfUnit unit) {
+		DwarfDieTree tree = unit.getTree();
+		long[] starts = new long[64];
+		long[] ends = new long[64];
+		int[] entries = new int[64];
+		int size = 0;
+
+		for(int i = 0; i < tree.size(); i++) {
+			int tag = tree.getTag(i);
+			if(tag != DwarfTag.SUBPROGRAM && tag != DwarfTag.INLINED_SUBROUTINE)
+				continue;
+			long[] ranges = tree.getDie(i).getRanges();
+			for(int j = 0; j < ranges.length; j += 2) {
+				if(ranges[j] == ranges[j + 1])
+					continue;
+				if(size == starts.length) {
+					starts = Arrays.copyOf(starts, size * 2);
+					ends = Arrays.copyOf(ends, size * 2);
+					entries = Arrays.copyOf(entries, size * 2);
+				}
+				starts[size] = ranges[j];
+				ends[size] = ranges[j + 1];
+				entries[size] = i;
+				size++;
+			}
+		}
+
+		int[] order = DwarfSort.orderUnsigned(starts, size);
+
+		long[] sortedStarts = new long[size];
+		long[] sortedEnds = new long[size];
+		int[] sortedEntries = new int[size];
+		for(int i = 0; i < size; i++) {
+			sortedStarts[i] = starts[order[i]];
+			sortedEnds[i] = ends[order[i]];
+			sortedEntries[i] = entries[order[i]];
+		}
+		return new DwarfScopeIndex(tree, sortedStarts, sortedEnds, sortedEntries);
+	}
+
+	private long computeMaxEnds(int low, int high) {
+		if(low >= high)
+			return 0;
+		int mid = (low + high) >>> 1;
+		long max = ends[mid];
+		long left = computeMaxEnds(low, mid);
+		long right = computeMaxEnds(mid + 1, high);
+		if(Long.compareUnsigned(left, max) > 0)
+			max = left;
+		if(Long.compareUnsigned(right, max) > 0)
+			max = right;
+		maxEnds[mid] = max;
+		return max;
+	}
+
+	/**
+	 * Finds the scopes containing an address. The entries are ordered from the innermost inlined
+	 * instance to the outermost function; since descendants follow their ancestors in the tree,
+	 * this is the descending order of their indices.
+	 *
+	 * @param address an address
+	 * @return Returns the tree indices of the entries containing the address
+	 */
+	public int[] findScopes(long address) {
+		Hits hits = new Hits();
+		collect(0, starts.length, address, hits);
+		int[] found = Arrays.copyOf(hits.entries, hits.count);
+		Arrays.sort(found);
+
+		// Reverse into innermost first order, dropping entries found through several ranges
+		int[] result = new int[found.length];
+		int size = 0;
+		for(int i = found.length - 1; i >= 0; i--) {
+			if(size == 0 || result[size - 1] != found[i])
+				result[size++] = found[i];
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/** The entries found by a lookup, bounded by the nesting depth of inlining */
+	private static final class Hits {
+		int[] entries = new int[8];
+		int count;
+
+		void add(int entry) {
+			if(count == entries.length)
+				entries = Arrays.copyOf(entries, count * 2);
+			entries[count++] = entry;
+		}
+	}
+
+	private void collect(int low, int high, long address, Hits hits) {
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(maxEnds[mid], address) <= 0)
+				return;
+
+			collect(low, mid, address, hits);
+			if(Long.compareUnsigned(starts[mid], address) > 0)
+				return;
+			if(Long.compareUnsigned(address, ends[mid]) < 0)
+				hits.add(entries[mid]);
+			// Continue with the right subtree without recursing
+			low = mid + 1;
+		}
+	}
+
+	/**
+	 * @return Returns the tree of entries the scope indices refer to
+	 */
+	public DwarfDieTree getTree() {
+		return tree;
+	}
+
+	/**
+	 * @return Returns the number of intervals in the index
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+	/**
+	 * @return Returns the estimated heap size of this index
+	 */
+	public long estimateRetainedBytes() {
+		return ElfMemoryEstimate.objectSize(5, 0) + 3 * ElfMemoryEstimate.arraySize(starts.length, 8)
+				+ ElfMemoryEstimate.arraySize(entries.length, 4);
+	}
+}
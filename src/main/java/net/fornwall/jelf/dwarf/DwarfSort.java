@@ -0,0 +1,85 @@
+package net.fornwall.jelf.dwarf;
+
+/**
+ * Sorts the entries of the parallel arrays which the address indexes are built from. The keys
+ * are sorted together with their indices as primitives, without boxing each index or comparing
+ * through a comparator, which matters for the tables of large files.
+ */
+final class DwarfSort {
+	/** Runs of this length are sorted by insertion before being merged */
+	private static final int RUN = 32;
+
+	private DwarfSort() {
+	}
+
+	/**
+	 * @param keys the keys, compared as unsigned values
+	 * @param size the number of keys to sort
+	 * @return Returns the indices of the first size keys in ascending order of their keys, with
+	 * 	equal keys in the order of their indices
+	 */
+	static int[] orderUnsigned(long[] keys, int size) {
+		int[] order = new int[size];
+		// Offset so that the unsigned order of the keys is the signed order of the copies
+		long[] k = new long[size];
+		boolean sorted = true;
+		for(int i = 0; i < size; i++) {
+			order[i] = i;
+			k[i] = keys[i] + Long.MIN_VALUE;
+			if(i > 0 && k[i - 1] > k[i])
+				sorted = false;
+		}
+		if(sorted)
+			return order;
+
+		for(int lo = 0; lo < size; lo += RUN)
+			insertionSort(k, order, lo, size - lo > RUN ? lo + RUN : size);
+
+		long[] otherKeys = new long[size];
+		int[] otherOrder = new int[size];
+		for(int width = RUN; width < size; width <<= 1) {
+			for(int lo = 0; lo < size;) {
+				int mid = size - lo > width ? lo + width : size;
+				int hi = size - mid > width ? mid + width : size;
+				merge(k, order, otherKeys, otherOrder, lo, mid, hi);
+				lo = hi;
+			}
+			long[] keysSwap = k;
+			k = otherKeys;
+			otherKeys = keysSwap;
+			int[] orderSwap = order;
+			order = otherOrder;
+			otherOrder = orderSwap;
+		}
+		return order;
+	}
+
+	private static void insertionSort(long[] keys, int[] order, int from, int to) {
+		for(int i = from + 1; i < to; i++) {
+			long key = keys[i];
+			int index = order[i];
+			int j = i - 1;
+			for(; j >= from && keys[j] > key; j--) {
+				keys[j + 1] = keys[j];
+				order[j + 1] = order[j];
+			}
+			keys[j + 1] = key;
+			order[j + 1] = index;
+		}
+	}
+
+	/** Merges the sorted runs [lo, mid) and [mid, hi) of the source into the target */
+	private static void merge(long[] keys, int[] order, long[] toKeys, int[] toOrder, int lo, int mid, int hi) {
+		int i = lo;
+		int j = mid;
+		for(int n = lo; n < hi; n++) {
+			if(j >= hi || (i < mid && keys[i] <= keys[j])) {
+				toKeys[n] = keys[i];
+				toOrder[n] = order[i++];
+			} else {
+				toKeys[n] = keys[j];
+				toOrder[n] = order[j++];
+			}
+		}
+	}
+}
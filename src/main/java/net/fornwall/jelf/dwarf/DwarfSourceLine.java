@@ -0,0 +1,58 @@
+package net.fornwall.jelf.dwarf;
+
+/**
+ * A row of a DWARF line table: the source file and line which an address belongs to.
+ */
+public final class DwarfSourceLine {
+	private final long address;
+	private final String fileName;
+	private final int line;
+
+	public DwarfSourceLine(long address, String fileName, int line) {
+		this.address = address;
+		this.fileName = fileName;
+		this.line = line;
+	}
+
+	/**
+	 * @return Returns the first address of the line table row
+	 */
+	public long getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return Returns the path of the source file, or null if the file is not known
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return Returns the line number, starting at 1, or 0 if the address has no line
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(!(o instanceof DwarfSourceLine))
+			return false;
+		DwarfSourceLine l = (DwarfSourceLine)o;
+		return address == l.address && line == l.line
+				&& (fileName == null ? l.fileName == null : fileName.equals(l.fileName));
+	}
+
+	@Override
+	public int hashCode() {
+		return (int)(address ^ (address >>> 32)) * 31 + line;
+	}
+
+	@Override
+	public String toString() {
+		return (fileName == null ? "??" : fileName) + ":" + (line == 0 ? "?" : Integer.toString(line));
+	}
+}
@@ -0,0 +1,166 @@
+package net.fornwall.jelf.dwarf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.ElfLruCache;
+
+/**
+ * Finds the split units of skeleton units, for files compiled with -gsplit-dwarf. A DWARF
+ * package (.dwp) is searched first through its .debug_cu_index hash table. Otherwise the .dwo
+ * file named by the skeleton is opened, relative to the compilation directory or any of the
+ * search directories. Opened .dwo files are kept in a least recently used cache so that batch
+ * symbolization does not reopen the same file for every address.
+ */
+public class DwarfSplitLoader {
+	/** The default number of .dwo files kept open */
+	public static final int DEFAULT_CACHE_SIZE = 16;
+
+	private final ElfLruCache<String, Dwarf> cache;
+	private final List<File> searchDirectories = new CopyOnWriteArrayList<File>();
+	private final AtomicInteger openedFiles = new AtomicInteger();
+	/** Changed whenever a package or search directory is set, so that cached lookups are repeated */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private volatile Dwarf packageDwarf;
+	private volatile DwarfPackageIndex packageIndex;
+
+	public DwarfSplitLoader() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @param cacheSize the maximum number of .dwo files to keep open
+	 */
+	public DwarfSplitLoader(final int cacheSize) {
+		if(cacheSize < 1)
+			throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+		cache = new ElfLruCache<String, Dwarf>(cacheSize);
+	}
+
+	/**
+	 * @param file a DWARF package file to search before any .dwo files
+	 * @throws IOException if the file can not be read
+	 */
+	public void setPackage(File file) throws IOException {
+		setPackage(new ElfFile(file));
+	}
+
+	/**
+	 * @param file a DWARF package file to search before any .dwo files
+	 */
+	public void setPackage(ElfFile file) {
+		Dwarf dwarf = new Dwarf(file, ".dwo");
+		ByteBuffer index = dwarf.getSection(".debug_cu_index");
+		if(index == null)
+			throw new ElfException("DWARF package has no .debug_cu_index section");
+		packageIndex = new DwarfPackageIndex(index);
+		packageDwarf = dwarf;
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * @param directory a directory to search for .dwo files whose compilation directory does not exist
+	 */
+	public void addSearchDirectory(File directory) {
+		searchDirectories.add(directory);
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * @return Returns the number of .dwo files opened so far, including files opened again after
+	 * 	being evicted from the cache
+	 */
+	public int getOpenedFileCount() {
+		return openedFiles.get();
+	}
+
+	/**
+	 * @return Returns a number which changes whenever a package or search directory is set
+	 */
+	int getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Finds the split unit of a skeleton unit. This probes the file system and searches the
+	 * units of the .dwo file on every call, {@link DwarfUnit#getSplitUnit()} caches the result.
+	 *
+	 * @param skeleton a skeleton unit
+	 * @return Returns the split unit of the skeleton, or null if it is not found
+	 */
+	public DwarfUnit load(DwarfUnit skeleton) {
+		long id = skeleton.getDwoId();
+		DwarfPackageIndex index = packageIndex;
+		if(index != null) {
+			int row = index.findRow(id);
+			if(row >= 0)
+				return packageDwarf.getSplitUnit(index.getOffset(row, DwarfPackageIndex.SECT_INFO), skeleton, index, row);
+		}
+
+		String name = skeleton.getDwoName();
+		if(name == null)
+			return null;
+		for(File candidate : getCandidates(name, skeleton.getCompilationDirectory())) {
+			if(!candidate.isFile())
+				continue;
+			DwarfUnit unit = findUnit(open(candidate), id, skeleton);
+			if(unit != null)
+				return unit;
+		}
+		return null;
+	}
+
+	private List<File> getCandidates(String name, String compilationDirectory) {
+		List<File> result = new ArrayList<File>();
+		File file = new File(name);
+		if(file.isAbsolute())
+			result.add(file);
+		else if(compilationDirectory != null)
+			result.add(new File(compilationDirectory, name));
+		else
+			result.add(file);
+
+		for(File directory : searchDirectories) {
+			if(!file.isAbsolute())
+				result.add(new File(directory, name));
+			result.add(new File(directory, file.getName()));
+		}
+		return result;
+	}
+
+	private Dwarf open(final File file) {
+		return cache.get(file.getAbsolutePath(), key -> {
+			Dwarf dwarf;
+			try {
+				dwarf = new Dwarf(new ElfFile(file), ".dwo");
+			} catch (IOException e) {
+				throw new ElfException("Could not read " + file, e);
+			}
+			openedFiles.incrementAndGet();
+			return dwarf;
+		});
+	}
+
+	/** Finds the split compile unit with the id of the skeleton in a .dwo file */
+	private static DwarfUnit findUnit(Dwarf dwo, long id, DwarfUnit skeleton) {
+		ByteBuffer data = dwo.getSection(".debug_info");
+		if(data == null)
+			return null;
+		for(long offset : dwo.getUnitOffsets()) {
+			DwarfUnit unit = DwarfUnit.read(dwo, data, offset);
+			if(unit.getUnitType() == DwarfUnit.TYPE_TYPE || unit.getUnitType() == DwarfUnit.TYPE_SPLIT_TYPE)
+				continue;
+			if(unit.getDwoId() == id)
+				return dwo.getSplitUnit(offset, skeleton, null, -1);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,288 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+
+/**
+ * The memory layout of a structure or class, like the output of pahole: the offset and size of
+ * each member, the holes between members, the padding at the end and where cache lines begin.
+ * Positions are tracked in bits so that bit-fields are placed exactly. Layouts are built by
+ * {@link DwarfTypeReader}.
+ */
+public final class DwarfStructLayout {
+	/** The size of a cache line assumed when reporting cache line boundaries */
+	public static final int CACHE_LINE_SIZE = 64;
+
+	/** A data member or base class of a structure */
+	public static final class Member {
+		private final String name;
+		private final String typeName;
+		private final long bitOffset;
+		private final long size;
+		private final int bitSize;
+		private final long holeBits;
+
+		Member(String name, String typeName, long bitOffset, long size, int bitSize, long holeBits) {
+			this.name = name;
+			this.typeName = typeName;
+			this.bitOffset = bitOffset;
+			this.size = size;
+			this.bitSize = bitSize;
+			this.holeBits = holeBits;
+		}
+
+		/**
+		 * @return Returns the name of the member, "&lt;ancestor&gt;" for base classes or null for anonymous members
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Returns the name of the type of the member, as it would be written in C
+		 */
+		public String getTypeName() {
+			return typeName;
+		}
+
+		/**
+		 * @return Returns the offset in bytes of the member from the start of the structure,
+		 * 	rounded down for bit-fields
+		 */
+		public long getOffset() {
+			return bitOffset / 8;
+		}
+
+		/**
+		 * @return Returns the offset in bits of the member from the start of the structure
+		 */
+		public long getBitOffset() {
+			return bitOffset;
+		}
+
+		/**
+		 * @return Returns the size in bytes of the type of the member, or -1 if it is not known
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return Returns the number of bits of a bit-field, or 0 if the member is not a bit-field
+		 */
+		public int getBitSize() {
+			return bitSize;
+		}
+
+		/**
+		 * @return Returns true if the member is a bit-field
+		 */
+		public boolean isBitField() {
+			return bitSize > 0;
+		}
+
+		/**
+		 * @return Returns the number of bits occupied by the member
+		 */
+		public long getBitLength() {
+			return bitSize > 0 ? bitSize : Math.max(size, 0) * 8;
+		}
+
+		/**
+		 * @return Returns the number of unused bits between the previous member and this one
+		 */
+		public long getHoleBits() {
+			return holeBits;
+		}
+
+		/**
+		 * @return Returns true if the member would fit in a cache line but spans a cache line boundary
+		 */
+		public boolean straddlesCacheLine() {
+			long length = getBitLength();
+			return length > 0 && length <= 8 * CACHE_LINE_SIZE && bitOffset / (8 * CACHE_LINE_SIZE) != (bitOffset + length - 1) / (8 * CACHE_LINE_SIZE);
+		}
+
+		@Override
+		public String toString() {
+			return typeName + " " + (name == null ? "" : name) + " @" + getOffset();
+		}
+	}
+
+	private final String kind;
+	private final String name;
+	private final long dieOffset;
+	private final long size;
+	private final List<Member> members;
+	private final long holeBits;
+	private final long paddingBits;
+
+	DwarfStructLayout(String kind, String name, long dieOffset, long size, List<Member> members) {
+		this.kind = kind;
+		this.name = name;
+		this.dieOffset = dieOffset;
+		this.size = size;
+		this.members = Collections.unmodifiableList(members);
+
+		long holes = 0;
+		long end = 0;
+		for(Member m : members) {
+			holes += m.getHoleBits();
+			end = Math.max(end, m.getBitOffset() + m.getBitLength());
+		}
+		this.holeBits = holes;
+		this.paddingBits = Math.max(0, size * 8 - end);
+	}
+
+	/**
+	 * @return Returns "struct" or "class"
+	 */
+	public String getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return Returns the qualified name of the type, or the name of a typedef for anonymous structures
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Returns the offset of the entry defining the type
+	 */
+	public long getDieOffset() {
+		return dieOffset;
+	}
+
+	/**
+	 * @return Returns the size of the type in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return Returns the data members and base classes in order of their offsets
+	 */
+	public List<Member> getMembers() {
+		return members;
+	}
+
+	/**
+	 * @return Returns the number of bytes in holes between members, rounded down
+	 */
+	public long getHoleBytes() {
+		return holeBits / 8;
+	}
+
+	/**
+	 * @return Returns the number of unused bits between members
+	 */
+	public long getHoleBits() {
+		return holeBits;
+	}
+
+	/**
+	 * @return Returns the number of bytes after the last member, rounded down
+	 */
+	public long getPaddingBytes() {
+		return paddingBits / 8;
+	}
+
+	/**
+	 * @return Returns the number of bytes not used by any member, the holes and the padding
+	 */
+	public long getWastedBytes() {
+		return (holeBits + paddingBits) / 8;
+	}
+
+	/**
+	 * @return Returns the number of cache lines spanned by the type when aligned to a cache line
+	 */
+	public long getCacheLineCount() {
+		return (size + CACHE_LINE_SIZE - 1) / CACHE_LINE_SIZE;
+	}
+
+	/**
+	 * Describes a number of unused bits as bytes and bits, for example "3 bytes 2 bits"
+	 */
+	static String describeBits(long bits) {
+		if(bits == 0)
+			return "0 bytes";
+		StringBuilder sb = new StringBuilder();
+		if(bits >= 8)
+			sb.append(bits / 8).append(bits >= 16 ? " bytes" : " byte");
+		if(bits % 8 != 0) {
+			if(sb.length() > 0)
+				sb.append(' ');
+			sb.append(bits % 8).append(bits % 8 == 1 ? " bit" : " bits");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the formatted layout of this type.
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table(kind + " " + name + ": size " + size + ", cachelines " + getCacheLineCount() + ", members "
+				+ members.size() + ", holes " + describeBits(holeBits) + ", padding " + describeBits(paddingBits));
+
+		// Column names
+		t.add("Offset");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Size");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Bits");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Type");
+		t.setColAlign(Align.LEFT);
+
+		t.add("Name");
+		t.setColAlign(Align.LEFT);
+
+		long line = 0;
+		for(Member m : members) {
+			if(m.getHoleBits() > 0)
+				comment(t, "/* XXX " + describeBits(m.getHoleBits()) + " hole, try to pack */");
+			long memberLine = m.getOffset() / CACHE_LINE_SIZE;
+			if(memberLine > line) {
+				line = memberLine;
+				comment(t, "/* --- cacheline " + line + " boundary (" + line * CACHE_LINE_SIZE + " bytes) --- */");
+			}
+
+			t.newRow();
+			t.add(Long.toString(m.getOffset()));
+			t.add(m.getSize() < 0 ? "?" : Long.toString(m.getSize()));
+			t.add(m.isBitField() ? m.getBitOffset() % 8 + ":" + m.getBitSize() : "");
+			t.add(m.getTypeName());
+			t.add((m.getName() == null ? "" : m.getName()) + (m.straddlesCacheLine() ? " /* straddles cacheline */" : ""));
+		}
+		if(paddingBits > 0)
+			comment(t, "/* XXX " + describeBits(paddingBits) + " padding */");
+		return t;
+	}
+
+	/** Adds a row with a comment in the last column */
+	private static void comment(Table t, String text) {
+		t.newRow();
+		t.add("");
+		t.add("");
+		t.add("");
+		t.add("");
+		t.add(text);
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
@@ -0,0 +1,536 @@
+package net.fornwall.jelf.dwarf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+
+/**
+ * Reconstructs the layout of structures and classes from the debugging information entries, see
+ * {@link DwarfStructLayout}. Type names, type sizes and layouts are cached by the offset of their
+ * entry, so the many members sharing a type resolve it once. Types defined in type units are
+ * followed through DW_FORM_ref_sig8 references. All types of a file can be laid out at once with
+ * {@link #getLayouts()}, which decodes the units in parallel.
+ */
+public class DwarfTypeReader {
+	/** Bounds the chains of modifiers and typedefs followed, in case of malformed references */
+	private static final int MAX_DEPTH = 64;
+
+	private final Dwarf dwarf;
+	private final boolean bigEndian;
+	private final ConcurrentHashMap<Long, String> names = new ConcurrentHashMap<Long, String>();
+	private final ConcurrentHashMap<Long, Long> sizes = new ConcurrentHashMap<Long, Long>();
+	private final ConcurrentHashMap<Long, DwarfStructLayout> layouts = new ConcurrentHashMap<Long, DwarfStructLayout>();
+
+	private volatile List<DwarfStructLayout> allLayouts;
+
+	DwarfTypeReader(Dwarf dwarf) {
+		this.dwarf = dwarf;
+		this.bigEndian = dwarf.getFile().getHeader().getDataFormat() == ElfHeader.DataFormat.ELFDATA2MSB;
+	}
+
+	/**
+	 * Entries of .debug_types have offsets of their own section, which may equal those of
+	 * .debug_info, so they are cached under keys with the top bit set
+	 */
+	private static long key(DwarfDie die) {
+		DwarfUnit unit = die.getUnit();
+		boolean debugTypes = unit.getVersion() < 5 && unit.isTypeUnit();
+		return debugTypes ? die.getOffset() | Long.MIN_VALUE : die.getOffset();
+	}
+
+	/**
+	 * @param die an entry with a DW_AT_type attribute
+	 * @return Returns the type of the entry, or null for void or an unknown type signature
+	 */
+	private DwarfDie getType(DwarfDie die) {
+		return die.hasAttribute(DwarfAttribute.TYPE) ? dwarf.getReferencedDie(die, DwarfAttribute.TYPE) : null;
+	}
+
+	/** Replaces the declaration of a type by its definition in a type unit, if there is one */
+	private DwarfDie getDefinition(DwarfDie type) {
+		if(type != null && type.hasAttribute(DwarfAttribute.SIGNATURE)) {
+			DwarfDie definition = dwarf.getReferencedDie(type, DwarfAttribute.SIGNATURE);
+			if(definition != null)
+				return definition;
+		}
+		return type;
+	}
+
+	/**
+	 * @param type a type entry, or null for void
+	 * @return Returns the name of the type as it would be written in C, for example "const char *"
+	 */
+	public String getTypeName(DwarfDie type) {
+		if(type == null)
+			return "void";
+		String result = names.get(key(type));
+		if(result == null) {
+			result = buildTypeName(type, 0);
+			String previous = names.putIfAbsent(key(type), result);
+			if(previous != null)
+				result = previous;
+		}
+		return result;
+	}
+
+	private String buildTypeName(DwarfDie type, int depth) {
+		if(depth > MAX_DEPTH)
+			return "?";
+		type = getDefinition(type);
+		String name = type.getName();
+		switch(type.getTag()) {
+		case DwarfTag.STRUCTURE_TYPE:
+			return "struct " + (name == null ? "{...}" : name);
+		case DwarfTag.CLASS_TYPE:
+			return "class " + (name == null ? "{...}" : name);
+		case DwarfTag.UNION_TYPE:
+			return "union " + (name == null ? "{...}" : name);
+		case DwarfTag.ENUMERATION_TYPE:
+			return "enum " + (name == null ? "{...}" : name);
+		case DwarfTag.POINTER_TYPE:
+			return pointerTo(getType(type), "*", depth);
+		case DwarfTag.REFERENCE_TYPE:
+			return pointerTo(getType(type), "&", depth);
+		case DwarfTag.RVALUE_REFERENCE_TYPE:
+			return pointerTo(getType(type), "&&", depth);
+		case DwarfTag.CONST_TYPE:
+			return qualified(getType(type), "const", depth);
+		case DwarfTag.VOLATILE_TYPE:
+			return qualified(getType(type), "volatile", depth);
+		case DwarfTag.RESTRICT_TYPE:
+			return qualified(getType(type), "restrict", depth);
+		case DwarfTag.ATOMIC_TYPE:
+			return qualified(getType(type), "_Atomic", depth);
+		case DwarfTag.ARRAY_TYPE: {
+			DwarfDie element = getType(type);
+			StringBuilder sb = new StringBuilder(element == null ? "void" : buildTypeName(element, depth + 1));
+			for(long count : getDimensions(type))
+				sb.append('[').append(count < 0 ? "" : Long.toString(count)).append(']');
+			return sb.toString();
+		}
+		case DwarfTag.SUBROUTINE_TYPE:
+			return "function";
+		default:
+			return name == null ? "?" : name;
+		}
+	}
+
+	private String pointerTo(DwarfDie target, String operator, int depth) {
+		if(target == null)
+			return "void " + operator;
+		if(target.getTag() == DwarfTag.SUBROUTINE_TYPE)
+			return "function " + operator;
+		String name = buildTypeName(target, depth + 1);
+		return name + (name.endsWith("*") || name.endsWith("&") ? "" : " ") + operator;
+	}
+
+	private String qualified(DwarfDie target, String qualifier, int depth) {
+		if(target == null)
+			return qualifier + " void";
+		String name = buildTypeName(target, depth + 1);
+		// Qualifiers of pointers follow the pointer, "char * const"
+		if(name.endsWith("*") || name.endsWith("&"))
+			return name + " " + qualifier;
+		return qualifier + " " + name;
+	}
+
+	/** Returns the number of elements in each dimension of an array, -1 for unknown */
+	private List<Long> getDimensions(DwarfDie array) {
+		List<Long> result = new ArrayList<Long>();
+		for(DwarfDie child : array.getUnit().getChildren(array)) {
+			if(child.getTag() != DwarfTag.SUBRANGE_TYPE)
+				continue;
+			if(child.hasAttribute(DwarfAttribute.COUNT) && isConstant(child, DwarfAttribute.COUNT))
+				result.add(child.getUnsigned(DwarfAttribute.COUNT, 0));
+			else if(child.hasAttribute(DwarfAttribute.UPPER_BOUND) && isConstant(child, DwarfAttribute.UPPER_BOUND))
+				result.add(child.getSigned(DwarfAttribute.UPPER_BOUND, 0) - child.getSigned(DwarfAttribute.LOWER_BOUND, 0) + 1);
+			else
+				result.add(-1L);
+		}
+		return result;
+	}
+
+	/** Bounds of variable length arrays are references or expressions rather than constants */
+	private static boolean isConstant(DwarfDie die, int attribute) {
+		switch(die.getForm(attribute)) {
+		case DwarfForm.DATA1:
+		case DwarfForm.DATA2:
+		case DwarfForm.DATA4:
+		case DwarfForm.DATA8:
+		case DwarfForm.SDATA:
+		case DwarfForm.UDATA:
+		case DwarfForm.IMPLICIT_CONST:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param type a type entry, or null for void
+	 * @return Returns the size of the type in bytes, or -1 if it is not known
+	 */
+	public long getTypeSize(DwarfDie type) {
+		if(type == null)
+			return -1;
+		Long result = sizes.get(key(type));
+		if(result == null) {
+			result = buildTypeSize(type, 0);
+			Long previous = sizes.putIfAbsent(key(type), result);
+			if(previous != null)
+				result = previous;
+		}
+		return result;
+	}
+
+	private long buildTypeSize(DwarfDie type, int depth) {
+		if(type == null || depth > MAX_DEPTH)
+			return -1;
+		type = getDefinition(type);
+		if(type.hasAttribute(DwarfAttribute.BYTE_SIZE) && isConstant(type, DwarfAttribute.BYTE_SIZE))
+			return type.getUnsigned(DwarfAttribute.BYTE_SIZE, -1);
+
+		switch(type.getTag()) {
+		case DwarfTag.POINTER_TYPE:
+		case DwarfTag.REFERENCE_TYPE:
+		case DwarfTag.RVALUE_REFERENCE_TYPE:
+			return type.getUnit().getAddressSize();
+		case DwarfTag.ARRAY_TYPE: {
+			long size = buildTypeSize(getType(type), depth + 1);
+			for(long count : getDimensions(type)) {
+				if(size < 0 || count < 0)
+					return count == 0 ? 0 : -1;
+				size *= count;
+			}
+			return size;
+		}
+		case DwarfTag.TYPEDEF:
+		case DwarfTag.CONST_TYPE:
+		case DwarfTag.VOLATILE_TYPE:
+		case DwarfTag.RESTRICT_TYPE:
+		case DwarfTag.ATOMIC_TYPE:
+			return buildTypeSize(getType(type), depth + 1);
+		default:
+			return -1;
+		}
+	}
+
+	/** Follows typedefs and qualifiers to the structure, class or union being named */
+	private DwarfDie stripTypedefs(DwarfDie type) {
+		for(int i = 0; type != null && i < MAX_DEPTH; i++) {
+			switch(type.getTag()) {
+			case DwarfTag.TYPEDEF:
+			case DwarfTag.CONST_TYPE:
+			case DwarfTag.VOLATILE_TYPE:
+			case DwarfTag.ATOMIC_TYPE:
+				type = getType(type);
+				break;
+			default:
+				return getDefinition(type);
+			}
+		}
+		return type;
+	}
+
+	/**
+	 * Returns the layout of a structure or class. The type may also be given through typedefs or
+	 * by a declaration whose definition is in a type unit.
+	 *
+	 * @param type a type entry
+	 * @return Returns the layout of the type, or null if it is not a defined structure or class
+	 */
+	public DwarfStructLayout getLayout(DwarfDie type) {
+		DwarfDie struct = stripTypedefs(type);
+		if(struct == null || !isStruct(struct.getTag()) || struct.hasAttribute(DwarfAttribute.DECLARATION))
+			return null;
+		if(struct.getName() != null)
+			return getLayout(struct, qualify(struct, struct.getName()));
+		if(type.getTag() == DwarfTag.TYPEDEF && type.getName() != null)
+			return getLayout(struct, qualify(type, type.getName()));
+		return getLayout(struct, null);
+	}
+
+	private DwarfStructLayout getLayout(DwarfDie struct, String name) {
+		long key = key(struct);
+		DwarfStructLayout result = layouts.get(key);
+		if(result == null) {
+			result = buildLayout(struct, name == null ? "{...}" : name);
+			DwarfStructLayout previous = layouts.putIfAbsent(key, result);
+			if(previous != null)
+				result = previous;
+		}
+		return result;
+	}
+
+	private static boolean isStruct(int tag) {
+		return tag == DwarfTag.STRUCTURE_TYPE || tag == DwarfTag.CLASS_TYPE;
+	}
+
+	/**
+	 * Prefixes the name of a type with the namespaces and classes enclosing it. Type units define
+	 * types at the top level, with DW_AT_specification referring to a declaration in its scope.
+	 */
+	private String qualify(DwarfDie die, String name) {
+		for(int i = 0; i < MAX_DEPTH && die.hasAttribute(DwarfAttribute.SPECIFICATION); i++)
+			die = dwarf.getReferencedDie(die, DwarfAttribute.SPECIFICATION);
+		DwarfDieTree tree = die.getUnit().getTree();
+		int index = tree.indexOf(die.getOffset());
+		if(index < 0)
+			return name;
+		StringBuilder sb = new StringBuilder(name);
+		for(int parent = tree.getParent(index); parent >= 0; parent = tree.getParent(parent)) {
+			int tag = tree.getTag(parent);
+			if(tag != DwarfTag.NAMESPACE && !isStruct(tag) && tag != DwarfTag.UNION_TYPE)
+				break;
+			String scope = tree.getDie(parent).getName();
+			sb.insert(0, (scope == null ? "(anonymous namespace)" : scope) + "::");
+		}
+		return sb.toString();
+	}
+
+	private DwarfStructLayout buildLayout(DwarfDie struct, String name) {
+		long size = struct.getUnsigned(DwarfAttribute.BYTE_SIZE, 0);
+		List<DwarfStructLayout.Member> members = new ArrayList<DwarfStructLayout.Member>();
+		long end = 0;
+		for(DwarfDie child : struct.getUnit().getChildren(struct)) {
+			int tag = child.getTag();
+			if(tag != DwarfTag.MEMBER && tag != DwarfTag.INHERITANCE)
+				continue;
+			// Static data members are declarations without a location
+			if(child.hasAttribute(DwarfAttribute.DECLARATION) || child.hasAttribute(DwarfAttribute.EXTERNAL))
+				continue;
+
+			DwarfDie type = getType(child);
+			long typeSize = getTypeSize(type);
+			int bitSize = (int)child.getUnsigned(DwarfAttribute.BIT_SIZE, 0);
+			long bitOffset = getMemberBitOffset(child, typeSize, bitSize);
+
+			long length = bitSize > 0 ? bitSize : Math.max(typeSize, 0) * 8;
+			long hole = bitOffset > end ? bitOffset - end : 0;
+			end = Math.max(end, bitOffset + length);
+
+			String memberName = tag == DwarfTag.INHERITANCE ? "<ancestor>" : child.getName();
+			members.add(new DwarfStructLayout.Member(memberName, getTypeName(type), bitOffset, typeSize, bitSize, hole));
+		}
+		return new DwarfStructLayout(struct.getTag() == DwarfTag.CLASS_TYPE ? "class" : "struct", name, struct.getOffset(),
+				size, members);
+	}
+
+	/**
+	 * Computes the offset in bits of a member from DW_AT_data_bit_offset, or from
+	 * DW_AT_data_member_location and the DW_AT_bit_offset of DWARF 2 and 3, which counts from
+	 * the most significant bit of the storage unit of a bit-field
+	 */
+	private long getMemberBitOffset(DwarfDie member, long typeSize, int bitSize) {
+		if(member.hasAttribute(DwarfAttribute.DATA_BIT_OFFSET))
+			return member.getUnsigned(DwarfAttribute.DATA_BIT_OFFSET, 0);
+
+		long offset = getMemberLocation(member) * 8;
+		if(bitSize > 0 && member.hasAttribute(DwarfAttribute.BIT_OFFSET)) {
+			long storage = member.getUnsigned(DwarfAttribute.BYTE_SIZE, typeSize);
+			long fromMsb = member.getSigned(DwarfAttribute.BIT_OFFSET, 0);
+			return bigEndian ? offset + fromMsb : offset + storage * 8 - fromMsb - bitSize;
+		}
+		return offset;
+	}
+
+	/** Decodes DW_AT_data_member_location, a constant or a DW_OP_plus_uconst expression */
+	private static long getMemberLocation(DwarfDie member) {
+		byte[] expression = member.getBlock(DwarfAttribute.DATA_MEMBER_LOCATION);
+		if(expression == null)
+			return member.getUnsigned(DwarfAttribute.DATA_MEMBER_LOCATION, 0);
+
+		// DW_OP_plus_uconst with an unsigned LEB128 operand
+		if(expression.length < 2 || (expression[0] & 0xff) != 0x23)
+			return 0;
+		long result = 0;
+		for(int i = 1, shift = 0; i < expression.length && shift < 64; i++, shift += 7) {
+			result |= (long)(expression[i] & 0x7f) << shift;
+			if((expression[i] & 0x80) == 0)
+				break;
+		}
+		return result;
+	}
+
+	/**
+	 * Lays out all named structures and classes of the file. The units are decoded and their
+	 * types laid out in parallel. Types defined identically in several units, as types from
+	 * headers are, are reported once. Anonymous structures are named after a typedef naming them,
+	 * and otherwise only appear as members of their enclosing type. The result is cached.
+	 *
+	 * @return Returns the layouts in the order of the units defining them
+	 */
+	public List<DwarfStructLayout> getLayouts() {
+		List<DwarfStructLayout> result = allLayouts;
+		if(result == null) {
+			List<DwarfUnit> units = new ArrayList<DwarfUnit>(dwarf.decodeUnits());
+			// Type units in .debug_types are not part of .debug_info
+			for(DwarfUnit unit : dwarf.getTypeUnits().values()) {
+				if(unit.getVersion() < 5)
+					units.add(unit);
+			}
+
+			List<UnitTypes> perUnit = units.parallelStream().map(this::getUnitTypes).collect(Collectors.toList());
+
+			// Typedefs may name anonymous structures of other units, in particular of type units
+			Map<Long, String> typedefs = new HashMap<Long, String>();
+			for(UnitTypes types : perUnit)
+				typedefs.putAll(types.typedefs);
+
+			Map<String, DwarfStructLayout> unique = new LinkedHashMap<String, DwarfStructLayout>();
+			for(UnitTypes types : perUnit) {
+				for(DwarfDie struct : types.anonymous) {
+					String name = typedefs.get(key(struct));
+					if(name != null)
+						types.layouts.add(getLayout(struct, name));
+				}
+				for(DwarfStructLayout layout : types.layouts) {
+					String id = layout.getKind() + " " + layout.getName() + "/" + layout.getSize() + "/" + layout.getMembers().size();
+					if(!unique.containsKey(id))
+						unique.put(id, layout);
+				}
+			}
+			allLayouts = result = Collections.unmodifiableList(new ArrayList<DwarfStructLayout>(unique.values()));
+		}
+		return result;
+	}
+
+	/** The structures defined by a unit and the names its typedefs give anonymous structures */
+	private static final class UnitTypes {
+		final List<DwarfStructLayout> layouts = new ArrayList<DwarfStructLayout>();
+		final List<DwarfDie> anonymous = new ArrayList<DwarfDie>();
+		final Map<Long, String> typedefs = new HashMap<Long, String>();
+	}
+
+	private UnitTypes getUnitTypes(DwarfUnit unit) {
+		DwarfDieTree tree = unit.getTree();
+		UnitTypes result = new UnitTypes();
+		for(int i = 0; i < tree.size(); i++) {
+			int tag = tree.getTag(i);
+			if(tag == DwarfTag.TYPEDEF) {
+				DwarfDie typedef = tree.getDie(i);
+				DwarfDie target = getDefinition(getType(typedef));
+				if(target != null && isStruct(target.getTag()) && target.getName() == null && typedef.getName() != null)
+					result.typedefs.put(key(target), qualify(typedef, typedef.getName()));
+				continue;
+			}
+			if(!isStruct(tag))
+				continue;
+
+			DwarfDie struct = tree.getDie(i);
+			if(struct.hasAttribute(DwarfAttribute.DECLARATION) || !struct.hasAttribute(DwarfAttribute.BYTE_SIZE))
+				continue;
+			String name = struct.getName();
+			if(name == null)
+				result.anonymous.add(struct);
+			else
+				result.layouts.add(getLayout(struct, qualify(struct, name)));
+		}
+		return result;
+	}
+
+	/**
+	 * @param name the qualified name of a structure or class, or of a typedef naming an anonymous one
+	 * @return Returns the layouts of all types with the name, see {@link #getLayouts()}
+	 */
+	public List<DwarfStructLayout> findLayouts(String name) {
+		List<DwarfStructLayout> result = new ArrayList<DwarfStructLayout>();
+		for(DwarfStructLayout layout : getLayouts()) {
+			if(layout.getName().equals(name))
+				result.add(layout);
+		}
+		return result;
+	}
+
+	/**
+	 * Orders layouts by the number of bytes wasted in holes and padding, largest first, then by size
+	 *
+	 * @param layouts the layouts to consider, for example those of the hot types of a program
+	 * @param count the maximum number of layouts to return
+	 * @return Returns the most padded layouts
+	 */
+	public static List<DwarfStructLayout> getMostPadded(Collection<DwarfStructLayout> layouts, int count) {
+		List<DwarfStructLayout> sorted = new ArrayList<DwarfStructLayout>();
+		for(DwarfStructLayout layout : layouts) {
+			if(layout.getWastedBytes() > 0)
+				sorted.add(layout);
+		}
+		Collections.sort(sorted, Comparator.comparingLong(DwarfStructLayout::getWastedBytes).reversed()
+				.thenComparing(Comparator.comparingLong(DwarfStructLayout::getSize).reversed())
+				.thenComparing(DwarfStructLayout::getName));
+		return sorted.subList(0, Math.min(count, sorted.size()));
+	}
+
+	/**
+	 * See {@link #getMostPadded(Collection, int)}
+	 *
+	 * @param layouts the layouts to report on
+	 * @param count the maximum number of layouts to report
+	 * @return Returns a {@link Table} of the most padded layouts
+	 */
+	public static Table getPaddingReport(Collection<DwarfStructLayout> layouts, int count) {
+		Table t = new Table("Most padded types:");
+
+		// Column names
+		t.add("Wasted");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Holes");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Padding");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Size");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Lines");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Type");
+		t.setColAlign(Align.LEFT);
+
+		for(DwarfStructLayout layout : getMostPadded(layouts, count)) {
+			t.newRow();
+			t.add(Long.toString(layout.getWastedBytes()));
+			t.add(Long.toString(layout.getHoleBytes()));
+			t.add(Long.toString(layout.getPaddingBytes()));
+			t.add(Long.toString(layout.getSize()));
+			t.add(Long.toString(layout.getCacheLineCount()));
+			t.add(layout.getKind() + " " + layout.getName());
+		}
+		return t;
+	}
+
+	/**
+	 * @return Returns an estimate of the heap memory retained by the caches of this reader
+	 */
+	long estimateRetainedBytes() {
+		long size = ElfMemoryEstimate.objectSize(5, 1);
+		size += (long)names.size() * (ElfMemoryEstimate.objectSize(4, 4) + ElfMemoryEstimate.objectSize(0, 8));
+		for(String name : names.values())
+			size += ElfMemoryEstimate.stringSize(name);
+		size += (long)sizes.size() * (ElfMemoryEstimate.objectSize(4, 4) + 2 * ElfMemoryEstimate.objectSize(0, 8));
+		for(DwarfStructLayout layout : layouts.values()) {
+			size += ElfMemoryEstimate.objectSize(4, 4) + ElfMemoryEstimate.objectSize(4, 32)
+					+ ElfMemoryEstimate.stringSize(layout.getName()) + ElfMemoryEstimate.listSize(layout.getMembers().size())
+					+ layout.getMembers().size() * ElfMemoryEstimate.objectSize(2, 36);
+		}
+		List<DwarfStructLayout> all = allLayouts;
+		if(all != null)
+			size += ElfMemoryEstimate.listSize(all.size());
+		return size;
+	}
+}
@@ -0,0 +1,794 @@
+package net.fornwall.jelf.dwarf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.fornwall.jelf.ElfException;
+
+/**
+ * A unit of .debug_info: the unit header and access to its debugging information entries.
+ * Entries are decoded on demand, see {@link #readDie(long)}.
+ */
+public class DwarfUnit {
+	/** Unit types (DW_UT_*) of DWARF 5 unit headers */
+	public static final int TYPE_COMPILE = 0x01;
+	public static final int TYPE_TYPE = 0x02;
+	public static final int TYPE_PARTIAL = 0x03;
+	public static final int TYPE_SKELETON = 0x04;
+	public static final int TYPE_SPLIT_COMPILE = 0x05;
+	public static final int TYPE_SPLIT_TYPE = 0x06;
+
+	/** DW_RLE_* entry kinds of .debug_rnglists */
+	private static final int DW_RLE_end_of_list = 0;
+	private static final int DW_RLE_base_addressx = 1;
+	private static final int DW_RLE_startx_endx = 2;
+	private static final int DW_RLE_startx_length = 3;
+	private static final int DW_RLE_offset_pair = 4;
+	private static final int DW_RLE_base_address = 5;
+	private static final int DW_RLE_start_end = 6;
+	private static final int DW_RLE_start_length = 7;
+
+	private final Dwarf dwarf;
+	private final ByteBuffer data;
+	private final long offset;
+	private final long end;
+	private final int version;
+	private final int unitType;
+	private final int addressSize;
+	private final boolean dwarf64;
+	private final long abbreviationOffset;
+	private final long firstDieOffset;
+	private final long dwoId;
+	/** The signature of a type unit, 0 for other units */
+	private final long typeSignature;
+	/** The offset of the entry of the type described by a type unit, 0 for other units */
+	private final long typeOffset;
+	private final DwarfAbbreviation.Table abbreviations;
+	/** The skeleton unit of a split unit, null for other units */
+	private final DwarfUnit skeleton;
+	/** The index of the package holding a split unit, null if the unit is not in a package */
+	private final DwarfPackageIndex packageIndex;
+	private final int packageRow;
+
+	private volatile DwarfDie root;
+	private volatile DwarfDieTree tree;
+	private volatile DwarfScopeIndex scopes;
+	private volatile SplitUnit splitUnit;
+
+	/** The split unit of a skeleton unit, or null if it was not found, and the loader it was looked up with */
+	private static final class SplitUnit {
+		final DwarfSplitLoader loader;
+		final int generation;
+		final DwarfUnit unit;
+
+		SplitUnit(DwarfSplitLoader loader, int generation, DwarfUnit unit) {
+			this.loader = loader;
+			this.generation = generation;
+			this.unit = unit;
+		}
+	}
+
+	private DwarfUnit(Dwarf dwarf, ByteBuffer data, long offset, long end, int version, int unitType, int addressSize,
+			boolean dwarf64, long abbreviationOffset, long firstDieOffset, long dwoId, long typeSignature, long typeOffset,
+			DwarfUnit skeleton, DwarfPackageIndex packageIndex, int packageRow) {
+		this.dwarf = dwarf;
+		this.data = data;
+		this.offset = offset;
+		this.end = end;
+		this.version = version;
+		this.unitType = unitType;
+		this.addressSize = addressSize;
+		this.dwarf64 = dwarf64;
+		this.abbreviationOffset = abbreviationOffset;
+		this.firstDieOffset = firstDieOffset;
+		this.dwoId = dwoId;
+		this.typeSignature = typeSignature;
+		this.typeOffset = typeOffset;
+		this.skeleton = skeleton;
+		this.packageIndex = packageIndex;
+		this.packageRow = packageRow;
+		this.abbreviations = dwarf.getAbbreviations(abbreviationOffset + getContribution(DwarfPackageIndex.SECT_ABBREV));
+	}
+
+	/**
+	 * Decodes the header of the unit at the provided offset
+	 *
+	 * @param dwarf the debugging information the unit belongs to
+	 * @param data the contents of .debug_info
+	 * @param offset the offset of the unit header in .debug_info
+	 * @return Returns the unit
+	 */
+	public static DwarfUnit read(Dwarf dwarf, ByteBuffer data, long offset) {
+		return read(dwarf, data, offset, false, null, null, -1);
+	}
+
+	/**
+	 * Decodes the header of a type unit in the .debug_types section of DWARF 4
+	 *
+	 * @param dwarf the debugging information the unit belongs to
+	 * @param data the contents of .debug_types
+	 * @param offset the offset of the unit header in .debug_types
+	 * @return Returns the unit
+	 */
+	public static DwarfUnit readTypeUnit(Dwarf dwarf, ByteBuffer data, long offset) {
+		return read(dwarf, data, offset, true, null, null, -1);
+	}
+
+	/**
+	 * Decodes the header of a unit which may be a split unit
+	 *
+	 * @param skeleton the skeleton unit of a split unit, or null
+	 * @param packageIndex the index of the package holding a split unit, or null
+	 * @param packageRow the row of the unit in the package index
+	 */
+	static DwarfUnit read(Dwarf dwarf, ByteBuffer data, long offset, DwarfUnit skeleton, DwarfPackageIndex packageIndex,
+			int packageRow) {
+		return read(dwarf, data, offset, false, skeleton, packageIndex, packageRow);
+	}
+
+	private static DwarfUnit read(Dwarf dwarf, ByteBuffer data, long offset, boolean typesSection, DwarfUnit skeleton,
+			DwarfPackageIndex packageIndex, int packageRow) {
+		DwarfReader r = new DwarfReader(data, (int)offset);
+		long unitLength = r.unitLength();
+		boolean dwarf64 = DwarfReader.isDwarf64(unitLength);
+		long end = r.position() + DwarfReader.lengthOf(unitLength);
+		if(end > data.limit())
+			throw new ElfException("Unit at offset 0x" + Long.toHexString(offset) + " extends past end of .debug_info");
+
+		int version = r.u16();
+		if(version < 2 || version > 5)
+			throw new ElfException("Unsupported DWARF version " + version + " in unit at offset 0x" + Long.toHexString(offset));
+
+		int unitType = TYPE_COMPILE;
+		int addressSize;
+		long abbreviationOffset;
+		long dwoId = 0;
+		long typeSignature = 0;
+		long typeOffset = 0;
+		if(version >= 5) {
+			unitType = r.u8();
+			addressSize = r.u8();
+			abbreviationOffset = r.offset(dwarf64);
+			switch(unitType) {
+			case TYPE_SKELETON:
+			case TYPE_SPLIT_COMPILE:
+				dwoId = r.u64();
+				break;
+			case TYPE_TYPE:
+			case TYPE_SPLIT_TYPE:
+				typeSignature = r.u64();
+				typeOffset = offset + r.offset(dwarf64);
+				break;
+			default:
+				break;
+			}
+		}
+		else {
+			abbreviationOffset = r.offset(dwarf64);
+			addressSize = r.u8();
+			if(typesSection) {
+				unitType = TYPE_TYPE;
+				typeSignature = r.u64();
+				typeOffset = offset + r.offset(dwarf64);
+			}
+		}
+
+		return new DwarfUnit(dwarf, data, offset, end, version, unitType, addressSize, dwarf64, abbreviationOffset,
+				r.position(), dwoId, typeSignature, typeOffset, skeleton, packageIndex, packageRow);
+	}
+
+	/**
+	 * @return Returns the debugging information this unit belongs to
+	 */
+	public Dwarf getDwarf() {
+		return dwarf;
+	}
+
+	/**
+	 * @return Returns the offset of the unit header in .debug_info
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Returns the offset following the last byte of this unit
+	 */
+	public long getEndOffset() {
+		return end;
+	}
+
+	/**
+	 * @return Returns the DWARF version of the unit
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Returns the unit type, see {@link #TYPE_COMPILE}. Units before DWARF 5 are compile units.
+	 */
+	public int getUnitType() {
+		return unitType;
+	}
+
+	/**
+	 * @return Returns the size in bytes of an address in this unit
+	 */
+	public int getAddressSize() {
+		return addressSize;
+	}
+
+	/**
+	 * @return Returns true if the unit uses the 64-bit DWARF format
+	 */
+	public boolean isDwarf64() {
+		return dwarf64;
+	}
+
+	/**
+	 * @return Returns the offset of the abbreviation table in .debug_abbrev
+	 */
+	public long getAbbreviationOffset() {
+		return abbreviationOffset;
+	}
+
+	/**
+	 * @return Returns true for type units, from .debug_types or with a DWARF 5 type unit header
+	 */
+	public boolean isTypeUnit() {
+		return unitType == TYPE_TYPE || unitType == TYPE_SPLIT_TYPE;
+	}
+
+	/**
+	 * @return Returns the signature by which DW_FORM_ref_sig8 attributes refer to the type of a
+	 * 	type unit, or 0 for other units
+	 */
+	public long getTypeSignature() {
+		return typeSignature;
+	}
+
+	/**
+	 * @return Returns the entry of the type described by a type unit, or null for other units
+	 */
+	public DwarfDie getTypeEntry() {
+		return isTypeUnit() ? readDie(typeOffset) : null;
+	}
+
+	/**
+	 * @return Returns the id connecting skeleton and split units, from the DWARF 5 unit header or
+	 * 	the DW_AT_GNU_dwo_id attribute of earlier versions, or 0 for other units
+	 */
+	public long getDwoId() {
+		if(version < 5)
+			return getRoot().getUnsigned(DwarfAttribute.GNU_DWO_ID, 0);
+		return dwoId;
+	}
+
+	/**
+	 * @return Returns true if this is the skeleton of a unit whose entries are in a .dwo file
+	 */
+	public boolean isSkeleton() {
+		if(version >= 5)
+			return unitType == TYPE_SKELETON;
+		return skeleton == null && getRoot().hasAttribute(DwarfAttribute.GNU_DWO_NAME);
+	}
+
+	/**
+	 * @return Returns the name of the .dwo file of a skeleton unit, or null
+	 */
+	public String getDwoName() {
+		DwarfDie r = getRoot();
+		String name = r.getString(DwarfAttribute.DWO_NAME);
+		return name != null ? name : r.getString(DwarfAttribute.GNU_DWO_NAME);
+	}
+
+	/**
+	 * @return Returns the skeleton unit of a split unit, or null if this is not a split unit
+	 */
+	public DwarfUnit getSkeleton() {
+		return skeleton;
+	}
+
+	/**
+	 * Finds the split unit of a skeleton unit with the split loader of the debugging information,
+	 * see {@link Dwarf#getSplitLoader()}. The result is cached, also when the split unit is not
+	 * found, until the loader is replaced or given another package or search directory. A cached
+	 * split unit keeps its .dwo file open even once the loader has evicted it.
+	 *
+	 * @return Returns the split unit, or null if this is not a skeleton unit or its split unit is not found
+	 */
+	public DwarfUnit getSplitUnit() {
+		if(!isSkeleton())
+			return null;
+		DwarfSplitLoader loader = dwarf.getSplitLoader();
+		int generation = loader.getGeneration();
+		SplitUnit result = splitUnit;
+		if(result == null || result.loader != loader || result.generation != generation)
+			splitUnit = result = new SplitUnit(loader, generation, loader.load(this));
+		return result.unit;
+	}
+
+	/**
+	 * @param section a section id, see {@link DwarfPackageIndex#SECT_INFO}
+	 * @return Returns the offset of the contribution of this unit to the section of its package, or 0
+	 */
+	private long getContribution(int section) {
+		return packageIndex == null ? 0 : packageIndex.getOffset(packageRow, section);
+	}
+
+	/**
+	 * @return Returns the contents of the section holding this unit
+	 */
+	ByteBuffer getData() {
+		return data;
+	}
+
+	/**
+	 * @return Returns the size in bytes of a section offset in this unit
+	 */
+	int getOffsetSize() {
+		return dwarf64 ? 8 : 4;
+	}
+
+	/**
+	 * @return Returns the compile unit entry, the first entry of the unit
+	 */
+	public DwarfDie getRoot() {
+		DwarfDie result = root;
+		if(result == null)
+			root = result = readDie(firstDieOffset);
+		return result;
+	}
+
+	/**
+	 * Returns all entries of this unit. The tree is decoded on first use and cached; decoding
+	 * several units at once is best done with {@link Dwarf#decodeUnits(java.util.concurrent.ForkJoinPool)}.
+	 *
+	 * @return Returns the tree of entries of this unit
+	 */
+	public DwarfDieTree getTree() {
+		DwarfDieTree result = tree;
+		if(result == null)
+			tree = result = DwarfDieTree.decode(this, abbreviations, firstDieOffset);
+		return result;
+	}
+
+	/**
+	 * @return Returns true if the tree of entries of this unit has been decoded
+	 */
+	public boolean isTreeDecoded() {
+		return tree != null;
+	}
+
+	/**
+	 * Returns the interval tree of the functions and inlined functions of this unit. It is built
+	 * on first use, decoding the tree of entries, and cached.
+	 *
+	 * @return Returns the scope index of this unit
+	 */
+	public DwarfScopeIndex getScopeIndex() {
+		DwarfScopeIndex result = scopes;
+		if(result == null)
+			scopes = result = DwarfScopeIndex.build(this);
+		return result;
+	}
+
+	/**
+	 * @return Returns true if the scope index of this unit has been built
+	 */
+	public boolean isScopeIndexBuilt() {
+		return scopes != null;
+	}
+
+	/**
+	 * @return Returns the name of the compilation unit, usually the path of the primary source file
+	 */
+	public String getName() {
+		return getRoot().getString(DwarfAttribute.NAME);
+	}
+
+	/**
+	 * @return Returns the compilation directory, or null if it is not recorded
+	 */
+	public String getCompilationDirectory() {
+		String directory = getRoot().getString(DwarfAttribute.COMP_DIR);
+		if(directory == null && skeleton != null)
+			return skeleton.getCompilationDirectory();
+		return directory;
+	}
+
+	/**
+	 * @return Returns the line table of this unit, or null if it does not have one. Split units
+	 * 	use the line table of their skeleton.
+	 */
+	public DwarfLineTable getLineTable() {
+		if(skeleton != null)
+			return skeleton.getLineTable();
+		DwarfDie r = getRoot();
+		DwarfLineSection lines = dwarf.getLineSection();
+		if(r == null || lines == null || !r.hasAttribute(DwarfAttribute.STMT_LIST))
+			return null;
+		return lines.getLineTable(r.getUnsigned(DwarfAttribute.STMT_LIST, 0), getCompilationDirectory());
+	}
+
+	/**
+	 * @param offset the offset of an entry in .debug_info
+	 * @return Returns true if the offset is inside this unit
+	 */
+	public boolean contains(long offset) {
+		return offset >= this.offset && offset < end;
+	}
+
+	/**
+	 * @param dieOffset the offset of an entry in .debug_info
+	 * @return Returns the entry, or null if the offset holds a null entry ending a list of children
+	 */
+	public DwarfDie readDie(long dieOffset) {
+		if(!contains(dieOffset))
+			throw new ElfException("Entry offset 0x" + Long.toHexString(dieOffset) + " outside unit at offset 0x" + Long.toHexString(offset));
+
+		DwarfReader r = new DwarfReader(data, (int)dieOffset);
+		long code = r.uleb128();
+		if(code == 0)
+			return null;
+
+		DwarfAbbreviation abbreviation = abbreviations.get(code);
+		int count = abbreviation.getAttributeCount();
+		int[] positions = new int[count];
+		for(int i = 0; i < count; i++) {
+			positions[i] = r.position();
+			skipForm(r, abbreviation.getForm(i));
+		}
+		return new DwarfDie(this, dieOffset, abbreviation, positions, r.position());
+	}
+
+	/**
+	 * @param parent an entry of this unit
+	 * @return Returns the children of the entry
+	 */
+	public List<DwarfDie> getChildren(DwarfDie parent) {
+		List<DwarfDie> children = new ArrayList<DwarfDie>();
+		if(!parent.hasChildren())
+			return children;
+
+		long pos = parent.getNextOffset();
+		while(pos < end) {
+			DwarfDie child = readDie(pos);
+			if(child == null)
+				break;
+			children.add(child);
+			pos = getSiblingOffset(child);
+		}
+		return children;
+	}
+
+	/**
+	 * @param die an entry of this unit
+	 * @return Returns the offset following the entry and all of its descendants
+	 */
+	public long getSiblingOffset(DwarfDie die) {
+		if(!die.hasChildren())
+			return die.getNextOffset();
+		if(die.hasAttribute(DwarfAttribute.SIBLING)) {
+			long sibling = die.getReference(DwarfAttribute.SIBLING);
+			if(sibling > die.getOffset() && sibling <= end)
+				return sibling;
+		}
+
+		// Skip the descendants without decoding them
+		DwarfReader r = new DwarfReader(data, (int)die.getNextOffset());
+		int depth = 1;
+		while(depth > 0 && r.position() < end) {
+			long code = r.uleb128();
+			if(code == 0) {
+				depth--;
+				continue;
+			}
+			DwarfAbbreviation abbreviation = abbreviations.get(code);
+			for(int i = 0; i < abbreviation.getAttributeCount(); i++)
+				skipForm(r, abbreviation.getForm(i));
+			if(abbreviation.hasChildren())
+				depth++;
+		}
+		return r.position();
+	}
+
+	/**
+	 * Skips an attribute value of the provided form
+	 */
+	void skipForm(DwarfReader r, int form) {
+		switch(form) {
+		case DwarfForm.FLAG_PRESENT:
+		case DwarfForm.IMPLICIT_CONST:
+			break;
+		case DwarfForm.DATA1:
+		case DwarfForm.REF1:
+		case DwarfForm.FLAG:
+		case DwarfForm.STRX1:
+		case DwarfForm.ADDRX1:
+			r.skip(1);
+			break;
+		case DwarfForm.DATA2:
+		case DwarfForm.REF2:
+		case DwarfForm.STRX2:
+		case DwarfForm.ADDRX2:
+			r.skip(2);
+			break;
+		case DwarfForm.STRX3:
+		case DwarfForm.ADDRX3:
+			r.skip(3);
+			break;
+		case DwarfForm.DATA4:
+		case DwarfForm.REF4:
+		case DwarfForm.REF_SUP4:
+		case DwarfForm.STRX4:
+		case DwarfForm.ADDRX4:
+			r.skip(4);
+			break;
+		case DwarfForm.DATA8:
+		case DwarfForm.REF8:
+		case DwarfForm.REF_SIG8:
+		case DwarfForm.REF_SUP8:
+			r.skip(8);
+			break;
+		case DwarfForm.DATA16:
+			r.skip(16);
+			break;
+		case DwarfForm.ADDR:
+			r.skip(addressSize);
+			break;
+		case DwarfForm.REF_ADDR:
+			r.skip(version <= 2 ? addressSize : getOffsetSize());
+			break;
+		case DwarfForm.STRP:
+		case DwarfForm.LINE_STRP:
+		case DwarfForm.SEC_OFFSET:
+		case DwarfForm.STRP_SUP:
+		case DwarfForm.GNU_REF_ALT:
+		case DwarfForm.GNU_STRP_ALT:
+			r.skip(getOffsetSize());
+			break;
+		case DwarfForm.SDATA:
+			r.sleb128();
+			break;
+		case DwarfForm.UDATA:
+		case DwarfForm.REF_UDATA:
+		case DwarfForm.STRX:
+		case DwarfForm.ADDRX:
+		case DwarfForm.LOCLISTX:
+		case DwarfForm.RNGLISTX:
+		case DwarfForm.GNU_ADDR_INDEX:
+		case DwarfForm.GNU_STR_INDEX:
+			r.uleb128();
+			break;
+		case DwarfForm.STRING:
+			r.cstring();
+			break;
+		case DwarfForm.BLOCK1:
+			r.skip(r.u8());
+			break;
+		case DwarfForm.BLOCK2:
+			r.skip(r.u16());
+			break;
+		case DwarfForm.BLOCK4:
+			r.skip(r.u32());
+			break;
+		case DwarfForm.BLOCK:
+		case DwarfForm.EXPRLOC:
+			r.skip(r.uleb128());
+			break;
+		case DwarfForm.INDIRECT:
+			skipForm(r, (int)r.uleb128());
+			break;
+		default:
+			throw new ElfException("Unsupported DWARF form 0x" + Integer.toHexString(form));
+		}
+	}
+
+	/**
+	 * @param index an index into the address table of this unit
+	 * @return Returns the address at the index in .debug_addr
+	 */
+	long getIndexedAddress(long index) {
+		// The address table of a split unit is in the main file
+		if(skeleton != null)
+			return skeleton.getIndexedAddress(index);
+		ByteBuffer addresses = dwarf.getSection(".debug_addr");
+		if(addresses == null)
+			throw new ElfException("Indexed address without .debug_addr section");
+		DwarfDie r = getRoot();
+		long base = r.getUnsigned(DwarfAttribute.ADDR_BASE, r.getUnsigned(DwarfAttribute.GNU_ADDR_BASE, 0));
+		return new DwarfReader(addresses, (int)(base + index * addressSize)).address(addressSize);
+	}
+
+	/**
+	 * @param index an index into the string offsets table of this unit
+	 * @return Returns the string at the index
+	 */
+	String getIndexedString(long index) {
+		ByteBuffer offsets = dwarf.getSection(".debug_str_offsets");
+		ByteBuffer strings = dwarf.getSection(".debug_str");
+		if(offsets == null || strings == null)
+			throw new ElfException("Indexed string without .debug_str_offsets section");
+
+		// The base defaults to just after the header of the contribution, which is the only one in a .dwo file
+		long base = getContribution(DwarfPackageIndex.SECT_STR_OFFSETS) + (version >= 5 ? 2L * getOffsetSize() : 0);
+		base = getRoot().getUnsigned(DwarfAttribute.STR_OFFSETS_BASE, base);
+		long stringOffset = new DwarfReader(offsets, (int)(base + index * getOffsetSize())).offset(dwarf64);
+		return DwarfReader.cstring(strings, stringOffset);
+	}
+
+	/**
+	 * Returns the address ranges of an entry as pairs of start (inclusive) and end (exclusive)
+	 * addresses, from DW_AT_low_pc and DW_AT_high_pc or from the range list of DW_AT_ranges.
+	 *
+	 * @param die an entry of this unit
+	 * @return Returns the address ranges, which is empty if the entry has no addresses
+	 */
+	public long[] getRanges(DwarfDie die) {
+		if(die.hasAttribute(DwarfAttribute.RANGES))
+			return readRangeList(die);
+
+		if(die.hasAttribute(DwarfAttribute.LOW_PC) && die.hasAttribute(DwarfAttribute.HIGH_PC)) {
+			long low = die.getAddress(DwarfAttribute.LOW_PC);
+			long high;
+			if(isAddressForm(die.getForm(DwarfAttribute.HIGH_PC)))
+				high = die.getAddress(DwarfAttribute.HIGH_PC);
+			else
+				high = low + die.getUnsigned(DwarfAttribute.HIGH_PC, 0);
+			if(high != low && !isTombstone(low))
+				return new long[] { low, high };
+		}
+		return new long[0];
+	}
+
+	private static boolean isAddressForm(int form) {
+		switch(form) {
+		case DwarfForm.ADDR:
+		case DwarfForm.ADDRX:
+		case DwarfForm.ADDRX1:
+		case DwarfForm.ADDRX2:
+		case DwarfForm.ADDRX3:
+		case DwarfForm.ADDRX4:
+		case DwarfForm.GNU_ADDR_INDEX:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/** Linkers mark the addresses of discarded functions with all ones */
+	private boolean isTombstone(long address) {
+		return address == (addressSize == 4 ? 0xffffffffL : -1L);
+	}
+
+	private long getBaseAddress() {
+		DwarfDie r = getRoot();
+		if(!r.hasAttribute(DwarfAttribute.LOW_PC) && skeleton != null)
+			return skeleton.getBaseAddress();
+		return r.hasAttribute(DwarfAttribute.LOW_PC) ? r.getAddress(DwarfAttribute.LOW_PC) : 0;
+	}
+
+	private long[] readRangeList(DwarfDie die) {
+		int form = die.getForm(DwarfAttribute.RANGES);
+		long value = die.getUnsigned(DwarfAttribute.RANGES, 0);
+
+		if(version < 5) {
+			// Pre-standard split units use .debug_ranges of the main file, relative to the base in the skeleton
+			if(skeleton != null)
+				return skeleton.readLegacyRanges(value + skeleton.getRoot().getUnsigned(DwarfAttribute.GNU_RANGES_BASE, 0));
+			// Only the entries below a unit entry with DW_AT_GNU_ranges_base are relative to it
+			DwarfDie r = getRoot();
+			if(die.getOffset() != r.getOffset())
+				value += r.getUnsigned(DwarfAttribute.GNU_RANGES_BASE, 0);
+			return readLegacyRanges(value);
+		}
+
+		ByteBuffer rnglists = dwarf.getSection(".debug_rnglists");
+		if(rnglists == null)
+			throw new ElfException("DW_AT_ranges without .debug_rnglists section");
+		if(form == DwarfForm.RNGLISTX) {
+			long base = getContribution(DwarfPackageIndex.SECT_RNGLISTS) + 2L * getOffsetSize() + 4;
+			base = getRoot().getUnsigned(DwarfAttribute.RNGLISTS_BASE, base);
+			value = base + new DwarfReader(rnglists, (int)(base + value * getOffsetSize())).offset(dwarf64);
+		}
+		return readRangeList(rnglists, value);
+	}
+
+	/** Decodes a pre DWARF 5 range list from .debug_ranges */
+	private long[] readLegacyRanges(long rangesOffset) {
+		ByteBuffer ranges = dwarf.getSection(".debug_ranges");
+		if(ranges == null)
+			throw new ElfException("DW_AT_ranges without .debug_ranges section");
+
+		long max = addressSize == 4 ? 0xffffffffL : -1L;
+		long base = getBaseAddress();
+		RangeBuilder result = new RangeBuilder();
+		DwarfReader r = new DwarfReader(ranges, (int)rangesOffset);
+		while(true) {
+			long start = r.address(addressSize);
+			long stop = r.address(addressSize);
+			if(start == 0 && stop == 0)
+				break;
+			if(start == max)
+				base = stop;
+			else
+				result.add(base + start, base + stop);
+		}
+		return result.toArray();
+	}
+
+	/** Decodes a DWARF 5 range list from .debug_rnglists */
+	private long[] readRangeList(ByteBuffer rnglists, long listOffset) {
+		long base = getBaseAddress();
+		RangeBuilder result = new RangeBuilder();
+		DwarfReader r = new DwarfReader(rnglists, (int)listOffset);
+		while(true) {
+			int kind = r.u8();
+			switch(kind) {
+			case DW_RLE_end_of_list:
+				return result.toArray();
+			case DW_RLE_base_addressx:
+				base = getIndexedAddress(r.uleb128());
+				break;
+			case DW_RLE_startx_endx: {
+				long start = getIndexedAddress(r.uleb128());
+				result.add(start, getIndexedAddress(r.uleb128()));
+				break;
+			}
+			case DW_RLE_startx_length: {
+				long start = getIndexedAddress(r.uleb128());
+				result.add(start, start + r.uleb128());
+				break;
+			}
+			case DW_RLE_offset_pair: {
+				long start = r.uleb128();
+				result.add(base + start, base + r.uleb128());
+				break;
+			}
+			case DW_RLE_base_address:
+				base = r.address(addressSize);
+				break;
+			case DW_RLE_start_end: {
+				long start = r.address(addressSize);
+				result.add(start, r.address(addressSize));
+				break;
+			}
+			case DW_RLE_start_length: {
+				long start = r.address(addressSize);
+				result.add(start, start + r.uleb128());
+				break;
+			}
+			default:
+				throw new ElfException("Unknown range list entry kind " + kind + " at offset 0x" + Long.toHexString(r.position() - 1));
+			}
+		}
+	}
+
+	/** Growable list of address ranges which drops empty and discarded ranges */
+	private final class RangeBuilder {
+		long[] ranges = new long[8];
+		int size;
+
+		void add(long start, long stop) {
+			if(start == stop || isTombstone(start))
+				return;
+			if(size == ranges.length)
+				ranges = Arrays.copyOf(ranges, size * 2);
+			ranges[size++] = start;
+			ranges[size++] = stop;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(ranges, size);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DwarfUnit[offset=0x" + Long.toHexString(offset) + ", version=" + version + "]";
+	}
+}
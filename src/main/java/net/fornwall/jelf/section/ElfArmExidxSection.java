@@ -0,0 +1,264 @@
+package net.fornwall.jelf.section;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.ElfSectionHeaders;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+import net.fornwall.jelf.section.unwind.ElfArmUnwindEntry;
+import net.fornwall.jelf.section.unwind.ElfArmUnwindInstructions;
+import net.fornwall.jelf.section.unwind.ElfArmUnwindState;
+
+/**
+ * The exception index table of 32-bit ARM (SHT_ARM_EXIDX, usually .ARM.exidx), which takes
+ * the place of .eh_frame under the exception handling ABI. Each 8 byte entry holds the prel31
+ * encoded address of a function and its unwind information, and the entries are sorted by
+ * address. The table is read in place: finding the entry of an address is a binary search
+ * over the section contents.
+ *
+ * <pre>
+ * https://github.com/ARM-software/abi-aa/blob/main/ehabi32/ehabi32.rst
+ * </pre>
+ */
+public class ElfArmExidxSection extends ElfSection {
+	private static final int ENTRY_SIZE = 8;
+
+	private ByteBuffer data;
+	/** The exception handling table the entries point to, or null */
+	private ElfSection extab;
+	private ByteBuffer extabData;
+
+	protected ElfArmExidxSection(ElfSection s) {
+		super(s);
+	}
+
+	@Override
+	protected void loadContents() {
+		data = getDataBuffer();
+		ElfSectionHeaders headers = getFile().getSectionHeaders();
+		Integer index = headers.getSectionIndexByName(".ARM.extab");
+		if(index != null) {
+			extab = headers.getSectionByIndex(index);
+			extabData = extab.getDataBuffer();
+		}
+	}
+
+	/**
+	 * Decodes a prel31 value, a 31-bit signed offset from the address of the word holding it
+	 *
+	 * @param word the word holding the value, the top bit is ignored
+	 * @param place the address of the word
+	 * @return Returns the address the value refers to
+	 */
+	public static long prel31(long word, long place) {
+		long offset = (word << 33) >> 33;
+		return (place + offset) & 0xffffffffL;
+	}
+
+	/**
+	 * @return Returns the number of entries in the table
+	 */
+	public int getEntryCount() {
+		return (int)(getFileSize() / ENTRY_SIZE);
+	}
+
+	/**
+	 * @param index the index of the entry
+	 * @return Returns the address of the first function covered by the entry
+	 */
+	public long getFunctionAddress(int index) {
+		ensureLoaded();
+		return prel31(data.getInt(index * ENTRY_SIZE) & 0xffffffffL, getAddress() + index * ENTRY_SIZE);
+	}
+
+	/**
+	 * @param index the index of the entry
+	 * @return Returns the entry with its unwind opcodes decoded
+	 * @throws ElfException if the index is out of bounds or the entry is malformed
+	 */
+	public ElfArmUnwindEntry getEntry(int index) {
+		if(index < 0 || index >= getEntryCount())
+			throw new ElfException("Exception index entry out of bounds: " + index);
+		ensureLoaded();
+		long function = getFunctionAddress(index);
+		long place = getAddress() + index * ENTRY_SIZE + 4;
+		long value = data.getInt(index * ENTRY_SIZE + 4) & 0xffffffffL;
+
+		if(value == ElfArmUnwindEntry.EXIDX_CANTUNWIND)
+			return new ElfArmUnwindEntry(index, function, value, -1, 0, 0, null, 0);
+		if((value & 0x80000000L) != 0) {
+			int personalityIndex = (int)(value >>> 24) & 0x0f;
+			if(personalityIndex != 0)
+				throw new ElfException("Inline exception index entry " + index + " with personality " + personalityIndex);
+			return new ElfArmUnwindEntry(index, function, value, -1, 0, 0, new ElfArmUnwindInstructions(opcodes(value, 3, 0, 0)), 0);
+		}
+
+		long table = prel31(value, place);
+		long word = readWord(table);
+		int personalityIndex;
+		long personality = 0;
+		int count;
+		byte[] opcodes;
+		long next;
+		if((word & 0x80000000L) != 0) {
+			// Compact model: pr0 has three opcodes, pr1 and pr2 two and a count of more words
+			personalityIndex = (int)(word >>> 24) & 0x0f;
+			if(personalityIndex == 0) {
+				count = 0;
+				opcodes = opcodes(word, 3, 0, 0);
+			}
+			else {
+				count = (int)(word >>> 16) & 0xff;
+				opcodes = opcodes(word, 2, table + 4, count);
+			}
+			next = table + 4;
+		}
+		else {
+			// Generic model: the opcodes follow the personality routine in the layout of pr1
+			personalityIndex = -1;
+			personality = prel31(word, table);
+			word = readWord(table + 4);
+			count = (int)(word >>> 24);
+			opcodes = opcodes(word, 3, table + 8, count);
+			next = table + 8;
+		}
+		long lsda = personalityIndex == 0 ? 0 : next + count * 4;
+		return new ElfArmUnwindEntry(index, function, value, table, personalityIndex, personality,
+				new ElfArmUnwindInstructions(opcodes), lsda);
+	}
+
+	/**
+	 * Collects the opcodes of a word, most significant byte first, followed by those of more words
+	 */
+	private byte[] opcodes(long word, int bytes, long more, int count) {
+		byte[] opcodes = new byte[bytes + count * 4];
+		for(int i = 0; i < bytes; i++)
+			opcodes[i] = (byte)(word >>> (8 * (bytes - 1 - i)));
+		for(int w = 0; w < count; w++) {
+			long next = readWord(more + w * 4);
+			for(int i = 0; i < 4; i++)
+				opcodes[bytes + w * 4 + i] = (byte)(next >>> (8 * (3 - i)));
+		}
+		return opcodes;
+	}
+
+	/**
+	 * Reads a word of .ARM.extab, or of any other allocated section holding the address
+	 */
+	private long readWord(long address) {
+		if(extab != null && address - extab.getAddress() >= 0 && address - extab.getAddress() + 4 <= extab.getFileSize())
+			return extabData.getInt((int)(address - extab.getAddress())) & 0xffffffffL;
+
+		ElfSectionHeaders headers = getFile().getSectionHeaders();
+		for(int i = 0; i < headers.size(); i++) {
+			ElfSection s = headers.getSectionByIndex(i);
+			if(!s.getFlags().test(Flag.ALLOC) || s.getType().val == Type.NOBITS)
+				continue;
+			long offset = address - s.getAddress();
+			if(offset >= 0 && offset + 4 <= s.getFileSize())
+				return getFile().getParser().getByteBuffer(s.getFileOffset() + offset, 4).getInt(0) & 0xffffffffL;
+		}
+		throw new ElfException("Exception table address 0x" + Long.toHexString(address) + " outside of the file");
+	}
+
+	/**
+	 * @param address a code address, the Thumb bit is ignored
+	 * @return Returns the index of the entry covering the address, or -1 if it precedes the first function
+	 */
+	public int findEntryIndex(long address) {
+		address &= ~1L;
+		int low = 0;
+		int high = getEntryCount() - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(getFunctionAddress(mid) <= address) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param address a code address, the Thumb bit is ignored
+	 * @return Returns the entry covering the address, or null if it precedes the first function
+	 */
+	public ElfArmUnwindEntry findEntry(long address) {
+		int index = findEntryIndex(address);
+		return index < 0 ? null : getEntry(index);
+	}
+
+	/**
+	 * Unwinds one frame with the entry covering the program counter of the state. To find the
+	 * function making a call, callers should look up the return address minus one or two, as
+	 * the return address may be the start of the next function.
+	 *
+	 * @param state the registers of the frame, updated to those of the caller
+	 * @return Returns false if there is no entry, the function can not be unwound or the
+	 * 	opcodes refuse to unwind
+	 */
+	public boolean unwind(ElfArmUnwindState state) {
+		ElfArmUnwindEntry entry = findEntry(state.getRegister(ElfArmUnwindState.PC));
+		if(entry == null || entry.isCantUnwind())
+			return false;
+		return entry.getInstructions().execute(state);
+	}
+
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(isLoaded())
+			estimate.add(ElfMemoryEstimate.HEADERS, 2 * ElfMemoryEstimate.objectSize(1, 20));
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the entries of this section, like readelf --unwind
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table("Unwind section '" + getName() + "' at offset 0x" + Long.toHexString(getFileOffset())
+				+ " contains " + getEntryCount() + " entries:");
+
+		// Column names
+		t.add("Function");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Entry");
+		t.setColAlign(Align.LEFT);
+
+		t.add("Personality");
+		t.setColAlign(Align.LEFT);
+
+		t.add("Instructions");
+		t.setColAlign(Align.LEFT);
+
+		for(int i = 0; i < getEntryCount(); i++) {
+			ElfArmUnwindEntry e = getEntry(i);
+			t.newRow();
+			t.add("0x" + Long.toHexString(e.getFunctionAddress()));
+			String entry = e.toString();
+			t.add(entry.substring(entry.indexOf(' ') + 1));
+			if(e.isCantUnwind())
+				t.add("");
+			else if(e.getPersonalityIndex() < 0)
+				t.add("0x" + Long.toHexString(e.getPersonality()));
+			else
+				t.add("pr" + e.getPersonalityIndex());
+
+			t.add(e.getInstructions() == null ? "" : String.join("; ", e.getInstructions().describe()));
+		}
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
@@ -0,0 +1,102 @@
+package net.fornwall.jelf.section;
+
+import java.nio.ByteBuffer;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfHeader;
+
+/**
+ * The Elf32_Chdr or Elf64_Chdr header at the start of a section with the SHF_COMPRESSED flag,
+ * which is followed by the compressed contents of the section
+ */
+public class ElfCompressionHeader {
+	public static final class Type {
+		/** ELFCOMPRESS_ZLIB: zlib/deflate compressed data */
+		public static final int ZLIB = 1;
+		/** ELFCOMPRESS_ZSTD: Zstandard compressed data */
+		public static final int ZSTD = 2;
+		/** ELFCOMPRESS_LOOS: Start of OS-specific */
+		public static final int LOOS = 0x60000000;
+		/** ELFCOMPRESS_HIOS: End of OS-specific */
+		public static final int HIOS = 0x6fffffff;
+		/** ELFCOMPRESS_LOPROC: Start of processor-specific */
+		public static final int LOPROC = 0x70000000;
+		/** ELFCOMPRESS_HIPROC: End of processor-specific */
+		public static final int HIPROC = 0x7fffffff;
+	}
+
+	/** ch_type: The compression algorithm, see {@link Type} */
+	private final int type; // Elf32_Word / Elf64_Word
+	/** ch_size: The size of the uncompressed data */
+	private final long size; // Elf32_Word / Elf64_Xword
+	/** ch_addralign: The alignment of the uncompressed data */
+	private final long alignment; // Elf32_Word / Elf64_Xword
+	/** The size of the header, which the compressed data follows */
+	private final int headerSize;
+
+	ElfCompressionHeader(ElfSection section) {
+		boolean elf32 = section.getFile().getHeader().getBitClass() == ElfHeader.BitClass.ELFCLASS32;
+		headerSize = elf32 ? 12 : 24;
+		if(section.getFileSize() < headerSize)
+			throw new ElfException("Compressed section " + section.getName() + " is too small for its header");
+
+		ByteBuffer b = section.getFile().getParser().getByteBuffer(section.getFileOffset(), headerSize);
+		type = b.getInt(0);
+		if(elf32) {
+			size = b.getInt(4) & 0xffffffffL;
+			alignment = b.getInt(8) & 0xffffffffL;
+		}
+		else {
+			// ch_reserved at offset 4
+			size = b.getLong(8);
+			alignment = b.getLong(16);
+		}
+	}
+
+	/**
+	 * @return Returns the compression algorithm, see {@link Type}
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * @return Returns the name of the compression algorithm, like readelf does
+	 */
+	public String getTypeName() {
+		switch(type) {
+		case Type.ZLIB:
+			return "ZLIB";
+		case Type.ZSTD:
+			return "ZSTD";
+		default:
+			return "0x" + Integer.toHexString(type);
+		}
+	}
+
+	/**
+	 * @return Returns the size of the uncompressed contents
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return Returns the alignment of the uncompressed contents
+	 */
+	public long getAlignment() {
+		return alignment;
+	}
+
+	/**
+	 * @return Returns the size of this header, the compressed data starts after it
+	 */
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	@Override
+	public String toString() {
+		return getTypeName() + ", " + size + " bytes, alignment " + alignment;
+	}
+}
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
 import net.fornwall.jelf.Table;
 import net.fornwall.jelf.Table.Align;
 import net.fornwall.jelf.section.dynamic.ElfDynamicEntry;
@@ -21,7 +22,10 @@ public class ElfDynamicSection extends ElfSection {
 	
 	protected ElfDynamicSection(ElfSection s) {
 		super(s);
-		
+	}
+	
+	@Override
+	protected void loadContents() {
 		// List of entries
 		this.entries = new ArrayList<ElfDynamicEntry>();
 		
@@ -42,12 +46,15 @@ public class ElfDynamicSection extends ElfSection {
 		
 		// Add NULL element
 		entries.add(e);
+		
+		getFile().getParser().getMetrics().entriesDecoded(getType().val, entries.size());
 	}
 	
 	/**
 	 * @return Returns the number of dynamic entries contained by this dynamic section
 	 */
 	public int getEntryCount() {
+		ensureLoaded();
 		return entries.size();
 	}
 	
@@ -57,6 +64,7 @@ public class ElfDynamicSection extends ElfSection {
 	 * @return Returns the entry at the provided index
 	 */
 	public ElfDynamicEntry getEntry(int index) {
+		ensureLoaded();
 		try {
 			return entries.get(index);
 		}
@@ -92,6 +100,7 @@ public class ElfDynamicSection extends ElfSection {
 	 * 	more than one entry exist.
 	 */
 	public <T extends ElfDynamicEntry> T getUniqueEntryOfType(ElfDynamicEntry.Type type, Class<T> c) {
+		ensureLoaded();
 		List<ElfDynamicEntry> l = map.get(type.val);
 		
 		if(l == null || l.isEmpty())
@@ -127,6 +136,7 @@ public class ElfDynamicSection extends ElfSection {
 	 * @return Returns a list of all entries in the dynamic section which are of the provided type
 	 */
 	public List<ElfDynamicEntry> getEntriesOfType(ElfDynamicEntry.Type type) {
+		ensureLoaded();
 		if(!map.containsKey(type.val))
 			return new ArrayList<ElfDynamicEntry>();
 		
@@ -141,6 +151,7 @@ public class ElfDynamicSection extends ElfSection {
 	 * @return Returns a list of all entries in the dynamic section which are of the provided class
 	 */
 	public <T extends ElfDynamicEntry> List<T> getEntriesOfType(Class<T> c) {
+		ensureLoaded();
 		List<T> result = new ArrayList<T>();
 		for(ElfDynamicEntry e : entries) {
 			if(c.isInstance(e))
@@ -174,6 +185,21 @@ public class ElfDynamicSection extends ElfSection {
 		return result;
 	}
 	
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(!isLoaded())
+			return;
+		
+		// Each entry holds its own Type object and is referenced from both the list and the map
+		long size = ElfMemoryEstimate.listSize(entries.size()) 
+				+ entries.size() * (ElfMemoryEstimate.objectSize(2, 8) + ElfMemoryEstimate.objectSize(0, 4));
+		size += ElfMemoryEstimate.objectSize(3, 16) + ElfMemoryEstimate.arraySize(Integer.highestOneBit(Math.max(1, map.size()) * 2) * 2, ElfMemoryEstimate.REFERENCE);
+		for(List<ElfDynamicEntry> l : map.values())
+			size += ElfMemoryEstimate.objectSize(3, 4) + ElfMemoryEstimate.objectSize(0, 4) + ElfMemoryEstimate.listSize(l.size());
+		estimate.add(ElfMemoryEstimate.DYNAMIC, size);
+	}
+	
 	public ElfStringTableSection getStringTable() {
 		return this.getUniqueEntryOfType(new ElfDynamicEntry.Type(ElfDynamicEntry.Type.STRTAB), 
 				ElfStringTableDynamicEntry.class).getStringTable();
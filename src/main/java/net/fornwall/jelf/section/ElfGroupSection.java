@@ -0,0 +1,166 @@
+package net.fornwall.jelf.section;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.ElfSectionHeaders;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+import net.fornwall.jelf.section.symbol.ElfSymbol;
+
+/**
+ * A section group (SHT_GROUP) of a relocatable file. The sections of a group are kept or
+ * discarded together by the linker, which keeps a single copy of each COMDAT group signature,
+ * for example for the instantiations of a C++ template in many objects.
+ */
+public class ElfGroupSection extends ElfSection {
+	public static final class Flag {
+		/** GRP_COMDAT: Only one group with the same signature is kept */
+		public static final int COMDAT = 0x1;
+		/** GRP_MASKOS: OS-specific flags */
+		public static final int MASKOS = 0x0ff00000;
+		/** GRP_MASKPROC: Processor-specific flags */
+		public static final int MASKPROC = 0xf0000000;
+	}
+
+	private int flags;
+	private int[] members;
+
+	protected ElfGroupSection(ElfSection s) {
+		super(s);
+	}
+
+	@Override
+	protected void loadContents() {
+		if(getFileSize() < 4 || getFileSize() % 4 != 0 || getFileSize() > Integer.MAX_VALUE)
+			throw new ElfException("Invalid size of section group " + getName() + ": " + getFileSize());
+
+		// A flag word followed by the section header indexes of the members
+		IntBuffer words = getFile().getParser().getByteBuffer(getFileOffset(), (int)getFileSize()).asIntBuffer();
+		flags = words.get();
+		members = new int[words.remaining()];
+		words.get(members);
+
+		getFile().getParser().getMetrics().entriesDecoded(getType().val, members.length);
+	}
+
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(!isLoaded())
+			return;
+
+		estimate.add(ElfMemoryEstimate.HEADERS, ElfMemoryEstimate.arraySize(members.length, 4));
+	}
+
+	/**
+	 * @return Returns the flags of the group, see {@link Flag}
+	 */
+	public int getGroupFlags() {
+		ensureLoaded();
+		return flags;
+	}
+
+	/**
+	 * @return Returns true if the group is a COMDAT group
+	 */
+	public boolean isComdat() {
+		return (getGroupFlags() & Flag.COMDAT) != 0;
+	}
+
+	/**
+	 * @return Returns the number of sections in the group
+	 */
+	public int getMemberCount() {
+		ensureLoaded();
+		return members.length;
+	}
+
+	/**
+	 * @param index the index of a member
+	 * @return Returns the section header index of the member
+	 */
+	public int getMemberIndex(int index) {
+		ensureLoaded();
+		if(index < 0 || index >= members.length)
+			throw new ElfException("Group member index out of bounds: " + index);
+		return members[index];
+	}
+
+	/**
+	 * @return Returns the section header indexes of the members
+	 */
+	public int[] getMemberIndexes() {
+		ensureLoaded();
+		return members.clone();
+	}
+
+	/**
+	 * @return Returns the sections in the group
+	 */
+	public List<ElfSection> getMembers() {
+		ensureLoaded();
+		List<ElfSection> result = new ArrayList<ElfSection>(members.length);
+		for(int index : members)
+			result.add(getFile().getSectionHeaders().getSectionByIndex(index));
+		return result;
+	}
+
+	/**
+	 * @return Returns the symbol table holding the signature symbol
+	 */
+	public ElfSymbolTableSection getSymbolTable() {
+		return (ElfSymbolTableSection)super.getLink(ElfSymbolTableSection.class);
+	}
+
+	/**
+	 * @return Returns the symbol whose name identifies the group
+	 */
+	public ElfSymbol getSignatureSymbol() {
+		return getSymbolTable().getSymbol(getInfo());
+	}
+
+	/**
+	 * @return Returns the signature of the group, which is the name of the section for section symbols
+	 */
+	public String getSignature() {
+		ElfSymbol symbol = getSignatureSymbol();
+		if(symbol.getType().val == ElfSymbol.Type.SECTION && symbol.getNameIndex() == 0)
+			return symbol.getSection().getName();
+		return symbol.getName();
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the formatted contents of this section.
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table((isComdat() ? "COMDAT group" : "group") + " section '" + getName() + "' ["
+				+ getSignature() + "] contains " + getMemberCount() + " sections:");
+
+		// Column names
+		t.add("[Index]");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Name");
+		t.setColAlign(Align.LEFT);
+
+		ElfSectionHeaders sections = getFile().getSectionHeaders();
+		for(int index : members) {
+			t.newRow();
+			t.add("[" + index + "]");
+			t.add(index >= 0 && index < sections.size() ? sections.getSectionByIndex(index).getName() : "<invalid>");
+		}
+
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
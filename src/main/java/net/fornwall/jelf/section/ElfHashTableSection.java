@@ -1,6 +1,7 @@
 package net.fornwall.jelf.section;
 
 import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
 import net.fornwall.jelf.ElfParser;
 import net.fornwall.jelf.section.symbol.ElfSymbol;
 
@@ -10,10 +11,13 @@ public class ElfHashTableSection extends ElfSection {
 	
 	protected ElfHashTableSection(ElfSection s) {
 		super(s);
-		
-		ElfParser parser = s.getFile().getParser();
-		long offset = s.getFileOffset();
-		long length = s.getFileSize();
+	}
+	
+	@Override
+	protected void loadContents() {
+		ElfParser parser = getFile().getParser();
+		long offset = getFileOffset();
+		long length = getFileSize();
 		
 		parser.seek(offset);
 		int num_buckets = parser.readInt();
@@ -38,8 +42,20 @@ public class ElfHashTableSection extends ElfSection {
 		if (length != actual) {
 			throw new ElfException("Error reading hash table (read " + actual + "bytes, expected to " + "read " + length + "bytes).");
 		}
+		
+		getFile().getParser().getMetrics().entriesDecoded(getType().val, num_buckets + num_chains);
 	}
 
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(!isLoaded())
+			return;
+		
+		estimate.add(ElfMemoryEstimate.HASH_TABLES, ElfMemoryEstimate.arraySize(buckets.length, 4) 
+				+ ElfMemoryEstimate.arraySize(chains.length, 4));
+	}
+	
 	/**
 	 * Gets the {@link ElfSymbol} with the specified name
 	 */
@@ -47,6 +63,7 @@ public class ElfHashTableSection extends ElfSection {
 		 if (symbolName == null) {
 			 return null;
 		 }
+		 ensureLoaded();
 		 
 		 // Make sure mod is positive
 		 int index = (int)(((hash(symbolName) % buckets.length) + buckets.length) % buckets.length);
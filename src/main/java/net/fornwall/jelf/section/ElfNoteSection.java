@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
 import net.fornwall.jelf.Table;
 import net.fornwall.jelf.Table.Align;
 import net.fornwall.jelf.section.note.ElfNote;
@@ -16,7 +17,10 @@ public class ElfNoteSection extends ElfSection {
     
     protected ElfNoteSection(ElfSection s) {
     	super(s);
-    	
+    }
+    
+    @Override
+    protected void loadContents() {
     	notes = new ArrayList<ElfNote>();
     	
     	long offset = super.getFileOffset();
@@ -25,6 +29,8 @@ public class ElfNoteSection extends ElfSection {
     		notes.add(n);
     		offset += n.getFileSize();
     	}
+    	
+    	getFile().getParser().getMetrics().entriesDecoded(getType().val, notes.size());
     }
     
     /**
@@ -32,6 +38,7 @@ public class ElfNoteSection extends ElfSection {
      * @return Returns the note at the requested index
      */
     public ElfNote getNote(int index) {
+    	ensureLoaded();
     	try {
     		return notes.get(index);
     	}
@@ -40,10 +47,25 @@ public class ElfNoteSection extends ElfSection {
     	}
     }
     
+    @Override
+    public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+    	super.estimateRetainedBytes(estimate);
+    	if(!isLoaded())
+    		return;
+    	
+    	long size = ElfMemoryEstimate.listSize(notes.size());
+    	for(ElfNote n : notes) {
+    		size += ElfMemoryEstimate.objectSize(3, 4) + ElfMemoryEstimate.stringSize(n.getNoteName()) 
+    				+ ElfMemoryEstimate.arraySize(n.getDescSize(), 1);
+    	}
+    	estimate.add(ElfMemoryEstimate.NOTES, size);
+    }
+    
     /**
      * @return Returns the number of notes in this section
      */
     public int getNoteCount() {
+    	ensureLoaded();
     	return notes.size();
     }
     
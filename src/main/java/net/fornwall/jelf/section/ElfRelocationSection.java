@@ -1,6 +1,7 @@
 package net.fornwall.jelf.section;
 
 import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
 import net.fornwall.jelf.Table;
 import net.fornwall.jelf.Table.Align;
 import net.fornwall.jelf.section.relocation.ElfAddendRelocation;
@@ -12,20 +13,41 @@ public class ElfRelocationSection extends ElfSection {
 	
 	protected ElfRelocationSection(ElfSection s) {
 		super(s);
-		
+	}
+	
+	@Override
+	protected void loadContents() {
 		int size = (int) (super.getFileSize() / super.getEntrySize());
 		relocations = new ElfRelocation[size];
 		
 		for(int i = 0; i < size; i++) {
 			long offset = super.getFileOffset() + (i * super.getEntrySize());
-			relocations[i] = ElfRelocation.relocationFactory(s.getFile(), this, offset);
+			relocations[i] = ElfRelocation.relocationFactory(getFile(), this, offset);
+		}
+		
+		getFile().getParser().getMetrics().entriesDecoded(getType().val, size);
+	}
+	
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(!isLoaded())
+			return;
+		
+		// Each relocation holds its own Type object
+		long size = ElfMemoryEstimate.arraySize(relocations.length, ElfMemoryEstimate.REFERENCE);
+		for(ElfRelocation re : relocations) {
+			size += ElfMemoryEstimate.objectSize(2, re instanceof ElfAddendRelocation ? 28 : 20) 
+					+ ElfMemoryEstimate.objectSize(0, 4);
 		}
+		estimate.add(ElfMemoryEstimate.RELOCATIONS, size);
 	}
 	
 	/**
 	 * @return Returns the number of relocations in this relocation section
 	 */
 	public int getRelocationCount() {
+		ensureLoaded();
 		return relocations.length;
 	}
 	
@@ -34,6 +56,7 @@ public class ElfRelocationSection extends ElfSection {
 	 * @return Returns the relocation at the provied index
 	 */
 	public ElfRelocation getRelocation(int index) {
+		ensureLoaded();
 		if(index >= 0 && index < relocations.length)
 			return relocations[index];
 		throw new ElfException("Relocation index out of bounds");
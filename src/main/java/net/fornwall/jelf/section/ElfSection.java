@@ -1,8 +1,19 @@
 package net.fornwall.jelf.section;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import net.fornwall.jelf.ElfException;
 import net.fornwall.jelf.ElfFile;
 import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.ElfMetrics;
 import net.fornwall.jelf.ElfParser;
+import net.fornwall.jelf.compress.ZstdInputStream;
 
 /**
  * Class corresponding to the Elf32_Shdr/Elf64_Shdr struct.
@@ -109,6 +120,16 @@ public class ElfSection {
 		public static final int LOPROC = 0x70000000;
 		/** SHT_HIPROC: Upper bound of the range of indexes reserved for processor-specific semantics. */
 		public static final int HIPROC = 0x7fffffff;
+		/** SHT_ARM_EXIDX: ARM exception index table, see {@link ElfArmExidxSection} */
+		public static final int ARM_EXIDX = 0x70000001;
+		/** SHT_ARM_PREEMPTMAP: ARM BPABI DLL dynamic linking pre-emption map */
+		public static final int ARM_PREEMPTMAP = 0x70000002;
+		/** SHT_ARM_ATTRIBUTES: ARM object file compatibility attributes */
+		public static final int ARM_ATTRIBUTES = 0x70000003;
+		/** SHT_X86_64_UNWIND: x86-64 unwind information, the same value as {@link #ARM_EXIDX} */
+		public static final int X86_64_UNWIND = 0x70000001;
+		/** SHT_RISCV_ATTRIBUTES: RISC-V object file compatibility attributes */
+		public static final int RISCV_ATTRIBUTES = 0x70000003;
 		/** SHT_LOUSER: Lower bound of the range of indexes reserved for application programs. */
 		public static final int LOUSER = 0x80000000;
 		/** SHT_HIUSER: Upper bound of the range of indexes reserved for application programs. */
@@ -194,6 +215,36 @@ public class ElfSection {
 				return "?";
 			}
 		}
+		
+		/**
+		 * Processor specific types reuse the same values, so their names depend on the machine
+		 * 
+		 * @param machine the target machine of the file containing the section
+		 * @return Returns the name of this type or "?" if unknown type
+		 */
+		public String name(ElfHeader.Machine machine) {
+			switch(machine) {
+			case ARM:
+				if(val == ARM_EXIDX)
+					return "ARM_EXIDX";
+				if(val == ARM_PREEMPTMAP)
+					return "ARM_PREEMPTMAP";
+				if(val == ARM_ATTRIBUTES)
+					return "ARM_ATTRIBUTES";
+				break;
+			case X64:
+				if(val == X86_64_UNWIND)
+					return "X86_64_UNWIND";
+				break;
+			case RISCV:
+				if(val == RISCV_ATTRIBUTES)
+					return "RISCV_ATTRIBUTES";
+				break;
+			default:
+				break;
+			}
+			return name();
+		}
 	}
 	
 	public static final class Flag {
@@ -337,6 +388,12 @@ public class ElfSection {
 	private final long entry_size; // Elf32_Word
 
 	private final ElfFile file;
+	
+	/** Name of a section rebuilt from the dynamic segment, which has no section header string table */
+	private final String reconstructedName;
+	
+	/** Set once the contents of the section have been decoded by {@link #loadContents()} */
+	private volatile boolean loaded;
 
 	/** Reads the section header information located at offset. */
 	private ElfSection(final ElfFile file, long offset) {
@@ -355,6 +412,24 @@ public class ElfSection {
 		info = parser.readInt();
 		address_alignment = parser.readIntOrLong();
 		entry_size = parser.readIntOrLong();
+		reconstructedName = null;
+	}
+	
+	/** Describes a section which has no section header */
+	private ElfSection(final ElfFile file, String name, int type, long flags, long address, long offset, long size,
+			int link, int info, long alignment, long entrySize) {
+		this.file = file;
+		this.reconstructedName = name;
+		this.name_ndx = 0;
+		this.type = new Type(type);
+		this.flags = new Flag(flags);
+		this.address = address;
+		this.section_offset = offset;
+		this.size = size;
+		this.link = link;
+		this.info = info;
+		this.address_alignment = alignment;
+		this.entry_size = entrySize;
 	}
 	
 	/** Only to be called by subclasses */
@@ -371,11 +446,26 @@ public class ElfSection {
 		this.info = s.info;
 		this.address_alignment = s.address_alignment;
 		this.entry_size = s.entry_size;
+		this.reconstructedName = s.reconstructedName;
 	}
 	
 	public static ElfSection sectionFactory(final ElfFile file, long offset) {
-		ElfSection s = new ElfSection(file, offset);
-		
+		return specialize(file, new ElfSection(file, offset));
+	}
+	
+	/**
+	 * Creates a section of a file without section headers from the information of its program
+	 * headers, for example the dynamic symbol table located through PT_DYNAMIC. The arguments
+	 * are the fields of a section header.
+	 * 
+	 * @return Returns a section which is named directly instead of through the section header string table
+	 */
+	public static ElfSection reconstructedSectionFactory(final ElfFile file, String name, int type, long flags,
+			long address, long offset, long size, int link, int info, long alignment, long entrySize) {
+		return specialize(file, new ElfSection(file, name, type, flags, address, offset, size, link, info, alignment, entrySize));
+	}
+	
+	private static ElfSection specialize(final ElfFile file, ElfSection s) {
 		// Return subtypes for type specific handling
 		switch (s.type.val) {
 		case Type.SYMTAB:
@@ -394,11 +484,212 @@ public class ElfSection {
 			return new ElfNoteSection(s);
 		case Type.NOBITS:
 			return new ElfNoBitsSection(s);
+		case Type.GROUP:
+			return new ElfGroupSection(s);
+		case Type.ARM_EXIDX:
+			if(file.getHeader().getMachine() == ElfHeader.Machine.ARM)
+				return new ElfArmExidxSection(s);
+			break;
 		}
 		
 		return s;
 	}
 	
+	/**
+	 * Decodes the contents of this section the first time it is called. Subclasses call this
+	 * before accessing their decoded contents so that only the sections which are actually
+	 * used get parsed. Decoding holds the lock of the file's {@link ElfParser}, which makes it
+	 * safe to access the sections of a file from several threads.
+	 */
+	protected final void ensureLoaded() {
+		if(loaded)
+			return;
+		
+		ElfParser parser = file.getParser();
+		synchronized(parser) {
+			if(loaded)
+				return;
+			
+			ElfMetrics metrics = parser.getMetrics();
+			long start = System.nanoTime();
+			loadContents();
+			metrics.sectionDecoded(type.val, System.nanoTime() - start);
+			loaded = true;
+		}
+	}
+	
+	/**
+	 * Decodes the type specific contents of this section, called at most once by {@link #ensureLoaded()}
+	 * while holding the lock of the file's {@link ElfParser}
+	 */
+	protected void loadContents() {
+	}
+	
+	/**
+	 * @return Returns true if this section has no section header in the file but was rebuilt from
+	 * 	the program headers, see {@link #reconstructedSectionFactory}
+	 */
+	public boolean isReconstructed() {
+		return reconstructedName != null;
+	}
+	
+	/**
+	 * @return Returns true if the contents of this section have been decoded
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+	
+	/**
+	 * Reads the raw contents of this section from the file. Sections which occupy no space in
+	 * the file return an empty array.
+	 * 
+	 * @return Returns the raw bytes of this section
+	 */
+	public byte[] getData() {
+		return file.getParser().readBytes(section_offset, (int)getFileSize());
+	}
+	
+	/**
+	 * Returns the raw contents of this section as a buffer in the byte order of the file. For
+	 * memory mapped files the buffer shares the mapping instead of copying the contents.
+	 * 
+	 * @return Returns a read-only buffer positioned at the start of this section
+	 */
+	public ByteBuffer getDataBuffer() {
+		return file.getParser().getByteBuffer(section_offset, (int)getFileSize());
+	}
+	
+	/**
+	 * @return Returns true if the contents of this section are compressed, see
+	 * 	{@link #getCompressionHeader()}
+	 */
+	public boolean isCompressed() {
+		return flags.test(Flag.COMPRESSED) && type.val != Type.NOBITS;
+	}
+	
+	/**
+	 * @return Returns the header at the start of the contents of a compressed section
+	 * @throws ElfException if the section is not compressed
+	 */
+	public ElfCompressionHeader getCompressionHeader() {
+		if(!isCompressed())
+			throw new ElfException("Section " + getName() + " is not compressed");
+		return new ElfCompressionHeader(this);
+	}
+	
+	/**
+	 * @return Returns the size of the contents of this section after decompression
+	 */
+	public long getUncompressedSize() {
+		return isCompressed() ? getCompressionHeader().getSize() : getFileSize();
+	}
+	
+	/**
+	 * Returns the contents of this section, decompressed if the section is compressed. The
+	 * decompressed contents are kept in the bounded cache of the file, see
+	 * {@link ElfFile#getDecompressionCache()}, while the contents of other sections are returned
+	 * like {@link #getDataBuffer()} does.
+	 * 
+	 * @return Returns a read-only buffer of the contents in the byte order of the file
+	 */
+	public ByteBuffer getUncompressedDataBuffer() {
+		if(!isCompressed())
+			return getDataBuffer();
+		return file.getDecompressionCache().get(this);
+	}
+	
+	/**
+	 * Decompresses the contents of this section into a new array without caching them. The
+	 * compressed contents are read in chunks, only the decompressed contents are held at once.
+	 * 
+	 * @return Returns the decompressed contents
+	 * @throws ElfException if the section is not compressed or the contents are invalid
+	 */
+	public byte[] decompress() {
+		ElfCompressionHeader header = getCompressionHeader();
+		if(header.getSize() < 0 || header.getSize() > Integer.MAX_VALUE - 8)
+			throw new ElfException("Compressed section " + getName() + " of " + header.getSize() + " bytes is too large");
+		byte[] result = new byte[(int)header.getSize()];
+		
+		InputStream in = file.getParser().getInputStream(section_offset + header.getHeaderSize(), 
+				getFileSize() - header.getHeaderSize());
+		int length;
+		try {
+			switch(header.getType()) {
+			case ElfCompressionHeader.Type.ZLIB:
+				length = inflate(in, result);
+				break;
+			case ElfCompressionHeader.Type.ZSTD:
+				length = ZstdInputStream.decompress(in, result);
+				break;
+			default:
+				throw new ElfException("Unsupported compression of section " + getName() + ": " + header.getTypeName());
+			}
+		} catch(IOException | DataFormatException e) {
+			throw new ElfException("Invalid compressed section " + getName() + ": " + e.getMessage());
+		}
+		if(length != result.length)
+			throw new ElfException("Compressed section " + getName() + " has " + length + " bytes instead of " + result.length);
+		return result;
+	}
+	
+	private static int inflate(InputStream in, byte[] result) throws IOException, DataFormatException {
+		Inflater inflater = new Inflater();
+		try {
+			byte[] chunk = new byte[64 * 1024];
+			int length = 0;
+			while(!inflater.finished()) {
+				if(inflater.needsInput()) {
+					int n = in.read(chunk);
+					if(n < 0)
+						throw new DataFormatException("truncated zlib data");
+					inflater.setInput(chunk, 0, n);
+				}
+				int n = inflater.inflate(result, length, result.length - length);
+				length += n;
+				if(n == 0 && !inflater.finished() && !inflater.needsInput())
+					throw new DataFormatException(inflater.needsDictionary() ? "zlib dictionary required" 
+							: "more than " + result.length + " bytes of zlib data");
+			}
+			return length;
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Returns a stream of the contents of this section which decompresses them while they are
+	 * read, for sections too large to decompress at once. Sections which are not compressed are
+	 * streamed as they are.
+	 * 
+	 * @return Returns a stream of the decompressed contents
+	 * @throws ElfException if the compression is not supported
+	 */
+	public InputStream openUncompressedStream() {
+		if(!isCompressed())
+			return file.getParser().getInputStream(section_offset, getFileSize());
+		
+		ElfCompressionHeader header = getCompressionHeader();
+		InputStream in = file.getParser().getInputStream(section_offset + header.getHeaderSize(), 
+				getFileSize() - header.getHeaderSize());
+		switch(header.getType()) {
+		case ElfCompressionHeader.Type.ZLIB:
+			return new InflaterInputStream(in, new Inflater(), 64 * 1024) {
+				@Override
+				public void close() throws IOException {
+					// An inflater passed to the stream is not ended by it
+					super.close();
+					inf.end();
+				}
+			};
+		case ElfCompressionHeader.Type.ZSTD:
+			return new ZstdInputStream(in);
+		default:
+			throw new ElfException("Unsupported compression of section " + getName() + ": " + header.getTypeName());
+		}
+	}
+	
 	/**
 	 * This member specifies the name of the section. Its value is an index into the section
 	 * header string table section
@@ -524,10 +815,34 @@ public class ElfSection {
 		return file;
 	}
 	
+	/**
+	 * Adds the heap memory retained by this section to the provided estimate. Subclasses
+	 * add the memory retained by their decoded contents under the matching component.
+	 * 
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		// Section, Type and Flag objects
+		estimate.add(ElfMemoryEstimate.HEADERS, ElfMemoryEstimate.objectSize(3, 52) 
+				+ ElfMemoryEstimate.objectSize(0, 4) + ElfMemoryEstimate.objectSize(0, 8));
+	}
+	
+	/**
+	 * See {@link #estimateRetainedBytes(ElfMemoryEstimate)} for a breakdown by component
+	 * 
+	 * @return Returns the estimated number of heap bytes retained by this section
+	 */
+	public long estimateRetainedBytes() {
+		ElfMemoryEstimate estimate = new ElfMemoryEstimate();
+		estimateRetainedBytes(estimate);
+		return estimate.getTotal();
+	}
+	
 	/** 
 	 * @return Returns the name of the section, an empty string is returned if the section has no name
 	 */
 	public String getName() {
+		if (reconstructedName != null) return reconstructedName;
 		if (name_ndx == 0) return "";
 		return file.getSectionHeaders().getSectionStringTable().getString(name_ndx);
 	}
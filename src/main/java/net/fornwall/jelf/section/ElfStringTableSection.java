@@ -1,21 +1,51 @@
 package net.fornwall.jelf.section;
 
+import java.util.Arrays;
+
 import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.ElfMetrics;
 import net.fornwall.jelf.ElfParser;
 import net.fornwall.jelf.Table;
 import net.fornwall.jelf.Table.Align;
 
 public class ElfStringTableSection extends ElfSection {
+	/** Number of slots in the decoded string cache, must be a power of two */
+	private static final int CACHE_SIZE = 256;
+	
+	/** A decoded string together with its offset in the string table */
+	private static final class CachedString {
+		final int offset;
+		final String value;
+		
+		CachedString(int offset, String value) {
+			this.offset = offset;
+			this.value = value;
+		}
+	}
+	
 	/** The string table data. */
-	private final byte data[];
-	private final int numStrings;
+	private byte data[];
+	private int numStrings;
+	
+	/** 
+	 * Direct mapped cache of recently decoded strings. Entries are immutable so concurrent
+	 * readers at worst decode a string twice.
+	 */
+	private final CachedString[] cache = new CachedString[CACHE_SIZE];
+	private final ElfMetrics metrics;
 	
 	protected ElfStringTableSection(ElfSection s) {
 		super(s);
 		
-		ElfParser parser = s.getFile().getParser();
-		long offset = s.getFileOffset();
-		long length = s.getFileSize();
+		metrics = s.getFile().getParser().getMetrics();
+	}
+	
+	@Override
+	protected void loadContents() {
+		ElfParser parser = getFile().getParser();
+		long offset = getFileOffset();
+		long length = getFileSize();
 		
 		parser.seek(offset);
 		data = new byte[(int)length];
@@ -37,6 +67,8 @@ public class ElfStringTableSection extends ElfSection {
 		}
 		
 		numStrings = stringsCount;
+		
+		metrics.entriesDecoded(getType().val, numStrings);
 	}
 
 	/**
@@ -44,17 +76,61 @@ public class ElfStringTableSection extends ElfSection {
 	 * @return Returns the string at the provided offset
 	 */
 	public String getString(int offset) {
+		ensureLoaded();
+		
+		int slot = offset & (CACHE_SIZE - 1);
+		CachedString cached = cache[slot];
+		if(cached != null && cached.offset == offset) {
+			metrics.stringCacheHit();
+			return cached.value;
+		}
+		metrics.stringCacheMiss();
+		
 		int startPtr = offset;
 		int endPtr = offset;
 		while (data[endPtr] != '\0')
 			endPtr++;
-		return new String(data, startPtr, endPtr - startPtr);
+		String result = new String(data, startPtr, endPtr - startPtr);
+		metrics.stringDecoded(endPtr - startPtr);
+		
+		cache[slot] = new CachedString(offset, result);
+		return result;
+	}
+	
+	/**
+	 * Returns the raw bytes of a string without decoding it or touching the string cache
+	 *
+	 * @param offset the offset of the string in the string table
+	 * @return Returns a copy of the bytes of the string at the provided offset, excluding the terminator
+	 */
+	public byte[] getStringBytes(int offset) {
+		ensureLoaded();
+
+		int endPtr = offset;
+		while (endPtr < data.length && data[endPtr] != '\0')
+			endPtr++;
+		return Arrays.copyOfRange(data, offset, endPtr);
+	}
+
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(!isLoaded())
+			return;
+		
+		long size = ElfMemoryEstimate.arraySize(data.length, 1) + ElfMemoryEstimate.arraySize(cache.length, ElfMemoryEstimate.REFERENCE);
+		for(CachedString c : cache) {
+			if(c != null)
+				size += ElfMemoryEstimate.objectSize(1, 4) + ElfMemoryEstimate.stringSize(c.value);
+		}
+		estimate.add(ElfMemoryEstimate.STRINGS, size);
 	}
 	
 	/**
 	 * @return Returns the number of string in the string table
 	 */
 	public int getStringCount() {
+		ensureLoaded();
 		return numStrings;
 	}
 	
@@ -1,6 +1,10 @@
 package net.fornwall.jelf.section;
 
+import java.nio.IntBuffer;
+
 import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.ElfSectionHeaders;
 import net.fornwall.jelf.Table;
 import net.fornwall.jelf.Table.Align;
 import net.fornwall.jelf.section.symbol.ElfSymbol;
@@ -8,15 +12,23 @@ import net.fornwall.jelf.section.symbol.ElfSymbol;
 public class ElfSymbolTableSection extends ElfSection {
 	private ElfSymbol[] symbols;
 	
+	/** Section indexes of the associated SHT_SYMTAB_SHNDX section, decoded on first use */
+	private volatile int[] extendedSectionIndexes;
+	
 	protected ElfSymbolTableSection(ElfSection s) {
 		super(s);
-		
+	}
+	
+	@Override
+	protected void loadContents() {
 		int num_entries = (int) (super.getFileSize() / super.getEntrySize());
 		symbols = new ElfSymbol[num_entries];
 		for (int i = 0; i < num_entries; i++) {
 			long symbolOffset = super.getFileOffset() + (i * super.getEntrySize());
 			symbols[i] = ElfSymbol.symbolFactory(ElfSymbolTableSection.super.getFile(), this, symbolOffset);
 		}
+		
+		getFile().getParser().getMetrics().entriesDecoded(getType().val, num_entries);
 	}
 	
 	/**
@@ -24,17 +36,76 @@ public class ElfSymbolTableSection extends ElfSection {
 	 * @return Returns the symbol at the provided index
 	 */
 	public ElfSymbol getSymbol(int index) {
-		if(index > symbols.length || index < 0) {
+		ensureLoaded();
+		if(index >= symbols.length || index < 0) {
 			throw new ElfException("Symbol index out of bounds. Number of symbols is " 
 					+ symbols.length + " but " + index + " was provided");
 		}
 		return symbols[index];
 	}
 	
+	/**
+	 * Symbols of files with 0xff00 or more sections have the section index SHN_XINDEX, and the
+	 * actual index is in the SHT_SYMTAB_SHNDX section which links to this table.
+	 * 
+	 * @param index the index of a symbol
+	 * @return Returns the extended section index of the symbol, or 0 if this table has no
+	 * 	SHT_SYMTAB_SHNDX section
+	 */
+	public int getExtendedSectionIndex(int index) {
+		int[] indexes = extendedSectionIndexes;
+		if(indexes == null) {
+			synchronized(getFile().getParser()) {
+				indexes = extendedSectionIndexes;
+				if(indexes == null)
+					extendedSectionIndexes = indexes = loadExtendedSectionIndexes();
+			}
+		}
+		return index >= 0 && index < indexes.length ? indexes[index] : 0;
+	}
+	
+	private int[] loadExtendedSectionIndexes() {
+		ElfSectionHeaders sections = getFile().getSectionHeaders();
+		int self = -1;
+		for(int i = 0; i < sections.size() && self < 0; i++) {
+			if(sections.getSectionByIndex(i) == this)
+				self = i;
+		}
+		for(int i = 0; i < sections.size() && self >= 0; i++) {
+			ElfSection s = sections.getSectionByIndex(i);
+			if(s.getType().val != ElfSection.Type.SYMTAB_SHNDX || s.getLinkIndex() != self)
+				continue;
+			if(s.getFileSize() > Integer.MAX_VALUE)
+				throw new ElfException("Extended section index table " + s.getName() + " is too large");
+			// One Elf32_Word per symbol, decoded in bulk
+			IntBuffer words = getFile().getParser().getByteBuffer(s.getFileOffset(), (int)s.getFileSize()).asIntBuffer();
+			int[] indexes = new int[words.remaining()];
+			words.get(indexes);
+			return indexes;
+		}
+		return new int[0];
+	}
+	
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(!isLoaded())
+			return;
+		
+		// Each symbol holds its own Other, SectionIndex, Binding and Type objects
+		long perSymbol = ElfMemoryEstimate.objectSize(5, 26) + 4 * ElfMemoryEstimate.objectSize(0, 4);
+		estimate.add(ElfMemoryEstimate.SYMBOLS, ElfMemoryEstimate.arraySize(symbols.length, ElfMemoryEstimate.REFERENCE) 
+				+ symbols.length * perSymbol);
+		int[] indexes = extendedSectionIndexes;
+		if(indexes != null)
+			estimate.add(ElfMemoryEstimate.SYMBOLS, ElfMemoryEstimate.arraySize(indexes.length, 4));
+	}
+	
 	/**
 	 * @return Returns the number of symbols in this symbol table
 	 */
 	public int getSymbolCount() {
+		ensureLoaded();
 		return symbols.length;
 	}
 	
@@ -116,7 +187,8 @@ public class ElfSymbolTableSection extends ElfSection {
 			t.add(e.getOther().name());
 			
 			// Section Index
-			t.add(e.getSectionHeaderIndex().name());
+			t.add(e.getSectionHeaderIndex().val == ElfSymbol.SectionIndex.XINDEX
+					? Integer.toUnsignedString(e.getSectionIndex()) : e.getSectionHeaderIndex().name());
 			
 			// Name
 			t.add(e.getName());
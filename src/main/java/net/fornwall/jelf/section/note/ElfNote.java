@@ -1,23 +1,31 @@
 package net.fornwall.jelf.section.note;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import net.fornwall.jelf.ElfException;
 import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.ElfHeader;
 import net.fornwall.jelf.ElfParser;
 import net.fornwall.jelf.section.ElfNoteSection;
+import net.fornwall.jelf.segment.ElfNoteSegment;
 
 public class ElfNote {
     private int type;
+    private int nameSize;
     private String name;
     private byte[] note;
     
+    private final ElfFile file;
     private ElfNoteSection section;
+    private ElfNoteSegment segment;
     
-    private ElfNote(ElfNoteSection section, long offset) {
-    	this.section = section;
-    	ElfParser parser = section.getFile().getParser();
+    private ElfNote(ElfFile file, long offset) {
+    	this.file = file;
+    	ElfParser parser = file.getParser();
     	
         parser.seek(offset);
-        int nameSize = parser.readInt();
+        nameSize = parser.readInt();
         int descSize = parser.readInt();
         
         type = parser.readInt();
@@ -48,27 +56,44 @@ public class ElfNote {
             bytesRead += 1;
         }
         
-        name = new String(nameBytes, 0, nameSize-1); // unnecessary trailing '\0'
+        name = nameSize == 0 ? "" : new String(nameBytes, 0, nameSize-1); // unnecessary trailing '\0'
     }
     
     public static ElfNote noteFactory(ElfNoteSection section, long offset) {
-    	return new ElfNote(section, offset);
+    	ElfNote n = new ElfNote(section.getFile(), offset);
+    	n.section = section;
+    	return n;
+    }
+    
+    public static ElfNote noteFactory(ElfNoteSegment segment, long offset) {
+    	ElfNote n = new ElfNote(segment.getFile(), offset);
+    	n.segment = segment;
+    	return n;
     }
     
     /**
      * @return Returns the file that contains this note
      */
     public ElfFile getFile() {
-    	return section.getFile();
+    	return file;
     }
     
     /**
-     * @return Returns the {@link ElfNoteSection} that contains this note
+     * @return Returns the {@link ElfNoteSection} that contains this note, or null if the note
+     * 	was read from a segment
      */
     public ElfNoteSection getSection() {
     	return section;
     }
     
+    /**
+     * @return Returns the {@link ElfNoteSegment} that contains this note, or null if the note
+     * 	was read from a section
+     */
+    public ElfNoteSegment getSegment() {
+    	return segment;
+    }
+    
     /**
      * @return Returns the name of this note
      */
@@ -83,6 +108,14 @@ public class ElfNote {
     	return new String(note);
     }
     
+    /**
+     * @return Returns a read-only buffer over the description in the byte order of the file
+     */
+    public ByteBuffer getDescBuffer() {
+    	ByteOrder order = file.getHeader().getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    	return ByteBuffer.wrap(note).asReadOnlyBuffer().order(order);
+    }
+    
     /**
      * @param index the index of the byte in the description to access
      * @return Returns the byte at the provided index
@@ -135,9 +168,9 @@ public class ElfNote {
      * @return Returns the size of the note name including extra characters and padding
      */
     public int getNameRawSize() {
-    	if(name.length() % 4 == 0)
-    		return name.length();
-    	return name.length() + 4 - (name.length() % 4);
+    	if(nameSize % 4 == 0)
+    		return nameSize;
+    	return nameSize + 4 - (nameSize % 4);
     }
     
     /**
@@ -0,0 +1,96 @@
+package net.fornwall.jelf.section.note;
+
+/**
+ * Types of notes. Note types are only unique together with the name of the owner, so the
+ * same value has a different meaning for the CORE and GNU owners.
+ *
+ * <pre>
+ * https://github.com/torvalds/linux/blob/master/include/uapi/linux/elf.h
+ * </pre>
+ */
+public final class ElfNoteType {
+	/** Owner of the notes of core files */
+	public static final String CORE = "CORE";
+	/** Owner of the notes holding extended register sets in core files */
+	public static final String LINUX = "LINUX";
+	/** Owner of the notes written by the GNU toolchain */
+	public static final String GNU = "GNU";
+
+	/** NT_PRSTATUS: Status and general purpose registers of a thread, owner CORE */
+	public static final int PRSTATUS = 1;
+	/** NT_FPREGSET: Floating point registers of the preceding thread, owner CORE */
+	public static final int FPREGSET = 2;
+	/** NT_PRPSINFO: Information about the process, owner CORE */
+	public static final int PRPSINFO = 3;
+	/** NT_TASKSTRUCT: Task structure of the process, owner CORE */
+	public static final int TASKSTRUCT = 4;
+	/** NT_AUXV: Auxiliary vector of the process, owner CORE */
+	public static final int AUXV = 6;
+	/** NT_SIGINFO: Signal information of the preceding thread, owner CORE */
+	public static final int SIGINFO = 0x53494749;
+	/** NT_FILE: Files mapped into the process, owner CORE */
+	public static final int FILE = 0x46494c45;
+	/** NT_PRXFPREG: Extended floating point registers of the preceding thread, owner LINUX */
+	public static final int PRXFPREG = 0x46e62b7f;
+	/** NT_X86_XSTATE: x86 extended state of the preceding thread, owner LINUX */
+	public static final int X86_XSTATE = 0x202;
+
+	/** NT_GNU_ABI_TAG: Operating system ABI the object was built for, owner GNU */
+	public static final int GNU_ABI_TAG = 1;
+	/** NT_GNU_HWCAP: Hardware capabilities, owner GNU */
+	public static final int GNU_HWCAP = 2;
+	/** NT_GNU_BUILD_ID: Unique identifier of the build, owner GNU */
+	public static final int GNU_BUILD_ID = 3;
+	/** NT_GNU_GOLD_VERSION: Version of the gold linker, owner GNU */
+	public static final int GNU_GOLD_VERSION = 4;
+	/** NT_GNU_PROPERTY_TYPE_0: Program properties, owner GNU */
+	public static final int GNU_PROPERTY_TYPE_0 = 5;
+
+	private ElfNoteType() {
+	}
+
+	/**
+	 * @param owner the name of the owner of the note
+	 * @param type the type of the note
+	 * @return Returns the name of the type, like readelf --notes
+	 */
+	public static String name(String owner, int type) {
+		if(CORE.equals(owner) || LINUX.equals(owner)) {
+			switch(type) {
+			case PRSTATUS:
+				return "NT_PRSTATUS";
+			case FPREGSET:
+				return "NT_FPREGSET";
+			case PRPSINFO:
+				return "NT_PRPSINFO";
+			case TASKSTRUCT:
+				return "NT_TASKSTRUCT";
+			case AUXV:
+				return "NT_AUXV";
+			case SIGINFO:
+				return "NT_SIGINFO";
+			case FILE:
+				return "NT_FILE";
+			case PRXFPREG:
+				return "NT_PRXFPREG";
+			case X86_XSTATE:
+				return "NT_X86_XSTATE";
+			}
+		}
+		else if(GNU.equals(owner)) {
+			switch(type) {
+			case GNU_ABI_TAG:
+				return "NT_GNU_ABI_TAG";
+			case GNU_HWCAP:
+				return "NT_GNU_HWCAP";
+			case GNU_BUILD_ID:
+				return "NT_GNU_BUILD_ID";
+			case GNU_GOLD_VERSION:
+				return "NT_GNU_GOLD_VERSION";
+			case GNU_PROPERTY_TYPE_0:
+				return "NT_GNU_PROPERTY_TYPE_0";
+			}
+		}
+		return "0x" + Integer.toHexString(type);
+	}
+}
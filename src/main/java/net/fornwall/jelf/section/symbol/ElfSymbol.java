@@ -222,7 +222,7 @@ public class ElfSymbol {
 					return "OS";
 				if(val >= LORESERVE && val <= HIRESERVE)
 					return "RESERVED";
-				return Short.toString(val);
+				return Integer.toString(val & 0xffff);
 			}
 		}
 		
@@ -252,6 +252,8 @@ public class ElfSymbol {
 	 * ELFSectionHeader.NDX_LORESERVE and ELFSectionHeader.NDX_HIRESERVE.
 	 */
 	private final SectionIndex section_header_ndx; // Elf32_Half
+	/** The section index as an unsigned value, from the SHT_SYMTAB_SHNDX section for SHN_XINDEX */
+	private final int sectionIndex;
 	
 	// Calculated values
 	private final Binding binding;
@@ -283,6 +285,11 @@ public class ElfSymbol {
 		
 		binding = new Binding(info >> 4);
 		type = new Type(info & 0xf);
+		
+		if(section_header_ndx.val == SectionIndex.XINDEX)
+			sectionIndex = table.getExtendedSectionIndex((int)((offset - table.getFileOffset()) / table.getEntrySize()));
+		else
+			sectionIndex = section_header_ndx.val & 0xffff;
 	}
 	
 	protected ElfSymbol(ElfSymbol sym) {
@@ -293,6 +300,7 @@ public class ElfSymbol {
 		this.info = sym.info;
 		this.other = sym.other;
 		this.section_header_ndx = sym.section_header_ndx;
+		this.sectionIndex = sym.sectionIndex;
 		this.binding = sym.binding;
 		this.type = sym.type;
 	}
@@ -364,6 +372,16 @@ public class ElfSymbol {
 		return section_header_ndx;
 	}
 	
+	/**
+	 * Unlike {@link #getSectionHeaderIndex()} this is the actual index for symbols of files
+	 * with 0xff00 or more sections, whose index is SHN_XINDEX.
+	 * 
+	 * @return Returns the unsigned index of the section this symbol is associated with
+	 */
+	public int getSectionIndex() {
+		return sectionIndex;
+	}
+	
 	/** @return Returns the file this symbol is associated with */
 	public ElfFile getFile() {
 		return table.getFile();
@@ -386,15 +404,15 @@ public class ElfSymbol {
 	
 	/** @return Returns the section associated with this symbol */
 	public ElfSection getSection() {
-		if(section_header_ndx.isReserved())
+		if(section_header_ndx.isReserved() && section_header_ndx.val != SectionIndex.XINDEX)
 			throw new ElfException("Attempting to access reserved section: " + section_header_ndx.name());
-		return table.getFile().getSectionHeaders().getSectionByIndex(section_header_ndx.val);
+		return table.getFile().getSectionHeaders().getSectionByIndex(sectionIndex);
 	}
 	
 	/** @return Returns the section associated with the symbol and insures it is of a certion type c */
 	public ElfSection getSection(Class<? extends ElfSection> c) {
-		if(section_header_ndx.isReserved())
+		if(section_header_ndx.isReserved() && section_header_ndx.val != SectionIndex.XINDEX)
 			throw new ElfException("Attempting to access reserved section: " + section_header_ndx.name());
-		return table.getFile().getSectionHeaders().getSectionByIndex(section_header_ndx.val, c);
+		return table.getFile().getSectionHeaders().getSectionByIndex(sectionIndex, c);
 	}
 }
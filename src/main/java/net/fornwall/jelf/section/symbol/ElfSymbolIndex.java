@@ -0,0 +1,151 @@
+package net.fornwall.jelf.section.symbol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.section.ElfSymbolTableSection;
+
+/**
+ * Finds the function containing an address. The defined function symbols of the symbol
+ * tables are sorted by address into primitive arrays once, and each lookup is a binary search.
+ * A function without a size is taken to extend to the next function.
+ *
+ * <pre>
+ * ElfSymbolIndex index = file.getSymbolIndex();
+ * ElfSymbol function = index.find(0x4f60);
+ * </pre>
+ */
+public class ElfSymbolIndex {
+	private final long[] starts;
+	private final long[] ends;
+	private final ElfSymbol[] symbols;
+
+	/**
+	 * @param tables the symbol tables to index, earlier tables win for symbols at the same address
+	 * @param machine the machine of the file, the Thumb bit of ARM function addresses is cleared
+	 */
+	public ElfSymbolIndex(List<ElfSymbolTableSection> tables, ElfHeader.Machine machine) {
+		final long mask = machine == ElfHeader.Machine.ARM ? ~1L : ~0L;
+		List<ElfSymbol> functions = new ArrayList<ElfSymbol>();
+		for(ElfSymbolTableSection table : tables) {
+			for(int i = 0; i < table.getSymbolCount(); i++) {
+				ElfSymbol s = table.getSymbol(i);
+				int type = s.getType().val;
+				if((type == ElfSymbol.Type.FUNC || type == ElfSymbol.Type.GNU_IFUNC) && s.getValue() != 0
+						&& s.getSectionHeaderIndex().val != ElfSymbol.SectionIndex.UNDEF)
+					functions.add(s);
+			}
+		}
+		// Stable, so the order of the tables decides between symbols at the same address
+		Collections.sort(functions, new Comparator<ElfSymbol>() {
+			@Override
+			public int compare(ElfSymbol a, ElfSymbol b) {
+				return Long.compareUnsigned(a.getValue() & mask, b.getValue() & mask);
+			}
+		});
+
+		List<ElfSymbol> unique = new ArrayList<ElfSymbol>(functions.size());
+		for(ElfSymbol s : functions) {
+			ElfSymbol previous = unique.isEmpty() ? null : unique.get(unique.size() - 1);
+			if(previous == null || (previous.getValue() & mask) != (s.getValue() & mask))
+				unique.add(s);
+			else if(previous.getBinding().val == ElfSymbol.Binding.LOCAL && s.getBinding().val != ElfSymbol.Binding.LOCAL)
+				unique.set(unique.size() - 1, s);
+		}
+
+		int count = unique.size();
+		starts = new long[count];
+		ends = new long[count];
+		symbols = unique.toArray(new ElfSymbol[count]);
+		for(int i = 0; i < count; i++)
+			starts[i] = symbols[i].getValue() & mask;
+		for(int i = 0; i < count; i++) {
+			if(symbols[i].getSize() != 0)
+				ends[i] = starts[i] + symbols[i].getSize();
+			else
+				ends[i] = i + 1 < count ? starts[i + 1] : starts[i] + 1;
+		}
+	}
+
+	/**
+	 * @return Returns the number of indexed functions
+	 */
+	public int size() {
+		return symbols.length;
+	}
+
+	/**
+	 * @param index the index of the function, functions are sorted by address
+	 * @return Returns the symbol of the function
+	 */
+	public ElfSymbol getSymbol(int index) {
+		return symbols[index];
+	}
+
+	/**
+	 * @param index the index of the function, functions are sorted by address
+	 * @return Returns the address of the function, without the Thumb bit on ARM
+	 */
+	public long getStart(int index) {
+		return starts[index];
+	}
+
+	/**
+	 * @param index the index of the function, functions are sorted by address
+	 * @return Returns the address following the function, which is the next function for
+	 * 	functions without a size
+	 */
+	public long getEnd(int index) {
+		return ends[index];
+	}
+
+	/**
+	 * @param address an address in the file
+	 * @return Returns the index of the function containing the address, or -1 if there is none
+	 */
+	public int findIndex(long address) {
+		int low = 0;
+		int high = starts.length - 1;
+		int found = -1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(Long.compareUnsigned(starts[mid], address) <= 0) {
+				found = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		if(found < 0 || Long.compareUnsigned(address - starts[found], ends[found] - starts[found]) >= 0)
+			return -1;
+		return found;
+	}
+
+	/**
+	 * @param address an address in the file
+	 * @return Returns the function containing the address, or null if there is none
+	 */
+	public ElfSymbol find(long address) {
+		int index = findIndex(address);
+		return index < 0 ? null : symbols[index];
+	}
+
+	/**
+	 * @return Returns an estimate of the heap memory retained by this index, not counting the
+	 * 	symbols which are retained by their tables
+	 */
+	public long estimateRetainedBytes() {
+		return ElfMemoryEstimate.objectSize(3, 0) + 2 * ElfMemoryEstimate.arraySize(symbols.length, 8)
+				+ ElfMemoryEstimate.arraySize(symbols.length, ElfMemoryEstimate.REFERENCE);
+	}
+
+	@Override
+	public String toString() {
+		return "ElfSymbolIndex[functions=" + symbols.length + "]";
+	}
+}
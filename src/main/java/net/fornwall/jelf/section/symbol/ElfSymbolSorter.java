@@ -0,0 +1,423 @@
+package net.fornwall.jelf.section.symbol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfFile;
+import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.section.ElfSection;
+import net.fornwall.jelf.section.ElfStringTableSection;
+import net.fornwall.jelf.section.ElfSymbolTableSection;
+
+/**
+ * Produces nm style symbol listings sorted by address, size or name while keeping memory use
+ * bounded. Symbol table entries are decoded straight from the section bytes into compact records
+ * without creating {@link ElfSymbol} objects or name strings. Whenever the buffered records
+ * exceed the memory budget they are sorted and spilled to a temporary file, and the spilled runs
+ * are merged while the listing is written.
+ *
+ * <pre>
+ * ElfSymbolSorter sorter = new ElfSymbolSorter(ElfSymbolSorter.Order.ADDRESS);
+ * sorter.add(file.getSectionHeaders().getSymbolTable());
+ * sorter.write(System.out);
+ * </pre>
+ */
+public class ElfSymbolSorter {
+	/** Sort order of the listing */
+	public enum Order {
+		/** Sort by symbol value, like nm -n */
+		ADDRESS,
+		/** Sort by symbol size, like nm --size-sort. Only defined symbols with a size are listed */
+		SIZE,
+		/** Sort by symbol name, the default order of nm */
+		NAME
+	}
+
+	/** Default memory budget for buffered records */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	/** Number of symbol table bytes read from the file at a time */
+	private static final int READ_CHUNK = 64 * 1024;
+
+	/** Estimated heap size of a record excluding its name bytes */
+	private static final long RECORD_OVERHEAD = ElfMemoryEstimate.objectSize(1, 26)
+			+ ElfMemoryEstimate.arraySize(0, 1) + ElfMemoryEstimate.REFERENCE;
+
+	/** A decoded symbol: value, size, nm type letter and name bytes */
+	private static final class Record {
+		final long sequence;
+		final long value;
+		final long size;
+		final char type;
+		final byte[] name;
+
+		Record(long sequence, long value, long size, char type, byte[] name) {
+			this.sequence = sequence;
+			this.value = value;
+			this.size = size;
+			this.type = type;
+			this.name = name;
+		}
+	}
+
+	/** Reader of a spilled run together with its current record */
+	private static final class Run {
+		final DataInputStream in;
+		Record current;
+
+		Run(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		}
+
+		boolean advance() throws IOException {
+			try {
+				current = readRecord(in);
+				return true;
+			} catch (EOFException e) {
+				current = null;
+				in.close();
+				return false;
+			}
+		}
+	}
+
+	private final Order order;
+	private final Comparator<Record> comparator;
+
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private File tempDirectory;
+	private boolean reverse;
+	private boolean wideAddresses;
+
+	private final List<Record> buffer = new ArrayList<Record>();
+	/** Number of symbols added so far, used to keep equal symbols in symbol table order */
+	private long sequence;
+	private long bufferedBytes;
+	private final List<File> runs = new ArrayList<File>();
+
+	public ElfSymbolSorter(Order order) {
+		this.order = order;
+		switch(order) {
+		case ADDRESS:
+			comparator = new Comparator<Record>() {
+				@Override
+				public int compare(Record a, Record b) {
+					// Undefined symbols first by name, then by address
+					boolean undefined = isUndefined(a);
+					int c = Boolean.compare(!undefined, !isUndefined(b));
+					if(c == 0 && !undefined)
+						c = Long.compareUnsigned(a.value, b.value);
+					if(c == 0)
+						c = compareNames(a, b);
+					return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+				}
+			};
+			break;
+		case SIZE:
+			comparator = new Comparator<Record>() {
+				@Override
+				public int compare(Record a, Record b) {
+					int c = Long.compareUnsigned(a.size, b.size);
+					if(c == 0)
+						c = compareNames(a, b);
+					return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+				}
+			};
+			break;
+		default:
+			comparator = new Comparator<Record>() {
+				@Override
+				public int compare(Record a, Record b) {
+					int c = compareNames(a, b);
+					return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+				}
+			};
+		}
+	}
+
+	/**
+	 * @param bytes the maximum estimated heap size of buffered records before they are spilled to disk
+	 */
+	public void setMemoryBudget(long bytes) {
+		if(bytes <= 0)
+			throw new IllegalArgumentException("Memory budget must be positive: " + bytes);
+		this.memoryBudget = bytes;
+	}
+
+	/**
+	 * @param directory the directory for spill files, or null to use the default temporary directory
+	 */
+	public void setTempDirectory(File directory) {
+		this.tempDirectory = directory;
+	}
+
+	/**
+	 * @param reverse true to list symbols in reverse order, like nm -r
+	 */
+	public void setReverse(boolean reverse) {
+		this.reverse = reverse;
+	}
+
+	/**
+	 * @return Returns the number of sorted runs which have been spilled to disk
+	 */
+	public int getSpillCount() {
+		return runs.size();
+	}
+
+	/**
+	 * Adds the symbols of the provided table to the listing. Null symbols, section symbols and
+	 * file symbols are skipped like nm does without -a.
+	 *
+	 * @param table the symbol table to add
+	 * @throws IOException if a spill file could not be written
+	 */
+	public void add(ElfSymbolTableSection table) throws IOException {
+		ElfFile file = table.getFile();
+		ElfHeader h = file.getHeader();
+		boolean is32 = h.getBitClass() == ElfHeader.BitClass.ELFCLASS32;
+		ByteOrder byteOrder = h.getDataFormat() == ElfHeader.DataFormat.ELFDATA2LSB ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		wideAddresses |= !is32;
+
+		int entrySize = (int)table.getEntrySize();
+		if(entrySize == 0)
+			throw new ElfException("Symbol table " + table.getName() + " has no entry size");
+		long count = table.getFileSize() / entrySize;
+		ElfStringTableSection strings = table.getStringTable();
+		int perChunk = Math.max(1, READ_CHUNK / entrySize);
+
+		// Symbol 0 is always the null symbol
+		for(long first = 1; first < count; first += perChunk) {
+			int n = (int)Math.min(perChunk, count - first);
+			ByteBuffer chunk = ByteBuffer.wrap(file.getParser().readBytes(table.getFileOffset() + first * entrySize, n * entrySize)).order(byteOrder);
+
+			for(int i = 0; i < n; i++) {
+				int pos = i * entrySize;
+				int nameIndex;
+				long value, size;
+				int info, shndx;
+				if(is32) {
+					nameIndex = chunk.getInt(pos);
+					value = chunk.getInt(pos + 4) & 0xffffffffL;
+					size = chunk.getInt(pos + 8) & 0xffffffffL;
+					info = chunk.get(pos + 12) & 0xff;
+					shndx = chunk.getShort(pos + 14) & 0xffff;
+				}
+				else {
+					nameIndex = chunk.getInt(pos);
+					info = chunk.get(pos + 4) & 0xff;
+					shndx = chunk.getShort(pos + 6) & 0xffff;
+					value = chunk.getLong(pos + 8);
+					size = chunk.getLong(pos + 16);
+				}
+
+				int type = info & 0xf;
+				if(type == ElfSymbol.Type.SECTION || type == ElfSymbol.Type.FILE)
+					continue;
+
+				int section = shndx == (ElfSymbol.SectionIndex.XINDEX & 0xffff)
+						? table.getExtendedSectionIndex((int)(first + i)) : shndx;
+				char letter = typeLetter(file, info >> 4, type, shndx, section);
+				if(order == Order.SIZE && (size == 0 || letter == 'U' || letter == 'w' || letter == 'v'))
+					continue;
+
+				Record r = new Record(sequence++, value, size, letter, strings.getStringBytes(nameIndex));
+				buffer.add(r);
+				bufferedBytes += RECORD_OVERHEAD + ElfMemoryEstimate.align(r.name.length);
+				if(bufferedBytes >= memoryBudget)
+					spill();
+			}
+		}
+	}
+
+	/**
+	 * Writes the sorted listing and removes all spill files. Each line holds the address (or size
+	 * when sorting by size), the nm type letter and the symbol name.
+	 *
+	 * @param out the destination of the listing
+	 * @throws IOException if the listing could not be written or a spill file could not be read
+	 */
+	public void write(Appendable out) throws IOException {
+		sortBuffer();
+
+		if(runs.isEmpty()) {
+			for(Record r : buffer)
+				writeRecord(r, out);
+			buffer.clear();
+			bufferedBytes = 0;
+			return;
+		}
+
+		// Merge the spilled runs with the records remaining in memory
+		final Comparator<Record> c = reverse ? Collections.reverseOrder(comparator) : comparator;
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size() + 1, new Comparator<Run>() {
+			@Override
+			public int compare(Run a, Run b) {
+				return c.compare(a.current, b.current);
+			}
+		});
+
+		List<Run> opened = new ArrayList<Run>();
+		try {
+			for(File f : runs) {
+				Run run = new Run(f);
+				opened.add(run);
+				if(run.advance())
+					queue.add(run);
+			}
+
+			int next = 0;
+			while(!queue.isEmpty() || next < buffer.size()) {
+				Run head = queue.peek();
+				if(next < buffer.size() && (head == null || c.compare(buffer.get(next), head.current) <= 0)) {
+					writeRecord(buffer.get(next++), out);
+					continue;
+				}
+
+				queue.poll();
+				writeRecord(head.current, out);
+				if(head.advance())
+					queue.add(head);
+			}
+		} finally {
+			for(Run run : opened)
+				run.in.close();
+			for(File f : runs)
+				f.delete();
+			runs.clear();
+			buffer.clear();
+			bufferedBytes = 0;
+		}
+	}
+
+	private void sortBuffer() {
+		Collections.sort(buffer, reverse ? Collections.reverseOrder(comparator) : comparator);
+	}
+
+	/** Sorts the buffered records and writes them to a new spill file */
+	private void spill() throws IOException {
+		sortBuffer();
+
+		File f = File.createTempFile("jelf-symbols", ".run", tempDirectory);
+		f.deleteOnExit();
+		runs.add(f);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 64 * 1024));
+		try {
+			for(Record r : buffer) {
+				out.writeLong(r.sequence);
+				out.writeLong(r.value);
+				out.writeLong(r.size);
+				out.writeByte(r.type);
+				out.writeInt(r.name.length);
+				out.write(r.name);
+			}
+		} finally {
+			out.close();
+		}
+
+		buffer.clear();
+		bufferedBytes = 0;
+	}
+
+	private static Record readRecord(DataInputStream in) throws IOException {
+		long sequence = in.readLong();
+		long value = in.readLong();
+		long size = in.readLong();
+		char type = (char)in.readUnsignedByte();
+		byte[] name = new byte[in.readInt()];
+		in.readFully(name);
+		return new Record(sequence, value, size, type, name);
+	}
+
+	private void writeRecord(Record r, Appendable out) throws IOException {
+		int digits = wideAddresses ? 16 : 8;
+		if(order != Order.SIZE && isUndefined(r)) {
+			for(int i = 0; i < digits; i++)
+				out.append(' ');
+		}
+		else {
+			String hex = Long.toHexString(order == Order.SIZE ? r.size : r.value);
+			for(int i = hex.length(); i < digits; i++)
+				out.append('0');
+			out.append(hex);
+		}
+		out.append(' ').append(r.type).append(' ');
+		out.append(new String(r.name, "UTF-8")).append('\n');
+	}
+
+	private static boolean isUndefined(Record r) {
+		return r.type == 'U' || r.type == 'w' || r.type == 'v';
+	}
+
+	/** Compares names as unsigned bytes, which matches strcmp in the C locale */
+	private static int compareNames(Record a, Record b) {
+		int n = Math.min(a.name.length, b.name.length);
+		for(int i = 0; i < n; i++) {
+			int c = (a.name[i] & 0xff) - (b.name[i] & 0xff);
+			if(c != 0)
+				return c;
+		}
+		return a.name.length - b.name.length;
+	}
+
+	/**
+	 * @return Returns the nm type letter of a symbol, lower case for local symbols
+	 */
+	private static char typeLetter(ElfFile file, int binding, int type, int shndx, int section) {
+		short index = (short)shndx;
+		if(index == ElfSymbol.SectionIndex.UNDEF) {
+			if(binding == ElfSymbol.Binding.WEAK)
+				return type == ElfSymbol.Type.OBJECT ? 'v' : 'w';
+			return 'U';
+		}
+		if(binding == ElfSymbol.Binding.GNU_UNIQUE)
+			return 'u';
+		if(type == ElfSymbol.Type.GNU_IFUNC)
+			return 'i';
+		if(binding == ElfSymbol.Binding.WEAK)
+			return type == ElfSymbol.Type.OBJECT ? 'V' : 'W';
+
+		char letter;
+		if(index == ElfSymbol.SectionIndex.ABS)
+			letter = 'A';
+		else if(index == ElfSymbol.SectionIndex.COMMON)
+			letter = 'C';
+		else if((shndx >= (ElfSymbol.SectionIndex.LORESERVE & 0xffff) && shndx != (ElfSymbol.SectionIndex.XINDEX & 0xffff))
+				|| Integer.compareUnsigned(section, file.getSectionHeaders().size()) >= 0)
+			letter = '?';
+		else {
+			ElfSection s = file.getSectionHeaders().getSectionByIndex(section);
+			ElfSection.Flag flags = s.getFlags();
+			if(flags.test(ElfSection.Flag.EXECINSTR))
+				letter = 'T';
+			else if(s.getType().val == ElfSection.Type.NOBITS)
+				letter = 'B';
+			else if(flags.test(ElfSection.Flag.ALLOC | ElfSection.Flag.WRITE))
+				letter = 'D';
+			else if(flags.test(ElfSection.Flag.ALLOC))
+				letter = 'R';
+			else
+				letter = 'N';
+		}
+
+		// Debugging symbols are always reported as N
+		return binding == ElfSymbol.Binding.LOCAL && letter != 'N' ? Character.toLowerCase(letter) : letter;
+	}
+}
@@ -0,0 +1,129 @@
+package net.fornwall.jelf.section.unwind;
+
+import net.fornwall.jelf.section.ElfArmExidxSection;
+
+/**
+ * An entry of the ARM exception index table, see {@link ElfArmExidxSection}. The second word
+ * of an entry either marks the function as not unwindable, holds up to three compact model
+ * opcodes inline, or points to the entry of the exception handling table .ARM.extab.
+ */
+public class ElfArmUnwindEntry {
+	/** The second word of an entry of a function which can not be unwound */
+	public static final long EXIDX_CANTUNWIND = 1;
+
+	private final int index;
+	private final long functionAddress;
+	private final long value;
+	private final long tableAddress;
+	private final int personalityIndex;
+	private final long personality;
+	private final ElfArmUnwindInstructions instructions;
+	private final long lsda;
+
+	/**
+	 * @param index the index of the entry in its section
+	 * @param functionAddress the address of the first function covered by the entry
+	 * @param value the second word of the entry
+	 * @param tableAddress the address of the .ARM.extab entry, or -1
+	 * @param personalityIndex the index of the compact model personality routine, or -1 for a generic one
+	 * @param personality the address of the generic personality routine, or 0
+	 * @param instructions the unwind opcodes, or null if the function can not be unwound
+	 * @param lsda the address of the language specific data following the opcodes, or 0
+	 */
+	public ElfArmUnwindEntry(int index, long functionAddress, long value, long tableAddress, int personalityIndex,
+			long personality, ElfArmUnwindInstructions instructions, long lsda) {
+		this.index = index;
+		this.functionAddress = functionAddress;
+		this.value = value;
+		this.tableAddress = tableAddress;
+		this.personalityIndex = personalityIndex;
+		this.personality = personality;
+		this.instructions = instructions;
+		this.lsda = lsda;
+	}
+
+	/**
+	 * @return Returns the index of the entry in its section
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return Returns the address of the first function covered by the entry, which covers the
+	 * 	code up to the function of the next entry
+	 */
+	public long getFunctionAddress() {
+		return functionAddress;
+	}
+
+	/**
+	 * @return Returns the raw second word of the entry
+	 */
+	public long getValue() {
+		return value;
+	}
+
+	/**
+	 * @return Returns true if the function can not be unwound
+	 */
+	public boolean isCantUnwind() {
+		return value == EXIDX_CANTUNWIND;
+	}
+
+	/**
+	 * @return Returns true if the compact model opcodes are held in the index table itself
+	 */
+	public boolean isInline() {
+		return (value & 0x80000000L) != 0;
+	}
+
+	/**
+	 * @return Returns the address of the .ARM.extab entry, or -1 for inline and cantunwind entries
+	 */
+	public long getTableAddress() {
+		return tableAddress;
+	}
+
+	/**
+	 * @return Returns the index of the compact model personality routine __aeabi_unwind_cpp_prN,
+	 * 	or -1 if the entry uses a generic personality routine, for example __gxx_personality_v0
+	 */
+	public int getPersonalityIndex() {
+		return personalityIndex;
+	}
+
+	/**
+	 * @return Returns the address of the generic personality routine, or 0 for the compact model
+	 */
+	public long getPersonality() {
+		return personality;
+	}
+
+	/**
+	 * @return Returns the unwind opcodes, or null if the function can not be unwound
+	 */
+	public ElfArmUnwindInstructions getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * @return Returns the address of the language specific data following the opcodes in
+	 * 	.ARM.extab, or 0 for inline entries
+	 */
+	public long getLsda() {
+		return lsda;
+	}
+
+	@Override
+	public String toString() {
+		String entry;
+		if(isCantUnwind())
+			entry = "0x1 [cantunwind]";
+		else if(isInline())
+			entry = "0x" + Long.toHexString(value);
+		else
+			entry = "@0x" + Long.toHexString(tableAddress);
+		return "0x" + Long.toHexString(functionAddress) + ": " + entry;
+	}
+}
@@ -0,0 +1,288 @@
+package net.fornwall.jelf.section.unwind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The unwind opcodes of an ARM exception handling ABI entry, shared by the compact model
+ * personality routines __aeabi_unwind_cpp_pr0 to pr2 and the GNU personality routines. The
+ * opcodes adjust a virtual stack pointer (vsp) and pop registers from it.
+ *
+ * <pre>
+ * https://github.com/ARM-software/abi-aa/blob/main/ehabi32/ehabi32.rst, section 10.3
+ * </pre>
+ */
+public class ElfArmUnwindInstructions {
+	/** Opcode ending the instructions, implied after the last byte */
+	public static final int FINISH = 0xb0;
+
+	private final byte[] opcodes;
+
+	/**
+	 * @param opcodes the opcode bytes in execution order
+	 */
+	public ElfArmUnwindInstructions(byte[] opcodes) {
+		this.opcodes = opcodes;
+	}
+
+	/**
+	 * @return Returns the opcode bytes, including any trailing finish padding
+	 */
+	public byte[] getOpcodes() {
+		return opcodes.clone();
+	}
+
+	private int opcode(int index) {
+		return index < opcodes.length ? opcodes[index] & 0xff : FINISH;
+	}
+
+	/**
+	 * Unwinds a frame. The stack pointer becomes the final vsp, and the program counter the
+	 * popped pc or else the link register.
+	 *
+	 * @param state the registers of the frame, updated to those of the caller
+	 * @return Returns false if the opcodes refuse to unwind or use a spare or reserved
+	 * 	encoding, in which case the state is partially updated
+	 */
+	public boolean execute(ElfArmUnwindState state) {
+		long vsp = state.getRegister(ElfArmUnwindState.SP);
+		boolean pcPopped = false;
+		int i = 0;
+		while(i < opcodes.length) {
+			int op = opcode(i++);
+			if(op < 0x40) {
+				vsp += ((op & 0x3f) << 2) + 4;
+			}
+			else if(op < 0x80) {
+				vsp -= ((op & 0x3f) << 2) + 4;
+			}
+			else if(op < 0x90) {
+				int mask = ((op & 0x0f) << 8) | opcode(i++);
+				if(mask == 0)
+					return false;
+				boolean spPopped = (mask & (1 << (ElfArmUnwindState.SP - 4))) != 0;
+				pcPopped |= (mask & (1 << (ElfArmUnwindState.PC - 4))) != 0;
+				vsp = pop(state, vsp, mask << 4);
+				// A popped stack pointer replaces the vsp instead of the incremented one
+				if(spPopped)
+					vsp = state.getRegister(ElfArmUnwindState.SP);
+			}
+			else if(op < 0xa0) {
+				int register = op & 0x0f;
+				if(register == ElfArmUnwindState.SP || register == ElfArmUnwindState.PC)
+					return false;
+				vsp = state.getRegister(register);
+			}
+			else if(op < 0xb0) {
+				// r4 to r[4+nnn], and r14 if bit 3 is set
+				int mask = ((1 << ((op & 0x07) + 1)) - 1) << 4;
+				if((op & 0x08) != 0)
+					mask |= 1 << ElfArmUnwindState.LR;
+				vsp = pop(state, vsp, mask);
+			}
+			else if(op == FINISH) {
+				break;
+			}
+			else if(op == 0xb1) {
+				int mask = opcode(i++);
+				if(mask == 0 || (mask & 0xf0) != 0)
+					return false;
+				vsp = pop(state, vsp, mask);
+			}
+			else if(op == 0xb2) {
+				long value = 0;
+				int shift = 0;
+				int b;
+				do {
+					b = opcode(i++);
+					value |= (long)(b & 0x7f) << shift;
+					shift += 7;
+				} while((b & 0x80) != 0 && shift < 64);
+				vsp += 0x204 + (value << 2);
+			}
+			else if(op == 0xb3) {
+				// FSTMFDX format has an extra word
+				vsp += ((opcode(i++) & 0x0f) + 1) * 8 + 4;
+			}
+			else if(op < 0xb8) {
+				return false;
+			}
+			else if(op < 0xc0) {
+				vsp += ((op & 0x07) + 1) * 8 + 4;
+			}
+			else if(op < 0xc6) {
+				vsp += ((op & 0x07) + 1) * 8;
+			}
+			else if(op == 0xc6 || op == 0xc8 || op == 0xc9) {
+				vsp += ((opcode(i++) & 0x0f) + 1) * 8;
+			}
+			else if(op == 0xc7) {
+				int mask = opcode(i++);
+				if(mask == 0 || (mask & 0xf0) != 0)
+					return false;
+				vsp += Integer.bitCount(mask) * 4;
+			}
+			else if(op >= 0xd0 && op < 0xd8) {
+				vsp += ((op & 0x07) + 1) * 8;
+			}
+			else {
+				return false;
+			}
+			vsp &= 0xffffffffL;
+		}
+
+		state.setRegister(ElfArmUnwindState.SP, vsp);
+		if(!pcPopped)
+			state.setRegister(ElfArmUnwindState.PC, state.getRegister(ElfArmUnwindState.LR));
+		return true;
+	}
+
+	/** Pops the core registers of a mask, lowest numbered from the lowest address */
+	private static long pop(ElfArmUnwindState state, long vsp, int mask) {
+		ElfArmUnwindState.Memory memory = state.getMemory();
+		for(int r = 0; r < 16; r++) {
+			if((mask & (1 << r)) != 0) {
+				state.setRegister(r, memory.readWord(vsp));
+				vsp += 4;
+			}
+		}
+		return vsp;
+	}
+
+	/**
+	 * @return Returns the meaning of each opcode, in the notation of readelf --unwind
+	 */
+	public List<String> describe() {
+		List<String> texts = new ArrayList<String>();
+		for(String[] line : decode())
+			texts.add(line[1]);
+		return texts;
+	}
+
+	/**
+	 * @return Returns the bytes and the meaning of each opcode
+	 */
+	private List<String[]> decode() {
+		List<String[]> lines = new ArrayList<String[]>();
+		int i = 0;
+		while(i < opcodes.length) {
+			int start = i;
+			int op = opcode(i++);
+			String text;
+			if(op < 0x40) {
+				text = "vsp = vsp + " + (((op & 0x3f) << 2) + 4);
+			}
+			else if(op < 0x80) {
+				text = "vsp = vsp - " + (((op & 0x3f) << 2) + 4);
+			}
+			else if(op < 0x90) {
+				int mask = ((op & 0x0f) << 8) | opcode(i++);
+				text = mask == 0 ? "[Refuse to unwind]" : "pop " + registers("r", mask << 4, 16);
+			}
+			else if(op < 0xa0) {
+				int register = op & 0x0f;
+				text = register == 13 || register == 15 ? "[Reserved]" : "vsp = r" + register;
+			}
+			else if(op < 0xb0) {
+				int mask = ((1 << ((op & 0x07) + 1)) - 1) << 4;
+				if((op & 0x08) != 0)
+					mask |= 1 << 14;
+				text = "pop " + registers("r", mask, 16);
+			}
+			else if(op == FINISH) {
+				text = "finish";
+			}
+			else if(op == 0xb1) {
+				int mask = opcode(i++);
+				text = mask == 0 || (mask & 0xf0) != 0 ? "[Spare]" : "pop " + registers("r", mask, 4);
+			}
+			else if(op == 0xb2) {
+				long value = 0;
+				int shift = 0;
+				int b;
+				do {
+					b = opcode(i++);
+					value |= (long)(b & 0x7f) << shift;
+					shift += 7;
+				} while((b & 0x80) != 0 && shift < 64);
+				text = "vsp = vsp + " + (0x204 + (value << 2));
+			}
+			else if(op == 0xb3) {
+				int operand = opcode(i++);
+				text = "pop " + range("D", operand >> 4, operand & 0x0f);
+			}
+			else if(op < 0xb8) {
+				text = "[Spare]";
+			}
+			else if(op < 0xc0) {
+				text = "pop " + range("D", 8, op & 0x07);
+			}
+			else if(op < 0xc6) {
+				text = "pop " + range("wR", 10, op & 0x07);
+			}
+			else if(op == 0xc6) {
+				int operand = opcode(i++);
+				text = "pop " + range("wR", operand >> 4, operand & 0x0f);
+			}
+			else if(op == 0xc7) {
+				int mask = opcode(i++);
+				text = mask == 0 || (mask & 0xf0) != 0 ? "[Spare]" : "pop " + registers("wCGR", mask, 4);
+			}
+			else if(op == 0xc8) {
+				int operand = opcode(i++);
+				text = "pop " + range("D", 16 + (operand >> 4), operand & 0x0f);
+			}
+			else if(op == 0xc9) {
+				int operand = opcode(i++);
+				text = "pop " + range("D", operand >> 4, operand & 0x0f);
+			}
+			else if(op >= 0xd0 && op < 0xd8) {
+				text = "pop " + range("D", 8, op & 0x07);
+			}
+			else {
+				text = "[Spare]";
+			}
+
+			StringBuilder bytes = new StringBuilder();
+			for(int j = start; j < i && j < opcodes.length; j++) {
+				if(j > start)
+					bytes.append(' ');
+				bytes.append(String.format("0x%02x", opcodes[j] & 0xff));
+			}
+			lines.add(new String[] { bytes.toString(), text });
+		}
+		return lines;
+	}
+
+	private static String registers(String prefix, int mask, int count) {
+		StringBuilder sb = new StringBuilder("{");
+		for(int r = 0; r < count; r++) {
+			if((mask & (1 << r)) != 0) {
+				if(sb.length() > 1)
+					sb.append(", ");
+				sb.append(prefix).append(r);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String range(String prefix, int first, int additional) {
+		if(additional == 0)
+			return "{" + prefix + first + "}";
+		return "{" + prefix + first + "-" + prefix + (first + additional) + "}";
+	}
+
+	/**
+	 * @return Returns a line for each opcode with its bytes and meaning, like readelf --unwind
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(String[] line : decode()) {
+			if(sb.length() > 0)
+				sb.append('\n');
+			sb.append(String.format("%-9s %s", line[0], line[1]));
+		}
+		return sb.toString();
+	}
+}
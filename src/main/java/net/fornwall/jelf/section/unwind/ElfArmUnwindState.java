@@ -0,0 +1,59 @@
+package net.fornwall.jelf.section.unwind;
+
+/**
+ * The core registers of a 32-bit ARM frame while unwinding with the exception index table,
+ * see {@link ElfArmUnwindInstructions#execute(ElfArmUnwindState)}.
+ */
+public class ElfArmUnwindState {
+	/** Reads the stack of the unwound thread */
+	public interface Memory {
+		/**
+		 * @param address the address of a 32-bit word
+		 * @return Returns the word as an unsigned value
+		 */
+		long readWord(long address);
+	}
+
+	public static final int SP = 13;
+	public static final int LR = 14;
+	public static final int PC = 15;
+
+	private final long[] registers = new long[16];
+	private final Memory memory;
+
+	/**
+	 * @param memory the stack of the thread being unwound
+	 */
+	public ElfArmUnwindState(Memory memory) {
+		this.memory = memory;
+	}
+
+	/**
+	 * @return Returns the memory the registers are restored from
+	 */
+	public Memory getMemory() {
+		return memory;
+	}
+
+	/**
+	 * @param register the register number, 0 to 15
+	 * @return Returns the value of the register
+	 */
+	public long getRegister(int register) {
+		return registers[register];
+	}
+
+	/**
+	 * @param register the register number, 0 to 15
+	 * @param value the value of the register, truncated to 32 bits
+	 */
+	public void setRegister(int register, long value) {
+		registers[register] = value & 0xffffffffL;
+	}
+
+	@Override
+	public String toString() {
+		return "ElfArmUnwindState[pc=0x" + Long.toHexString(registers[PC]) + ", sp=0x" + Long.toHexString(registers[SP])
+				+ ", lr=0x" + Long.toHexString(registers[LR]) + "]";
+	}
+}
@@ -1,6 +1,7 @@
 package net.fornwall.jelf.segment;
 
 import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
 import net.fornwall.jelf.ElfParser;
 import net.fornwall.jelf.section.ElfSection;
 
@@ -11,10 +12,14 @@ public class ElfInterpreterSegment extends ElfSegment {
 	protected ElfInterpreterSegment(ElfSegment s) {
 		super(s);
 		
-		ElfSection itrp = getInterpreterSection();
+		// Separate debug files keep the program headers without the contents of the segment
+		if(super.getFileSize() == 0)
+			return;
+		
+		// The segment is read directly, as files may have no section headers
 		ElfParser p = super.getFile().getParser();
 		
-		p.seek(itrp.getFileOffset());
+		p.seek(super.getOffset());
 		byte[] path = new byte[(int)super.getFileSize()];
 		int count = p.read(path);
 		
@@ -41,9 +46,17 @@ public class ElfInterpreterSegment extends ElfSegment {
 	}
 	
 	/**
-	 * @return Returns the path to the interpreter
+	 * @return Returns the path to the interpreter, or null if the segment has no contents in
+	 * 	the file
 	 */
 	public String getInterpreter() {
 		return interpreter;
 	}
+	
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		if(interpreter != null)
+			estimate.add(ElfMemoryEstimate.STRINGS, ElfMemoryEstimate.stringSize(interpreter));
+	}
 }
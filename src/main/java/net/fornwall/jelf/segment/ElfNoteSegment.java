@@ -0,0 +1,112 @@
+package net.fornwall.jelf.segment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.fornwall.jelf.ElfException;
+import net.fornwall.jelf.ElfMemoryEstimate;
+import net.fornwall.jelf.ElfParser;
+import net.fornwall.jelf.Table;
+import net.fornwall.jelf.Table.Align;
+import net.fornwall.jelf.section.note.ElfNote;
+import net.fornwall.jelf.section.note.ElfNoteType;
+
+/**
+ * A PT_NOTE segment. Files without section headers, such as core files, only describe their
+ * notes through these segments. The notes are read on first access.
+ */
+public class ElfNoteSegment extends ElfSegment {
+	private volatile List<ElfNote> notes;
+
+	protected ElfNoteSegment(ElfSegment s) {
+		super(s);
+	}
+
+	private List<ElfNote> getNotes() {
+		List<ElfNote> result = notes;
+		if(result == null) {
+			ElfParser parser = getFile().getParser();
+			synchronized(parser) {
+				result = notes;
+				if(result == null) {
+					result = new ArrayList<ElfNote>();
+					long offset = getOffset();
+					while(offset - getOffset() < getFileSize()) {
+						ElfNote n = ElfNote.noteFactory(this, offset);
+						result.add(n);
+						offset += n.getFileSize();
+					}
+					notes = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param index the index of the note to get
+	 * @return Returns the note at the requested index
+	 */
+	public ElfNote getNote(int index) {
+		List<ElfNote> n = getNotes();
+		if(index < 0 || index >= n.size())
+			throw new ElfException("Note index out of bounds: " + index);
+		return n.get(index);
+	}
+
+	/**
+	 * @return Returns the number of notes in this segment
+	 */
+	public int getNoteCount() {
+		return getNotes().size();
+	}
+
+	@Override
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		super.estimateRetainedBytes(estimate);
+		List<ElfNote> n = notes;
+		if(n == null)
+			return;
+
+		long size = ElfMemoryEstimate.listSize(n.size());
+		for(ElfNote note : n) {
+			size += ElfMemoryEstimate.objectSize(4, 8) + ElfMemoryEstimate.stringSize(note.getNoteName())
+					+ ElfMemoryEstimate.arraySize(note.getDescSize(), 1);
+		}
+		estimate.add(ElfMemoryEstimate.NOTES, size);
+	}
+
+	/**
+	 * See {@link #toString()} to get the formatted string directly
+	 *
+	 * @return Returns a {@link Table} object that contains the notes of this segment, like readelf --notes
+	 */
+	public Table getFormattedTable() {
+		Table t = new Table("Displaying notes found at file offset 0x" + Long.toHexString(getOffset())
+				+ " with length 0x" + Long.toHexString(getFileSize()) + ":");
+
+		// Column names
+		t.add("Owner");
+		t.setColAlign(Align.LEFT);
+
+		t.add("DataSize");
+		t.setColAlign(Align.RIGHT);
+
+		t.add("Description");
+		t.setColAlign(Align.LEFT);
+
+		for(int i = 0; i < getNoteCount(); i++) {
+			ElfNote n = getNote(i);
+			t.newRow();
+			t.add(n.getNoteName());
+			t.add("0x" + Integer.toHexString(n.getDescSize()));
+			t.add(ElfNoteType.name(n.getNoteName(), n.getNoteType()));
+		}
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		return this.getFormattedTable().toString();
+	}
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 import net.fornwall.jelf.ElfFile;
 import net.fornwall.jelf.ElfHeader;
+import net.fornwall.jelf.ElfMemoryEstimate;
 import net.fornwall.jelf.ElfParser;
 import net.fornwall.jelf.section.ElfSection;
 
@@ -253,6 +254,8 @@ public class ElfSegment {
 		switch(s.getType().val) {
 		case Type.INTERP:
 			return new ElfInterpreterSegment(s);
+		case Type.NOTE:
+			return new ElfNoteSegment(s);
 		}
 		
 		return s;
@@ -321,11 +324,33 @@ public class ElfSegment {
 		return alignment;
 	}
 	
+	/**
+	 * Adds the heap memory retained by this segment to the provided estimate
+	 * 
+	 * @param estimate the estimate to add to
+	 */
+	public void estimateRetainedBytes(ElfMemoryEstimate estimate) {
+		// Segment, Type and Flag objects
+		estimate.add(ElfMemoryEstimate.HEADERS, ElfMemoryEstimate.objectSize(3, 48) + 2 * ElfMemoryEstimate.objectSize(0, 4));
+	}
+	
 	/**
 	 * @return Returns a the list of sections that are contained within this segment
 	 */
 	public List<ElfSection> getSections() {
 		List<ElfSection> result = new ArrayList<ElfSection>();
+		if(file.getSectionHeaders().size() == 0)
+			return result;
+		
+		// Rebuilt sections leave gaps, so the sections are matched one by one instead
+		if(file.getSectionHeaders().isReconstructed()) {
+			for(int i = 1; i < file.getSectionHeaders().size(); i++) {
+				ElfSection s = file.getSectionHeaders().getSectionByIndex(i);
+				if(s.getFileOffset() >= offset && s.getFileOffset() + s.getFileSize() <= offset + file_size)
+					result.add(s);
+			}
+			return result;
+		}
 		
 		int i = file.getSectionHeaders().getSectionIndexAtOffset(offset);
 		ElfSection cur = file.getSectionHeaders().getSectionByIndex(i);
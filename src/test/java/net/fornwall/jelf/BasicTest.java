@@ -3,16 +3,74 @@ package net.fornwall.jelf;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import net.fornwall.jelf.compress.XzInputStream;
+import net.fornwall.jelf.core.ElfAuxiliaryVector;
+import net.fornwall.jelf.core.ElfBacktrace;
+import net.fornwall.jelf.core.ElfCoreFile;
+import net.fornwall.jelf.core.ElfCoreThread;
+import net.fornwall.jelf.core.ElfCoreUnwinder;
+import net.fornwall.jelf.core.ElfProcessMaps;
+import net.fornwall.jelf.core.ElfStackFrame;
+import net.fornwall.jelf.core.ElfSymbolizedAddress;
+import net.fornwall.jelf.core.ElfSymbolizer;
+import net.fornwall.jelf.dwarf.Dwarf;
+import net.fornwall.jelf.dwarf.DwarfAddressIndex;
+import net.fornwall.jelf.dwarf.DwarfDebugNames;
+import net.fornwall.jelf.dwarf.DwarfDie;
+import net.fornwall.jelf.dwarf.DwarfDieTree;
+import net.fornwall.jelf.dwarf.DwarfEhFrameHeader;
+import net.fornwall.jelf.dwarf.DwarfExpression;
+import net.fornwall.jelf.dwarf.DwarfFde;
+import net.fornwall.jelf.dwarf.DwarfFrameRow;
+import net.fornwall.jelf.dwarf.DwarfFrameSection;
+import net.fornwall.jelf.dwarf.DwarfFrameTable;
+import net.fornwall.jelf.dwarf.DwarfGdbIndex;
+import net.fornwall.jelf.dwarf.DwarfInlineFrame;
+import net.fornwall.jelf.dwarf.DwarfNameEntry;
+import net.fornwall.jelf.dwarf.DwarfPackageIndex;
+import net.fornwall.jelf.dwarf.DwarfRegisterRule;
+import net.fornwall.jelf.dwarf.DwarfRegisters;
+import net.fornwall.jelf.dwarf.DwarfLineSection;
+import net.fornwall.jelf.dwarf.DwarfLineTable;
+import net.fornwall.jelf.dwarf.DwarfSourceLine;
+import net.fornwall.jelf.dwarf.DwarfStructLayout;
+import net.fornwall.jelf.dwarf.DwarfTag;
+import net.fornwall.jelf.dwarf.DwarfTypeReader;
+import net.fornwall.jelf.dwarf.DwarfUnit;
+import net.fornwall.jelf.section.ElfArmExidxSection;
+import net.fornwall.jelf.section.ElfCompressionHeader;
 import net.fornwall.jelf.section.ElfDynamicSection;
+import net.fornwall.jelf.section.ElfGroupSection;
+import net.fornwall.jelf.section.ElfSection;
+import net.fornwall.jelf.section.ElfSymbolTableSection;
 import net.fornwall.jelf.section.dynamic.ElfNeededDynamicEntry;
+import net.fornwall.jelf.section.note.ElfNoteType;
+import net.fornwall.jelf.section.symbol.ElfSymbol;
+import net.fornwall.jelf.section.symbol.ElfSymbolIndex;
+import net.fornwall.jelf.section.symbol.ElfSymbolSorter;
+import net.fornwall.jelf.section.unwind.ElfArmUnwindEntry;
+import net.fornwall.jelf.section.unwind.ElfArmUnwindState;
 import net.fornwall.jelf.segment.ElfInterpreterSegment;
+import net.fornwall.jelf.segment.ElfSegment;
 
 public class BasicTest {
 	private static void assertSectionNames(ElfFile file, String... expectedSectionNames) throws IOException {
@@ -139,4 +197,1312 @@ public class BasicTest {
 		Assert.assertEquals("/lib64/ld-linux-x86-64.so.2", file.getProgramHeaders().getUniqueSegmentOfType(ElfInterpreterSegment.class).getInterpreter());
 	}
 
+	@Test
+	public void testCountingMetrics() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/linux_amd64_bindash").getPath());
+		ElfCountingMetrics metrics = new ElfCountingMetrics();
+		ElfFile file = new ElfFile(resource, metrics);
+		
+		Assert.assertEquals(1, metrics.getFilesParsed());
+		Assert.assertTrue(metrics.getSeeks() > 0);
+		Assert.assertTrue(metrics.getBytesRead() > 0);
+		int dynamicSymbols = file.getSectionHeaders().getSectionByName(".dynsym", ElfSymbolTableSection.class).getSymbolCount();
+		Assert.assertEquals(dynamicSymbols, metrics.getEntriesDecoded(ElfSection.Type.DYNSYM));
+		
+		long misses = metrics.getStringCacheMisses();
+		long hits = metrics.getStringCacheHits();
+		file.getSectionHeaders().getSectionByIndex(5).getName();
+		file.getSectionHeaders().getSectionByIndex(5).getName();
+		Assert.assertTrue(metrics.getStringCacheMisses() <= misses + 1);
+		Assert.assertTrue(metrics.getStringCacheHits() >= hits + 1);
+	}
+
+	@Test
+	public void testMemoryEstimate() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/linux_amd64_bindash").getPath());
+		ElfFile file = new ElfFile(resource);
+		
+		// Sections are decoded on first use
+		ElfMemoryEstimate estimate = file.getMemoryEstimate();
+		Assert.assertTrue(estimate.get(ElfMemoryEstimate.FILE_DATA) >= resource.length());
+		Assert.assertEquals(0, estimate.get(ElfMemoryEstimate.SYMBOLS));
+		
+		ElfSymbolTableSection dynsym = file.getSectionHeaders().getSectionByName(".dynsym", ElfSymbolTableSection.class);
+		Assert.assertTrue(dynsym.getSymbolCount() > 0);
+		Assert.assertTrue(dynsym.estimateRetainedBytes() > dynsym.getSymbolCount() * 8L);
+		
+		estimate = file.getMemoryEstimate();
+		Assert.assertTrue(estimate.get(ElfMemoryEstimate.SYMBOLS) > 0);
+		Assert.assertEquals(estimate.getTotal(), file.estimateRetainedBytes());
+	}
+
+	@Test
+	public void testSymbolSorterSpills() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/android_arm_libncurses").getPath());
+		ElfFile file = new ElfFile(resource);
+		ElfSymbolTableSection symtab = file.getSectionHeaders().getSymbolTable();
+
+		for (ElfSymbolSorter.Order order : ElfSymbolSorter.Order.values()) {
+			ElfSymbolSorter inMemory = new ElfSymbolSorter(order);
+			inMemory.add(symtab);
+			StringBuilder expected = new StringBuilder();
+			inMemory.write(expected);
+			Assert.assertEquals(0, inMemory.getSpillCount());
+
+			ElfSymbolSorter spilling = new ElfSymbolSorter(order);
+			spilling.setMemoryBudget(1024);
+			spilling.add(symtab);
+			Assert.assertTrue(spilling.getSpillCount() > 1);
+			StringBuilder actual = new StringBuilder();
+			spilling.write(actual);
+			Assert.assertEquals(0, spilling.getSpillCount());
+
+			Assert.assertEquals(expected.toString(), actual.toString());
+		}
+
+		ElfSymbolSorter sorter = new ElfSymbolSorter(ElfSymbolSorter.Order.ADDRESS);
+		sorter.add(symtab);
+		StringBuilder sb = new StringBuilder();
+		sorter.write(sb);
+		Assert.assertTrue(sb.toString().startsWith("         U "));
+	}
+
+	@Test
+	public void testDwarfLines() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/hello_riscv.out").getPath());
+		ElfFile file = new ElfFile(resource);
+		DwarfLineSection lines = file.getDwarf().getLineSection();
+
+		DwarfSourceLine line = lines.findLine(0x103d4);
+		Assert.assertEquals(47, line.getLine());
+		Assert.assertTrue(line.getFileName().endsWith("/start.S"));
+		Assert.assertEquals(0x103d4, line.getAddress());
+		Assert.assertEquals(48, lines.findLine(0x103d7).getLine());
+		Assert.assertNull(lines.findLine(0x10000));
+
+		DwarfLineTable table = lines.getLineTable(0);
+		Assert.assertEquals(3, table.getVersion());
+		Assert.assertEquals(0x103d0, table.getLowAddress());
+		Assert.assertEquals(0x10406, table.getHighAddress());
+
+		DwarfSourceLine[] batch = lines.findLines(new long[] { 0x103d7, 0x10000, 0x103d4 });
+		Assert.assertEquals(lines.findLine(0x103d7), batch[0]);
+		Assert.assertNull(batch[1]);
+		Assert.assertEquals(line, batch[2]);
+
+		// DWARF 2 on a 32-bit target
+		file = new ElfFile(new File(BasicTest.class.getResource("/android_arm_libncurses").getPath()));
+		line = file.getDwarf().findLine(0x2d91c);
+		Assert.assertEquals("lib1funcs.S", line.getFileName().substring(line.getFileName().lastIndexOf('/') + 1));
+		Assert.assertEquals(978, line.getLine());
+
+		Assert.assertNull(new ElfFile(new File(BasicTest.class.getResource("/hello_x86_64.out").getPath())).getDwarf().getLineSection());
+	}
+
+	@Test
+	public void testDwarfAddressIndex() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/hello_riscv.out").getPath());
+		Dwarf dwarf = new ElfFile(resource).getDwarf();
+
+		Assert.assertEquals(3, dwarf.getUnitOffsets().length);
+		Assert.assertEquals(2, dwarf.getAddressIndex().size());
+		Assert.assertSame(dwarf.getAddressIndex(), dwarf.getAddressIndex());
+
+		DwarfUnit unit = dwarf.findUnit(0x10498);
+		Assert.assertEquals("../sysdeps/init_array/elf-init.c", unit.getName());
+		Assert.assertEquals(DwarfTag.COMPILE_UNIT, unit.getRoot().getTag());
+		Assert.assertNull(dwarf.findUnit(0x1047a));
+
+		String csu = "/home/james/Downloads/riscv/riscv-gnu-toolchain/riscv-glibc/csu";
+		Assert.assertEquals(csu, unit.getCompilationDirectory());
+		Assert.assertEquals(csu + "/../sysdeps/riscv/start.S:47", dwarf.findLine(0x103d4).toString());
+		Assert.assertEquals(csu + "/../csu/elf-init.c:68", dwarf.findLine(0x10498).toString());
+
+		// Batches may be unsorted and span units, the results keep the order of the addresses
+		long[] addresses = { 0x10498, 0x1047a, 0x103d4, 0x10498, 0x103d7 };
+		DwarfSourceLine[] batch = dwarf.findLines(addresses);
+		Assert.assertEquals(addresses.length, batch.length);
+		for(int i = 0; i < addresses.length; i++)
+			Assert.assertEquals(dwarf.findLine(addresses[i]), batch[i]);
+		Assert.assertEquals(68, batch[0].getLine());
+		Assert.assertNull(batch[1]);
+		Assert.assertEquals(47, batch[2].getLine());
+		Assert.assertEquals(48, batch[4].getLine());
+	}
+
+	@Test
+	public void testDwarfAddressIndexOverlaps() throws ElfException, FileNotFoundException, IOException {
+		// One unit covers 0x1000-0x2000, another has ten short ranges starting inside it
+		File resource = new File(BasicTest.class.getResource("/overlap_aranges_x86_64.o").getPath());
+		DwarfAddressIndex index = new ElfFile(resource).getDwarf().getAddressIndex();
+		Assert.assertEquals(11, index.size());
+		Assert.assertEquals(0x40, index.findUnitOffset(0x1004));
+		Assert.assertEquals(0x40, index.findUnitOffset(0x1094));
+		Assert.assertEquals(0, index.findUnitOffset(0x100c));
+		Assert.assertEquals(0, index.findUnitOffset(0x1500));
+		Assert.assertEquals(0, index.findUnitOffset(0x1fff));
+		Assert.assertEquals(-1, index.findUnitOffset(0x2000));
+		Assert.assertEquals(-1, index.findUnitOffset(0xfff));
+	}
+
+	@Test
+	public void testDwarfRangesBase() throws ElfException, FileNotFoundException, IOException {
+		// The second skeleton unit has DW_AT_GNU_ranges_base 0x70, which its own DW_AT_ranges is not relative to
+		File resource = new File(BasicTest.class.getResource("/ranges_base_x86_64.out").getPath());
+		DwarfUnit unit = new ElfFile(resource).getDwarf().getUnit(0x34);
+		DwarfDie root = unit.getRoot();
+		long[] ranges = root.getRanges();
+		Assert.assertEquals(8, ranges.length);
+		Assert.assertEquals(0x11a0, ranges[0]);
+		Assert.assertEquals(0x11bb, ranges[1]);
+		Assert.assertArrayEquals(ranges, unit.readDie(root.getOffset()).getRanges());
+		Assert.assertEquals(0x34, unit.getDwarf().findUnit(0x1059).getOffset());
+	}
+
+	@Test
+	public void testDwarfUnitTrees() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/hello_riscv.out").getPath());
+		byte[] bytes = Files.readAllBytes(resource.toPath());
+		ElfFile file = new ElfFile(bytes);
+		Assert.assertTrue(file.getParser().isZeroCopy());
+
+		List<DwarfUnit> units = file.getDwarf().decodeUnits();
+		Assert.assertEquals(3, units.size());
+
+		int entries = 0;
+		int subprograms = 0;
+		for (DwarfUnit unit : units) {
+			Assert.assertTrue(unit.isTreeDecoded());
+			DwarfDieTree tree = unit.getTree();
+			Assert.assertEquals(DwarfTag.COMPILE_UNIT, tree.getTag(0));
+			Assert.assertEquals(-1, tree.getParent(0));
+
+			List<DwarfDie> children = unit.getChildren(unit.getRoot());
+			int[] indices = tree.getChildren(0);
+			Assert.assertEquals(children.size(), indices.length);
+			for (int i = 0; i < indices.length; i++) {
+				Assert.assertEquals(children.get(i).getOffset(), tree.getOffset(indices[i]));
+				Assert.assertEquals(indices[i], tree.indexOf(children.get(i).getOffset()));
+			}
+
+			entries += tree.size();
+			subprograms += tree.getDiesByTag(DwarfTag.SUBPROGRAM).size();
+		}
+		Assert.assertEquals(53, entries);
+		Assert.assertEquals(2, subprograms);
+	}
+
+	@Test
+	public void testDwarfInlineFrames() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/hello_riscv.out").getPath());
+		Dwarf dwarf = new ElfFile(resource).getDwarf();
+
+		List<DwarfInlineFrame> frames = dwarf.findFrames(0x10498);
+		Assert.assertEquals(1, frames.size());
+		DwarfInlineFrame frame = frames.get(0);
+		Assert.assertEquals("__libc_csu_init", frame.getName());
+		Assert.assertFalse(frame.isInlined());
+		Assert.assertEquals(DwarfTag.SUBPROGRAM, frame.getEntry().getTag());
+		Assert.assertEquals(68, frame.getLocation().getLine());
+		Assert.assertTrue(dwarf.findUnit(0x10498).isScopeIndexBuilt());
+
+		// Assembly units have lines but no functions
+		frames = dwarf.findFrames(0x103d4);
+		Assert.assertEquals(1, frames.size());
+		Assert.assertNull(frames.get(0).getEntry());
+		Assert.assertEquals(47, frames.get(0).getLocation().getLine());
+
+		Assert.assertTrue(dwarf.findFrames(0x1047a).isEmpty());
+
+		// gcc -g -O2 of main calling compute calling sum_squares calling square, all inlined into main
+		dwarf = new ElfFile(new File(BasicTest.class.getResource("/inline_x86_64.out").getPath())).getDwarf();
+		frames = dwarf.findFrames(0x1043);
+		Assert.assertEquals(4, frames.size());
+		String[] names = { "square", "sum_squares", "compute", "main" };
+		// The line of the address, then the call sites of DW_AT_call_file and DW_AT_call_line
+		int[] lines = { 3, 8, 13, 18 };
+		for(int i = 0; i < frames.size(); i++) {
+			Assert.assertEquals(names[i], frames.get(i).getName());
+			Assert.assertEquals(i < 3, frames.get(i).isInlined());
+			Assert.assertEquals("/build/inline/inline.c:" + lines[i], frames.get(i).getLocation().toString());
+		}
+		Assert.assertEquals(DwarfTag.INLINED_SUBROUTINE, frames.get(0).getEntry().getTag());
+		Assert.assertEquals(DwarfTag.SUBPROGRAM, frames.get(3).getEntry().getTag());
+		Assert.assertEquals(0x6e, frames.get(2).getEntry().getOffset());
+
+		// The second call of square, an instance with DW_AT_ranges in the same sum_squares
+		frames = dwarf.findFrames(0x1046);
+		Assert.assertEquals(4, frames.size());
+		Assert.assertEquals("square", frames.get(0).getName());
+		Assert.assertFalse(frames.get(0).getEntry().getOffset() == 0x106);
+		Assert.assertEquals(0xa8, frames.get(1).getEntry().getOffset());
+
+		// After the inlined calls only compute remains inlined into main
+		frames = dwarf.findFrames(0x1049);
+		Assert.assertEquals(2, frames.size());
+		Assert.assertEquals("compute", frames.get(0).getName());
+		Assert.assertEquals(13, frames.get(0).getLocation().getLine());
+		Assert.assertEquals("main", frames.get(1).getName());
+		Assert.assertEquals(18, frames.get(1).getLocation().getLine());
+
+		// The out of line copy of compute, named through DW_AT_abstract_origin
+		frames = dwarf.findFrames(0x1143);
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals("square", frames.get(0).getName());
+		Assert.assertEquals("sum_squares", frames.get(1).getName());
+		Assert.assertEquals("compute", frames.get(2).getName());
+		Assert.assertFalse(frames.get(2).isInlined());
+		Assert.assertEquals("/build/inline/inline.c:13", frames.get(2).getLocation().toString());
+	}
+
+	@Test
+	public void testDwarfNameIndex() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/hello_riscv.out").getPath());
+		Dwarf dwarf = new ElfFile(resource).getDwarf();
+
+		// Without .debug_names or .gdb_index the index is built from the entries
+		Assert.assertNull(dwarf.getNameIndex().getSectionName());
+		Assert.assertSame(dwarf.getNameIndex(), dwarf.getNameIndex());
+
+		List<DwarfNameEntry> entries = dwarf.findEntries("__libc_csu_init");
+		Assert.assertEquals(1, entries.size());
+		DwarfNameEntry entry = entries.get(0);
+		Assert.assertEquals(DwarfTag.SUBPROGRAM, entry.getTag());
+		Assert.assertEquals(0x1b4, entry.getDieOffset());
+		Assert.assertEquals(dwarf.findUnit(0x10498).getOffset(), entry.getUnitOffset());
+		Assert.assertEquals("__libc_csu_init", dwarf.getDie(entry.getDieOffset()).getName());
+
+		Assert.assertTrue(dwarf.findEntries("no_such_function").isEmpty());
+
+		// gcc -gdwarf-5 of two units, names_a.c with main, compute, counter and struct point, and
+		// names_b.c with Scale_Value and compute_zl. gcc does not write .debug_names, so the section
+		// was written by hand following DWARF 5 section 6.1.1, with 4 buckets for the 6 names, and
+		// added with objcopy --add-section.
+		dwarf = new ElfFile(new File(BasicTest.class.getResource("/debug_names_x86_64.out").getPath())).getDwarf();
+		Assert.assertTrue(dwarf.getNameIndex() instanceof DwarfDebugNames);
+		Assert.assertEquals(".debug_names", dwarf.getNameIndex().getSectionName());
+		Assert.assertEquals(6, ((DwarfDebugNames)dwarf.getNameIndex()).getNameCount());
+		// The hash folds the case of ASCII letters
+		Assert.assertEquals(0x77f45729, DwarfDebugNames.hash("Scale_Value".getBytes()));
+		Assert.assertEquals(0x77f45729, DwarfDebugNames.hash("SCALE_VALUE".getBytes()));
+		Assert.assertEquals(0x7c9a7f6a, DwarfDebugNames.hash("main".getBytes()));
+
+		entries = dwarf.findEntries("compute");
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals(0, entries.get(0).getUnitOffset());
+		Assert.assertEquals(0xaf, entries.get(0).getDieOffset());
+		Assert.assertEquals(DwarfTag.SUBPROGRAM, entries.get(0).getTag());
+		// In the second unit, sharing the bucket of counter
+		entries = dwarf.findEntries("Scale_Value");
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals(0xe4, entries.get(0).getUnitOffset());
+		Assert.assertEquals("Scale_Value", dwarf.getDie(entries.get(0).getDieOffset()).getName());
+		Assert.assertEquals("compute_zl", dwarf.getDie(dwarf.findEntries("compute_zl").get(0).getDieOffset()).getName());
+		Assert.assertEquals(DwarfTag.VARIABLE, dwarf.findEntries("counter").get(0).getTag());
+		Assert.assertEquals(DwarfTag.STRUCTURE_TYPE, dwarf.findEntries("point").get(0).getTag());
+		Assert.assertEquals(0x2e, dwarf.findEntries("point").get(0).getDieOffset());
+		// The same hash but another name, and names in empty and in used buckets
+		Assert.assertTrue(dwarf.findEntries("scale_value").isEmpty());
+		Assert.assertTrue(dwarf.findEntries("missing_qa").isEmpty());
+		Assert.assertTrue(dwarf.findEntries("no_such_function").isEmpty());
+		Assert.assertTrue(dwarf.findEntries("").isEmpty());
+
+		// The same program with -gdwarf-4 -ggnu-pubnames, linked by gold with --gdb-index
+		dwarf = new ElfFile(new File(BasicTest.class.getResource("/gdb_index_x86_64.out").getPath())).getDwarf();
+		DwarfGdbIndex gdbIndex = (DwarfGdbIndex)dwarf.getNameIndex();
+		Assert.assertEquals(".gdb_index", gdbIndex.getSectionName());
+		Assert.assertEquals(7, gdbIndex.getVersion());
+		Assert.assertEquals(2, gdbIndex.getUnitCount());
+		// compute_zl hashes to the slot of compute in the table of 1024 slots and is found by probing,
+		// missing_qa starts at the slot of main
+		Assert.assertEquals(DwarfGdbIndex.hash("compute".getBytes(), 7) & 1023, DwarfGdbIndex.hash("compute_zl".getBytes(), 7) & 1023);
+		Assert.assertEquals(DwarfGdbIndex.hash("main".getBytes(), 7) & 1023, DwarfGdbIndex.hash("missing_qa".getBytes(), 7) & 1023);
+		Assert.assertEquals(DwarfGdbIndex.hash("main".getBytes(), 7), DwarfGdbIndex.hash("MAIN".getBytes(), 7));
+		Assert.assertFalse(DwarfGdbIndex.hash("main".getBytes(), 4) == DwarfGdbIndex.hash("MAIN".getBytes(), 4));
+
+		entries = dwarf.findEntries("compute_zl");
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals(0xeb, entries.get(0).getUnitOffset());
+		Assert.assertEquals(-1, entries.get(0).getDieOffset());
+		Assert.assertEquals(DwarfTag.SUBPROGRAM, entries.get(0).getTag());
+		Assert.assertEquals(0, dwarf.findEntries("compute").get(0).getUnitOffset());
+		Assert.assertEquals(0xeb, dwarf.findEntries("Scale_Value").get(0).getUnitOffset());
+		Assert.assertEquals(DwarfTag.VARIABLE, dwarf.findEntries("counter").get(0).getTag());
+		Assert.assertEquals(0, dwarf.findEntries("point").get(0).getTag());
+		// Base types are listed once per unit
+		Assert.assertEquals(2, dwarf.findEntries("int").size());
+		Assert.assertTrue(dwarf.findEntries("missing_qa").isEmpty());
+		Assert.assertTrue(dwarf.findEntries("no_such_function").isEmpty());
+	}
+
+	@Test
+	public void testDwarfSplitUnits() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/hello_riscv.out").getPath());
+		Dwarf dwarf = new ElfFile(resource).getDwarf();
+		for(DwarfUnit unit : dwarf.getUnits()) {
+			Assert.assertFalse(unit.isSkeleton());
+			Assert.assertNull(unit.getSplitUnit());
+		}
+
+		// A DWARF 5 package index with two units, each contributing to .debug_info.dwo and .debug_abbrev.dwo
+		ByteBuffer index = ByteBuffer.allocate(16 + 4 * 12 + 8 + 2 * 16).order(ByteOrder.LITTLE_ENDIAN);
+		index.putShort((short)5).putShort((short)0).putInt(2).putInt(2).putInt(4);
+		long first = 0x1234567800000001L, second = 0x0000000500000003L;
+		index.putLong(0).putLong(first).putLong(0).putLong(second);
+		index.putInt(0).putInt(1).putInt(0).putInt(2);
+		index.putInt(DwarfPackageIndex.SECT_INFO).putInt(DwarfPackageIndex.SECT_ABBREV);
+		index.putInt(0).putInt(0).putInt(0x40).putInt(0x20);
+		index.putInt(0x40).putInt(0x20).putInt(0x30).putInt(0x18);
+		index.flip();
+
+		DwarfPackageIndex packageIndex = new DwarfPackageIndex(index);
+		Assert.assertEquals(5, packageIndex.getVersion());
+		Assert.assertEquals(2, packageIndex.getUnitCount());
+		Assert.assertEquals(0, packageIndex.findRow(first));
+		Assert.assertEquals(1, packageIndex.findRow(second));
+		Assert.assertEquals(-1, packageIndex.findRow(2));
+		Assert.assertEquals(0x40, packageIndex.getOffset(1, DwarfPackageIndex.SECT_INFO));
+		Assert.assertEquals(0x18, packageIndex.getSize(1, DwarfPackageIndex.SECT_ABBREV));
+		Assert.assertEquals(0, packageIndex.getOffset(1, DwarfPackageIndex.SECT_LINE));
+
+		// gcc -g -gsplit-dwarf -O0 of compute(), which calls scale(), with the compilation directory
+		// mapped to /build/split which does not exist, so the .dwo file is only found in a search directory
+		File split = new File(BasicTest.class.getResource("/split_x86_64.out").getPath());
+		File dwo = new File(BasicTest.class.getResource("/split_x86_64.dwo").getPath());
+		dwarf = new ElfFile(split).getDwarf();
+		DwarfUnit skeleton = dwarf.getUnits().get(0);
+		Assert.assertTrue(skeleton.isSkeleton());
+		Assert.assertEquals(5, skeleton.getVersion());
+		Assert.assertEquals("split_x86_64.dwo", skeleton.getDwoName());
+		Assert.assertEquals("/build/split", skeleton.getCompilationDirectory());
+		Assert.assertNull(skeleton.getSplitUnit());
+
+		File root = Files.createTempDirectory("jelf-split").toFile();
+		File copy = new File(root, dwo.getName());
+		try {
+			Files.copy(dwo.toPath(), copy.toPath());
+			dwarf.getSplitLoader().addSearchDirectory(root);
+			DwarfUnit unit = skeleton.getSplitUnit();
+			Assert.assertNotNull(unit);
+			Assert.assertSame(skeleton, unit.getSkeleton());
+			Assert.assertEquals(skeleton.getDwoId(), unit.getDwoId());
+			Assert.assertEquals("split.c", unit.getName());
+			Assert.assertEquals(1, dwarf.getSplitLoader().getOpenedFileCount());
+
+			List<DwarfInlineFrame> frames = dwarf.findFrames(0x1130);
+			Assert.assertEquals(1, frames.size());
+			Assert.assertEquals("scale", frames.get(0).getName());
+			Assert.assertEquals("/build/split/split.c:3", frames.get(0).getLocation().toString());
+			Assert.assertEquals("compute", dwarf.findFrames(0x1150).get(0).getName());
+			Assert.assertEquals(8, dwarf.findLine(0x1150).getLine());
+
+			// The split unit is cached by the skeleton, the file system is not probed again
+			copy.delete();
+			Assert.assertSame(unit, skeleton.getSplitUnit());
+			Assert.assertEquals("main", dwarf.findFrames(0x1170).get(0).getName());
+		} finally {
+			copy.delete();
+			root.delete();
+		}
+
+		// The same program with -gdwarf-4, its .dwo file packed into a .dwp with dwp
+		dwarf = new ElfFile(new File(BasicTest.class.getResource("/split_dwp_x86_64.out").getPath())).getDwarf();
+		skeleton = dwarf.getUnits().get(0);
+		Assert.assertEquals(4, skeleton.getVersion());
+		Assert.assertTrue(skeleton.isSkeleton());
+		dwarf.getSplitLoader().setPackage(new File(BasicTest.class.getResource("/split_dwp_x86_64.dwp").getPath()));
+		DwarfUnit unit = skeleton.getSplitUnit();
+		Assert.assertEquals(skeleton.getDwoId(), unit.getDwoId());
+		Assert.assertEquals("compute", dwarf.findFrames(0x1140).get(0).getName());
+		Assert.assertEquals("scale", dwarf.findFrames(0x1130).get(0).getName());
+		Assert.assertEquals(0, dwarf.getSplitLoader().getOpenedFileCount());
+	}
+
+	@Test
+	public void testDwarfStructLayouts() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/android_arm_libncurses").getPath());
+		DwarfTypeReader types = new ElfFile(resource).getDwarf().getTypeReader();
+		List<DwarfStructLayout> layouts = types.getLayouts();
+		Assert.assertSame(layouts, types.getLayouts());
+		Assert.assertEquals(12, layouts.size());
+
+		DwarfStructLayout vfp = types.findLayouts("vfp_regs").get(0);
+		Assert.assertEquals(136, vfp.getSize());
+		Assert.assertEquals(3, vfp.getCacheLineCount());
+		Assert.assertEquals(0, vfp.getHoleBytes());
+		Assert.assertEquals(4, vfp.getPaddingBytes());
+		Assert.assertEquals(2, vfp.getMembers().size());
+		Assert.assertEquals("_uw64[16]", vfp.getMembers().get(0).getTypeName());
+		Assert.assertEquals(128, vfp.getMembers().get(0).getSize());
+		Assert.assertEquals("pad", vfp.getMembers().get(1).getName());
+		Assert.assertEquals(128, vfp.getMembers().get(1).getOffset());
+
+		DwarfStructLayout state = types.findLayouts("__gnu_unwind_state").get(0);
+		Assert.assertEquals("_uw *", state.getMembers().get(1).getTypeName());
+		Assert.assertEquals(9, state.getMembers().get(3).getOffset());
+		Assert.assertEquals(2, state.getPaddingBytes());
+
+		List<DwarfStructLayout> padded = DwarfTypeReader.getMostPadded(layouts, 10);
+		Assert.assertEquals(2, padded.size());
+		Assert.assertSame(vfp, padded.get(0));
+		Assert.assertSame(state, padded.get(1));
+	}
+
+	@Test
+	public void testDwarfFrameHeader() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/linux_amd64_bindash").getPath());
+		Dwarf dwarf = new ElfFile(resource).getDwarf();
+		DwarfEhFrameHeader header = dwarf.getEhFrameHeader();
+		DwarfFrameSection ehFrame = dwarf.getEhFrame();
+		Assert.assertEquals(1, header.getVersion());
+		Assert.assertEquals(253, header.getFdeCount());
+		Assert.assertEquals(ehFrame.getAddress(), header.getEhFramePointer());
+
+		DwarfFde fde = dwarf.findFde(0x4700);
+		Assert.assertEquals(0x48, fde.getOffset());
+		Assert.assertEquals(0x4610, fde.getInitialLocation());
+		Assert.assertEquals(0x620, fde.getAddressRange());
+		Assert.assertEquals("zR", fde.getCie().getAugmentation());
+		Assert.assertEquals(-8, fde.getCie().getDataAlignment());
+		Assert.assertEquals(16, fde.getCie().getReturnAddressRegister());
+		Assert.assertNull(dwarf.findFde(0x4e5c));
+		Assert.assertFalse(ehFrame.isIndexBuilt());
+
+		// The table of the header and the index built by scanning .eh_frame agree
+		Assert.assertEquals(header.getFdeCount(), ehFrame.getFdeCount());
+		for(int i = 0; i < header.getFdeCount(); i++) {
+			long pc = header.getInitialLocation(i);
+			Assert.assertEquals(header.getFdeAddress(i) - ehFrame.getAddress(), ehFrame.findFde(pc).getOffset());
+		}
+
+		// Without .eh_frame_hdr the entries of .debug_frame are searched
+		resource = new File(BasicTest.class.getResource("/android_arm_libncurses").getPath());
+		dwarf = new ElfFile(resource).getDwarf();
+		Assert.assertNull(dwarf.getEhFrameHeader());
+		fde = dwarf.findFde(0x2d9e0);
+		Assert.assertEquals(0x30, fde.getOffset());
+		Assert.assertEquals(0x2d9e0, fde.getInitialLocation());
+		Assert.assertEquals(38, dwarf.getDebugFrame().getFdeCount());
+	}
+
+	@Test
+	public void testDwarfFrameTable() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/linux_amd64_bindash").getPath());
+		Dwarf dwarf = new ElfFile(resource).getDwarf();
+		DwarfFrameTable table = dwarf.findFde(0x4f60).getFrameTable();
+		Assert.assertSame(table, dwarf.findFde(0x4f60).getFrameTable());
+		Assert.assertEquals(7, table.getRows().size());
+
+		DwarfFrameRow row = dwarf.findFrameRow(0x4f60);
+		Assert.assertEquals(0x4f57, row.getStart());
+		Assert.assertEquals(0x4fd4, row.getEnd());
+		Assert.assertEquals(DwarfRegisters.X64_RSP, row.getCfaRegister());
+		Assert.assertEquals(32, row.getCfaOffset());
+		Assert.assertEquals(DwarfRegisterRule.OFFSET, row.getRule(DwarfRegisters.X64_RA).getKind());
+		Assert.assertEquals(-8, row.getRule(DwarfRegisters.X64_RA).getOffset());
+		Assert.assertEquals(-32, row.getRule(3).getOffset());
+		Assert.assertNull(row.getRule(15));
+		Assert.assertEquals(8, dwarf.findFrameRow(0x4fda).getCfaOffset());
+		Assert.assertNull(dwarf.findFrameRow(0x4fdb));
+
+		// An AArch64 .debug_frame entry signing the return address and remembering state
+		ByteBuffer frame = ByteBuffer.allocate(0x40).order(ByteOrder.LITTLE_ENDIAN);
+		frame.putInt(0x0c).putInt(0xffffffff).put((byte)1).put((byte)0).put((byte)4).put((byte)0x78).put((byte)30);
+		frame.put(new byte[] { 0x0c, 0x1f, 0x00 });
+		frame.putInt(0x24).putInt(0).putLong(0x1000).putLong(0x40);
+		frame.put(new byte[] { 0x2d, 0x41, 0x0e, 0x10, (byte)0x9d, 0x02, (byte)0x9e, 0x01, 0x42, 0x0a, 0x0f, 0x01, (byte)0x9f,
+				(byte)0xde, 0x41, 0x0b });
+		frame.flip();
+
+		table = new DwarfFrameSection(frame, 0, false, 8).readFde(0x10).getFrameTable();
+		List<DwarfFrameRow> rows = table.getRows();
+		Assert.assertEquals(4, rows.size());
+		Assert.assertTrue(rows.get(0).isReturnAddressSigned());
+		Assert.assertEquals(DwarfRegisters.AARCH64_SP, rows.get(0).getCfaRegister());
+		Assert.assertEquals(0x1004, rows.get(1).getStart());
+		Assert.assertEquals(16, rows.get(1).getCfaOffset());
+		Assert.assertEquals(-16, rows.get(1).getRule(DwarfRegisters.AARCH64_X29).getOffset());
+		Assert.assertEquals(-8, rows.get(1).getRule(DwarfRegisters.AARCH64_X30).getOffset());
+		Assert.assertTrue(rows.get(2).isCfaExpression());
+		Assert.assertArrayEquals(new byte[] { (byte)0x9f }, rows.get(2).getCfaExpression());
+		Assert.assertNull(rows.get(2).getRule(DwarfRegisters.AARCH64_X30));
+		Assert.assertEquals(0x1010, rows.get(3).getStart());
+		Assert.assertEquals(0x1040, rows.get(3).getEnd());
+		Assert.assertFalse(rows.get(3).isCfaExpression());
+		Assert.assertEquals(16, rows.get(3).getCfaOffset());
+		Assert.assertEquals(-8, rows.get(3).getRule(DwarfRegisters.AARCH64_X30).getOffset());
+		Assert.assertTrue(rows.get(3).isReturnAddressSigned());
+		Assert.assertSame(rows.get(3), table.findRow(0x103c));
+	}
+
+	@Test
+	public void testArmExidx() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/android_arm_libncurses").getPath());
+		ElfFile file = new ElfFile(resource);
+		ElfSection section = file.getSectionHeaders().getSectionByName(".ARM.exidx");
+		Assert.assertEquals("ARM_EXIDX", section.getType().name(file.getHeader().getMachine()));
+		ElfArmExidxSection exidx = (ElfArmExidxSection) section;
+		Assert.assertEquals(34, exidx.getEntryCount());
+
+		ElfArmUnwindEntry entry = exidx.getEntry(0);
+		Assert.assertEquals(0x2dadc, entry.getFunctionAddress());
+		Assert.assertEquals(0x39b50, entry.getTableAddress());
+		Assert.assertEquals(1, entry.getPersonalityIndex());
+		Assert.assertEquals(Arrays.asList("pop {r1}", "pop {r14}", "finish", "finish"), entry.getInstructions().describe());
+		Assert.assertFalse(entry.isInline());
+		Assert.assertTrue(exidx.getEntry(2).isInline());
+		Assert.assertEquals(0x80b107afL, exidx.getEntry(2).getValue());
+		Assert.assertEquals(2, exidx.findEntryIndex(0x2db10));
+		Assert.assertEquals(-1, exidx.findEntryIndex(0x2dad0));
+		Assert.assertTrue(exidx.findEntry(0x2e9c8).isCantUnwind());
+
+		// pop {r0, r1, r2}; pop {r4, r5, r14} from a stack holding the word index times 0x10
+		ElfArmUnwindState state = new ElfArmUnwindState(new ElfArmUnwindState.Memory() {
+			@Override
+			public long readWord(long address) {
+				return (address - 0x8000) / 4 * 0x10;
+			}
+		});
+		state.setRegister(ElfArmUnwindState.SP, 0x8000);
+		state.setRegister(ElfArmUnwindState.PC, 0x2dc41);
+		Assert.assertTrue(exidx.unwind(state));
+		Assert.assertEquals(0x8018, state.getRegister(ElfArmUnwindState.SP));
+		Assert.assertEquals(0x20, state.getRegister(2));
+		Assert.assertEquals(0x40, state.getRegister(5));
+		Assert.assertEquals(0x50, state.getRegister(ElfArmUnwindState.LR));
+		Assert.assertEquals(0x50, state.getRegister(ElfArmUnwindState.PC));
+	}
+
+	/**
+	 * Appends a note with the name CORE, which is padded from 5 to 8 bytes
+	 */
+	private static void putCoreNote(ByteBuffer b, int type, byte[] desc) {
+		b.putInt(5).putInt(desc.length).putInt(type).put("CORE".getBytes()).put(new byte[4]).put(desc);
+		b.put(new byte[(4 - desc.length % 4) % 4]);
+	}
+
+	@Test
+	public void testCoreFile() throws ElfException, FileNotFoundException, IOException {
+		ByteBuffer prstatus = ByteBuffer.allocate(336).order(ByteOrder.LITTLE_ENDIAN);
+		prstatus.putShort(12, (short)11).putInt(32, 1234).putInt(36, 1);
+		prstatus.putLong(112 + 16 * 8, 0x401000).putLong(112 + 19 * 8, 0x7ff0);
+		ByteBuffer prpsinfo = ByteBuffer.allocate(136).order(ByteOrder.LITTLE_ENDIAN);
+		prpsinfo.put(1, (byte)'R').putInt(24, 1234);
+		prpsinfo.position(40);
+		prpsinfo.put("crasher".getBytes()).position(56);
+		prpsinfo.put("./crasher --now".getBytes());
+		ByteBuffer auxv = ByteBuffer.allocate(48).order(ByteOrder.LITTLE_ENDIAN);
+		auxv.putLong(ElfAuxiliaryVector.AT_PAGESZ).putLong(4096).putLong(ElfAuxiliaryVector.AT_ENTRY).putLong(0x401000);
+		ByteBuffer mappings = ByteBuffer.allocate(40 + 19).order(ByteOrder.LITTLE_ENDIAN);
+		mappings.putLong(1).putLong(4096).putLong(0x400000).putLong(0x402000).putLong(0);
+		mappings.put("/usr/bin/crasher".getBytes());
+
+		// Header, a note segment and two memory segments, of which only the stack is dumped
+		ByteBuffer b = ByteBuffer.allocate(0x2000).order(ByteOrder.LITTLE_ENDIAN);
+		b.put(new byte[] { 0x7f, 'E', 'L', 'F', 2, 1, 1 }).position(16);
+		b.putShort((short)4).putShort((short)0x3e).putInt(1).putLong(0).putLong(64).putLong(0).putInt(0);
+		b.putShort((short)64).putShort((short)56).putShort((short)3).putShort((short)64).putShort((short)0).putShort((short)0);
+		int notes = 64 + 3 * 56;
+		b.position(notes);
+		putCoreNote(b, ElfNoteType.PRSTATUS, prstatus.array());
+		putCoreNote(b, ElfNoteType.PRPSINFO, prpsinfo.array());
+		putCoreNote(b, ElfNoteType.AUXV, auxv.array());
+		putCoreNote(b, ElfNoteType.FILE, mappings.array());
+		int notesSize = b.position() - notes;
+		b.position(64);
+		b.putInt(ElfSegment.Type.NOTE).putInt(0).putLong(notes).putLong(0).putLong(0).putLong(notesSize).putLong(0).putLong(4);
+		b.putInt(ElfSegment.Type.LOAD).putInt(6).putLong(0x1000).putLong(0x7000).putLong(0).putLong(0x1000).putLong(0x1000).putLong(0x1000);
+		b.putInt(ElfSegment.Type.LOAD).putInt(5).putLong(0).putLong(0x400000).putLong(0).putLong(0).putLong(0x2000).putLong(0x1000);
+		b.putLong(0x1ff0, 0x401234);
+
+		ElfFile file = new ElfFile(b.array());
+		Assert.assertEquals(0, file.getSectionHeaders().size());
+		ElfCoreFile core = new ElfCoreFile(file);
+		Assert.assertEquals(2, core.getMemorySegmentCount());
+
+		ElfCoreThread thread = core.getThreads().get(0);
+		Assert.assertEquals(1, core.getThreads().size());
+		Assert.assertEquals(1234, thread.getPid());
+		Assert.assertEquals(11, thread.getSignal());
+		Assert.assertEquals(27, thread.getRegisterCount());
+		Assert.assertEquals(0x401000, thread.getProgramCounter());
+		Assert.assertEquals(0x7ff0, thread.getStackPointer());
+		Assert.assertEquals("rip", thread.getRegisterName(16));
+
+		Assert.assertEquals('R', core.getProcessInfo().getState());
+		Assert.assertEquals("crasher", core.getProcessInfo().getFileName());
+		Assert.assertEquals("./crasher --now", core.getProcessInfo().getArguments());
+		Assert.assertEquals(Long.valueOf(0x401000), core.getAuxiliaryVector().get(ElfAuxiliaryVector.AT_ENTRY));
+		Assert.assertNull(core.getAuxiliaryVector().get(ElfAuxiliaryVector.AT_BASE));
+		Assert.assertEquals(4096, core.getPageSize());
+		Assert.assertEquals("/usr/bin/crasher", core.findMapping(0x401234).getPath());
+		Assert.assertNull(core.findMapping(0x7000));
+
+		Assert.assertEquals(0x401234, core.readPointer(0x7ff0));
+		Assert.assertTrue(core.isAvailable(0x7000, 0x1000));
+		Assert.assertFalse(core.isAvailable(0x7ff0, 0x20));
+		Assert.assertFalse(core.isAvailable(0x401000, 1));
+		try {
+			core.readMemory(0x401000, 4);
+			Assert.fail("Memory which was not dumped should be unavailable");
+		} catch(ElfException e) {
+			Assert.assertTrue(e.getMessage().contains("not present"));
+		}
+	}
+
+	@Test
+	public void testCoreUnwind() throws ElfException, FileNotFoundException, IOException {
+		ElfFile hello = new ElfFile(new File(BasicTest.class.getResource("/hello_x86_64.out").getPath()));
+		ElfSymbolIndex symbols = hello.getSymbolIndex();
+		Assert.assertEquals(10, symbols.size());
+		Assert.assertEquals("main", symbols.find(0x650).getName());
+		Assert.assertNull(symbols.find(0x666));
+		// Functions without a size extend to the next function
+		Assert.assertEquals("register_tm_clones", symbols.find(0x5f0).getName());
+
+		// The CFA of an x86-64 PLT entry: rsp + 8, plus 8 more after the push of the second instruction
+		byte[] plt = { 0x77, 0x08, (byte)0x80, 0x00, 0x3f, 0x1a, 0x3b, 0x2a, 0x33, 0x24, 0x22 };
+		final long[] registers = new long[17];
+		DwarfExpression.Context context = new DwarfExpression.Context() {
+			@Override
+			public long getRegister(int register) {
+				return registers[register];
+			}
+
+			@Override
+			public long readMemory(long address, int size) {
+				throw new ElfException("No memory");
+			}
+		};
+		registers[DwarfRegisters.X64_RSP] = 0x1000;
+		registers[DwarfRegisters.X64_RA] = 0x401004;
+		Assert.assertEquals(0x1008, new DwarfExpression(plt, ByteOrder.LITTLE_ENDIAN, 8).evaluate(context));
+		registers[DwarfRegisters.X64_RA] = 0x40100c;
+		Assert.assertEquals(0x1010, new DwarfExpression(plt, ByteOrder.LITTLE_ENDIAN, 8).evaluate(context));
+
+		// A thread without call frame information, unwound through its chain of saved rbp
+		ByteBuffer prstatus = ByteBuffer.allocate(336).order(ByteOrder.LITTLE_ENDIAN);
+		prstatus.putInt(32, 77);
+		prstatus.putLong(112 + 4 * 8, 0x7f10).putLong(112 + 16 * 8, 0x401000).putLong(112 + 19 * 8, 0x7f00);
+
+		ByteBuffer b = ByteBuffer.allocate(0x2000).order(ByteOrder.LITTLE_ENDIAN);
+		b.put(new byte[] { 0x7f, 'E', 'L', 'F', 2, 1, 1 }).position(16);
+		b.putShort((short)4).putShort((short)0x3e).putInt(1).putLong(0).putLong(64).putLong(0).putInt(0);
+		b.putShort((short)64).putShort((short)56).putShort((short)2).putShort((short)64).putShort((short)0).putShort((short)0);
+		int notes = 64 + 2 * 56;
+		b.position(notes);
+		putCoreNote(b, ElfNoteType.PRSTATUS, prstatus.array());
+		int notesSize = b.position() - notes;
+		b.position(64);
+		b.putInt(ElfSegment.Type.NOTE).putInt(0).putLong(notes).putLong(0).putLong(0).putLong(notesSize).putLong(0).putLong(4);
+		b.putInt(ElfSegment.Type.LOAD).putInt(6).putLong(0x1000).putLong(0x7000).putLong(0).putLong(0x1000).putLong(0x1000).putLong(0x1000);
+		b.putLong(0x1f10, 0x7f40).putLong(0x1f18, 0x401100);
+		b.putLong(0x1f40, 0).putLong(0x1f48, 0x401200);
+
+		ElfCoreFile core = new ElfCoreFile(new ElfFile(b.array()));
+		List<ElfBacktrace> backtraces = ElfCoreUnwinder.unwindAllThreads(core);
+		Assert.assertEquals(1, backtraces.size());
+		List<ElfStackFrame> frames = backtraces.get(0).getFrames();
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals(0x401000, frames.get(0).getProgramCounter());
+		Assert.assertEquals(ElfStackFrame.CONTEXT, frames.get(0).getMethod());
+		Assert.assertEquals(0x401100, frames.get(1).getProgramCounter());
+		Assert.assertEquals(0x7f20, frames.get(1).getStackPointer());
+		Assert.assertEquals(ElfStackFrame.FRAME_POINTER, frames.get(1).getMethod());
+		Assert.assertEquals(0x401200, frames.get(2).getProgramCounter());
+		Assert.assertEquals(0x7f50, frames.get(2).getStackPointer());
+		Assert.assertEquals("??", frames.get(2).getFunction());
+		Assert.assertNull(frames.get(2).getModulePath());
+		Assert.assertTrue(backtraces.get(0).getStopReason().startsWith("no unwind information"));
+
+		// Two threads stopped in the PLT entry of printf, called by main, unwound through .eh_frame
+		String path = new File(BasicTest.class.getResource("/hello_x86_64.out").getPath()).getAbsolutePath();
+		long base = 0x555555554000L;
+		prstatus = ByteBuffer.allocate(336).order(ByteOrder.LITTLE_ENDIAN);
+		prstatus.putInt(32, 78);
+		prstatus.putLong(112 + 4 * 8, 0x7f10).putLong(112 + 16 * 8, base + 0x520).putLong(112 + 19 * 8, 0x7f00);
+		ByteBuffer mappings = ByteBuffer.allocate(40 + path.length() + 1).order(ByteOrder.LITTLE_ENDIAN);
+		mappings.putLong(1).putLong(4096).putLong(base).putLong(base + 0x1000).putLong(0);
+		mappings.put(path.getBytes());
+
+		b = ByteBuffer.allocate(0x2000).order(ByteOrder.LITTLE_ENDIAN);
+		b.put(new byte[] { 0x7f, 'E', 'L', 'F', 2, 1, 1 }).position(16);
+		b.putShort((short)4).putShort((short)0x3e).putInt(1).putLong(0).putLong(64).putLong(0).putInt(0);
+		b.putShort((short)64).putShort((short)56).putShort((short)2).putShort((short)64).putShort((short)0).putShort((short)0);
+		b.position(notes);
+		putCoreNote(b, ElfNoteType.PRSTATUS, prstatus.array());
+		putCoreNote(b, ElfNoteType.PRSTATUS, prstatus.array());
+		putCoreNote(b, ElfNoteType.FILE, mappings.array());
+		notesSize = b.position() - notes;
+		b.position(64);
+		b.putInt(ElfSegment.Type.NOTE).putInt(0).putLong(notes).putLong(0).putLong(0).putLong(notesSize).putLong(0).putLong(4);
+		b.putInt(ElfSegment.Type.LOAD).putInt(6).putLong(0x1000).putLong(0x7000).putLong(0).putLong(0x1000).putLong(0x1000).putLong(0x1000);
+		// The return address into main, then the frame of main: the saved rbp and the return address into _start
+		b.putLong(0x1f00, base + 0x65f);
+		b.putLong(0x1f10, 0).putLong(0x1f18, base + 0x56a);
+
+		ElfCoreUnwinder unwinder = new ElfCoreUnwinder(new ElfCoreFile(new ElfFile(b.array())));
+		backtraces = unwinder.unwindAllThreads(2);
+		Assert.assertEquals(2, backtraces.size());
+		for(ElfBacktrace backtrace : backtraces) {
+			frames = backtrace.getFrames();
+			Assert.assertEquals(3, frames.size());
+			Assert.assertEquals(path, frames.get(0).getModulePath());
+			Assert.assertEquals(0x520, frames.get(0).getModuleAddress());
+			Assert.assertEquals(ElfStackFrame.CONTEXT, frames.get(0).getMethod());
+			Assert.assertEquals("main+0x15", frames.get(1).getFunction());
+			Assert.assertEquals(0x7f08, frames.get(1).getStackPointer());
+			Assert.assertEquals(ElfStackFrame.CFI, frames.get(1).getMethod());
+			Assert.assertEquals("_start+0x2a", frames.get(2).getFunction());
+			Assert.assertEquals(0x7f20, frames.get(2).getStackPointer());
+			Assert.assertEquals(ElfStackFrame.CFI, frames.get(2).getMethod());
+			Assert.assertEquals("outermost frame", backtrace.getStopReason());
+		}
+		Assert.assertSame(unwinder.getModule(unwinder.getCore().findMapping(base)),
+				unwinder.getModule(unwinder.getCore().findMapping(base + 0x650)));
+	}
+
+	@Test
+	public void testSegmentOnlyParsing() throws ElfException, FileNotFoundException, IOException {
+		File resource = new File(BasicTest.class.getResource("/linux_amd64_bindash").getPath());
+		byte[] bytes = Files.readAllBytes(resource.toPath());
+		ElfFile original = new ElfFile(bytes);
+
+		// Like sstrip: no section header table
+		ByteBuffer b = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		b.putLong(0x28, 0).putShort(0x3c, (short)0).putShort(0x3e, (short)0);
+		ElfFile stripped = new ElfFile(b.array());
+		Assert.assertTrue(stripped.getSectionHeaders().isReconstructed());
+		Assert.assertFalse(original.getSectionHeaders().isReconstructed());
+
+		ElfSymbolTableSection dynsym = stripped.getSectionHeaders().getSectionByName(".dynsym", ElfSymbolTableSection.class);
+		ElfSymbolTableSection expected = original.getSectionHeaders().getSectionByName(".dynsym", ElfSymbolTableSection.class);
+		Assert.assertEquals(expected.getSymbolCount(), dynsym.getSymbolCount());
+		for(int i = 0; i < expected.getSymbolCount(); i++)
+			Assert.assertEquals(expected.getSymbol(i).getName(), dynsym.getSymbol(i).getName());
+
+		ElfDynamicSection dynamic = stripped.getSectionHeaders().getSectionsOfType(ElfDynamicSection.class).get(0);
+		Assert.assertEquals("libc.so.6", dynamic.getEntriesOfType(ElfNeededDynamicEntry.class).get(0).getLib());
+		Assert.assertEquals(original.getSectionHeaders().getSectionByName(".rela.plt").getFileSize(),
+				stripped.getSectionHeaders().getSectionByName(".rela.plt").getFileSize());
+		Assert.assertEquals(0x1788, stripped.getProgramHeaders().getFileOffset(0x1788));
+		Assert.assertEquals(0x1ca88, stripped.getProgramHeaders().getFileOffset(0x21ca88));
+
+		// Call frame information is found through PT_GNU_EH_FRAME
+		Assert.assertEquals(original.getDwarf().findFde(0x4700).getOffset(), stripped.getDwarf().findFde(0x4700).getOffset());
+
+		// Without exported symbols the GNU hash table is empty, the symbols end at the string table
+		bytes = Files.readAllBytes(new File(BasicTest.class.getResource("/hello_x86_64.out").getPath()).toPath());
+		b = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		b.putLong(0x28, 0).putShort(0x3c, (short)0).putShort(0x3e, (short)0);
+		Assert.assertEquals(7, new ElfFile(b.array()).getSectionHeaders().getSectionByName(".dynsym", ElfSymbolTableSection.class).getSymbolCount());
+	}
+
+	@Test
+	public void testExtendedSectionNumbering() throws ElfException, FileNotFoundException, IOException {
+		// A relocatable file whose section count and string table index are kept in section 0
+		ByteBuffer b = ByteBuffer.allocate(0x280).order(ByteOrder.LITTLE_ENDIAN);
+		b.put(new byte[] { 0x7f, 'E', 'L', 'F', 2, 1, 1 }).position(16);
+		b.putShort((short)1).putShort((short)0x3e).putInt(1).putLong(0).putLong(0).putLong(0x100).putInt(0);
+		b.putShort((short)64).putShort((short)56).putShort((short)0).putShort((short)64).putShort((short)0).putShort((short)0xffff);
+		b.position(0x50 + 24);
+		b.putInt(1).put((byte)0x12).put((byte)0).putShort(ElfSymbol.SectionIndex.XINDEX).putLong(0).putLong(16);
+		b.putInt(5).put((byte)0x11).put((byte)0).putShort((short)1).putLong(8).putLong(4);
+		b.position(0x98);
+		b.put("\0foo\0bar\0".getBytes());
+		b.putInt(0xa4 + 4, 1);
+		String names = "\0.text\0.symtab\0.strtab\0.shstrtab\0.symtab_shndx\0";
+		b.position(0xb0);
+		b.put(names.getBytes());
+		b.position(0x100);
+		b.putInt(0).putInt(ElfSection.Type.NULL).putLong(0).putLong(0).putLong(0).putLong(6).putInt(4).putInt(0).putLong(0).putLong(0);
+		b.putInt(names.indexOf(".text")).putInt(ElfSection.Type.PROGBITS).putLong(6).putLong(0).putLong(0x40).putLong(16).putInt(0).putInt(0).putLong(16).putLong(0);
+		b.putInt(names.indexOf(".symtab")).putInt(ElfSection.Type.SYMTAB).putLong(0).putLong(0).putLong(0x50).putLong(72).putInt(3).putInt(1).putLong(8).putLong(24);
+		b.putInt(names.indexOf(".strtab")).putInt(ElfSection.Type.STRTAB).putLong(0).putLong(0).putLong(0x98).putLong(9).putInt(0).putInt(0).putLong(1).putLong(0);
+		b.putInt(names.indexOf(".shstrtab")).putInt(ElfSection.Type.STRTAB).putLong(0).putLong(0).putLong(0xb0).putLong(names.length()).putInt(0).putInt(0).putLong(1).putLong(0);
+		b.putInt(names.indexOf(".symtab_shndx")).putInt(ElfSection.Type.SYMTAB_SHNDX).putLong(0).putLong(0).putLong(0xa4).putLong(12).putInt(2).putInt(0).putLong(4).putLong(4);
+
+		ElfFile file = new ElfFile(b.array());
+		ElfHeader h = file.getHeader();
+		Assert.assertEquals(0, h.getSectionHeaderEntryCount());
+		Assert.assertEquals(6, h.getSectionCount());
+		Assert.assertEquals(4, h.getSectionStringTableIndex());
+		Assert.assertTrue(h.toString().contains("0 (6)"));
+		assertSectionNames(file, "", ".text", ".symtab", ".strtab", ".shstrtab", ".symtab_shndx");
+
+		ElfSymbolTableSection symtab = file.getSectionHeaders().getSectionByName(".symtab", ElfSymbolTableSection.class);
+		ElfSymbol foo = symtab.getSymbol(1);
+		Assert.assertEquals("foo", foo.getName());
+		Assert.assertEquals(ElfSymbol.SectionIndex.XINDEX, foo.getSectionHeaderIndex().val);
+		Assert.assertEquals(1, foo.getSectionIndex());
+		Assert.assertEquals(".text", foo.getSection().getName());
+		Assert.assertEquals(1, symtab.getSymbol(2).getSectionIndex());
+		Assert.assertEquals(0, symtab.getExtendedSectionIndex(2));
+	}
+
+	@Test
+	public void testSectionGroups() throws ElfException, FileNotFoundException, IOException {
+		// g++ -O0 -c of a template instantiated for two types and an inline function with a static
+		ElfFile file = new ElfFile(new File(BasicTest.class.getResource("/comdat_x86_64.o").getPath()));
+		ElfSectionHeaders sections = file.getSectionHeaders();
+		Assert.assertArrayEquals(new int[] { 1, 2, 3, 4 }, sections.getSectionIndexesByName(".group"));
+		Assert.assertEquals(1, sections.getSectionIndexByName(".group").intValue());
+		Assert.assertEquals(4, sections.getSectionsByName(".group").size());
+		Assert.assertEquals(0, sections.getSectionIndexesByName(".missing").length);
+
+		List<ElfGroupSection> groups = sections.getGroups();
+		Assert.assertEquals(4, groups.size());
+		ElfGroupSection group = groups.get(1);
+		Assert.assertTrue(group.isComdat());
+		Assert.assertEquals("_Z6hiddeni", group.getSignature());
+		Assert.assertArrayEquals(new int[] { 10, 11 }, group.getMemberIndexes());
+		Assert.assertEquals(".rela.text._Z6hiddeni", group.getMembers().get(1).getName());
+
+		Assert.assertSame(group, sections.getGroupOf(11));
+		Assert.assertSame(groups.get(3), sections.getGroupOf(sections.getSectionIndexByName(".text._Z5twiceIlET_S0_")));
+		Assert.assertNull(sections.getGroupOf(sections.getSectionIndexByName(".text")));
+	}
+
+	@Test
+	public void testCompressedSections() throws ElfException, FileNotFoundException, IOException {
+		// gcc -g of a small program, with android_arm_tset added as .debug_tset and objcopy --compress-debug-sections=zstd
+		ElfFile file = new ElfFile(new File(BasicTest.class.getResource("/debug_zstd_x86_64.out").getPath()));
+		ElfSection tset = file.getSectionHeaders().getSectionByName(".debug_tset");
+		Assert.assertTrue(tset.isCompressed());
+		ElfCompressionHeader header = tset.getCompressionHeader();
+		Assert.assertEquals(ElfCompressionHeader.Type.ZSTD, header.getType());
+		Assert.assertEquals(24, header.getHeaderSize());
+		byte[] expected = Files.readAllBytes(new File(BasicTest.class.getResource("/android_arm_tset").getPath()).toPath());
+		Assert.assertEquals(expected.length, tset.getUncompressedSize());
+		Assert.assertArrayEquals(expected, tset.decompress());
+
+		byte[] streamed = new byte[expected.length];
+		try(InputStream in = tset.openUncompressedStream()) {
+			int n = 0;
+			for(int r; n < streamed.length && (r = in.read(streamed, n, streamed.length - n)) > 0;)
+				n += r;
+			Assert.assertEquals(expected.length, n);
+			Assert.assertEquals(-1, in.read());
+		}
+		Assert.assertArrayEquals(expected, streamed);
+
+		// The debug sections are decompressed on demand, once for the DWARF decoder even if they
+		// do not fit in the cache of the file
+		ElfCountingMetrics metrics = new ElfCountingMetrics();
+		ElfFile counted = new ElfFile(new File(BasicTest.class.getResource("/debug_zstd_x86_64.out").getPath()), metrics);
+		ElfSection countedInfo = counted.getSectionHeaders().getSectionByName(".debug_info");
+		counted.getDecompressionCache().setMaxBytes(countedInfo.getUncompressedSize() - 1);
+		Dwarf dwarf = counted.getDwarf();
+		DwarfSourceLine line = dwarf.findLine(0x1139);
+		Assert.assertEquals("d.c", line.getFileName().substring(line.getFileName().lastIndexOf('/') + 1));
+		Assert.assertEquals(4, line.getLine());
+		Assert.assertEquals(32, dwarf.getTypeReader().findLayouts("point").get(0).getSize());
+		long bytesRead = metrics.getBytesRead();
+		Assert.assertEquals(4, dwarf.findLine(0x1139).getLine());
+		Assert.assertEquals(32, dwarf.getTypeReader().findLayouts("point").get(0).getSize());
+		Assert.assertSame(dwarf.getSection(".debug_info"), dwarf.getSection(".debug_info"));
+		Assert.assertEquals(bytesRead, metrics.getBytesRead());
+		Assert.assertEquals(countedInfo.getUncompressedSize(), dwarf.getSection(".debug_info").capacity());
+		Assert.assertFalse(counted.getDecompressionCache().isCached(countedInfo));
+		Assert.assertTrue(counted.getMemoryEstimate().get(ElfMemoryEstimate.DEBUG_INFO) >= countedInfo.getUncompressedSize());
+		Assert.assertTrue(dwarf.getDecompressedBytes() >= countedInfo.getUncompressedSize());
+
+		// Sections over the limit of the decoder are not kept by it, but by the evictable cache of the file
+		ElfFile limited = new ElfFile(new File(BasicTest.class.getResource("/debug_zstd_x86_64.out").getPath()));
+		ElfSection limitedInfo = limited.getSectionHeaders().getSectionByName(".debug_info");
+		Dwarf limitedDwarf = new Dwarf(limited);
+		limitedDwarf.setMaxDecompressedBytes(limitedInfo.getUncompressedSize() - 1);
+		Assert.assertEquals(4, limitedDwarf.findLine(0x1139).getLine());
+		Assert.assertEquals(limitedInfo.getUncompressedSize(), limitedDwarf.getSection(".debug_info").remaining());
+		Assert.assertTrue(limited.getDecompressionCache().isCached(limitedInfo));
+		Assert.assertTrue(limitedDwarf.getDecompressedBytes() <= limitedDwarf.getMaxDecompressedBytes());
+		limited.getDecompressionCache().clear();
+		Assert.assertFalse(limited.getDecompressionCache().isCached(limitedInfo));
+		Assert.assertEquals(4, limitedDwarf.findLine(0x1139).getLine());
+
+		// Other callers share the bounded cache of the file
+		ElfDecompressionCache cache = file.getDecompressionCache();
+		ElfSection info = file.getSectionHeaders().getSectionByName(".debug_info");
+		Assert.assertEquals(info.getUncompressedSize(), info.getUncompressedDataBuffer().remaining());
+		Assert.assertTrue(cache.isCached(info));
+		Assert.assertTrue(cache.getCachedBytes() >= info.getUncompressedSize());
+		cache.setMaxBytes(0);
+		Assert.assertEquals(0, cache.getCachedBytes());
+		Assert.assertFalse(cache.isCached(info));
+		Assert.assertEquals(info.getUncompressedSize(), info.getUncompressedDataBuffer().remaining());
+		Assert.assertFalse(cache.isCached(info));
+
+		// A zlib compressed section in a file of its own
+		byte[] contents = new byte[5000];
+		for(int i = 0; i < contents.length; i++)
+			contents[i] = (byte)(i % 251 ^ i / 97);
+		Deflater deflater = new Deflater();
+		deflater.setInput(contents);
+		deflater.finish();
+		byte[] deflated = new byte[contents.length * 2];
+		int deflatedSize = deflater.deflate(deflated);
+		deflater.end();
+
+		String names = "\0.debug_x\0.shstrtab\0";
+		int namesOffset = 0x40 + 24 + deflatedSize;
+		int headersOffset = (namesOffset + names.length() + 7) & ~7;
+		ByteBuffer b = ByteBuffer.allocate(headersOffset + 3 * 64).order(ByteOrder.LITTLE_ENDIAN);
+		b.put(new byte[] { 0x7f, 'E', 'L', 'F', 2, 1, 1 }).position(16);
+		b.putShort((short)1).putShort((short)0x3e).putInt(1).putLong(0).putLong(0).putLong(headersOffset).putInt(0);
+		b.putShort((short)64).putShort((short)56).putShort((short)0).putShort((short)64).putShort((short)3).putShort((short)2);
+		b.putInt(ElfCompressionHeader.Type.ZLIB).putInt(0).putLong(contents.length).putLong(1);
+		b.put(deflated, 0, deflatedSize);
+		b.put(names.getBytes());
+		b.position(headersOffset + 64);
+		b.putInt(names.indexOf(".debug_x")).putInt(ElfSection.Type.PROGBITS).putLong(ElfSection.Flag.COMPRESSED).putLong(0)
+				.putLong(0x40).putLong(24 + deflatedSize).putInt(0).putInt(0).putLong(8).putLong(0);
+		b.putInt(names.indexOf(".shstrtab")).putInt(ElfSection.Type.STRTAB).putLong(0).putLong(0)
+				.putLong(namesOffset).putLong(names.length()).putInt(0).putInt(0).putLong(1).putLong(0);
+
+		ElfSection zlib = new ElfFile(b.array()).getSectionHeaders().getSectionByName(".debug_x");
+		Assert.assertEquals("ZLIB", zlib.getCompressionHeader().getTypeName());
+		Assert.assertArrayEquals(contents, zlib.decompress());
+		ByteBuffer buffer = zlib.getUncompressedDataBuffer();
+		Assert.assertEquals(contents.length, buffer.remaining());
+		Assert.assertEquals(contents[4999], buffer.get(4999));
+	}
+
+	@Test
+	public void testLruCache() {
+		ElfLruCache<String, String> cache = new ElfLruCache<String, String>(5, String::length);
+		Assert.assertEquals("ab", cache.get("a", k -> k + "b"));
+		Assert.assertEquals("ab", cache.get("a", k -> "other"));
+		Assert.assertEquals("cd", cache.get("c", k -> k + "d"));
+		Assert.assertEquals(4, cache.getWeight());
+
+		// Heavier than the limit, or null, is returned without being cached
+		Assert.assertEquals("too long", cache.get("t", k -> "too long"));
+		Assert.assertNull(cache.get("n", k -> null));
+		Assert.assertFalse(cache.containsKey("t"));
+		Assert.assertFalse(cache.containsKey("n"));
+
+		// The least recently used value is evicted first
+		cache.get("a", k -> "other");
+		cache.get("e", k -> "ef");
+		Assert.assertEquals(Arrays.asList("ab", "ef"), cache.values());
+		Assert.assertNull(cache.getIfPresent("c"));
+		cache.setMaxWeight(2);
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals("ef", cache.getIfPresent("e"));
+		cache.clear();
+		Assert.assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testMiniDebugInfo() throws ElfException, FileNotFoundException, IOException {
+		// A stripped gcc -rdynamic build with the static functions square and cube kept in .gnu_debugdata, the Fedora way
+		File resource = new File(BasicTest.class.getResource("/minidebuginfo_x86_64.out").getPath());
+		ElfFile file = new ElfFile(resource);
+		Assert.assertEquals("d6eff2a92859ec0e9b51952c98836c601b7851ff", file.getBuildId());
+		Assert.assertNull(file.getSectionHeaders().getSectionIndexByName(".symtab"));
+
+		ElfFile embedded = file.getMiniDebugInfo();
+		Assert.assertNotNull(embedded);
+		Assert.assertEquals(file.getBuildId(), embedded.getBuildId());
+		Assert.assertNotNull(embedded.getSectionHeaders().getSectionIndexByName(".symtab"));
+
+		ElfSymbolIndex index = file.getSymbolIndex();
+		Assert.assertEquals("square", index.find(0x1150).getName());
+		Assert.assertEquals("cube", index.find(0x1158).getName());
+		Assert.assertEquals("visible", index.find(0x1170).getName());
+		Assert.assertEquals("main", index.find(0x1176).getName());
+
+		// Without a cache each file decompresses and counts its own embedded file
+		Assert.assertFalse(embedded == new ElfFile(resource).getMiniDebugInfo());
+		Assert.assertTrue(file.getMemoryEstimate().getComponents().containsKey(ElfMemoryEstimate.MINI_DEBUG_INFO));
+
+		// Files of the same build share the decompressed file of their cache, which counts it once
+		ElfMiniDebugInfoCache cache = new ElfMiniDebugInfoCache();
+		ElfFile first = new ElfFile(resource);
+		ElfFile second = new ElfFile(resource);
+		first.setMiniDebugInfoCache(cache);
+		second.setMiniDebugInfoCache(cache);
+		Assert.assertSame(first.getMiniDebugInfo(), second.getMiniDebugInfo());
+		Assert.assertTrue(cache.isCached(file.getBuildId()));
+		Assert.assertEquals(first.getMiniDebugInfo().getParser().getLength(), cache.getCachedBytes());
+		Assert.assertFalse(second.getMemoryEstimate().getComponents().containsKey(ElfMemoryEstimate.MINI_DEBUG_INFO));
+		ElfMemoryEstimate cacheEstimate = new ElfMemoryEstimate();
+		cache.estimateRetainedBytes(cacheEstimate);
+		Assert.assertTrue(cacheEstimate.get(ElfMemoryEstimate.MINI_DEBUG_INFO) > 0);
+		cache.setMaxBytes(0);
+		Assert.assertFalse(cache.isCached(file.getBuildId()));
+
+		ElfSection section = file.getSectionHeaders().getSectionByName(ElfMiniDebugInfoCache.SECTION_NAME);
+		byte[] image = XzInputStream.decompress(file.getParser().getInputStream(section.getFileOffset(), section.getFileSize()));
+		Assert.assertEquals(embedded.getParser().getLength(), image.length);
+		byte[] streamed = new byte[image.length];
+		try(InputStream in = new XzInputStream(file.getParser().getInputStream(section.getFileOffset(), section.getFileSize()))) {
+			int n = 0;
+			for(int r; n < streamed.length && (r = in.read(streamed, n, streamed.length - n)) > 0;)
+				n += r;
+			Assert.assertEquals(-1, in.read());
+		}
+		Assert.assertArrayEquals(image, streamed);
+
+		// A damaged .gnu_debugdata leaves the symbols of .dynsym
+		byte[] damaged = Files.readAllBytes(resource.toPath());
+		int start = (int)section.getFileOffset();
+		for(int i = 16; i < section.getFileSize() - 16; i++)
+			damaged[start + i] ^= 0x55;
+		ElfFile broken = new ElfFile(damaged);
+		Assert.assertEquals("main", broken.getSymbolIndex().find(0x1176).getName());
+		Assert.assertNull(broken.getSymbolIndex().find(0x1150));
+		try {
+			broken.getMiniDebugInfo();
+			Assert.fail("Damaged .gnu_debugdata should not decompress");
+		} catch(ElfException e) {
+			// Expected
+		}
+
+		ElfFile hello = new ElfFile(new File(BasicTest.class.getResource("/hello_x86_64.out").getPath()));
+		Assert.assertNull(hello.getMiniDebugInfo());
+		Assert.assertNull(new ElfFile(new File(BasicTest.class.getResource("/comdat_x86_64.o").getPath())).getBuildId());
+	}
+
+	@Test
+	public void testDebugFileStore() throws ElfException, FileNotFoundException, IOException {
+		File withDebug = new File(BasicTest.class.getResource("/debug_zstd_x86_64.out").getPath());
+		File mini = new File(BasicTest.class.getResource("/minidebuginfo_x86_64.out").getPath());
+		String buildId = "95059d5b1dfd5280c312c38fca0af8d08c8f692c";
+		String miniBuildId = "d6eff2a92859ec0e9b51952c98836c601b7851ff";
+
+		File root = Files.createTempDirectory("jelf-debug").toFile();
+		List<File> created = new ArrayList<File>();
+		try {
+			// One build in the .build-id layout, one in the layout of the debuginfod client cache
+			File debugFile = ElfDebugFileStore.getBuildIdPath(root, buildId);
+			Assert.assertEquals(new File(root, ".build-id/95/059d5b1dfd5280c312c38fca0af8d08c8f692c.debug"), debugFile);
+			File cached = new File(root, miniBuildId + "/debuginfo");
+			// A stale link to a file of another build is skipped
+			File stale = ElfDebugFileStore.getBuildIdPath(root, "0011223344");
+			for(File f : new File[] { debugFile, cached, stale }) {
+				f.getParentFile().mkdirs();
+				created.add(f.getParentFile());
+				created.add(0, f);
+			}
+			Files.copy(withDebug.toPath(), debugFile.toPath());
+			Files.copy(mini.toPath(), cached.toPath());
+			Files.copy(mini.toPath(), stale.toPath());
+
+			ElfDebugFileStore store = new ElfDebugFileStore();
+			Assert.assertEquals(Arrays.asList(new File(ElfDebugFileStore.DEFAULT_ROOT)), store.getRoots());
+			store.setRoots(Arrays.asList(root));
+
+			ElfFile stripped = new ElfFile(withDebug);
+			ElfFile debug = store.findFor(stripped);
+			Assert.assertNotNull(debug);
+			Assert.assertEquals(buildId, debug.getBuildId());
+			Assert.assertEquals(debugFile, store.findPath(buildId));
+			Assert.assertEquals(4, debug.getDwarf().findLine(0x1139).getLine());
+
+			// Lookups are answered from the cache, including the misses
+			Assert.assertSame(debug, store.find(buildId.toUpperCase()));
+			Assert.assertSame(debug, store.findFor(new ElfFile(withDebug)));
+			Assert.assertEquals(miniBuildId, store.find(miniBuildId).getBuildId());
+			Assert.assertEquals(cached, store.findPath(miniBuildId));
+			Assert.assertNull(store.find("0011223344"));
+			Assert.assertNull(store.find("not-hex"));
+			Assert.assertEquals(3, store.getOpenedFileCount());
+			Assert.assertTrue(store.isCached("0011223344"));
+			Files.copy(withDebug.toPath(), stale.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Assert.assertNull(store.find("0011223344"));
+			Assert.assertEquals(3, store.getOpenedFileCount());
+			store.clear();
+			Assert.assertFalse(store.isCached(buildId));
+
+			// The least recently used build is evicted
+			ElfDebugFileStore small = new ElfDebugFileStore(1);
+			small.setRoots(Arrays.asList(root));
+			Assert.assertNotNull(small.find(buildId));
+			Assert.assertNotNull(small.find(miniBuildId));
+			Assert.assertFalse(small.isCached(buildId));
+			Assert.assertNull(new ElfDebugFileStore().findFor(new ElfFile(new File(BasicTest.class.getResource("/comdat_x86_64.o").getPath()))));
+
+			// Files too large to be mapped at once are skipped instead of truncated
+			File huge = ElfDebugFileStore.getBuildIdPath(root, "aabbccdd");
+			huge.getParentFile().mkdirs();
+			created.add(huge.getParentFile());
+			created.add(0, huge);
+			Files.copy(withDebug.toPath(), huge.toPath());
+			try(RandomAccessFile sparse = new RandomAccessFile(huge, "rw")) {
+				sparse.setLength(Integer.MAX_VALUE + 1L);
+			}
+			try {
+				ElfFile.map(huge);
+				Assert.fail("Files larger than 2 GiB should not be mapped");
+			} catch(ElfException e) {
+				// Expected
+			}
+			Assert.assertNull(store.find("aabbccdd"));
+			Assert.assertEquals(buildId, ElfFile.map(debugFile).getBuildId());
+		} finally {
+			for(File f : created)
+				f.delete();
+			new File(root, ".build-id").delete();
+			root.delete();
+		}
+	}
+
+	@Test
+	public void testDebugLink() throws ElfException, FileNotFoundException, IOException {
+		File strippedFile = new File(BasicTest.class.getResource("/debuglink_x86_64.out").getPath());
+		File debugFile = new File(BasicTest.class.getResource("/debuglink_x86_64.debug").getPath());
+		ElfFile stripped = new ElfFile(strippedFile);
+		Assert.assertNull(stripped.getBuildId());
+		ElfDebugLink link = stripped.getDebugLink();
+		Assert.assertEquals("debuglink_x86_64.debug", link.getFileName());
+		Assert.assertEquals(0xba34f3be, link.getCrc());
+		Assert.assertEquals(link.getCrc(), ElfDebugLink.checksum(debugFile));
+		Assert.assertNull(new ElfFile(debugFile).getDebugLink());
+
+		File root = Files.createTempDirectory("jelf-debuglink").toFile();
+		List<File> created = new ArrayList<File>();
+		try {
+			// CRCs computed in chunks are combined to the CRC of the whole file
+			File random = new File(root, "random");
+			created.add(random);
+			byte[] data = new byte[100003];
+			new Random(49).nextBytes(data);
+			Files.write(random.toPath(), data);
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			try(FileChannel channel = FileChannel.open(random.toPath(), StandardOpenOption.READ)) {
+				for(int chunkSize : new int[] { 1000, 4096, 65536, 1 << 20 })
+					Assert.assertEquals((int)crc.getValue(), ElfDebugLink.checksum(channel, chunkSize, ForkJoinPool.commonPool()));
+			}
+			Assert.assertEquals((int)crc.getValue(), ElfDebugLink.checksum(random));
+			Assert.assertEquals(0x12345678, ElfDebugLink.combine(0x12345678, 0, 0));
+
+			// A file of the same name with another CRC is skipped for the one in .debug
+			File bin = new File(root, "bin");
+			File binary = new File(bin, "debuglink_x86_64.out");
+			File wrong = new File(bin, "debuglink_x86_64.debug");
+			File right = new File(bin, ".debug/debuglink_x86_64.debug");
+			right.getParentFile().mkdirs();
+			created.add(0, bin);
+			created.add(0, right.getParentFile());
+			for(File f : new File[] { binary, wrong, right })
+				created.add(0, f);
+			Files.copy(strippedFile.toPath(), binary.toPath());
+			Files.copy(strippedFile.toPath(), wrong.toPath());
+			Files.copy(debugFile.toPath(), right.toPath());
+
+			ElfDebugFileStore store = new ElfDebugFileStore();
+			store.setRoots(Arrays.asList(root));
+			Assert.assertEquals(Arrays.asList(wrong, right, new File(root, bin.getAbsolutePath() + "/debuglink_x86_64.debug")),
+					store.getDebugLinkPaths(binary, link.getFileName()));
+			Assert.assertNull(store.findFor(stripped));
+			ElfFile debug = store.findFor(stripped, binary);
+			Assert.assertNotNull(debug);
+			Assert.assertEquals("helper", debug.getSymbolIndex().find(0x1139).getName());
+			Assert.assertEquals(4, debug.getDwarf().findLine(0x117e).getLine());
+
+			// Verified candidates are not read again until they change
+			Assert.assertTrue(store.isChecksumCached(wrong));
+			Assert.assertTrue(store.isChecksumCached(right));
+			Assert.assertSame(debug, store.findFor(new ElfFile(binary), binary));
+			Assert.assertEquals(1, store.getOpenedFileCount());
+			Assert.assertTrue(right.setLastModified(right.lastModified() - 10000));
+			Assert.assertFalse(store.isChecksumCached(right));
+
+			// The directory of the file below a root
+			File below = new File(root, bin.getAbsolutePath() + "/debuglink_x86_64.debug");
+			below.getParentFile().mkdirs();
+			Files.move(right.toPath(), below.toPath());
+			int deepest = 0;
+			for(File f = below; !f.equals(root); f = f.getParentFile())
+				created.add(deepest++, f);
+			store.clear();
+			Assert.assertEquals(4, store.findFor(stripped, binary).getDwarf().findLine(0x117e).getLine());
+			Assert.assertNull(store.findFor(stripped, new File(root, "elsewhere/debuglink_x86_64.out")));
+		} finally {
+			for(File f : created)
+				f.delete();
+			root.delete();
+		}
+	}
+
+	@Test
+	public void testSymbolizer() throws ElfException, FileNotFoundException, IOException {
+		String program = BasicTest.class.getResource("/debug_zstd_x86_64.out").getPath();
+		String hello = BasicTest.class.getResource("/hello_x86_64.out").getPath();
+		ElfProcessMaps first = ElfProcessMaps.parse(100,
+				"55d0c2a3b000-55d0c2a3c000 r--p 00000000 08:01 1001                       " + program + "\n"
+				+ "55d0c2a3c000-55d0c2a3d000 r-xp 00001000 08:01 1001                       " + program + "\n"
+				+ "55d0c2a3d000-55d0c2a3e000 r--p 00002000 08:01 1001                       " + program + "\n"
+				+ "55d0c2a3e000-55d0c2a40000 rw-p 00002000 08:01 1001                       " + program + "\n"
+				+ "55d0c4000000-55d0c4021000 rw-p 00000000 00:00 0                          [heap]\n"
+				+ "7f0000000000-7f0000001000 r-xp 00000000 08:01 1002                       " + hello + " (deleted)\n"
+				+ "7f0000001000-7f0000003000 rw-p 00000000 00:00 0 \n"
+				+ "7ffc1e5f0000-7ffc1e5f2000 r-xp 00000000 00:00 0                          [vdso]\n");
+		Assert.assertEquals(5, first.getMappings().size());
+		Assert.assertEquals(hello, first.findMapping(0x7f0000000010L).getPath());
+		Assert.assertNull(first.findMapping(0x55d0c4000000L));
+
+		File root = Files.createTempDirectory("jelf-symbolize").toFile();
+		File copy = new File(root, "program");
+		File damaged = new File(root, "damaged");
+		try {
+			// The same build at another path and address, as in another container
+			Files.copy(new File(program).toPath(), copy.toPath());
+			ElfProcessMaps second = ElfProcessMaps.parse(200,
+					"563412340000-563412341000 r--p 00000000 08:02 2001 " + copy + "\n"
+					+ "563412341000-563412342000 r-xp 00001000 08:02 2001 " + copy + "\n"
+					+ "563412343000-563412345000 rw-p 00002000 08:02 2001 " + copy + "\n");
+
+			ElfSymbolizer symbolizer = new ElfSymbolizer();
+			symbolizer.setSourceLines(true);
+			List<ElfSymbolizedAddress[]> result = symbolizer.symbolize(Arrays.asList(first, second), Arrays.asList(
+					new long[] { 0x55d0c2a3c13dL, 0x55d0c2a3c174L, 0x7f000000064cL, 0x1234, 0x55d0c2a3c13dL },
+					new long[] { 0x563412341180L, 0x563412343dd8L }));
+
+			ElfSymbolizedAddress[] a = result.get(0);
+			Assert.assertEquals(0x113d, a[0].getModuleAddress());
+			Assert.assertEquals(0x113d, a[0].getFileOffset());
+			Assert.assertEquals("compute+0x4", a[0].getFunction());
+			Assert.assertEquals(3, a[0].getSourceLine().getLine());
+			Assert.assertEquals("main", a[1].getFunction());
+			Assert.assertEquals(hello, a[2].getModulePath());
+			Assert.assertEquals("main+0x2", a[2].getFunction());
+			Assert.assertNull(a[3].getModulePath());
+			Assert.assertEquals(-1, a[3].getModuleAddress());
+			Assert.assertEquals("??", a[3].getFunction());
+			Assert.assertEquals("compute+0x4", a[4].getFunction());
+
+			ElfSymbolizedAddress[] b = result.get(1);
+			Assert.assertEquals(copy.getPath(), b[0].getModulePath());
+			Assert.assertEquals("main+0xc", b[0].getFunction());
+			Assert.assertEquals(0x3dd8, b[1].getModuleAddress());
+			Assert.assertEquals(0x2dd8, b[1].getFileOffset());
+			Assert.assertNull(b[1].getSymbolName());
+
+			// Modules are shared by build ID across paths
+			Assert.assertSame(symbolizer.getModule(program), symbolizer.getModule(copy.getPath()));
+			Assert.assertEquals(2, symbolizer.getModuleCount());
+			Assert.assertEquals("compute", symbolizer.symbolize(second, new long[] { 0x563412341139L })[0].getFunction());
+			Assert.assertNotNull(symbolizer.getModule("/nonexistent/lib.so").getError());
+
+			// Damaged line tables lose the lines but keep the names of all addresses
+			byte[] bytes = Files.readAllBytes(copy.toPath());
+			Arrays.fill(bytes, 0x3308 + 24, 0x3308 + 0xa6, (byte) 0xff);
+			Files.write(damaged.toPath(), bytes);
+			ElfProcessMaps third = ElfProcessMaps.parse(300,
+					"563412341000-563412342000 r-xp 00001000 08:02 2002 " + damaged + "\n");
+			ElfSymbolizer lines = new ElfSymbolizer();
+			lines.setSourceLines(true);
+			ElfSymbolizedAddress[] c = lines.symbolize(third, new long[] { 0x56341234113dL, 0x563412341174L });
+			Assert.assertEquals("compute+0x4", c[0].getFunction());
+			Assert.assertNull(c[0].getSourceLine());
+			Assert.assertEquals("main", c[1].getFunction());
+		} finally {
+			damaged.delete();
+			copy.delete();
+			root.delete();
+		}
+	}
 }
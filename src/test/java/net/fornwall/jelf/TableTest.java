@@ -0,0 +1,46 @@
+package net.fornwall.jelf;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.fornwall.jelf.Table.Align;
+
+public class TableTest {
+	@Test
+	public void testAlignment() {
+		Table t = new Table("Title");
+		t.add("Left");
+		t.setColAlign(Align.LEFT);
+		t.add("Right");
+		t.setColAlign(Align.RIGHT);
+		t.newRow();
+		t.add("a");
+		t.add("b");
+		t.newRow();
+		t.add("longest");
+		t.add("c");
+		
+		Assert.assertEquals("Title\n Left    Right\n a           b\n longest     c\n", t.toString());
+	}
+	
+	@Test
+	public void testWriteMatchesToString() throws IOException {
+		Table t = new Table();
+		t.add("Num");
+		t.setColAlign(Align.RIGHT);
+		t.add("Name");
+		t.setColAlign(Align.LEFT);
+		for(int i = 0; i < 100000; i++) {
+			t.newRow();
+			t.add(Integer.toString(i));
+			t.add("symbol_" + i);
+		}
+		
+		StringWriter out = new StringWriter();
+		t.write(out);
+		Assert.assertEquals(t.toString(), out.toString());
+	}
+}